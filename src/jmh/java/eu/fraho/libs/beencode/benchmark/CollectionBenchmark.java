@@ -0,0 +1,100 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode.benchmark;
+
+import eu.fraho.libs.beencode.BDict;
+import eu.fraho.libs.beencode.BInteger;
+import eu.fraho.libs.beencode.BList;
+import eu.fraho.libs.beencode.BNode;
+import eu.fraho.libs.beencode.BString;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollectionBenchmark {
+    @Param({"8", "256", "8192"})
+    private int size;
+
+    private BDict dict;
+    private BDict otherDict;
+    private BList list;
+    private BList otherList;
+    private BString presentKey;
+    private String presentKeyString;
+    private BString newKey;
+    private BInteger value;
+
+    @Setup
+    public void setup() {
+        TreeMap<BString, BNode<?>> entries = new TreeMap<>();
+        TreeMap<BString, BNode<?>> otherEntries = new TreeMap<>();
+        List<BNode<?>> values = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            entries.put(BString.of(String.format("key-%08d", 2 * i)), BInteger.of(i));
+            otherEntries.put(BString.of(String.format("key-%08d", 2 * i + 1)), BInteger.of(i));
+            values.add(BInteger.of(i));
+        }
+        dict = BDict.of(entries);
+        otherDict = BDict.of(otherEntries);
+        list = BList.of(values);
+        otherList = BList.of(values);
+        presentKeyString = String.format("key-%08d", size);
+        presentKey = BString.of(presentKeyString);
+        newKey = BString.of("key-new");
+        value = BInteger.of(42);
+    }
+
+    @Benchmark
+    public BDict dictPut() {
+        return dict.put(newKey, value);
+    }
+
+    @Benchmark
+    public Optional<BNode<?>> dictGet() {
+        return dict.get(presentKey);
+    }
+
+    @Benchmark
+    public Optional<BNode<?>> dictGetString() {
+        return dict.get(presentKeyString);
+    }
+
+    @Benchmark
+    public BDict dictJoin() {
+        return dict.join(otherDict);
+    }
+
+    @Benchmark
+    public BList listAdd() {
+        return list.add(value);
+    }
+
+    @Benchmark
+    public BList listJoin() {
+        return list.join(otherList);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode.benchmark;
+
+import eu.fraho.libs.beencode.BString;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompareBenchmark {
+    @Param({"4", "20", "1024"})
+    private int length;
+
+    private BString left;
+    private BString right;
+    private BString other;
+
+    @Setup
+    public void setup() {
+        byte[] data = new byte[length];
+        Arrays.fill(data, (byte) 'a');
+        left = BString.of(data.clone());
+        right = BString.of(data.clone());
+        data[length - 1] = (byte) 0xff;
+        other = BString.of(data);
+    }
+
+    @Benchmark
+    public int compareEqual() {
+        return left.compareTo(right);
+    }
+
+    @Benchmark
+    public int compareLastByteDiffers() {
+        return left.compareTo(other);
+    }
+}
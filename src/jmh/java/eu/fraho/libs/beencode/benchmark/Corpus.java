@@ -0,0 +1,88 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode.benchmark;
+
+import eu.fraho.libs.beencode.BNode;
+import eu.fraho.libs.beencode.NodeFactory;
+import eu.fraho.libs.beencode.helpers.CorpusGenerator;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Synthetic documents shaped like the data the library sees in practice.
+ * Every document is created by the {@link CorpusGenerator} from a fixed seed, so runs stay comparable across releases.
+ */
+public enum Corpus {
+    /**
+     * A torrent with a single file of 700 MiB and 256 KiB pieces.
+     */
+    SINGLE_FILE_TORRENT {
+        @Override
+        void write(@NotNull CorpusGenerator generator, @NotNull ByteArrayOutputStream os) throws IOException {
+            generator.totalLength(700L << 20, 1 << 18).writeTorrent(os);
+        }
+    },
+    /**
+     * A torrent with 10.000 files in nested directories and 4 MiB pieces.
+     */
+    MULTI_FILE_TORRENT {
+        @Override
+        void write(@NotNull CorpusGenerator generator, @NotNull ByteArrayOutputStream os) throws IOException {
+            generator.files(10_000).totalLength(40L << 30, 1 << 22).depth(6).writeTorrent(os);
+        }
+    },
+    /**
+     * A list of 1.000 KRPC queries and responses, as seen by a DHT node.
+     */
+    KRPC_MESSAGES {
+        @Override
+        void write(@NotNull CorpusGenerator generator, @NotNull ByteArrayOutputStream os) throws IOException {
+            generator.writeKrpc(os, 1_000);
+        }
+    },
+    /**
+     * Resume data of a client with 500 torrents.
+     */
+    RESUME_DATA {
+        @Override
+        void write(@NotNull CorpusGenerator generator, @NotNull ByteArrayOutputStream os) throws IOException {
+            generator.stringLength(1, 4_096).integers(0, 1L << 40).writeResume(os, 500);
+        }
+    },
+    /**
+     * About 1 MiB of generic documents with skewed keys, nested up to 6 levels.
+     */
+    DOCUMENTS {
+        @Override
+        void write(@NotNull CorpusGenerator generator, @NotNull ByteArrayOutputStream os) throws IOException {
+            generator.depth(6).keys(256, 2.0).stringLength(0, 1_024).writeDocuments(os, 1 << 20);
+        }
+    };
+
+    private static final long SEED = 0x6265656e636f6465L;
+
+    abstract void write(@NotNull CorpusGenerator generator, @NotNull ByteArrayOutputStream os) throws IOException;
+
+    @NotNull
+    public byte[] data() {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try {
+            write(CorpusGenerator.of(SEED + ordinal()), baos);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return baos.toByteArray();
+    }
+
+    @NotNull
+    public BNode<?> node() {
+        return NodeFactory.decode(data());
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode.benchmark;
+
+import eu.fraho.libs.beencode.BNode;
+import eu.fraho.libs.beencode.NodeFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark {
+    @Param
+    private Corpus corpus;
+
+    private byte[] data;
+
+    @Setup
+    public void setup() {
+        data = corpus.data();
+    }
+
+    @Benchmark
+    public BNode<?> decodeBytes() {
+        return NodeFactory.decode(data);
+    }
+
+    @Benchmark
+    public BNode<?> decodeStream() throws IOException {
+        return NodeFactory.decode(new ByteArrayInputStream(data));
+    }
+}
@@ -10,7 +10,9 @@ import net.jcip.annotations.Immutable;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
+import java.io.InvalidObjectException;
 import java.io.InputStream;
+import java.io.ObjectInputStream;
 import java.io.OutputStream;
 import java.util.*;
 
@@ -19,6 +21,16 @@ public final class BDict extends BNode<Map<BString, BNode<?>>> {
     private static final long serialVersionUID = 1L;
     private static final byte PREFIX = 'd';
     private static final byte SUFFIX = 'e';
+    // the node with its cached size and hash, the unmodifiable wrapper with its cached views and the TreeMap with its fields
+    private static final long SHALLOW_SIZE = align(OBJECT_HEADER + REFERENCE + Long.BYTES + Integer.BYTES)
+            + align(OBJECT_HEADER + 4 * REFERENCE)
+            + align(OBJECT_HEADER + 7 * REFERENCE + 2 * Integer.BYTES);
+    // key, value, left, right, parent and the color
+    private static final long ENTRY_SIZE = align(OBJECT_HEADER + 5 * REFERENCE + 1);
+
+    // both computed on first use, racy but idempotent like String.hashCode
+    private transient long retainedSize;
+    private transient int hash;
 
     private BDict(@NotNull Map<BString, BNode<?>> nodes) {
         super(nodes);
@@ -51,6 +63,14 @@ public final class BDict extends BNode<Map<BString, BNode<?>>> {
         return new BDict(Collections.unmodifiableMap(temp));
     }
 
+    /**
+     * Wraps the given map without copying it, the caller must not modify it afterwards.
+     */
+    @NotNull
+    static BDict wrap(@NotNull TreeMap<BString, BNode<?>> nodes) {
+        return new BDict(Collections.unmodifiableMap(nodes));
+    }
+
     @NotNull
     public static BDict of(@NotNull InputStream is) throws IOException {
         return of(is, (byte) is.read());
@@ -58,11 +78,24 @@ public final class BDict extends BNode<Map<BString, BNode<?>>> {
 
     @NotNull
     public static BDict of(@NotNull InputStream is, byte prefix) throws IOException {
+        DecoderState state = new DecoderState(DecoderOptions.DEFAULT).record(EntryPoints.BDICT_OF);
+        try {
+            state.bytes(1);
+            state.node();
+            return state.complete(of(state.wrap(is), prefix, state));
+        } finally {
+            state.commit();
+        }
+    }
+
+    @NotNull
+    static BDict of(@NotNull InputStream is, byte prefix, @NotNull DecoderState state) throws IOException {
         if (!canParsePrefix(prefix)) {
             throw new BencodeException("Unknown prefix, cannot parse: " + prefix);
         }
 
-        Map<BString, BNode<?>> result = new TreeMap<>();
+        state.enter(true);
+        TreeMap<BString, BNode<?>> result = new TreeMap<>();
         byte read;
         while ((read = (byte) is.read()) != SUFFIX) {
             if (!BString.canParsePrefix(read)) {
@@ -70,17 +103,19 @@ public final class BDict extends BNode<Map<BString, BNode<?>>> {
                         + " cannot parse with prefix '" + read + "'.");
             }
 
-            BString key = BString.of(is, read);
+            state.node();
+            BString key = BString.of(is, read, state);
             read = (byte) is.read();
             if (read == SUFFIX) {
                 throw new BencodeException(
                         "Expected dictionary value, but suffix was found.");
             }
 
-            result.put(key, NodeFactory.decode(is, read));
+            result.put(key, NodeFactory.decode(is, read, state));
         }
 
-        return of(result);
+        state.exit();
+        return state.intern(wrap(result));
     }
 
     public static boolean canParsePrefix(byte prefix) {
@@ -97,6 +132,35 @@ public final class BDict extends BNode<Map<BString, BNode<?>>> {
         os.write(SUFFIX);
     }
 
+    /**
+     * @return the size of the node, the backing tree with its entries and all keys and values, computed once
+     */
+    @Override
+    public long getRetainedSize() {
+        long result = retainedSize;
+        if (result == 0) {
+            result = SHALLOW_SIZE;
+            for (Map.Entry<BString, BNode<?>> entry : getValue().entrySet()) {
+                result += ENTRY_SIZE + entry.getKey().getRetainedSize() + entry.getValue().getRetainedSize();
+            }
+            retainedSize = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return the hash code, computed once
+     */
+    @Override
+    public int hashCode() {
+        int result = hash;
+        if (result == 0) {
+            result = super.hashCode();
+            hash = result;
+        }
+        return result;
+    }
+
     public int size() {
         return getValue().size();
     }
@@ -164,4 +228,12 @@ public final class BDict extends BNode<Map<BString, BNode<?>>> {
         for (BDict other : others) temp.putAll(other.getValue());
         return of(temp);
     }
+
+    private Object writeReplace() {
+        return new SerializationProxy(this);
+    }
+
+    private void readObject(@NotNull ObjectInputStream ois) throws InvalidObjectException {
+        throw new InvalidObjectException("Nodes are serialized through a proxy");
+    }
 }
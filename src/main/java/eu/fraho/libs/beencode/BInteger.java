@@ -10,7 +10,9 @@ import net.jcip.annotations.Immutable;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
+import java.io.InvalidObjectException;
 import java.io.InputStream;
+import java.io.ObjectInputStream;
 import java.io.OutputStream;
 import java.util.Objects;
 
@@ -104,8 +106,26 @@ public final class BInteger extends BNode<Long> implements Comparable<BInteger>
         os.write(SUFFIX);
     }
 
+    /**
+     * @return the size of the node and its boxed value, which is shared for small values
+     */
+    @Override
+    public long getRetainedSize() {
+        long value = getValue();
+        boolean cached = value >= -128 && value <= 127;
+        return align(OBJECT_HEADER + REFERENCE) + (cached ? 0 : align(OBJECT_HEADER + Long.BYTES));
+    }
+
     @Override
     public int compareTo(@NotNull BInteger o) {
         return getValue().compareTo(o.getValue());
     }
+
+    private Object writeReplace() {
+        return new SerializationProxy(this);
+    }
+
+    private void readObject(@NotNull ObjectInputStream ois) throws InvalidObjectException {
+        throw new InvalidObjectException("Nodes are serialized through a proxy");
+    }
 }
@@ -11,7 +11,9 @@ import net.jcip.annotations.Immutable;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
+import java.io.InvalidObjectException;
 import java.io.InputStream;
+import java.io.ObjectInputStream;
 import java.io.OutputStream;
 import java.util.*;
 import java.util.function.Consumer;
@@ -22,6 +24,14 @@ public final class BList extends BNode<List<BNode<?>>> {
     private static final long serialVersionUID = 1L;
     private static final byte PREFIX = 'l';
     private static final byte SUFFIX = 'e';
+    // the node with its cached size and hash, the unmodifiable wrapper and the ArrayList with its size, modCount and elementData
+    private static final long SHALLOW_SIZE = align(OBJECT_HEADER + REFERENCE + Long.BYTES + Integer.BYTES)
+            + align(OBJECT_HEADER + 2 * REFERENCE)
+            + align(OBJECT_HEADER + 2 * Integer.BYTES + REFERENCE);
+
+    // both computed on first use, racy but idempotent like String.hashCode
+    private transient long retainedSize;
+    private transient int hash;
 
     private BList(@NotNull List<BNode<?>> nodes) {
         super(nodes);
@@ -41,6 +51,14 @@ public final class BList extends BNode<List<BNode<?>>> {
         return new BList(Collections.unmodifiableList(temp));
     }
 
+    /**
+     * Wraps the given list without copying it, the caller must not modify it afterwards.
+     */
+    @NotNull
+    static BList wrap(@NotNull List<BNode<?>> nodes) {
+        return new BList(Collections.unmodifiableList(nodes));
+    }
+
     @NotNull
     public static BList of(@NotNull InputStream is) throws IOException {
         return of(is, (byte) is.read());
@@ -48,16 +66,30 @@ public final class BList extends BNode<List<BNode<?>>> {
 
     @NotNull
     public static BList of(@NotNull InputStream is, byte prefix) throws IOException {
+        DecoderState state = new DecoderState(DecoderOptions.DEFAULT).record(EntryPoints.BLIST_OF);
+        try {
+            state.bytes(1);
+            state.node();
+            return state.complete(of(state.wrap(is), prefix, state));
+        } finally {
+            state.commit();
+        }
+    }
+
+    @NotNull
+    static BList of(@NotNull InputStream is, byte prefix, @NotNull DecoderState state) throws IOException {
         if (!canParsePrefix(prefix)) {
             throw new BencodeException("Unknown prefix, cannot parse: " + prefix);
         }
 
+        state.enter(false);
         List<BNode<?>> temp = new ArrayList<>();
         byte read;
         while ((read = (byte) is.read()) != SUFFIX) {
-            temp.add(NodeFactory.decode(is, read));
+            temp.add(NodeFactory.decode(is, read, state));
         }
-        return of(temp);
+        state.exit();
+        return state.intern(wrap(temp));
     }
 
     public static boolean canParsePrefix(byte prefix) {
@@ -73,6 +105,38 @@ public final class BList extends BNode<List<BNode<?>>> {
         os.write(SUFFIX);
     }
 
+    /**
+     * @return the size of the node, the backing list and all children, computed once
+     */
+    @Override
+    public long getRetainedSize() {
+        long result = retainedSize;
+        if (result == 0) {
+            List<BNode<?>> nodes = getValue();
+            // ArrayLists grow to at least 10 elements on the first add
+            int capacity = nodes.isEmpty() ? 0 : Math.max(10, nodes.size());
+            result = SHALLOW_SIZE + align(ARRAY_HEADER + (long) capacity * REFERENCE);
+            for (BNode<?> node : nodes) {
+                result += node.getRetainedSize();
+            }
+            retainedSize = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return the hash code, computed once
+     */
+    @Override
+    public int hashCode() {
+        int result = hash;
+        if (result == 0) {
+            result = super.hashCode();
+            hash = result;
+        }
+        return result;
+    }
+
     public int size() {
         return getValue().size();
     }
@@ -174,4 +238,12 @@ public final class BList extends BNode<List<BNode<?>>> {
         for (BList other : others) temp.addAll(other.getValue());
         return of(temp);
     }
+
+    private Object writeReplace() {
+        return new SerializationProxy(this);
+    }
+
+    private void readObject(@NotNull ObjectInputStream ois) throws InvalidObjectException {
+        throw new InvalidObjectException("Nodes are serialized through a proxy");
+    }
 }
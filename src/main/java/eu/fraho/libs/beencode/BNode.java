@@ -18,6 +18,10 @@ import java.util.Arrays;
 
 public abstract class BNode<T> implements Cloneable, Serializable {
     public static final Charset DEFAULT_CHARSET = StandardCharsets.US_ASCII;
+    // sizes for the retained size estimates, of a 64 bit JVM with compressed references
+    static final int OBJECT_HEADER = 12;
+    static final int ARRAY_HEADER = 16;
+    static final int REFERENCE = 4;
     private static final long serialVersionUID = 1L;
 
     @NotNull
@@ -27,10 +31,30 @@ public abstract class BNode<T> implements Cloneable, Serializable {
         this.value = value;
     }
 
+    static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
     public abstract void write(@NotNull OutputStream os) throws IOException;
 
+    /**
+     * Estimates the heap retained by this node and its children, assuming a 64 bit JVM with compressed
+     * references. Children shared by several containers are counted for each of them, so the estimate
+     * is meant for weighing whole documents, e.g. in a cache.
+     * <p>
+     * This implementation only counts the node itself, the library nodes override it.
+     *
+     * @return the estimated size in bytes
+     */
+    public long getRetainedSize() {
+        return align(OBJECT_HEADER + REFERENCE);
+    }
+
     @Override
     public boolean equals(@Nullable Object obj) {
+        if (obj == this) {
+            return true;
+        }
         if (obj == null || !BNode.class.isAssignableFrom(obj.getClass())) {
             return false;
         }
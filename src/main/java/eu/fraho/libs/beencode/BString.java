@@ -10,7 +10,9 @@ import net.jcip.annotations.Immutable;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
+import java.io.InvalidObjectException;
 import java.io.InputStream;
+import java.io.ObjectInputStream;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
 import java.util.Arrays;
@@ -22,14 +24,36 @@ public final class BString extends BNode<byte[]> implements Comparable<BString>
     private static final long serialVersionUID = 1L;
     private static final byte SEPARATOR = ':';
 
+    private BString(@NotNull byte[] data, int offset, int length) {
+        super(new byte[length]);
+        System.arraycopy(data, offset, getValue(), 0, length);
+    }
+
     private BString(@NotNull byte[] data) {
-        super(new byte[data.length]);
-        System.arraycopy(data, 0, getValue(), 0, data.length);
+        super(data);
     }
 
     @NotNull
     public static BString of(@NotNull byte[] data) {
         Objects.requireNonNull(data, "data may not be null");
+        return new BString(data, 0, data.length);
+    }
+
+    @NotNull
+    public static BString of(@NotNull byte[] data, int offset, int length) {
+        Objects.requireNonNull(data, "data may not be null");
+        if (offset < 0 || length < 0 || offset > data.length - length) {
+            throw new IndexOutOfBoundsException("Range [" + offset + ", " + offset + " + " + length
+                    + ") is out of bounds for length " + data.length);
+        }
+        return new BString(data, offset, length);
+    }
+
+    /**
+     * Wraps the given array without copying it, the caller must not modify it afterwards.
+     */
+    @NotNull
+    static BString wrap(@NotNull byte[] data) {
         return new BString(data);
     }
 
@@ -52,11 +76,33 @@ public final class BString extends BNode<byte[]> implements Comparable<BString>
 
     @NotNull
     public static BString of(@NotNull InputStream is, byte prefix) throws IOException {
-        return of(is, prefix, DEFAULT_MAX_READ_LEN);
+        DecoderState state = new DecoderState(DecoderOptions.DEFAULT).record(EntryPoints.BSTRING_OF);
+        try {
+            state.bytes(1);
+            state.node();
+            return state.complete(of(state.wrap(is), prefix, state));
+        } finally {
+            state.commit();
+        }
     }
 
     @NotNull
     public static BString of(@NotNull InputStream is, byte prefix, int maxReadLen) throws IOException {
+        long length = readLength(is, prefix);
+        if (length > maxReadLen) {
+            throw new BencodeException("Denied attempt to read " + length + " bytes.");
+        }
+        return readPayload(is, (int) length);
+    }
+
+    @NotNull
+    static BString of(@NotNull InputStream is, byte prefix, @NotNull DecoderState state) throws IOException {
+        long length = readLength(is, prefix);
+        state.string(length);
+        return state.intern(readPayload(is, (int) length));
+    }
+
+    private static long readLength(@NotNull InputStream is, byte prefix) throws IOException {
         long length = prefix - '0';
 
         byte cur;
@@ -71,12 +117,11 @@ public final class BString extends BNode<byte[]> implements Comparable<BString>
         if (length > 0 && prefix == '0') {
             throw new BencodeException("Leading zeros are not allowed.");
         }
+        return length;
+    }
 
-        if (length > maxReadLen) {
-            throw new BencodeException("Denied attempt to read " + length + " bytes.");
-        }
-
-        int ilength = (int) length;
+    @NotNull
+    private static BString readPayload(@NotNull InputStream is, int ilength) throws IOException {
         byte[] value = new byte[ilength];
         int offset = 0;
         while (offset != ilength) {
@@ -113,13 +158,40 @@ public final class BString extends BNode<byte[]> implements Comparable<BString>
         os.write(getValue());
     }
 
+    /**
+     * @return the size of the node and its payload array
+     */
+    @Override
+    public long getRetainedSize() {
+        return align(OBJECT_HEADER + REFERENCE) + align(ARRAY_HEADER + getValue().length);
+    }
+
     @Override
     public int hashCode() {
         return getClass().hashCode() + Arrays.hashCode(getValue());
     }
 
+    /**
+     * Compares the raw bytes as unsigned values, which is the order dictionary keys have to be
+     * encoded in.
+     */
     @Override
     public int compareTo(@NotNull BString o) {
-        return toString().compareTo(o.toString());
+        byte[] a = getValue();
+        byte[] b = o.getValue();
+        int common = Math.min(a.length, b.length);
+        for (int i = 0; i < common; i++) {
+            int cmp = (a[i] & 0xff) - (b[i] & 0xff);
+            if (cmp != 0) return cmp;
+        }
+        return a.length - b.length;
+    }
+
+    private Object writeReplace() {
+        return new SerializationProxy(this);
+    }
+
+    private void readObject(@NotNull ObjectInputStream ois) throws InvalidObjectException {
+        throw new InvalidObjectException("Nodes are serialized through a proxy");
     }
 }
@@ -0,0 +1,377 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode;
+
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Pull parser working directly on a byte array. In contrast to the {@code of(InputStream)} methods
+ * of the nodes it does not create any objects unless asked to, strings are reported as offset and
+ * length into the underlying array. An instance can be reused for multiple documents by calling
+ * {@link #reset(byte[], int, int)}.
+ * <p>
+ * The budgets of the {@link DecoderOptions} are enforced per document, every value that is read or
+ * skipped counts against them.
+ */
+@NotThreadSafe
+public final class BencodeReader {
+    private static final byte INTEGER = 'i';
+    private static final byte LIST = 'l';
+    private static final byte DICT = 'd';
+    private static final byte END = 'e';
+    private static final byte SEPARATOR = ':';
+    private static final int MAX_LENGTH_DIGITS = 10;
+
+    private final DecoderState state;
+    @NotNull
+    private byte[] data;
+    private int start;
+    private int limit;
+    private int position;
+    private int depth;
+    private int stringOffset;
+    private int stringLength;
+
+    private BencodeReader(@NotNull byte[] data, int offset, int length, @NotNull DecoderOptions options) {
+        this.data = data;
+        this.state = new DecoderState(options);
+        reset(data, offset, length);
+    }
+
+    @NotNull
+    public static BencodeReader of(@NotNull byte[] data) {
+        Objects.requireNonNull(data, "data may not be null");
+        return new BencodeReader(data, 0, data.length, DecoderOptions.DEFAULT);
+    }
+
+    @NotNull
+    public static BencodeReader of(@NotNull byte[] data, int offset, int length) {
+        Objects.requireNonNull(data, "data may not be null");
+        return new BencodeReader(data, offset, length, DecoderOptions.DEFAULT);
+    }
+
+    @NotNull
+    public static BencodeReader of(@NotNull byte[] data, @NotNull DecoderOptions options) {
+        Objects.requireNonNull(data, "data may not be null");
+        return of(data, 0, data.length, options);
+    }
+
+    @NotNull
+    public static BencodeReader of(@NotNull byte[] data, int offset, int length, @NotNull DecoderOptions options) {
+        Objects.requireNonNull(data, "data may not be null");
+        Objects.requireNonNull(options, "options may not be null");
+        return new BencodeReader(data, offset, length, options);
+    }
+
+    @NotNull
+    public BencodeReader reset(@NotNull byte[] data, int offset, int length) {
+        Objects.requireNonNull(data, "data may not be null");
+        if (offset < 0 || length < 0 || offset > data.length - length) {
+            throw new IndexOutOfBoundsException("Range [" + offset + ", " + offset + " + " + length
+                    + ") is out of bounds for length " + data.length);
+        }
+        this.data = data;
+        this.start = offset;
+        this.limit = offset + length;
+        this.position = offset;
+        this.depth = 0;
+        this.stringOffset = 0;
+        this.stringLength = 0;
+        state.reset();
+        state.bytes(length);
+        return this;
+    }
+
+    @NotNull
+    public DecoderOptions getOptions() {
+        return state.getOptions();
+    }
+
+    @NotNull
+    DecoderState state() {
+        return state;
+    }
+
+    @NotNull
+    public byte[] data() {
+        return data;
+    }
+
+    public int position() {
+        return position;
+    }
+
+    public void position(int position) {
+        if (position < start || position > limit) {
+            throw new IndexOutOfBoundsException("Position " + position + " is not within [" + start + ", " + limit + "]");
+        }
+        this.position = position;
+    }
+
+    public int limit() {
+        return limit;
+    }
+
+    public int depth() {
+        return depth;
+    }
+
+    public boolean isAtEnd() {
+        return position >= limit;
+    }
+
+    /**
+     * @return true if there is another element in the current container (or at the top level)
+     */
+    public boolean hasNext() {
+        if (position >= limit) {
+            if (depth > 0) throw error("Premature end of data, missing " + depth + " suffixes");
+            return false;
+        }
+        return data[position] != END;
+    }
+
+    public byte peek() {
+        if (position >= limit) {
+            throw error("Premature end of data");
+        }
+        return data[position];
+    }
+
+    public boolean isString() {
+        return BString.canParsePrefix(peek());
+    }
+
+    public boolean isInteger() {
+        return peek() == INTEGER;
+    }
+
+    public boolean isList() {
+        return peek() == LIST;
+    }
+
+    public boolean isDict() {
+        return peek() == DICT;
+    }
+
+    public void enterList() {
+        expect(LIST);
+        state.node();
+        state.enter(false);
+        depth++;
+    }
+
+    public void enterDict() {
+        expect(DICT);
+        state.node();
+        state.enter(true);
+        depth++;
+    }
+
+    public void exit() {
+        if (depth == 0) {
+            throw error("Not within a list or dictionary");
+        }
+        expect(END);
+        state.exit();
+        depth--;
+    }
+
+    public long readLong() {
+        expect(INTEGER);
+        state.node();
+        int begin = position;
+        boolean negative = position < limit && data[position] == '-';
+        if (negative) position++;
+
+        int digits = position;
+        long result = 0;
+        while (position < limit && data[position] != END) {
+            int digit = data[position] - '0';
+            if (digit < 0 || digit > 9) {
+                throw error("Invalid data, expected a digit but got '" + (char) data[position] + "'");
+            }
+            // accumulate negative to be able to represent Long.MIN_VALUE
+            if (result < (Long.MIN_VALUE + digit) / 10) {
+                throw error("Integer overflow");
+            }
+            result = result * 10 - digit;
+            position++;
+        }
+        if (position >= limit) {
+            throw error("Premature end of data, integer is not terminated");
+        }
+        int count = position - digits;
+        if (count == 0) {
+            throw error(negative ? "Invalid data, only a dash was read" : "Invalid data, no data read");
+        }
+        if (data[digits] == '0' && (count > 1 || negative)) {
+            throw new BencodeException("Invalid data at offset " + begin + ", "
+                    + (negative ? "negative zero or " : "") + "leading zeros are not allowed");
+        }
+        position++;
+        if (negative) return result;
+        if (result == Long.MIN_VALUE) {
+            throw error("Integer overflow");
+        }
+        return -result;
+    }
+
+    /**
+     * Reads the header of a string and skips its payload.
+     *
+     * @return the length of the string, the payload starts at {@link #stringOffset()}
+     */
+    public int readString() {
+        int begin = position;
+        long length = 0;
+        int digits = 0;
+        while (position < limit && data[position] != SEPARATOR) {
+            int digit = data[position] - '0';
+            if (digit < 0 || digit > 9) {
+                throw error("Unexpected data, expected a digit but got '" + (char) data[position] + "'");
+            }
+            if (++digits > MAX_LENGTH_DIGITS) {
+                throw error("String length is too long");
+            }
+            length = length * 10 + digit;
+            position++;
+        }
+        if (position >= limit) {
+            throw error("Premature end of data, string length is not terminated");
+        }
+        if (digits == 0) {
+            throw error("Invalid data, no string length read");
+        }
+        if (digits > 1 && data[begin] == '0') {
+            throw new BencodeException("Leading zeros are not allowed at offset " + begin);
+        }
+        state.node();
+        state.string(length);
+        position++;
+        if (length > limit - position) {
+            throw error("Premature end of data, missing " + (length - (limit - position)) + " bytes");
+        }
+        stringOffset = position;
+        stringLength = (int) length;
+        position += stringLength;
+        return stringLength;
+    }
+
+    public int stringOffset() {
+        return stringOffset;
+    }
+
+    public int stringLength() {
+        return stringLength;
+    }
+
+    /**
+     * @return true if the last string read equals the given bytes
+     */
+    public boolean stringEquals(@NotNull byte[] expected) {
+        if (expected.length != stringLength) return false;
+        for (int i = 0; i < stringLength; i++) {
+            if (data[stringOffset + i] != expected[i]) return false;
+        }
+        return true;
+    }
+
+    @NotNull
+    public byte[] readBytes() {
+        readString();
+        byte[] result = new byte[stringLength];
+        System.arraycopy(data, stringOffset, result, 0, stringLength);
+        return result;
+    }
+
+    @NotNull
+    public BString readBString() {
+        readString();
+        return BString.of(data, stringOffset, stringLength);
+    }
+
+    public void skipValue() {
+        int nesting = 0;
+        do {
+            byte prefix = peek();
+            if (prefix == LIST || prefix == DICT) {
+                position++;
+                state.node();
+                state.enter(prefix == DICT);
+                nesting++;
+            } else if (prefix == END) {
+                if (nesting == 0) throw error("Expected a value, but suffix was found");
+                position++;
+                state.exit();
+                nesting--;
+            } else if (prefix == INTEGER) {
+                readLong();
+            } else if (BString.canParsePrefix(prefix)) {
+                readString();
+            } else {
+                throw error("No parser found for prefix '" + (char) prefix + "'");
+            }
+        } while (nesting > 0);
+    }
+
+    @NotNull
+    public BNode<?> readNode() {
+        byte prefix = peek();
+        if (prefix == DICT) {
+            enterDict();
+            TreeMap<BString, BNode<?>> result = new TreeMap<>();
+            while (hasNext()) {
+                if (!isString()) {
+                    throw error("Expected a dictionary key (BString), but got prefix '" + (char) peek() + "'");
+                }
+                BString key = readBString();
+                if (!hasNext()) {
+                    throw error("Expected dictionary value, but suffix was found");
+                }
+                result.put(key, readNode());
+            }
+            exit();
+            return BDict.wrap(result);
+        } else if (prefix == LIST) {
+            enterList();
+            List<BNode<?>> result = new ArrayList<>();
+            while (hasNext()) {
+                result.add(readNode());
+            }
+            exit();
+            return BList.wrap(result);
+        } else if (prefix == INTEGER) {
+            return BInteger.of(readLong());
+        } else if (BString.canParsePrefix(prefix)) {
+            return readBString();
+        } else {
+            throw error("No parser found for prefix '" + (char) prefix + "'");
+        }
+    }
+
+    private void expect(byte expected) {
+        if (position >= limit) {
+            throw error("Premature end of data, expected '" + (char) expected + "'");
+        }
+        if (data[position] != expected) {
+            throw error("Expected '" + (char) expected + "' but got '" + (char) data[position] + "'");
+        }
+        position++;
+    }
+
+    @NotNull
+    private BencodeException error(@NotNull String message) {
+        return new BencodeException(message + " at offset " + position);
+    }
+}
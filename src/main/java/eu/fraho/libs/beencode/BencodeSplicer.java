@@ -0,0 +1,285 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode;
+
+import net.jcip.annotations.Immutable;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Changes a single value of an encoded document without decoding it. The path is located by
+ * scanning with a {@link BencodeReader}, then all other bytes are copied verbatim and only the new
+ * value is encoded:
+ * <pre>
+ * BencodeSplicer announce = BencodeSplicer.of("announce");
+ * byte[] changed = announce.put(torrent, BString.of("http://tracker.example.com/announce"));
+ * </pre>
+ * The path consists of dictionary keys ({@link BString}) and list indexes ({@link BInteger}). A
+ * missing key is inserted in the sorted position, an index equal to the size of the list appends
+ * to it. The dictionaries along the path are scanned completely, as the keys of real documents are
+ * not always sorted; of duplicate keys the last one is changed, as the decoders keep its value. The
+ * rest of the document is copied as it is.
+ */
+@Immutable
+public final class BencodeSplicer {
+    private final List<BNode<?>> path;
+    private final DecoderOptions options;
+
+    private BencodeSplicer(@NotNull List<BNode<?>> path, @NotNull DecoderOptions options) {
+        this.path = path;
+        this.options = options;
+    }
+
+    /**
+     * @param keys the dictionary keys leading to the value
+     */
+    @NotNull
+    public static BencodeSplicer of(@NotNull String... keys) {
+        Objects.requireNonNull(keys, "keys may not be null");
+        List<BNode<?>> temp = new ArrayList<>(keys.length);
+        for (String key : keys) {
+            temp.add(BString.of(key));
+        }
+        return of(temp);
+    }
+
+    /**
+     * @param path the dictionary keys and list indexes leading to the value
+     */
+    @NotNull
+    public static BencodeSplicer of(@NotNull List<BNode<?>> path) {
+        Objects.requireNonNull(path, "path may not be null");
+        if (path.isEmpty()) {
+            throw new IllegalArgumentException("path may not be empty");
+        }
+        for (BNode<?> element : path) {
+            if (!(element instanceof BString) && !(element instanceof BInteger)) {
+                throw new IllegalArgumentException("path may only contain BStrings and BIntegers, but got " + element);
+            }
+        }
+        return new BencodeSplicer(Collections.unmodifiableList(new ArrayList<>(path)), DecoderOptions.DEFAULT);
+    }
+
+    /**
+     * @return a splicer enforcing the budgets of the given options while scanning
+     */
+    @NotNull
+    public BencodeSplicer withOptions(@NotNull DecoderOptions options) {
+        Objects.requireNonNull(options, "options may not be null");
+        return new BencodeSplicer(path, options);
+    }
+
+    @NotNull
+    public List<BNode<?>> getPath() {
+        return path;
+    }
+
+    @NotNull
+    public DecoderOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * @return the document with the value at the path replaced or inserted
+     */
+    @NotNull
+    public byte[] put(@NotNull byte[] data, @NotNull BNode<?> value) {
+        Objects.requireNonNull(data, "data may not be null");
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(data.length + 64);
+        try {
+            put(data, 0, data.length, value, baos);
+        } catch (IOException e) {
+            // should never happen as we work on a virtual bytestream
+            throw new BencodeException(e);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Writes the document in the given range with the value at the path replaced or inserted.
+     *
+     * @return true if an existing value was replaced
+     */
+    public boolean put(@NotNull byte[] data, int offset, int length, @NotNull BNode<?> value,
+                       @NotNull OutputStream os) throws IOException {
+        Objects.requireNonNull(value, "value may not be null");
+        Objects.requireNonNull(os, "os may not be null");
+        Location location = locate(data, offset, length);
+        if (location.found) {
+            os.write(data, offset, location.valueStart - offset);
+        } else {
+            if (location.key == null && location.index != location.size) {
+                throw new BencodeException("Index out of bounds: " + location.index + " at " + path);
+            }
+            os.write(data, offset, location.start - offset);
+            if (location.key != null) {
+                location.key.write(os);
+            }
+        }
+        value.write(os);
+        os.write(data, location.end, offset + length - location.end);
+        return location.found;
+    }
+
+    /**
+     * @return the document without the value at the path, or the given array if there is none
+     * @throws BencodeException if the key occurs more than once in its dictionary
+     */
+    @NotNull
+    public byte[] remove(@NotNull byte[] data) {
+        Objects.requireNonNull(data, "data may not be null");
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(data.length);
+        try {
+            if (!remove(data, 0, data.length, baos)) {
+                return data;
+            }
+        } catch (IOException e) {
+            // should never happen as we work on a virtual bytestream
+            throw new BencodeException(e);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Writes the document in the given range without the value at the path, together with its key.
+     *
+     * @return true if a value was removed, otherwise the document was written unchanged
+     * @throws BencodeException if the key occurs more than once in its dictionary
+     */
+    public boolean remove(@NotNull byte[] data, int offset, int length, @NotNull OutputStream os) throws IOException {
+        Objects.requireNonNull(os, "os may not be null");
+        Location location = locate(data, offset, length);
+        if (location.duplicate) {
+            throw new BencodeException("Duplicate key " + location.key + " at " + path + " cannot be removed");
+        }
+        os.write(data, offset, location.start - offset);
+        os.write(data, location.end, offset + length - location.end);
+        return location.found;
+    }
+
+    /**
+     * Scans to the last element of the path. If it is found, its key (if any) and value are located,
+     * otherwise the position it would be inserted at.
+     */
+    @NotNull
+    private Location locate(@NotNull byte[] data, int offset, int length) {
+        BencodeReader reader = BencodeReader.of(data, offset, length, options);
+        Location location = new Location();
+        for (int depth = 0; depth < path.size(); depth++) {
+            BNode<?> element = path.get(depth);
+            boolean last = depth == path.size() - 1;
+            if (element instanceof BString) {
+                if (reader.isAtEnd() || !reader.isDict()) {
+                    throw new BencodeException("Expected a dictionary at " + path.subList(0, depth));
+                }
+                byte[] key = ((BString) element).getValue();
+                reader.enterDict();
+                // the keys of real documents are not always sorted, so all of them are checked
+                int insert = -1;
+                int matches = 0;
+                int value = -1;
+                while (reader.hasNext()) {
+                    int start = reader.position();
+                    reader.readString();
+                    int cmp = compare(data, reader.stringOffset(), reader.stringLength(), key);
+                    if (cmp == 0) {
+                        // the decoders keep the value of the last duplicate
+                        matches++;
+                        location.start = start;
+                        value = reader.position();
+                    } else if (cmp > 0 && insert < 0) {
+                        insert = start;
+                    }
+                    reader.skipValue();
+                }
+                location.found = matches > 0;
+                location.duplicate = matches > 1;
+                if (location.found) {
+                    // continue from the matching value, the rest of the dictionary has been checked;
+                    // the budgets of the reader start over for the value
+                    reader.reset(data, value, offset + length - value);
+                } else if (last) {
+                    // a missing key is inserted before the first greater one
+                    location.start = insert < 0 ? reader.position() : insert;
+                } else {
+                    throw new BencodeException("Key not found: " + element + " at " + path.subList(0, depth + 1));
+                }
+                location.key = (BString) element;
+            } else {
+                if (reader.isAtEnd() || !reader.isList()) {
+                    throw new BencodeException("Expected a list at " + path.subList(0, depth));
+                }
+                long index = ((BInteger) element).getValue();
+                reader.enterList();
+                int size = 0;
+                while (size < index && reader.hasNext()) {
+                    reader.skipValue();
+                    size++;
+                }
+                location.found = size == index && reader.hasNext();
+                if (!location.found && !last) {
+                    throw new BencodeException("Index out of bounds: " + index + " at " + path.subList(0, depth + 1));
+                }
+                location.start = reader.position();
+                location.index = index;
+                location.size = size;
+                location.key = null;
+                location.duplicate = false;
+            }
+        }
+
+        if (location.found) {
+            location.valueStart = reader.position();
+            reader.skipValue();
+            location.end = reader.position();
+        } else {
+            location.valueStart = location.start;
+            location.end = location.start;
+        }
+        return location;
+    }
+
+    /**
+     * Compares the raw bytes as unsigned values, like {@link BString#compareTo(BString)}.
+     */
+    private static int compare(@NotNull byte[] data, int offset, int length, @NotNull byte[] key) {
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int cmp = (data[offset + i] & 0xff) - (key[i] & 0xff);
+            if (cmp != 0) return cmp;
+        }
+        return length - key.length;
+    }
+
+    @Override
+    public String toString() {
+        return "BencodeSplicer{path=" + path + ", options=" + options + "}";
+    }
+
+    private static final class Location {
+        private boolean found;
+        // the key occurs more than once, the location is the last one
+        private boolean duplicate;
+        // the key to insert with the value, null for lists
+        @Nullable
+        private BString key;
+        private long index;
+        private int size;
+        // the start of the key and value, or of the value within a list
+        private int start;
+        private int valueStart;
+        private int end;
+    }
+}
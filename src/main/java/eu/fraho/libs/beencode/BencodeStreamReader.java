@@ -0,0 +1,548 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode;
+
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Pull parser for bencoded data on an {@link InputStream}, which can handle strings of any size.
+ * <p>
+ * Strings up to the inline limit can be read as usual. Larger strings are not held in memory, but
+ * exposed as a bounded stream with {@link #readStream()}, copied with {@link #transferTo(OutputStream)}
+ * or spilled to a file with {@link #spill(Path)}. The header of a string is read first with
+ * {@link #readStringLength()} to decide how to handle it:
+ * <pre>
+ * reader.enterDict();
+ * while (reader.hasNext()) {
+ *     String key = new String(reader.readBytes(), StandardCharsets.UTF_8);
+ *     if (reader.isString() &amp;&amp; reader.readStringLength() &gt; reader.getInlineLimit()) {
+ *         Path blob = reader.spill(directory);
+ *     } else {
+ *         BNode&lt;?&gt; value = reader.readNode();
+ *     }
+ * }
+ * reader.exit();
+ * </pre>
+ * Any part of a string that has not been consumed is skipped with the next call to the reader.
+ */
+@NotThreadSafe
+public final class BencodeStreamReader implements Closeable {
+    private static final byte INTEGER = 'i';
+    private static final byte LIST = 'l';
+    private static final byte DICT = 'd';
+    private static final byte END = 'e';
+    private static final byte SEPARATOR = ':';
+    private static final int MAX_LENGTH_DIGITS = 19;
+    private static final int BUFFER_SIZE = 8192;
+
+    private final InputStream is;
+    private final int inlineLimit;
+    private final DecoderState state;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int bufferPosition;
+    private int bufferLimit;
+    private long offset;
+    private int depth;
+    // the string whose header has been read, but not (all of) its payload
+    private boolean stringOpen;
+    // the header has been read by readStringLength(), but the payload has not been accessed yet
+    private boolean stringPending;
+    private long stringRemaining;
+    private int generation;
+
+    private BencodeStreamReader(@NotNull InputStream is, int inlineLimit, @NotNull DecoderOptions options) {
+        this.is = is;
+        this.inlineLimit = inlineLimit;
+        this.state = new DecoderState(options);
+    }
+
+    /**
+     * @return a reader which reads strings up to {@link BString#DEFAULT_MAX_READ_LEN} inline
+     */
+    @NotNull
+    public static BencodeStreamReader of(@NotNull InputStream is) {
+        return of(is, BString.DEFAULT_MAX_READ_LEN);
+    }
+
+    @NotNull
+    public static BencodeStreamReader of(@NotNull InputStream is, int inlineLimit) {
+        return of(is, inlineLimit, DecoderOptions.DEFAULT.withMaxStringLength(Integer.MAX_VALUE));
+    }
+
+    /**
+     * Creates a reader enforcing the budgets of the given options. The string limits of the options
+     * only apply to strings which are read inline, streamed strings only count against the total
+     * number of bytes.
+     */
+    @NotNull
+    public static BencodeStreamReader of(@NotNull InputStream is, int inlineLimit, @NotNull DecoderOptions options) {
+        Objects.requireNonNull(is, "is may not be null");
+        Objects.requireNonNull(options, "options may not be null");
+        if (inlineLimit < 0) {
+            throw new IllegalArgumentException("inlineLimit may not be negative");
+        }
+        return new BencodeStreamReader(is, inlineLimit, options);
+    }
+
+    public int getInlineLimit() {
+        return inlineLimit;
+    }
+
+    /**
+     * @return the number of bytes consumed from the stream
+     */
+    public long offset() {
+        return offset;
+    }
+
+    public int depth() {
+        return depth;
+    }
+
+    /**
+     * @return true if there is another element in the current container (or at the top level)
+     */
+    public boolean hasNext() throws IOException {
+        finishString();
+        int next = fetch();
+        if (next < 0) {
+            if (depth > 0) throw error("Premature end of data, missing " + depth + " suffixes");
+            return false;
+        }
+        return next != END;
+    }
+
+    public byte peek() throws IOException {
+        finishString();
+        int next = fetch();
+        if (next < 0) {
+            throw error("Premature end of data");
+        }
+        return (byte) next;
+    }
+
+    /**
+     * @return true if the next element is a string, or the header of a string has just been read
+     */
+    public boolean isString() throws IOException {
+        return stringPending || BString.canParsePrefix(peek());
+    }
+
+    public boolean isInteger() throws IOException {
+        return !stringPending && peek() == INTEGER;
+    }
+
+    public boolean isList() throws IOException {
+        return !stringPending && peek() == LIST;
+    }
+
+    public boolean isDict() throws IOException {
+        return !stringPending && peek() == DICT;
+    }
+
+    public void enterList() throws IOException {
+        expect(LIST);
+        state.node();
+        state.enter(false);
+        depth++;
+    }
+
+    public void enterDict() throws IOException {
+        expect(DICT);
+        state.node();
+        state.enter(true);
+        depth++;
+    }
+
+    public void exit() throws IOException {
+        if (depth == 0) {
+            throw error("Not within a list or dictionary");
+        }
+        expect(END);
+        state.exit();
+        depth--;
+    }
+
+    public long readLong() throws IOException {
+        expect(INTEGER);
+        state.node();
+        long begin = offset - 1;
+        boolean negative = fetch() == '-';
+        if (negative) take();
+
+        int digits = 0;
+        boolean leadingZero = false;
+        long result = 0;
+        int next;
+        while ((next = fetch()) >= 0 && next != END) {
+            int digit = next - '0';
+            if (digit < 0 || digit > 9) {
+                throw error("Invalid data, expected a digit but got '" + (char) next + "'");
+            }
+            if (digits++ == 0) leadingZero = digit == 0;
+            // accumulate negative to be able to represent Long.MIN_VALUE
+            if (result < (Long.MIN_VALUE + digit) / 10) {
+                throw error("Integer overflow");
+            }
+            result = result * 10 - digit;
+            take();
+        }
+        if (next < 0) {
+            throw error("Premature end of data, integer is not terminated");
+        }
+        if (digits == 0) {
+            throw error(negative ? "Invalid data, only a dash was read" : "Invalid data, no data read");
+        }
+        if (leadingZero && (digits > 1 || negative)) {
+            throw new BencodeException("Invalid data at offset " + begin + ", "
+                    + (negative ? "negative zero or " : "") + "leading zeros are not allowed");
+        }
+        take();
+        if (negative) return result;
+        if (result == Long.MIN_VALUE) {
+            throw error("Integer overflow");
+        }
+        return -result;
+    }
+
+    /**
+     * Reads the header of a string, but none of its payload. Calling this again before the payload
+     * has been read returns the remaining length.
+     *
+     * @return the number of payload bytes that have not been read yet
+     */
+    public long readStringLength() throws IOException {
+        if (stringPending) {
+            return stringRemaining;
+        }
+        finishString();
+        long begin = offset;
+        long length = 0;
+        int digits = 0;
+        boolean leadingZero = false;
+        int next;
+        while ((next = fetch()) >= 0 && next != SEPARATOR) {
+            int digit = next - '0';
+            if (digit < 0 || digit > 9) {
+                throw error("Unexpected data, expected a digit but got '" + (char) next + "'");
+            }
+            if (digits == 0) leadingZero = digit == 0;
+            if (++digits > MAX_LENGTH_DIGITS || length > (Long.MAX_VALUE - digit) / 10) {
+                throw error("String length is too long");
+            }
+            length = length * 10 + digit;
+            take();
+        }
+        if (next < 0) {
+            throw error("Premature end of data, string length is not terminated");
+        }
+        if (digits == 0) {
+            throw error("Invalid data, no string length read");
+        }
+        if (digits > 1 && leadingZero) {
+            throw new BencodeException("Leading zeros are not allowed at offset " + begin);
+        }
+        take();
+        state.node();
+        stringOpen = true;
+        stringPending = true;
+        stringRemaining = length;
+        generation++;
+        return length;
+    }
+
+    /**
+     * Reads a string, which may not be larger than the inline limit.
+     */
+    @NotNull
+    public byte[] readBytes() throws IOException {
+        long length = beginPayload();
+        if (length > inlineLimit) {
+            throw error("Denied attempt to read " + length + " bytes, use readStream() for large strings");
+        }
+        state.string(length);
+        byte[] result = new byte[(int) length];
+        int read = 0;
+        while (read < result.length) {
+            int count = readPayload(result, read, result.length - read);
+            if (count < 0) {
+                throw error("Premature end of data, missing " + (result.length - read) + " bytes");
+            }
+            read += count;
+        }
+        stringOpen = false;
+        return result;
+    }
+
+    @NotNull
+    public BString readBString() throws IOException {
+        return BString.of(readBytes());
+    }
+
+    /**
+     * Exposes the payload of the next string as a stream, which is only valid until the next call
+     * to the reader. Closing the stream skips the remaining payload.
+     */
+    @NotNull
+    public InputStream readStream() throws IOException {
+        beginPayload();
+        return new PayloadStream(generation);
+    }
+
+    @NotNull
+    public ReadableByteChannel readChannel() throws IOException {
+        return Channels.newChannel(readStream());
+    }
+
+    /**
+     * Copies the payload of the next string to the given stream.
+     *
+     * @return the number of bytes copied
+     */
+    public long transferTo(@NotNull OutputStream os) throws IOException {
+        Objects.requireNonNull(os, "os may not be null");
+        long total = beginPayload();
+        byte[] chunk = new byte[(int) Math.min(BUFFER_SIZE, Math.max(1, total))];
+        int read;
+        while ((read = readPayload(chunk, 0, chunk.length)) > 0) {
+            os.write(chunk, 0, read);
+        }
+        if (stringRemaining > 0) {
+            throw error("Premature end of data, missing " + stringRemaining + " bytes");
+        }
+        stringOpen = false;
+        return total;
+    }
+
+    /**
+     * Writes the payload of the next string to a new temporary file in the given directory. The
+     * caller is responsible for deleting the file.
+     */
+    @NotNull
+    public Path spill(@NotNull Path directory) throws IOException {
+        Objects.requireNonNull(directory, "directory may not be null");
+        Path file = Files.createTempFile(directory, "bencode", ".bin");
+        try (OutputStream os = Files.newOutputStream(file)) {
+            transferTo(os);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return file;
+    }
+
+    public void skipValue() throws IOException {
+        int nesting = 0;
+        do {
+            if (stringPending) {
+                finishString();
+            } else {
+                byte prefix = peek();
+                if (prefix == LIST || prefix == DICT) {
+                    take();
+                    state.node();
+                    state.enter(prefix == DICT);
+                    nesting++;
+                } else if (prefix == END) {
+                    if (nesting == 0) throw error("Expected a value, but suffix was found");
+                    take();
+                    state.exit();
+                    nesting--;
+                } else if (prefix == INTEGER) {
+                    readLong();
+                } else if (BString.canParsePrefix(prefix)) {
+                    readStringLength();
+                    finishString();
+                } else {
+                    throw error("No parser found for prefix '" + (char) prefix + "'");
+                }
+            }
+        } while (nesting > 0);
+    }
+
+    /**
+     * Reads the next value as node. Strings larger than the inline limit are rejected.
+     */
+    @NotNull
+    public BNode<?> readNode() throws IOException {
+        if (stringPending) {
+            return readBString();
+        }
+        byte prefix = peek();
+        if (prefix == DICT) {
+            enterDict();
+            TreeMap<BString, BNode<?>> result = new TreeMap<>();
+            while (hasNext()) {
+                if (!isString()) {
+                    throw error("Expected a dictionary key (BString), but got prefix '" + (char) peek() + "'");
+                }
+                BString key = readBString();
+                if (!hasNext()) {
+                    throw error("Expected dictionary value, but suffix was found");
+                }
+                result.put(key, readNode());
+            }
+            exit();
+            return BDict.of(result);
+        } else if (prefix == LIST) {
+            enterList();
+            List<BNode<?>> result = new ArrayList<>();
+            while (hasNext()) {
+                result.add(readNode());
+            }
+            exit();
+            return BList.of(result);
+        } else if (prefix == INTEGER) {
+            return BInteger.of(readLong());
+        } else if (BString.canParsePrefix(prefix)) {
+            return readBString();
+        } else {
+            throw error("No parser found for prefix '" + (char) prefix + "'");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        is.close();
+    }
+
+    private long beginPayload() throws IOException {
+        long length = readStringLength();
+        stringPending = false;
+        return length;
+    }
+
+    private int readPayload(@NotNull byte[] target, int off, int len) throws IOException {
+        if (stringRemaining == 0) {
+            return -1;
+        }
+        int wanted = (int) Math.min(len, stringRemaining);
+        int read;
+        if (bufferPosition < bufferLimit) {
+            read = Math.min(wanted, bufferLimit - bufferPosition);
+            System.arraycopy(buffer, bufferPosition, target, off, read);
+            bufferPosition += read;
+        } else {
+            read = is.read(target, off, wanted);
+            if (read < 0) {
+                throw error("Premature end of data, missing " + stringRemaining + " bytes");
+            }
+            state.bytes(read);
+        }
+        offset += read;
+        stringRemaining -= read;
+        return read;
+    }
+
+    private void finishString() throws IOException {
+        if (!stringOpen) {
+            return;
+        }
+        while (stringRemaining > 0) {
+            if (bufferPosition < bufferLimit) {
+                int skipped = (int) Math.min(stringRemaining, bufferLimit - bufferPosition);
+                bufferPosition += skipped;
+                offset += skipped;
+                stringRemaining -= skipped;
+            } else if (fill() < 0) {
+                throw error("Premature end of data, missing " + stringRemaining + " bytes");
+            }
+        }
+        stringOpen = false;
+        stringPending = false;
+    }
+
+    private int fetch() throws IOException {
+        if (bufferPosition == bufferLimit && fill() < 0) {
+            return -1;
+        }
+        return buffer[bufferPosition] & 0xff;
+    }
+
+    private void take() {
+        bufferPosition++;
+        offset++;
+    }
+
+    private int fill() throws IOException {
+        int read = is.read(buffer, 0, buffer.length);
+        bufferPosition = 0;
+        bufferLimit = Math.max(read, 0);
+        if (read > 0) state.bytes(read);
+        return read;
+    }
+
+    private void expect(byte expected) throws IOException {
+        finishString();
+        int next = fetch();
+        if (next < 0) {
+            throw error("Premature end of data, expected '" + (char) expected + "'");
+        }
+        if (next != expected) {
+            throw error("Expected '" + (char) expected + "' but got '" + (char) next + "'");
+        }
+        take();
+    }
+
+    @NotNull
+    private BencodeException error(@NotNull String message) {
+        return new BencodeException(message + " at offset " + offset);
+    }
+
+    private final class PayloadStream extends InputStream {
+        private final int owner;
+
+        private PayloadStream(int owner) {
+            this.owner = owner;
+        }
+
+        private boolean valid() {
+            return owner == generation && stringOpen;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int read = read(single, 0, 1);
+            return read < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(@NotNull byte[] b, int off, int len) throws IOException {
+            if (off < 0 || len < 0 || off > b.length - len) {
+                throw new IndexOutOfBoundsException();
+            }
+            if (!valid()) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            return readPayload(b, off, len);
+        }
+
+        @Override
+        public int available() {
+            return valid() ? (int) Math.min(stringRemaining, bufferLimit - bufferPosition) : 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (valid()) {
+                finishString();
+            }
+        }
+    }
+}
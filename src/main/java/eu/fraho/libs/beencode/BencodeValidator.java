@@ -0,0 +1,236 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode;
+
+import net.jcip.annotations.Immutable;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Checks that data is well-formed and canonical without decoding it.
+ * <p>
+ * In addition to the syntax, the validator rejects everything the decoders silently accept or
+ * normalize: leading zeros and negative zero in integers, integers out of the long range, strings
+ * longer than the configured limit, dictionary keys that are not strictly ascending by their raw
+ * bytes (including duplicates), nesting deeper than the configured limit and, unless allowed,
+ * trailing data after the first value.
+ * <p>
+ * No nodes are created. A validation run allocates three {@code int} arrays of up to 32 entries
+ * for the nesting state at the first list or dictionary, grows them when nesting gets deeper and
+ * allocates the result when an error is reported. The arrays are not kept in the validator, so one
+ * instance can be shared between threads.
+ */
+@Immutable
+public final class BencodeValidator {
+    public static final int DEFAULT_MAX_DEPTH = 512;
+    private static final int INITIAL_DEPTH = 32;
+    private static final int LIST = 0;
+    private static final int DICT_KEY = 1;
+    private static final int DICT_VALUE = 2;
+    private static final BencodeValidator DEFAULT = new BencodeValidator(DEFAULT_MAX_DEPTH, BString.DEFAULT_MAX_READ_LEN, false);
+
+    private final int maxDepth;
+    private final int maxStringLength;
+    private final boolean trailingData;
+
+    private BencodeValidator(int maxDepth, int maxStringLength, boolean trailingData) {
+        this.maxDepth = maxDepth;
+        this.maxStringLength = maxStringLength;
+        this.trailingData = trailingData;
+    }
+
+    /**
+     * @return a validator with a depth limit of {@link #DEFAULT_MAX_DEPTH} and the string limit of
+     * {@link BString#DEFAULT_MAX_READ_LEN}
+     */
+    @NotNull
+    public static BencodeValidator of() {
+        return DEFAULT;
+    }
+
+    @NotNull
+    public static BencodeValidator of(int maxDepth, int maxStringLength) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("maxDepth may not be negative");
+        }
+        if (maxStringLength < 0) {
+            throw new IllegalArgumentException("maxStringLength may not be negative");
+        }
+        return new BencodeValidator(maxDepth, maxStringLength, false);
+    }
+
+    /**
+     * @return a validator that accepts any data after the first value, like the decoders do
+     */
+    @NotNull
+    public BencodeValidator allowTrailingData() {
+        return new BencodeValidator(maxDepth, maxStringLength, true);
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public int getMaxStringLength() {
+        return maxStringLength;
+    }
+
+    public boolean isTrailingDataAllowed() {
+        return trailingData;
+    }
+
+    @NotNull
+    public ValidationResult validate(@NotNull byte[] data) {
+        Objects.requireNonNull(data, "data may not be null");
+        return validate(data, 0, data.length);
+    }
+
+    @NotNull
+    public ValidationResult validate(@NotNull byte[] data, int offset, int length) {
+        Objects.requireNonNull(data, "data may not be null");
+        if (offset < 0 || length < 0 || offset > data.length - length) {
+            throw new IndexOutOfBoundsException("Range [" + offset + ", " + offset + " + " + length
+                    + ") is out of bounds for length " + data.length);
+        }
+
+        final int limit = offset + length;
+        int[] states = null;
+        int[] keyOffsets = null;
+        int[] keyLengths = null;
+        int depth = 0;
+        int pos = offset;
+
+        do {
+            if (pos >= limit) {
+                return ValidationResult.error(pos, depth > 0 ? "Premature end of data" : "No data");
+            }
+            byte prefix = data[pos];
+
+            if (depth > 0 && prefix == 'e') {
+                if (states[depth - 1] == DICT_VALUE) {
+                    return ValidationResult.error(pos, "Expected dictionary value, but suffix was found");
+                }
+                depth--;
+                pos++;
+            } else if (prefix == 'd' || prefix == 'l') {
+                if (depth > 0 && states[depth - 1] == DICT_KEY) {
+                    return ValidationResult.error(pos, "Expected a dictionary key (BString)");
+                }
+                if (depth == maxDepth) {
+                    return ValidationResult.error(pos, "Maximum depth of " + maxDepth + " exceeded");
+                }
+                if (states == null || depth == states.length) {
+                    int capacity = states == null ? Math.min(INITIAL_DEPTH, maxDepth) : Math.min(depth * 2, maxDepth);
+                    states = states == null ? new int[capacity] : Arrays.copyOf(states, capacity);
+                    keyOffsets = keyOffsets == null ? new int[capacity] : Arrays.copyOf(keyOffsets, capacity);
+                    keyLengths = keyLengths == null ? new int[capacity] : Arrays.copyOf(keyLengths, capacity);
+                }
+                states[depth] = prefix == 'd' ? DICT_KEY : LIST;
+                keyLengths[depth] = -1;
+                depth++;
+                pos++;
+                continue;
+            } else if (prefix == 'i') {
+                if (depth > 0 && states[depth - 1] == DICT_KEY) {
+                    return ValidationResult.error(pos, "Expected a dictionary key (BString)");
+                }
+                int begin = pos++;
+                boolean negative = pos < limit && data[pos] == '-';
+                if (negative) pos++;
+                int digits = pos;
+                long value = 0;
+                while (pos < limit && data[pos] >= '0' && data[pos] <= '9') {
+                    int digit = data[pos] - '0';
+                    // accumulate negative to be able to represent Long.MIN_VALUE
+                    if (value < (Long.MIN_VALUE + digit) / 10) {
+                        return ValidationResult.error(begin, "Integer overflow");
+                    }
+                    value = value * 10 - digit;
+                    pos++;
+                }
+                if (pos >= limit) {
+                    return ValidationResult.error(pos, "Premature end of data, integer is not terminated");
+                }
+                if (data[pos] != 'e') {
+                    return ValidationResult.error(pos, "Unexpected data, expected a digit");
+                }
+                if (pos == digits) {
+                    return ValidationResult.error(begin, "Invalid integer, no digits read");
+                }
+                if (data[digits] == '0' && (pos - digits > 1 || negative)) {
+                    return ValidationResult.error(begin, "Non canonical integer");
+                }
+                if (!negative && value == Long.MIN_VALUE) {
+                    return ValidationResult.error(begin, "Integer overflow");
+                }
+                pos++;
+            } else if (prefix >= '0' && prefix <= '9') {
+                int begin = pos;
+                long stringLength = 0;
+                while (pos < limit && data[pos] >= '0' && data[pos] <= '9') {
+                    stringLength = stringLength * 10 + (data[pos] - '0');
+                    if (stringLength > maxStringLength) {
+                        return ValidationResult.error(begin, "String exceeds the maximum length of " + maxStringLength);
+                    }
+                    pos++;
+                }
+                if (pos >= limit) {
+                    return ValidationResult.error(pos, "Premature end of data, string length is not terminated");
+                }
+                if (data[pos] != ':') {
+                    return ValidationResult.error(pos, "Unexpected data, expected a digit");
+                }
+                if (prefix == '0' && pos - begin > 1) {
+                    return ValidationResult.error(begin, "Leading zeros are not allowed");
+                }
+                pos++;
+                if (stringLength > limit - pos) {
+                    return ValidationResult.error(begin, "Premature end of data, string is truncated");
+                }
+                int len = (int) stringLength;
+                if (depth > 0 && states[depth - 1] == DICT_KEY) {
+                    int previous = keyLengths[depth - 1];
+                    if (previous >= 0) {
+                        int cmp = compare(data, keyOffsets[depth - 1], previous, pos, len);
+                        if (cmp >= 0) {
+                            return ValidationResult.error(begin, cmp == 0 ? "Duplicate dictionary key" : "Dictionary keys are not sorted");
+                        }
+                    }
+                    keyOffsets[depth - 1] = pos;
+                    keyLengths[depth - 1] = len;
+                    states[depth - 1] = DICT_VALUE;
+                    pos += len;
+                    continue;
+                }
+                pos += len;
+            } else {
+                return ValidationResult.error(pos, "No parser found for prefix '" + (char) prefix + "'");
+            }
+
+            // a value has been completed, the parent dictionary expects the next key
+            if (depth > 0 && states[depth - 1] == DICT_VALUE) {
+                states[depth - 1] = DICT_KEY;
+            }
+        } while (depth > 0);
+
+        if (pos != limit && !trailingData) {
+            return ValidationResult.error(pos, "Trailing data after the value");
+        }
+        return ValidationResult.VALID;
+    }
+
+    private static int compare(@NotNull byte[] data, int offsetA, int lengthA, int offsetB, int lengthB) {
+        int common = Math.min(lengthA, lengthB);
+        for (int i = 0; i < common; i++) {
+            int cmp = (data[offsetA + i] & 0xff) - (data[offsetB + i] & 0xff);
+            if (cmp != 0) return cmp;
+        }
+        return lengthA - lengthB;
+    }
+}
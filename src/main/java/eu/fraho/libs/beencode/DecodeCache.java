@@ -0,0 +1,315 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches decoded documents, so popular files or messages are only decoded once. As nodes are
+ * immutable, the same tree is handed out to every caller.
+ * <p>
+ * Files are keyed by their path, size and modification time, so a changed file is decoded again.
+ * Byte arrays are keyed by the SHA-256 digest of their content, so crafted data cannot collide with
+ * the key of another document. The least recently
+ * used documents are evicted once the summed up {@link BNode#getRetainedSize() retained size}
+ * exceeds the maximum weight, documents heavier than that are not cached at all. Concurrent
+ * requests for the same key wait for a single decode.
+ * <pre>
+ * DecodeCache cache = DecodeCache.of(256L &lt;&lt; 20);
+ * BNode&lt;?&gt; torrent = cache.get(Paths.get("popular.torrent"));
+ * </pre>
+ */
+@ThreadSafe
+public final class DecodeCache {
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(DecodeCache::sha256);
+
+    @GuardedBy("entries")
+    private final LinkedHashMap<Object, BNode<?>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ConcurrentHashMap<Object, CompletableFuture<BNode<?>>> loading = new ConcurrentHashMap<>();
+    private final long maxWeight;
+    private final DecoderOptions options;
+    @GuardedBy("entries")
+    private long weight;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private DecodeCache(long maxWeight, @NotNull DecoderOptions options) {
+        this.maxWeight = maxWeight;
+        this.options = options;
+    }
+
+    /**
+     * @param maxWeight the maximum summed up retained size of the cached documents, in bytes
+     */
+    @NotNull
+    public static DecodeCache of(long maxWeight) {
+        return of(maxWeight, DecoderOptions.DEFAULT);
+    }
+
+    /**
+     * @param maxWeight the maximum summed up retained size of the cached documents, in bytes
+     * @param options   the options used for decoding
+     */
+    @NotNull
+    public static DecodeCache of(long maxWeight, @NotNull DecoderOptions options) {
+        Objects.requireNonNull(options, "options may not be null");
+        if (maxWeight < 0) {
+            throw new IllegalArgumentException("maxWeight may not be negative");
+        }
+        return new DecodeCache(maxWeight, options);
+    }
+
+    @NotNull
+    static byte[] hash(@NotNull byte[] data) {
+        return SHA256.get().digest(data);
+    }
+
+    @NotNull
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new BencodeException(e);
+        }
+    }
+
+    /**
+     * @return the document in the file, decoded again if its size or modification time changed
+     */
+    @NotNull
+    public BNode<?> get(@NotNull Path path) throws IOException {
+        Objects.requireNonNull(path, "path may not be null");
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        FileKey key = new FileKey(path.toAbsolutePath().normalize(), attributes.size(), attributes.lastModifiedTime());
+        return get(key, () -> NodeFactory.decode(Files.readAllBytes(path), options));
+    }
+
+    /**
+     * @return the document in the data
+     */
+    @NotNull
+    public BNode<?> get(@NotNull byte[] data) {
+        Objects.requireNonNull(data, "data may not be null");
+        try {
+            return get(new ContentKey(hash(data)), () -> NodeFactory.decode(data, options));
+        } catch (IOException e) {
+            // should never happen as no file is read
+            throw new BencodeException(e);
+        }
+    }
+
+    @NotNull
+    BNode<?> get(@NotNull Object key, @NotNull Loader loader) throws IOException {
+        BNode<?> cached = lookup(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+
+        CompletableFuture<BNode<?>> future = new CompletableFuture<>();
+        CompletableFuture<BNode<?>> running = loading.putIfAbsent(key, future);
+        if (running != null) {
+            coalesced.increment();
+            return await(running);
+        }
+        try {
+            // another thread may have finished loading the key in between
+            BNode<?> result = lookup(key);
+            if (result == null) {
+                misses.increment();
+                result = loader.load();
+                store(key, result);
+            } else {
+                hits.increment();
+            }
+            future.complete(result);
+            return result;
+        } catch (IOException | RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    @NotNull
+    private static BNode<?> await(@NotNull CompletableFuture<BNode<?>> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw new IOException(cause.getMessage(), cause);
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    @Nullable
+    private BNode<?> lookup(@NotNull Object key) {
+        synchronized (entries) {
+            return entries.get(key);
+        }
+    }
+
+    private void store(@NotNull Object key, @NotNull BNode<?> node) {
+        long size = node.getRetainedSize();
+        if (size > maxWeight) {
+            return;
+        }
+        synchronized (entries) {
+            BNode<?> previous = entries.put(key, node);
+            if (previous != null) {
+                weight -= previous.getRetainedSize();
+            }
+            weight += size;
+            Iterator<BNode<?>> eldest = entries.values().iterator();
+            while (weight > maxWeight) {
+                weight -= eldest.next().getRetainedSize();
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Removes all documents from the cache.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            weight = 0;
+        }
+    }
+
+    /**
+     * @return the number of cached documents
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return the summed up retained size of the cached documents
+     */
+    public long getWeight() {
+        synchronized (entries) {
+            return weight;
+        }
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of decodes
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of requests that waited for the decode of another thread
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "DecodeCache{size=" + size() + ", weight=" + getWeight() + ", maxWeight=" + maxWeight
+                + ", hits=" + getHits() + ", misses=" + getMisses() + ", coalesced=" + getCoalesced()
+                + ", evictions=" + getEvictions() + "}";
+    }
+
+    @FunctionalInterface
+    interface Loader {
+        @NotNull
+        BNode<?> load() throws IOException;
+    }
+
+    private static final class FileKey {
+        private final Path path;
+        private final long size;
+        private final FileTime modified;
+
+        private FileKey(@NotNull Path path, long size, @NotNull FileTime modified) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof FileKey)) {
+                return false;
+            }
+            FileKey other = (FileKey) o;
+            return size == other.size && path.equals(other.path) && modified.equals(other.modified);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * path.hashCode() + Long.hashCode(size)) + modified.hashCode();
+        }
+    }
+
+    private static final class ContentKey {
+        private final byte[] digest;
+
+        private ContentKey(@NotNull byte[] digest) {
+            this.digest = digest;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ContentKey && Arrays.equals(digest, ((ContentKey) o).digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return ByteBuffer.wrap(digest).getInt();
+        }
+    }
+}
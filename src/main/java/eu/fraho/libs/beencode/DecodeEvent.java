@@ -0,0 +1,79 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.SettingDefinition;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Recorded for each document decoded through one of the public entry points, failed ones included.
+ */
+@Name("eu.fraho.libs.beencode.Decode")
+@Label("Bencode Decode")
+@Category("Bencode")
+@Description("A bencoded document was decoded")
+final class DecodeEvent extends Event {
+    // only asked whether the event type is enabled, never committed
+    private static final DecodeEvent PROBE = new DecodeEvent();
+
+    @Label("Entry Point")
+    @Description("The method called to decode the document, e.g. Factory.decode for NodeFactory.decode")
+    String entryPoint;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Nodes")
+    @Description("The number of nodes, dictionary keys included")
+    long nodes;
+
+    @Label("Maximum Depth")
+    int maxDepth;
+
+    @Label("Largest String")
+    @DataAmount
+    long largestString;
+
+    @Nullable
+    static Object begin(@NotNull String entryPoint) {
+        if (!PROBE.isEnabled()) {
+            return null;
+        }
+        DecodeEvent event = new DecodeEvent();
+        event.entryPoint = entryPoint;
+        event.begin();
+        return event;
+    }
+
+    static void commit(@NotNull Object recorded, @NotNull DecoderState state) {
+        DecodeEvent event = (DecodeEvent) recorded;
+        event.end();
+        event.bytes = state.getBytes();
+        if (event.shouldCommit()) {
+            event.nodes = state.getNodes();
+            event.maxDepth = state.getMaxDepth();
+            event.largestString = state.getLargestString();
+            event.commit();
+        }
+    }
+
+    @SettingDefinition
+    @Name("minBytes")
+    @Label("Minimum Size")
+    @Description("Only record documents of at least this many bytes")
+    public boolean minBytes(@NotNull MinBytesSetting setting) {
+        return bytes >= setting.getMinBytes();
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode;
+
+import net.jcip.annotations.Immutable;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The structure of a single decoded document, as reported to a {@link DecoderListener}.
+ * <p>
+ * The histograms use power of two buckets: bucket {@code 0} counts the value {@code 0} and
+ * bucket {@code n} the values from {@code 2^(n-1)} to {@code 2^n - 1}.
+ */
+@Immutable
+public final class DecodeStatistics {
+    public static final int BUCKETS = 64;
+
+    @NotNull
+    private final String entryPoint;
+    private final boolean completed;
+    private final long bytes;
+    private final long nodes;
+    private final long strings;
+    private final long integers;
+    private final long lists;
+    private final long dicts;
+    private final int maxDepth;
+    private final long largestString;
+    private final long nanos;
+    @NotNull
+    private final long[] stringLengths;
+    @NotNull
+    private final long[] dictSizes;
+
+    DecodeStatistics(@NotNull String entryPoint, boolean completed, long bytes, long nodes, long strings,
+                     long integers, long lists, long dicts, int maxDepth, long largestString, long nanos,
+                     @NotNull long[] stringLengths, @NotNull long[] dictSizes) {
+        this.entryPoint = entryPoint;
+        this.completed = completed;
+        this.bytes = bytes;
+        this.nodes = nodes;
+        this.strings = strings;
+        this.integers = integers;
+        this.lists = lists;
+        this.dicts = dicts;
+        this.maxDepth = maxDepth;
+        this.largestString = largestString;
+        this.nanos = nanos;
+        this.stringLengths = stringLengths;
+        this.dictSizes = dictSizes;
+    }
+
+    /**
+     * @return the histogram bucket of the value
+     */
+    public static int bucket(long value) {
+        return value <= 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+    }
+
+    /**
+     * @return the smallest value counted in the bucket
+     */
+    public static long bucketLowerBound(int bucket) {
+        return bucket == 0 ? 0 : 1L << (bucket - 1);
+    }
+
+    /**
+     * @return the method called to decode the document, one of the {@link EntryPoints}
+     */
+    @NotNull
+    public String getEntryPoint() {
+        return entryPoint;
+    }
+
+    /**
+     * @return {@code false} if the document was rejected, in this case the numbers cover the part read so far
+     */
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    /**
+     * @return the number of bytes consumed
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the number of nodes, dictionary keys included
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return the number of strings, dictionary keys included
+     */
+    public long getStrings() {
+        return strings;
+    }
+
+    public long getIntegers() {
+        return integers;
+    }
+
+    public long getLists() {
+        return lists;
+    }
+
+    public long getDicts() {
+        return dicts;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public long getLargestString() {
+        return largestString;
+    }
+
+    /**
+     * @return the time spent decoding, in nanoseconds
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * @return the histogram of the string lengths, dictionary keys included
+     */
+    @NotNull
+    public long[] getStringLengths() {
+        return stringLengths.clone();
+    }
+
+    /**
+     * @return the histogram of the number of entries per dictionary
+     */
+    @NotNull
+    public long[] getDictSizes() {
+        return dictSizes.clone();
+    }
+
+    @Override
+    public String toString() {
+        return "DecodeStatistics{entryPoint=" + entryPoint + ", completed=" + completed + ", bytes=" + bytes
+                + ", nodes=" + nodes + ", strings=" + strings + ", integers=" + integers + ", lists=" + lists
+                + ", dicts=" + dicts + ", maxDepth=" + maxDepth + ", largestString=" + largestString
+                + ", nanos=" + nanos + "}";
+    }
+}
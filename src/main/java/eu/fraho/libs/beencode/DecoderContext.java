@@ -0,0 +1,173 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode;
+
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Objects;
+
+/**
+ * Decodes messages into recycled {@link Document}s.
+ * <p>
+ * Each document keeps its data buffer and tape when it is released, so a context that is used for
+ * one message after another does not allocate once the buffers have grown to the message size.
+ * A context is meant to be owned by a single thread or connection:
+ * <pre>
+ * DecoderContext context = DecoderContext.of();
+ * while (running) {
+ *     try (Document document = context.decode(receive())) {
+ *         Tape.Cursor cursor = document.cursor();
+ *         ...
+ *     }
+ * }
+ * </pre>
+ */
+@NotThreadSafe
+public final class DecoderContext {
+    public static final int DEFAULT_MAX_POOLED = 4;
+    public static final int DEFAULT_MAX_RETAINED = 1_048_576;
+    private static final int KEY_POOL_SIZE = 1024;
+    private static final int READ_CHUNK = 8192;
+
+    private final ArrayDeque<Document> pool = new ArrayDeque<>();
+    private final KeyPool keyPool = new KeyPool(KEY_POOL_SIZE);
+    private final int maxPooled;
+    private final int maxRetained;
+    private final DecoderOptions options;
+
+    private DecoderContext(int maxPooled, int maxRetained, @NotNull DecoderOptions options) {
+        this.maxPooled = maxPooled;
+        this.maxRetained = maxRetained;
+        this.options = options;
+    }
+
+    @NotNull
+    public static DecoderContext of() {
+        return new DecoderContext(DEFAULT_MAX_POOLED, DEFAULT_MAX_RETAINED, DecoderOptions.DEFAULT);
+    }
+
+    /**
+     * @param maxPooled   the number of released documents to keep
+     * @param maxRetained documents whose data and tape take more bytes are dropped instead of being kept
+     */
+    @NotNull
+    public static DecoderContext of(int maxPooled, int maxRetained) {
+        return of(maxPooled, maxRetained, DecoderOptions.DEFAULT);
+    }
+
+    /**
+     * @param options the budgets enforced for each document
+     */
+    @NotNull
+    public static DecoderContext of(int maxPooled, int maxRetained, @NotNull DecoderOptions options) {
+        Objects.requireNonNull(options, "options may not be null");
+        if (maxPooled < 0) {
+            throw new IllegalArgumentException("maxPooled may not be negative");
+        }
+        if (maxRetained < 0) {
+            throw new IllegalArgumentException("maxRetained may not be negative");
+        }
+        return new DecoderContext(maxPooled, maxRetained, options);
+    }
+
+    @NotNull
+    public DecoderOptions getOptions() {
+        return options;
+    }
+
+    @NotNull
+    public Document decode(@NotNull byte[] data) {
+        Objects.requireNonNull(data, "data may not be null");
+        return decode(data, 0, data.length);
+    }
+
+    /**
+     * Decodes the first value in the range. The data is copied, so the array may be reused as soon
+     * as this method returns.
+     */
+    @NotNull
+    public Document decode(@NotNull byte[] data, int offset, int length) {
+        Objects.requireNonNull(data, "data may not be null");
+        if (offset < 0 || length < 0 || offset > data.length - length) {
+            throw new IndexOutOfBoundsException("Range [" + offset + ", " + offset + " + " + length
+                    + ") is out of bounds for length " + data.length);
+        }
+        Document document = acquire();
+        System.arraycopy(data, offset, document.buffer(length), 0, length);
+        return fill(document, length);
+    }
+
+    /**
+     * Decodes the remaining bytes of the buffer, without changing its position.
+     */
+    @NotNull
+    public Document decode(@NotNull ByteBuffer buffer) {
+        Objects.requireNonNull(buffer, "buffer may not be null");
+        Document document = acquire();
+        int length = buffer.remaining();
+        buffer.duplicate().get(document.buffer(length), 0, length);
+        return fill(document, length);
+    }
+
+    /**
+     * Reads the stream until its end and decodes the first value.
+     */
+    @NotNull
+    public Document decode(@NotNull InputStream is) throws IOException {
+        Objects.requireNonNull(is, "is may not be null");
+        Document document = acquire();
+        int length = 0;
+        try {
+            int read;
+            do {
+                byte[] buffer = document.buffer(length + READ_CHUNK);
+                read = is.read(buffer, length, buffer.length - length);
+                if (read > 0) length += read;
+                if (length > options.getMaxTotalBytes()) {
+                    throw new BencodeException("Decoder budget exceeded, more than " + options.getMaxTotalBytes() + " bytes");
+                }
+            } while (read >= 0);
+        } catch (IOException | RuntimeException e) {
+            release(document);
+            throw e;
+        }
+        return fill(document, length);
+    }
+
+    @NotNull
+    KeyPool keyPool() {
+        return keyPool;
+    }
+
+    void release(@NotNull Document document) {
+        if (pool.size() < maxPooled && document.retainedSize() <= maxRetained) {
+            pool.push(document);
+        }
+    }
+
+    @NotNull
+    private Document acquire() {
+        Document document = pool.poll();
+        return document != null ? document : new Document(this);
+    }
+
+    @NotNull
+    private Document fill(@NotNull Document document, int length) {
+        try {
+            document.fill(length);
+            return document;
+        } catch (RuntimeException e) {
+            release(document);
+            throw e;
+        }
+    }
+}
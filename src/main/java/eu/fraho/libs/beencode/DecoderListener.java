@@ -0,0 +1,23 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Receives the statistics of each document decoded with {@link DecoderOptions} carrying this listener.
+ * <p>
+ * Documents are reported by {@link NodeFactory}, the {@code of(InputStream)} methods of the nodes,
+ * {@link Tape}, {@link StructuralIndex} and {@link DecoderContext}, failed ones included. The
+ * listener is called on the decoding thread right after the document, so it should be quick and
+ * has to be thread safe if the options are shared. {@link StatisticsListener} aggregates the
+ * statistics into counters.
+ */
+@FunctionalInterface
+public interface DecoderListener {
+    void decoded(@NotNull DecodeStatistics statistics);
+}
@@ -0,0 +1,167 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode;
+
+import net.jcip.annotations.Immutable;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Budgets for a single decode run, protecting against hostile input.
+ * <p>
+ * All limits are cumulative over one document: the number of bytes read, the number of nodes
+ * (dictionary keys included), the nesting depth, the length of a single string and the summed up
+ * length of all strings. When a budget is exceeded, a {@link BencodeException} is thrown as soon
+ * as the limit is crossed, before the memory for the offending value is allocated.
+ * <p>
+ * The {@link #DEFAULT} options only limit single strings to {@link BString#DEFAULT_MAX_READ_LEN}:
+ * <pre>
+ * DecoderOptions options = DecoderOptions.DEFAULT
+ *         .withMaxTotalBytes(65_536)
+ *         .withMaxNodes(1_000)
+ *         .withMaxDepth(16);
+ * BNode&lt;?&gt; node = NodeFactory.decode(datagram, options);
+ * </pre>
+ * A {@link DecoderListener} may be set to receive the statistics of each decoded document, and a
+ * {@link NodePool} to share equal subtrees between documents.
+ */
+@Immutable
+public final class DecoderOptions {
+    public static final DecoderOptions DEFAULT = new DecoderOptions(Long.MAX_VALUE, Long.MAX_VALUE,
+            Integer.MAX_VALUE, BString.DEFAULT_MAX_READ_LEN, Long.MAX_VALUE, null, null);
+
+    private final long maxTotalBytes;
+    private final long maxNodes;
+    private final int maxDepth;
+    private final int maxStringLength;
+    private final long maxTotalStringBytes;
+    @Nullable
+    private final DecoderListener listener;
+    @Nullable
+    private final NodePool pool;
+
+    private DecoderOptions(long maxTotalBytes, long maxNodes, int maxDepth, int maxStringLength, long maxTotalStringBytes,
+                           @Nullable DecoderListener listener, @Nullable NodePool pool) {
+        this.maxTotalBytes = maxTotalBytes;
+        this.maxNodes = maxNodes;
+        this.maxDepth = maxDepth;
+        this.maxStringLength = maxStringLength;
+        this.maxTotalStringBytes = maxTotalStringBytes;
+        this.listener = listener;
+        this.pool = pool;
+    }
+
+    private static long requireNotNegative(long value, @NotNull String name) {
+        if (value < 0) {
+            throw new IllegalArgumentException(name + " may not be negative");
+        }
+        return value;
+    }
+
+    /**
+     * @return options allowing at most the given number of bytes to be read
+     */
+    @NotNull
+    public DecoderOptions withMaxTotalBytes(long maxTotalBytes) {
+        requireNotNegative(maxTotalBytes, "maxTotalBytes");
+        return new DecoderOptions(maxTotalBytes, maxNodes, maxDepth, maxStringLength, maxTotalStringBytes, listener, pool);
+    }
+
+    /**
+     * @return options allowing at most the given number of nodes, dictionary keys included
+     */
+    @NotNull
+    public DecoderOptions withMaxNodes(long maxNodes) {
+        requireNotNegative(maxNodes, "maxNodes");
+        return new DecoderOptions(maxTotalBytes, maxNodes, maxDepth, maxStringLength, maxTotalStringBytes, listener, pool);
+    }
+
+    /**
+     * @return options allowing lists and dictionaries to be nested at most the given number of levels
+     */
+    @NotNull
+    public DecoderOptions withMaxDepth(int maxDepth) {
+        requireNotNegative(maxDepth, "maxDepth");
+        return new DecoderOptions(maxTotalBytes, maxNodes, maxDepth, maxStringLength, maxTotalStringBytes, listener, pool);
+    }
+
+    /**
+     * @return options allowing single strings, dictionary keys included, of at most the given number of bytes
+     */
+    @NotNull
+    public DecoderOptions withMaxStringLength(int maxStringLength) {
+        requireNotNegative(maxStringLength, "maxStringLength");
+        return new DecoderOptions(maxTotalBytes, maxNodes, maxDepth, maxStringLength, maxTotalStringBytes, listener, pool);
+    }
+
+    /**
+     * @return options allowing at most the given number of bytes in all strings together
+     */
+    @NotNull
+    public DecoderOptions withMaxTotalStringBytes(long maxTotalStringBytes) {
+        requireNotNegative(maxTotalStringBytes, "maxTotalStringBytes");
+        return new DecoderOptions(maxTotalBytes, maxNodes, maxDepth, maxStringLength, maxTotalStringBytes, listener, pool);
+    }
+
+    /**
+     * @return options notifying the given listener after each document, or none if {@code null}
+     */
+    @NotNull
+    public DecoderOptions withListener(@Nullable DecoderListener listener) {
+        return new DecoderOptions(maxTotalBytes, maxNodes, maxDepth, maxStringLength, maxTotalStringBytes, listener, pool);
+    }
+
+    /**
+     * Only the {@code decode} methods of {@link NodeFactory} consult the pool. {@link Tape},
+     * {@link DecoderContext}, {@link StructuralIndex}, {@link BencodeReader},
+     * {@link BencodeStreamReader} and {@link BencodeSplicer} only enforce the budgets and ignore it.
+     *
+     * @return options resolving equal strings, lists and dictionaries to the instances of the given
+     * pool, or not pooling them if {@code null}
+     */
+    @NotNull
+    public DecoderOptions withPool(@Nullable NodePool pool) {
+        return new DecoderOptions(maxTotalBytes, maxNodes, maxDepth, maxStringLength, maxTotalStringBytes, listener, pool);
+    }
+
+    public long getMaxTotalBytes() {
+        return maxTotalBytes;
+    }
+
+    public long getMaxNodes() {
+        return maxNodes;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public int getMaxStringLength() {
+        return maxStringLength;
+    }
+
+    public long getMaxTotalStringBytes() {
+        return maxTotalStringBytes;
+    }
+
+    @Nullable
+    public DecoderListener getListener() {
+        return listener;
+    }
+
+    @Nullable
+    public NodePool getPool() {
+        return pool;
+    }
+
+    @Override
+    public String toString() {
+        return "DecoderOptions{maxTotalBytes=" + maxTotalBytes + ", maxNodes=" + maxNodes + ", maxDepth=" + maxDepth
+                + ", maxStringLength=" + maxStringLength + ", maxTotalStringBytes=" + maxTotalStringBytes + ", listener=" + listener
+                + ", pool=" + pool + "}";
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode;
+
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Counters of a single decode run, checked against the {@link DecoderOptions}. When a run is
+ * {@link #record(String) recorded}, they are reported to the flight recorder and to the
+ * {@link DecoderListener} of the options.
+ */
+@NotThreadSafe
+final class DecoderState {
+    private final DecoderOptions options;
+    private long bytes;
+    private long nodes;
+    private int depth;
+    private long stringBytes;
+    private int maxDepth;
+    private long largestString;
+    @Nullable
+    private Object event;
+    @Nullable
+    private Collector collector;
+    private boolean completed;
+
+    DecoderState(@NotNull DecoderOptions options) {
+        this.options = options;
+    }
+
+    /**
+     * Starts a decode event for the run if such events are recorded, and collects the statistics
+     * for the listener if one is set.
+     *
+     * @param entryPoint one of the {@link EntryPoints}
+     */
+    @NotNull
+    DecoderState record(@NotNull String entryPoint) {
+        event = FlightRecorderSupport.beginDecode(entryPoint);
+        completed = false;
+        if (options.getListener() != null) {
+            if (collector == null) {
+                collector = new Collector();
+            }
+            collector.start(entryPoint);
+        }
+        return this;
+    }
+
+    /**
+     * Marks the run as successful.
+     */
+    void complete() {
+        completed = true;
+    }
+
+    /**
+     * Marks the run as successful.
+     *
+     * @return the given result
+     */
+    <T> T complete(T result) {
+        complete();
+        return result;
+    }
+
+    /**
+     * Commits the decode event of the run and notifies the listener, if the run is recorded.
+     */
+    void commit() {
+        if (event != null) {
+            FlightRecorderSupport.commitDecode(event, this);
+            event = null;
+        }
+        DecoderListener listener = options.getListener();
+        if (collector != null && collector.entryPoint != null && listener != null) {
+            DecodeStatistics statistics = collector.finish(this);
+            collector.entryPoint = null;
+            listener.decoded(statistics);
+        }
+    }
+
+    /**
+     * @return the pooled node equal to the given one, or the given node if no pool is set
+     */
+    @NotNull
+    <T extends BNode<?>> T intern(@NotNull T node) {
+        NodePool pool = options.getPool();
+        return pool == null ? node : pool.intern(node);
+    }
+
+    @NotNull
+    DecoderOptions getOptions() {
+        return options;
+    }
+
+    void reset() {
+        bytes = 0;
+        nodes = 0;
+        depth = 0;
+        stringBytes = 0;
+        maxDepth = 0;
+        largestString = 0;
+    }
+
+    long getBytes() {
+        return bytes;
+    }
+
+    long getNodes() {
+        return nodes;
+    }
+
+    int getMaxDepth() {
+        return maxDepth;
+    }
+
+    long getLargestString() {
+        return largestString;
+    }
+
+    void bytes(long count) {
+        bytes += count;
+        if (bytes > options.getMaxTotalBytes()) {
+            throw new BencodeException("Decoder budget exceeded, more than " + options.getMaxTotalBytes() + " bytes");
+        }
+    }
+
+    void node() {
+        if (++nodes > options.getMaxNodes()) {
+            throw new BencodeException("Decoder budget exceeded, more than " + options.getMaxNodes() + " nodes");
+        }
+        if (collector != null) {
+            collector.children[depth]++;
+        }
+    }
+
+    /**
+     * @param dict whether a dictionary or a list is entered
+     */
+    void enter(boolean dict) {
+        if (++depth > options.getMaxDepth()) {
+            throw new BencodeException("Decoder budget exceeded, nesting deeper than " + options.getMaxDepth() + " levels");
+        }
+        if (depth > maxDepth) {
+            maxDepth = depth;
+        }
+        if (collector != null) {
+            collector.enter(depth, dict);
+        }
+    }
+
+    void exit() {
+        if (collector != null) {
+            collector.exit(depth);
+        }
+        depth--;
+    }
+
+    /**
+     * Accounts a string before its payload is allocated.
+     */
+    void string(long length) {
+        if (length > options.getMaxStringLength()) {
+            throw new BencodeException("Denied attempt to read " + length + " bytes.");
+        }
+        if (length > largestString) {
+            largestString = length;
+        }
+        if (collector != null) {
+            collector.strings++;
+            collector.stringLengths[DecodeStatistics.bucket(length)]++;
+        }
+        stringBytes += length;
+        if (stringBytes > options.getMaxTotalStringBytes()) {
+            throw new BencodeException("Decoder budget exceeded, more than " + options.getMaxTotalStringBytes() + " string bytes");
+        }
+    }
+
+    /**
+     * @return the stream, wrapped to count the bytes read if the total is limited or the run is recorded
+     */
+    @NotNull
+    InputStream wrap(@NotNull InputStream is) {
+        boolean recorded = event != null || (collector != null && collector.entryPoint != null);
+        return options.getMaxTotalBytes() == Long.MAX_VALUE && !recorded ? is : new CountingInputStream(is);
+    }
+
+    /**
+     * Collects the structure of the document for the {@link DecoderListener}, only allocated if one is set.
+     */
+    private static final class Collector {
+        private final long[] stringLengths = new long[DecodeStatistics.BUCKETS];
+        private final long[] dictSizes = new long[DecodeStatistics.BUCKETS];
+        // the number of children and the type of each open container, the top level has index 0
+        private int[] children = new int[16];
+        private boolean[] dicts = new boolean[16];
+        @Nullable
+        private String entryPoint;
+        private long started;
+        private long strings;
+        private long lists;
+        private long dictionaries;
+
+        void start(@NotNull String entryPoint) {
+            this.entryPoint = entryPoint;
+            this.started = System.nanoTime();
+            strings = 0;
+            lists = 0;
+            dictionaries = 0;
+            Arrays.fill(stringLengths, 0);
+            Arrays.fill(dictSizes, 0);
+            children[0] = 0;
+        }
+
+        void enter(int depth, boolean dict) {
+            if (depth == children.length) {
+                children = Arrays.copyOf(children, depth * 2);
+                dicts = Arrays.copyOf(dicts, depth * 2);
+            }
+            children[depth] = 0;
+            dicts[depth] = dict;
+            if (dict) {
+                dictionaries++;
+            } else {
+                lists++;
+            }
+        }
+
+        void exit(int depth) {
+            if (dicts[depth]) {
+                dictSizes[DecodeStatistics.bucket(children[depth] / 2)]++;
+            }
+        }
+
+        @NotNull
+        DecodeStatistics finish(@NotNull DecoderState state) {
+            long nanos = System.nanoTime() - started;
+            return new DecodeStatistics(entryPoint, state.completed, state.bytes, state.nodes, strings,
+                    state.nodes - strings - lists - dictionaries, lists, dictionaries, state.maxDepth,
+                    state.largestString, nanos, stringLengths.clone(), dictSizes.clone());
+        }
+    }
+
+    private final class CountingInputStream extends FilterInputStream {
+        private CountingInputStream(@NotNull InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result = in.read();
+            if (result >= 0) bytes(1);
+            return result;
+        }
+
+        @Override
+        public int read(@NotNull byte[] b, int off, int len) throws IOException {
+            int result = in.read(b, off, len);
+            if (result > 0) bytes(result);
+            return result;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long result = in.skip(n);
+            if (result > 0) bytes(result);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode;
+
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * A document decoded by a {@link DecoderContext}. The document owns a copy of the encoded data and
+ * its tape, both are handed back to the context for the next document on {@link #release()}.
+ * Neither the document nor its tape or cursor may be used after that.
+ */
+@NotThreadSafe
+public final class Document implements AutoCloseable {
+    private final DecoderContext context;
+    private final TapeWriter writer;
+    private byte[] data = new byte[256];
+    private int length;
+    private Tape tape;
+    private Tape.Cursor cursor;
+    private boolean released = true;
+
+    Document(@NotNull DecoderContext context) {
+        this.context = context;
+        this.writer = new TapeWriter(64, context.getOptions());
+    }
+
+    /**
+     * @return the buffer to copy the next message to, grown to at least the given capacity
+     */
+    @NotNull
+    byte[] buffer(int capacity) {
+        if (data.length < capacity) {
+            data = Arrays.copyOf(data, Math.max(capacity, data.length + (data.length >> 1)));
+        }
+        return data;
+    }
+
+    /**
+     * Builds the tape over the first {@code length} bytes of the buffer.
+     */
+    void fill(int length) {
+        int size = writer.write(data, 0, length, EntryPoints.CONTEXT_DECODE);
+        if (tape == null || tape.tape().array() != writer.words() || tape.data().array() != data) {
+            tape = new Tape(LongBuffer.wrap(writer.words()), ByteBuffer.wrap(data), null, size);
+            cursor = tape.cursor();
+        } else {
+            tape.size(size);
+            cursor.reset();
+        }
+        this.length = length;
+        this.released = false;
+    }
+
+    /**
+     * @return the bytes kept alive by the document, its copy of the data and the words of its tape
+     */
+    long retainedSize() {
+        return data.length + (long) writer.words().length * Long.BYTES;
+    }
+
+    /**
+     * @return the length of the encoded data
+     */
+    public int length() {
+        checkReleased();
+        return length;
+    }
+
+    @NotNull
+    public Tape getTape() {
+        checkReleased();
+        return tape;
+    }
+
+    /**
+     * @return the cursor of this document, positioned on the root element
+     */
+    @NotNull
+    public Tape.Cursor cursor() {
+        checkReleased();
+        cursor.reset();
+        return cursor;
+    }
+
+    /**
+     * Materializes the document. Dictionary keys are shared with other documents of the same
+     * context.
+     */
+    @NotNull
+    public BNode<?> toNode() {
+        checkReleased();
+        return tape.toNode(0, context.keyPool());
+    }
+
+    public boolean isReleased() {
+        return released;
+    }
+
+    /**
+     * Hands the document back to its context.
+     */
+    public void release() {
+        checkReleased();
+        released = true;
+        context.release(this);
+    }
+
+    @Override
+    public void close() {
+        if (!released) {
+            release();
+        }
+    }
+
+    private void checkReleased() {
+        if (released) {
+            throw new IllegalStateException("Document has already been released");
+        }
+    }
+}
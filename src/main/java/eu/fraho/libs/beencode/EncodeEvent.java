@@ -0,0 +1,98 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.SettingDefinition;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+
+/**
+ * Recorded for each document encoded through {@link NodeFactory}. The structure of the node is only
+ * walked when the event is actually committed.
+ */
+@Name("eu.fraho.libs.beencode.Encode")
+@Label("Bencode Encode")
+@Category("Bencode")
+@Description("A bencoded document was encoded")
+final class EncodeEvent extends Event {
+    // only asked whether the event type is enabled, never committed
+    private static final EncodeEvent PROBE = new EncodeEvent();
+
+    @Label("Entry Point")
+    @Description("The method called to encode the document, e.g. Factory.encode for NodeFactory.encode")
+    String entryPoint;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Nodes")
+    @Description("The number of nodes, dictionary keys included")
+    long nodes;
+
+    @Label("Maximum Depth")
+    int maxDepth;
+
+    @Label("Largest String")
+    @DataAmount
+    long largestString;
+
+    @Nullable
+    static Object begin(@NotNull String entryPoint) {
+        if (!PROBE.isEnabled()) {
+            return null;
+        }
+        EncodeEvent event = new EncodeEvent();
+        event.entryPoint = entryPoint;
+        event.begin();
+        return event;
+    }
+
+    static void commit(@NotNull Object recorded, @NotNull BNode<?> node, long bytes) {
+        EncodeEvent event = (EncodeEvent) recorded;
+        event.end();
+        event.bytes = bytes;
+        if (event.shouldCommit()) {
+            event.walk(node, 0);
+            event.commit();
+        }
+    }
+
+    private void walk(@NotNull BNode<?> node, int depth) {
+        nodes++;
+        if (node instanceof BString) {
+            largestString = Math.max(largestString, ((BString) node).getValue().length);
+        } else if (node instanceof BList) {
+            maxDepth = Math.max(maxDepth, depth + 1);
+            for (BNode<?> child : ((BList) node).getValue()) {
+                walk(child, depth + 1);
+            }
+        } else if (node instanceof BDict) {
+            maxDepth = Math.max(maxDepth, depth + 1);
+            for (Map.Entry<BString, BNode<?>> entry : ((BDict) node).getValue().entrySet()) {
+                walk(entry.getKey(), depth + 1);
+                walk(entry.getValue(), depth + 1);
+            }
+        }
+    }
+
+    @SettingDefinition
+    @Name("minBytes")
+    @Label("Minimum Size")
+    @Description("Only record documents of at least this many bytes")
+    public boolean minBytes(@NotNull MinBytesSetting setting) {
+        return bytes >= setting.getMinBytes();
+    }
+}
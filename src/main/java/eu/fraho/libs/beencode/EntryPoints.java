@@ -0,0 +1,56 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode;
+
+/**
+ * The labels of the public methods a decode or encode run is reported for, as returned by
+ * {@link DecodeStatistics#getEntryPoint()} and written to the {@code entryPoint} field of the
+ * flight recorder events. Overloads share the label of their method.
+ */
+public final class EntryPoints {
+    /**
+     * The maximum length of a label. Longer strings are written to the string pool of a recording,
+     * which the JDK 8 recorder loses for the next recording, so the labels are abbreviated.
+     */
+    public static final int MAX_LENGTH = 15;
+
+    /**
+     * {@link NodeFactory#decode(byte[])} and its overloads
+     */
+    public static final String FACTORY_DECODE = "Factory.decode";
+    /**
+     * {@link NodeFactory#encode(BNode)} and its overloads
+     */
+    public static final String FACTORY_ENCODE = "Factory.encode";
+    /**
+     * {@link StructuralIndex#of(byte[])} and its overloads
+     */
+    public static final String INDEX_OF = "Index.of";
+    /**
+     * {@link DecoderContext#decode(byte[])} and its overloads
+     */
+    public static final String CONTEXT_DECODE = "Context.decode";
+    /**
+     * {@link Tape#of(byte[])} and its overloads
+     */
+    public static final String TAPE_OF = "Tape.of";
+    /**
+     * {@link BDict#of(java.io.InputStream)} and its overloads
+     */
+    public static final String BDICT_OF = "BDict.of";
+    /**
+     * {@link BList#of(java.io.InputStream)} and its overloads
+     */
+    public static final String BLIST_OF = "BList.of";
+    /**
+     * {@link BString#of(java.io.InputStream)} and its overloads
+     */
+    public static final String BSTRING_OF = "BString.of";
+
+    private EntryPoints() {
+    }
+}
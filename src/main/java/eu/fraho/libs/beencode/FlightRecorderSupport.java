@@ -0,0 +1,59 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Guards the access to the JDK Flight Recorder events, which need JDK 11 or JDK 8u262 and later.
+ * The event classes are never touched when the recorder is missing, so the library still runs on
+ * older JVMs. The events are typed as {@link Object} outside of their classes for the same reason.
+ */
+final class FlightRecorderSupport {
+    private static final boolean AVAILABLE = isAvailable();
+
+    private FlightRecorderSupport() {
+    }
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, FlightRecorderSupport.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param entryPoint one of the {@link EntryPoints}
+     * @return the started event, or {@code null} if decode events are not recorded
+     */
+    @Nullable
+    static Object beginDecode(@NotNull String entryPoint) {
+        assert entryPoint.length() <= EntryPoints.MAX_LENGTH : "entry point too long: " + entryPoint;
+        return AVAILABLE ? DecodeEvent.begin(entryPoint) : null;
+    }
+
+    static void commitDecode(@NotNull Object event, @NotNull DecoderState state) {
+        DecodeEvent.commit(event, state);
+    }
+
+    /**
+     * @param entryPoint one of the {@link EntryPoints}
+     * @return the started event, or {@code null} if encode events are not recorded
+     */
+    @Nullable
+    static Object beginEncode(@NotNull String entryPoint) {
+        assert entryPoint.length() <= EntryPoints.MAX_LENGTH : "entry point too long: " + entryPoint;
+        return AVAILABLE ? EncodeEvent.begin(entryPoint) : null;
+    }
+
+    static void commitEncode(@NotNull Object event, @NotNull BNode<?> node, long bytes) {
+        EncodeEvent.commit(event, node, bytes);
+    }
+}
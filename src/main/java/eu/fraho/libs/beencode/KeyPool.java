@@ -0,0 +1,56 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode;
+
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Bounded, direct mapped cache of dictionary keys. Documents of the same kind use the same few keys
+ * over and over, so materializing them repeatedly can reuse the key instances.
+ */
+@NotThreadSafe
+final class KeyPool {
+    private final BString[] entries;
+    private final int mask;
+
+    KeyPool(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        entries = new BString[size];
+        mask = size - 1;
+    }
+
+    @NotNull
+    BString get(@NotNull ByteBuffer data, int offset, int length) {
+        int hash = length;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + data.get(i);
+        }
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        BString cached = entries[slot];
+        if (cached != null && matches(cached.getValue(), data, offset, length)) {
+            return cached;
+        }
+        byte[] value = new byte[length];
+        ByteBuffer source = data.duplicate();
+        source.position(offset);
+        source.get(value);
+        BString result = BString.wrap(value);
+        entries[slot] = result;
+        return result;
+    }
+
+    private static boolean matches(@NotNull byte[] key, @NotNull ByteBuffer data, int offset, int length) {
+        if (key.length != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (key[i] != data.get(offset + i)) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode;
+
+import jdk.jfr.SettingControl;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Set;
+
+/**
+ * The {@code minBytes} setting of the decode and encode events, only documents of at least this
+ * size are recorded. When several recordings are running, the smallest value wins.
+ */
+final class MinBytesSetting extends SettingControl {
+    private volatile long minBytes;
+
+    @Override
+    public String combine(@NotNull Set<String> values) {
+        long result = Long.MAX_VALUE;
+        for (String value : values) {
+            result = Math.min(result, parse(value));
+        }
+        return values.isEmpty() ? "0" : String.valueOf(result);
+    }
+
+    @Override
+    public void setValue(@NotNull String value) {
+        minBytes = parse(value);
+    }
+
+    @Override
+    public String getValue() {
+        return String.valueOf(minBytes);
+    }
+
+    long getMinBytes() {
+        return minBytes;
+    }
+
+    private static long parse(@NotNull String value) {
+        try {
+            return Math.max(0, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Structural diff and patch of node trees, to replicate small changes of large documents.
+ * <p>
+ * A patch is itself a bencoded list of operations, applied in order. Each operation is a
+ * dictionary with the {@code op} ({@code add}, {@code remove} or {@code replace}), the {@code path}
+ * to the changed node as a list of dictionary keys and list indexes, and the new {@code value} for
+ * additions and replacements:
+ * <pre>
+ * BList patch = NodeDiff.diff(before, after); // e.g. [{op=replace, path=[info, name], value=release}]
+ * BNode&lt;?&gt; copy = NodeDiff.apply(before, patch); // equal to after
+ * </pre>
+ * Subtrees which are the same instance or differ in their hash code are decided without comparing
+ * their contents, so documents decoded with the same {@link NodePool} are compared quickly. Applying
+ * a patch only rebuilds the containers along the changed paths and shares all other subtrees with
+ * the source.
+ */
+public final class NodeDiff {
+    private static final BString OP = BString.of("op");
+    private static final BString PATH = BString.of("path");
+    private static final BString VALUE = BString.of("value");
+    private static final BString ADD = BString.of("add");
+    private static final BString REMOVE = BString.of("remove");
+    private static final BString REPLACE = BString.of("replace");
+
+    private NodeDiff() {
+    }
+
+    /**
+     * @return the operations turning the source into the target, empty if both are equal
+     */
+    @NotNull
+    public static BList diff(@NotNull BNode<?> source, @NotNull BNode<?> target) {
+        Objects.requireNonNull(source, "source may not be null");
+        Objects.requireNonNull(target, "target may not be null");
+        List<BNode<?>> patch = new ArrayList<>();
+        diff(source, target, new ArrayList<>(), patch);
+        return BList.wrap(patch);
+    }
+
+    private static void diff(@NotNull BNode<?> source, @NotNull BNode<?> target, @NotNull List<BNode<?>> path,
+                             @NotNull List<BNode<?>> patch) {
+        if (same(source, target)) {
+            return;
+        }
+        if (source instanceof BDict && target instanceof BDict) {
+            diffDict((BDict) source, (BDict) target, path, patch);
+        } else if (source instanceof BList && target instanceof BList) {
+            diffList((BList) source, (BList) target, path, patch);
+        } else {
+            patch.add(operation(REPLACE, path, target));
+        }
+    }
+
+    private static boolean same(@NotNull BNode<?> source, @NotNull BNode<?> target) {
+        // lists and dictionaries cache their hash code, so differing subtrees are mostly told apart by it
+        return source == target || source.hashCode() == target.hashCode() && source.equals(target);
+    }
+
+    private static void diffDict(@NotNull BDict source, @NotNull BDict target, @NotNull List<BNode<?>> path,
+                                 @NotNull List<BNode<?>> patch) {
+        // both maps are sorted by their keys, so they are merged in a single pass
+        Iterator<Map.Entry<BString, BNode<?>>> sources = source.getValue().entrySet().iterator();
+        Iterator<Map.Entry<BString, BNode<?>>> targets = target.getValue().entrySet().iterator();
+        Map.Entry<BString, BNode<?>> left = sources.hasNext() ? sources.next() : null;
+        Map.Entry<BString, BNode<?>> right = targets.hasNext() ? targets.next() : null;
+        while (left != null || right != null) {
+            int cmp = left == null ? 1 : right == null ? -1 : left.getKey().compareTo(right.getKey());
+            if (cmp < 0) {
+                patch.add(operation(REMOVE, child(path, left.getKey()), null));
+                left = sources.hasNext() ? sources.next() : null;
+            } else if (cmp > 0) {
+                patch.add(operation(ADD, child(path, right.getKey()), right.getValue()));
+                right = targets.hasNext() ? targets.next() : null;
+            } else {
+                diff(left.getValue(), right.getValue(), child(path, left.getKey()), patch);
+                left = sources.hasNext() ? sources.next() : null;
+                right = targets.hasNext() ? targets.next() : null;
+            }
+        }
+    }
+
+    private static void diffList(@NotNull BList source, @NotNull BList target, @NotNull List<BNode<?>> path,
+                                 @NotNull List<BNode<?>> patch) {
+        List<BNode<?>> left = source.getValue();
+        List<BNode<?>> right = target.getValue();
+        int common = Math.min(left.size(), right.size());
+        int prefix = 0;
+        while (prefix < common && same(left.get(prefix), right.get(prefix))) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < common - prefix
+                && same(left.get(left.size() - 1 - suffix), right.get(right.size() - 1 - suffix))) {
+            suffix++;
+        }
+
+        // the differing middle parts are compared pairwise, the rest of the longer one is added or removed
+        int removed = left.size() - prefix - suffix;
+        int added = right.size() - prefix - suffix;
+        int pairs = Math.min(removed, added);
+        for (int i = prefix; i < prefix + pairs; i++) {
+            diff(left.get(i), right.get(i), child(path, BInteger.of(i)), patch);
+        }
+        for (int i = prefix + pairs; i < prefix + added; i++) {
+            patch.add(operation(ADD, child(path, BInteger.of(i)), right.get(i)));
+        }
+        for (int i = pairs; i < removed; i++) {
+            patch.add(operation(REMOVE, child(path, BInteger.of(prefix + pairs)), null));
+        }
+    }
+
+    @NotNull
+    private static List<BNode<?>> child(@NotNull List<BNode<?>> path, @NotNull BNode<?> element) {
+        List<BNode<?>> result = new ArrayList<>(path.size() + 1);
+        result.addAll(path);
+        result.add(element);
+        return result;
+    }
+
+    @NotNull
+    private static BDict operation(@NotNull BString op, @NotNull List<BNode<?>> path, @Nullable BNode<?> value) {
+        TreeMap<BString, BNode<?>> result = new TreeMap<>();
+        result.put(OP, op);
+        result.put(PATH, BList.wrap(path));
+        if (value != null) {
+            result.put(VALUE, value);
+        }
+        return BDict.wrap(result);
+    }
+
+    /**
+     * Applies the operations of the patch in order.
+     *
+     * @return the patched tree, sharing all unchanged subtrees with the source
+     * @throws BencodeException if the patch is malformed or does not fit the source
+     */
+    @NotNull
+    public static BNode<?> apply(@NotNull BNode<?> source, @NotNull BList patch) {
+        Objects.requireNonNull(source, "source may not be null");
+        Objects.requireNonNull(patch, "patch may not be null");
+        BNode<?> result = source;
+        for (BNode<?> node : patch.getValue()) {
+            if (!(node instanceof BDict)) {
+                throw new BencodeException("Expected an operation (BDict), but got " + node.getClass().getSimpleName());
+            }
+            BDict operation = (BDict) node;
+            BNode<?> op = operation.get(OP).orElseThrow(() -> new BencodeException("Operation without op: " + operation));
+            BNode<?> path = operation.get(PATH).orElseThrow(() -> new BencodeException("Operation without path: " + operation));
+            if (!(path instanceof BList)) {
+                throw new BencodeException("Expected the path to be a BList, but got " + path.getClass().getSimpleName());
+            }
+            BNode<?> value = operation.get(VALUE).orElse(null);
+            if (!op.equals(REMOVE) && value == null) {
+                throw new BencodeException("Operation without value: " + operation);
+            }
+            result = apply(result, ((BList) path).getValue(), 0, op, value);
+        }
+        return result;
+    }
+
+    @NotNull
+    private static BNode<?> apply(@NotNull BNode<?> node, @NotNull List<BNode<?>> path, int depth,
+                                  @NotNull BNode<?> op, @Nullable BNode<?> value) {
+        if (depth == path.size()) {
+            if (!op.equals(REPLACE)) {
+                throw new BencodeException("Only replace may be applied to the root, but got " + op);
+            }
+            return value;
+        }
+
+        boolean last = depth == path.size() - 1;
+        BNode<?> element = path.get(depth);
+        if (node instanceof BDict && element instanceof BString) {
+            TreeMap<BString, BNode<?>> result = new TreeMap<>(((BDict) node).getValue());
+            BString key = (BString) element;
+            BNode<?> child = result.get(key);
+            if (last && op.equals(ADD)) {
+                result.put(key, value);
+            } else if (child == null) {
+                throw new BencodeException("Key not found: " + key + " at " + path.subList(0, depth + 1));
+            } else if (last && op.equals(REMOVE)) {
+                result.remove(key);
+            } else if (last && op.equals(REPLACE)) {
+                result.put(key, value);
+            } else if (last) {
+                throw new BencodeException("Unknown operation: " + op);
+            } else {
+                result.put(key, apply(child, path, depth + 1, op, value));
+            }
+            return BDict.wrap(result);
+        } else if (node instanceof BList && element instanceof BInteger) {
+            List<BNode<?>> result = new ArrayList<>(((BList) node).getValue());
+            long index = ((BInteger) element).getValue();
+            int bound = last && op.equals(ADD) ? result.size() : result.size() - 1;
+            if (index < 0 || index > bound) {
+                throw new BencodeException("Index out of bounds: " + index + " at " + path.subList(0, depth + 1));
+            }
+            int i = (int) index;
+            if (last && op.equals(ADD)) {
+                result.add(i, value);
+            } else if (last && op.equals(REMOVE)) {
+                result.remove(i);
+            } else if (last && op.equals(REPLACE)) {
+                result.set(i, value);
+            } else if (last) {
+                throw new BencodeException("Unknown operation: " + op);
+            } else {
+                result.set(i, apply(result.get(i), path, depth + 1, op, value));
+            }
+            return BList.wrap(result);
+        }
+        throw new BencodeException("Path element " + element + " does not fit a " + node.getClass().getSimpleName()
+                + " at " + path.subList(0, depth + 1));
+    }
+}
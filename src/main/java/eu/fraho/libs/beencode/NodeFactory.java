@@ -11,24 +11,56 @@ import org.jetbrains.annotations.NotNull;
 import java.io.*;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
 
 public abstract class NodeFactory {
     @NotNull
     public static BNode<?> decode(@NotNull InputStream is, byte prefix) throws IOException {
+        DecoderState state = new DecoderState(DecoderOptions.DEFAULT).record(EntryPoints.FACTORY_DECODE);
+        try {
+            state.bytes(1);
+            return state.complete(decode(state.wrap(is), prefix, state));
+        } finally {
+            state.commit();
+        }
+    }
+
+    @NotNull
+    static BNode<?> decode(@NotNull InputStream is, byte prefix, @NotNull DecoderState state) throws IOException {
         Objects.requireNonNull(is, "is may not be null");
         if (BDict.canParsePrefix(prefix)) {
-            return BDict.of(is, prefix);
+            state.node();
+            return BDict.of(is, prefix, state);
         } else if (BInteger.canParsePrefix(prefix)) {
+            state.node();
             return BInteger.of(is, prefix);
         } else if (BString.canParsePrefix(prefix)) {
-            return BString.of(is, prefix);
+            state.node();
+            return BString.of(is, prefix, state);
         } else if (BList.canParsePrefix(prefix)) {
-            return BList.of(is, prefix);
+            state.node();
+            return BList.of(is, prefix, state);
         } else {
             throw new BencodeException("No parser found for prefix '" + prefix + "'");
         }
     }
 
+    /**
+     * Decodes the next value from the stream, enforcing the budgets of the given options.
+     */
+    @NotNull
+    public static BNode<?> decode(@NotNull InputStream is, @NotNull DecoderOptions options) throws IOException {
+        Objects.requireNonNull(is, "is may not be null");
+        Objects.requireNonNull(options, "options may not be null");
+        DecoderState state = new DecoderState(options).record(EntryPoints.FACTORY_DECODE);
+        try {
+            InputStream counted = state.wrap(is);
+            return state.complete(decode(counted, (byte) counted.read(), state));
+        } finally {
+            state.commit();
+        }
+    }
+
     @NotNull
     public static BNode<?> decode(@NotNull InputStream is) throws IOException {
         return decode(is, (byte) is.read());
@@ -56,6 +88,29 @@ public abstract class NodeFactory {
         }
     }
 
+    /**
+     * Decodes the data, enforcing the budgets of the given options.
+     */
+    @NotNull
+    public static BNode<?> decode(@NotNull byte[] data, @NotNull DecoderOptions options) {
+        Objects.requireNonNull(data, "data may not be null");
+        try (InputStream is = new ByteArrayInputStream(data)) {
+            return decode(is, options);
+        } catch (IOException e) {
+            // should never happen as we work on a virtual bytestream
+            throw new BencodeException(e);
+        }
+    }
+
+    /**
+     * Decodes the data in two stages: a {@link StructuralIndex} is built first, then the children of
+     * large containers are materialized in parallel on the common pool.
+     */
+    @NotNull
+    public static BNode<?> decodeParallel(@NotNull byte[] data) {
+        return StructuralIndex.of(data).toNode(ForkJoinPool.commonPool());
+    }
+
     @NotNull
     public static <T extends BNode<?>> Optional<T> decode(@NotNull byte[] data, @NotNull Class<T> expected) {
         Objects.requireNonNull(data, "data may not be null");
@@ -71,9 +126,14 @@ public abstract class NodeFactory {
     @NotNull
     public static byte[] encode(@NotNull BNode<?> node) {
         Objects.requireNonNull(node, "node may not be null");
+        Object event = FlightRecorderSupport.beginEncode(EntryPoints.FACTORY_ENCODE);
         try (ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
             node.write(bos);
-            return bos.toByteArray();
+            byte[] result = bos.toByteArray();
+            if (event != null) {
+                FlightRecorderSupport.commitEncode(event, node, result.length);
+            }
+            return result;
         } catch (IOException e) {
             // should never happen as we work on a virtual bytestream
             throw new BencodeException(e);
@@ -84,6 +144,33 @@ public abstract class NodeFactory {
             throws IOException {
         Objects.requireNonNull(node, "node may not be null");
         Objects.requireNonNull(os, "os may not be null");
-        node.write(os);
+        Object event = FlightRecorderSupport.beginEncode(EntryPoints.FACTORY_ENCODE);
+        if (event == null) {
+            node.write(os);
+        } else {
+            CountingOutputStream counted = new CountingOutputStream(os);
+            node.write(counted);
+            FlightRecorderSupport.commitEncode(event, node, counted.count);
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(@NotNull OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(@NotNull byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
     }
 }
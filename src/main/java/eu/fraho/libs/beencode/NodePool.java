@@ -0,0 +1,107 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode;
+
+import net.jcip.annotations.ThreadSafe;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, direct mapped pool of canonical nodes. As nodes are immutable, equal strings, lists and
+ * dictionaries of many documents can share one instance, e.g. the tracker urls and file names of a
+ * torrent catalog:
+ * <pre>
+ * NodePool pool = NodePool.of(1 &lt;&lt; 16);
+ * DecoderOptions options = DecoderOptions.DEFAULT.withPool(pool);
+ * BNode&lt;?&gt; node = NodeFactory.decode(data, options);
+ * </pre>
+ * The decoder interns the nodes bottom up, so equal containers are found by comparing the
+ * identities of their already pooled children. Each slot holds the most recently interned node, a
+ * colliding node replaces it. Strings longer than {@link #MAX_STRING_LENGTH} are not pooled, as
+ * hashing and comparing e.g. the piece hashes of a torrent costs more than sharing them saves.
+ * <p>
+ * Only the {@code decode} methods of {@link NodeFactory} consult the pool, see
+ * {@link DecoderOptions#withPool(NodePool)}.
+ */
+@ThreadSafe
+public final class NodePool {
+    public static final int MAX_STRING_LENGTH = 1024;
+
+    private final AtomicReferenceArray<BNode<?>> entries;
+    private final int mask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private NodePool(int size) {
+        entries = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+    /**
+     * @param capacity the number of slots, rounded up to the next power of two
+     */
+    @NotNull
+    public static NodePool of(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity has to be between 1 and 2^30");
+        }
+        return new NodePool(capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1);
+    }
+
+    /**
+     * @return the pooled node equal to the given one, or the given node, which is then pooled unless
+     * it is a string longer than {@link #MAX_STRING_LENGTH}
+     */
+    @NotNull
+    @SuppressWarnings("unchecked")
+    public <T extends BNode<?>> T intern(@NotNull T node) {
+        Objects.requireNonNull(node, "node may not be null");
+        if (node instanceof BString && ((BString) node).getValue().length > MAX_STRING_LENGTH) {
+            return node;
+        }
+        int hash = node.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        BNode<?> cached = entries.get(slot);
+        // equal nodes are always of the same class
+        if (cached != null && cached.equals(node)) {
+            hits.increment();
+            return (T) cached;
+        }
+        misses.increment();
+        entries.set(slot, node);
+        return node;
+    }
+
+    public int getCapacity() {
+        return entries.length();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Removes all nodes from the pool.
+     */
+    public void clear() {
+        for (int i = 0; i < entries.length(); i++) {
+            entries.set(i, null);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "NodePool{capacity=" + getCapacity() + ", hits=" + getHits() + ", misses=" + getMisses() + "}";
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+
+/**
+ * Serialized form of all nodes: the bencoded representation instead of the object graph.
+ */
+final class SerializationProxy implements Serializable {
+    private static final long serialVersionUID = 1L;
+    // the data has already been read completely, so there is no reason to limit single strings
+    private static final DecoderOptions OPTIONS = DecoderOptions.DEFAULT.withMaxStringLength(Integer.MAX_VALUE);
+
+    private final byte[] data;
+
+    SerializationProxy(@NotNull BNode<?> node) {
+        this.data = NodeFactory.encode(node);
+    }
+
+    private Object readResolve() throws ObjectStreamException {
+        try {
+            return NodeFactory.decode(data, OPTIONS);
+        } catch (BencodeException e) {
+            InvalidObjectException ioe = new InvalidObjectException("Invalid serialized node: " + e.getMessage());
+            ioe.initCause(e);
+            throw ioe;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode;
+
+import net.jcip.annotations.ThreadSafe;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates the {@link DecodeStatistics} of all documents into lock free counters, which may be
+ * read at any time, for example by a metrics scraper:
+ * <pre>
+ * StatisticsListener statistics = new StatisticsListener();
+ * DecoderOptions options = DecoderOptions.DEFAULT.withListener(statistics);
+ * NodeFactory.decode(data, options);
+ * long[] dictSizes = statistics.getDictSizes();
+ * </pre>
+ * Failed documents are only counted in {@link #getFailures()}.
+ */
+@ThreadSafe
+public final class StatisticsListener implements DecoderListener {
+    private final LongAdder documents = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder nodes = new LongAdder();
+    private final LongAdder strings = new LongAdder();
+    private final LongAdder integers = new LongAdder();
+    private final LongAdder lists = new LongAdder();
+    private final LongAdder dicts = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+    private final LongAccumulator largestString = new LongAccumulator(Math::max, 0);
+    private final LongAdder[] stringLengths = adders();
+    private final LongAdder[] dictSizes = adders();
+
+    @NotNull
+    private static LongAdder[] adders() {
+        LongAdder[] result = new LongAdder[DecodeStatistics.BUCKETS];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = new LongAdder();
+        }
+        return result;
+    }
+
+    private static void add(@NotNull LongAdder[] histogram, @NotNull long[] values) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != 0) {
+                histogram[i].add(values[i]);
+            }
+        }
+    }
+
+    @NotNull
+    private static long[] sum(@NotNull LongAdder[] histogram) {
+        long[] result = new long[histogram.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = histogram[i].sum();
+        }
+        return result;
+    }
+
+    private static void reset(@NotNull LongAdder[] histogram) {
+        for (LongAdder adder : histogram) {
+            adder.reset();
+        }
+    }
+
+    @Override
+    public void decoded(@NotNull DecodeStatistics statistics) {
+        if (!statistics.isCompleted()) {
+            failures.increment();
+            return;
+        }
+        documents.increment();
+        bytes.add(statistics.getBytes());
+        nodes.add(statistics.getNodes());
+        strings.add(statistics.getStrings());
+        integers.add(statistics.getIntegers());
+        lists.add(statistics.getLists());
+        dicts.add(statistics.getDicts());
+        nanos.add(statistics.getNanos());
+        maxDepth.accumulate(statistics.getMaxDepth());
+        largestString.accumulate(statistics.getLargestString());
+        add(stringLengths, statistics.getStringLengths());
+        add(dictSizes, statistics.getDictSizes());
+    }
+
+    /**
+     * Sets all counters back to zero. Documents reported concurrently may be partially counted.
+     */
+    public void reset() {
+        documents.reset();
+        failures.reset();
+        bytes.reset();
+        nodes.reset();
+        strings.reset();
+        integers.reset();
+        lists.reset();
+        dicts.reset();
+        nanos.reset();
+        maxDepth.reset();
+        largestString.reset();
+        reset(stringLengths);
+        reset(dictSizes);
+    }
+
+    /**
+     * @return the number of successfully decoded documents
+     */
+    public long getDocuments() {
+        return documents.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    public long getNodes() {
+        return nodes.sum();
+    }
+
+    public long getStrings() {
+        return strings.sum();
+    }
+
+    public long getIntegers() {
+        return integers.sum();
+    }
+
+    public long getLists() {
+        return lists.sum();
+    }
+
+    public long getDicts() {
+        return dicts.sum();
+    }
+
+    /**
+     * @return the summed up decoding time, in nanoseconds
+     */
+    public long getNanos() {
+        return nanos.sum();
+    }
+
+    /**
+     * @return the deepest nesting of all documents
+     */
+    public int getMaxDepth() {
+        return (int) maxDepth.get();
+    }
+
+    /**
+     * @return the longest string of all documents
+     */
+    public long getLargestString() {
+        return largestString.get();
+    }
+
+    /**
+     * @return the histogram of the string lengths, see {@link DecodeStatistics} for the buckets
+     */
+    @NotNull
+    public long[] getStringLengths() {
+        return sum(stringLengths);
+    }
+
+    /**
+     * @return the histogram of the number of entries per dictionary, see {@link DecodeStatistics} for the buckets
+     */
+    @NotNull
+    public long[] getDictSizes() {
+        return sum(dictSizes);
+    }
+
+    @Override
+    public String toString() {
+        return "StatisticsListener{documents=" + getDocuments() + ", failures=" + getFailures()
+                + ", bytes=" + getBytes() + ", nodes=" + getNodes() + ", maxDepth=" + getMaxDepth()
+                + ", largestString=" + getLargestString() + "}";
+    }
+}
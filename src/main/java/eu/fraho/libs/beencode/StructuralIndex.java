@@ -0,0 +1,327 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode;
+
+import net.jcip.annotations.Immutable;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Structural index of an encoded document, built by a single scan over the buffer.
+ * <p>
+ * Every node gets an index in document order (for dictionaries keys and values alternate). For each
+ * node the start and end offset, the number of direct children and the index of the first node
+ * after its subtree are recorded. The index can be used to navigate the document without
+ * decoding it, or to materialize the node tree afterwards. Since the sizes of all containers are
+ * known up front, lists are allocated with their final size, and the children of large containers
+ * can be built in parallel.
+ * <pre>
+ * StructuralIndex index = StructuralIndex.of(data);
+ * BNode&lt;?&gt; root = index.toNode(ForkJoinPool.commonPool());
+ * </pre>
+ */
+@Immutable
+public final class StructuralIndex {
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 1 << 20;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final byte[] data;
+    private final int size;
+    private final int[] starts;
+    private final int[] ends;
+    private final int[] children;
+    private final int[] next;
+
+    private StructuralIndex(@NotNull byte[] data, int size, @NotNull int[] starts, @NotNull int[] ends,
+                            @NotNull int[] children, @NotNull int[] next) {
+        this.data = data;
+        this.size = size;
+        this.starts = starts;
+        this.ends = ends;
+        this.children = children;
+        this.next = next;
+    }
+
+    @NotNull
+    public static StructuralIndex of(@NotNull byte[] data) {
+        Objects.requireNonNull(data, "data may not be null");
+        return of(data, 0, data.length);
+    }
+
+    /**
+     * Indexes the first value in the given range. Trailing data after that value is ignored, like
+     * {@link NodeFactory#decode(byte[])} does.
+     */
+    @NotNull
+    public static StructuralIndex of(@NotNull byte[] data, int offset, int length) {
+        return of(data, offset, length, DecoderOptions.DEFAULT);
+    }
+
+    /**
+     * Indexes the first value in the given range, enforcing the budgets of the given options.
+     */
+    @NotNull
+    public static StructuralIndex of(@NotNull byte[] data, int offset, int length, @NotNull DecoderOptions options) {
+        BencodeReader reader = BencodeReader.of(data, offset, length, options);
+        DecoderState state = reader.state().record(EntryPoints.INDEX_OF);
+        try {
+            return state.complete(build(reader, data));
+        } finally {
+            state.commit();
+        }
+    }
+
+    @NotNull
+    private static StructuralIndex build(@NotNull BencodeReader reader, @NotNull byte[] data) {
+        int capacity = INITIAL_CAPACITY;
+        int[] starts = new int[capacity];
+        int[] ends = new int[capacity];
+        int[] children = new int[capacity];
+        int[] next = new int[capacity];
+        int[] stack = new int[16];
+        int depth = 0;
+        int count = 0;
+
+        do {
+            if (depth > 0 && !reader.hasNext()) {
+                int parent = stack[--depth];
+                if (data[starts[parent]] == 'd' && (children[parent] & 1) != 0) {
+                    throw new BencodeException("Expected dictionary value, but suffix was found at offset " + reader.position());
+                }
+                reader.exit();
+                ends[parent] = reader.position();
+                next[parent] = count;
+                continue;
+            }
+
+            if (count == capacity) {
+                capacity = Math.max(capacity + (capacity >> 1), capacity + 1);
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+                children = Arrays.copyOf(children, capacity);
+                next = Arrays.copyOf(next, capacity);
+            }
+            int node = count++;
+            starts[node] = reader.position();
+            children[node] = 0;
+            if (depth > 0) {
+                int parent = stack[depth - 1];
+                if (data[starts[parent]] == 'd' && (children[parent] & 1) == 0 && !reader.isString()) {
+                    throw new BencodeException("Expected a dictionary key (BString) at offset " + reader.position());
+                }
+                children[parent]++;
+            }
+
+            byte prefix = reader.peek();
+            if (prefix == 'd' || prefix == 'l') {
+                if (prefix == 'd') {
+                    reader.enterDict();
+                } else {
+                    reader.enterList();
+                }
+                if (depth == stack.length) {
+                    stack = Arrays.copyOf(stack, depth * 2);
+                }
+                stack[depth++] = node;
+            } else {
+                if (prefix == 'i') {
+                    reader.readLong();
+                } else if (BString.canParsePrefix(prefix)) {
+                    reader.readString();
+                } else {
+                    throw new BencodeException("No parser found for prefix '" + (char) prefix + "' at offset " + reader.position());
+                }
+                ends[node] = reader.position();
+                next[node] = count;
+            }
+        } while (depth > 0);
+
+        return new StructuralIndex(data, count, starts, ends, children, next);
+    }
+
+    /**
+     * @return the number of indexed nodes, including dictionary keys
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the prefix byte of the node, one of {@code d}, {@code l}, {@code i} or a digit
+     */
+    public byte type(int node) {
+        return data[start(node)];
+    }
+
+    public int start(int node) {
+        checkIndex(node);
+        return starts[node];
+    }
+
+    /**
+     * @return the offset directly after the node (exclusive)
+     */
+    public int end(int node) {
+        checkIndex(node);
+        return ends[node];
+    }
+
+    /**
+     * @return the number of direct children, twice the number of entries for dictionaries
+     */
+    public int childCount(int node) {
+        checkIndex(node);
+        return children[node];
+    }
+
+    /**
+     * @return the index of the first node after the subtree of the given node, which is the next
+     * sibling if the node is not the last child of its container
+     */
+    public int next(int node) {
+        checkIndex(node);
+        return next[node];
+    }
+
+    /**
+     * Materializes the node tree on the calling thread.
+     */
+    @NotNull
+    public BNode<?> toNode() {
+        return materialize(0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Materializes the node tree, building the children of containers spanning at least
+     * {@link #DEFAULT_PARALLEL_THRESHOLD} bytes in parallel on the given pool.
+     */
+    @NotNull
+    public BNode<?> toNode(@NotNull ForkJoinPool pool) {
+        return toNode(pool, DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Materializes the node tree, building the children of containers spanning at least
+     * {@code threshold} bytes in parallel on the given pool.
+     */
+    @NotNull
+    public BNode<?> toNode(@NotNull ForkJoinPool pool, int threshold) {
+        Objects.requireNonNull(pool, "pool may not be null");
+        if (threshold < 1) {
+            throw new IllegalArgumentException("threshold has to be positive");
+        }
+        BNode<?>[] result = new BNode<?>[1];
+        pool.invoke(new Materialize(new int[]{0}, result, 0, 1, threshold));
+        return result[0];
+    }
+
+    private void checkIndex(int node) {
+        if (node < 0 || node >= size) {
+            throw new IndexOutOfBoundsException("Node " + node + " is out of bounds for size " + size);
+        }
+    }
+
+    @NotNull
+    private BNode<?> materialize(int node, int threshold) {
+        byte prefix = data[starts[node]];
+        if (prefix == 'l') {
+            int[] items = childIndices(node, 0, 1);
+            BNode<?>[] values = new BNode<?>[items.length];
+            materialize(items, values, threshold);
+            return BList.wrap(Arrays.asList(values));
+        } else if (prefix == 'd') {
+            // keys are single nodes, so every value directly follows its key
+            int[] items = childIndices(node, 1, 2);
+            BNode<?>[] values = new BNode<?>[items.length];
+            materialize(items, values, threshold);
+            TreeMap<BString, BNode<?>> result = new TreeMap<>();
+            for (int i = 0; i < items.length; i++) {
+                result.put(string(items[i] - 1), values[i]);
+            }
+            return BDict.wrap(result);
+        } else if (prefix == 'i') {
+            return BInteger.of(parseLong(starts[node] + 1, ends[node] - 1));
+        } else {
+            return string(node);
+        }
+    }
+
+    private void materialize(@NotNull int[] nodes, @NotNull BNode<?>[] target, int threshold) {
+        if (nodes.length > 1 && ForkJoinTask.inForkJoinPool()
+                && ends[nodes[nodes.length - 1]] - starts[nodes[0]] >= threshold) {
+            new Materialize(nodes, target, 0, nodes.length, threshold).invoke();
+        } else {
+            for (int i = 0; i < nodes.length; i++) {
+                target[i] = materialize(nodes[i], threshold);
+            }
+        }
+    }
+
+    @NotNull
+    private int[] childIndices(int node, int first, int step) {
+        int[] result = new int[children[node] / step];
+        int child = node + 1;
+        for (int i = 0; i < children[node]; i++) {
+            if (i % step == first) {
+                result[i / step] = child;
+            }
+            child = next[child];
+        }
+        return result;
+    }
+
+    @NotNull
+    private BString string(int node) {
+        int colon = starts[node];
+        while (data[colon] != ':') colon++;
+        return BString.of(data, colon + 1, ends[node] - colon - 1);
+    }
+
+    private long parseLong(int from, int to) {
+        // the value was validated while indexing, so it is known to be canonical and in range
+        boolean negative = data[from] == '-';
+        long result = 0;
+        for (int i = negative ? from + 1 : from; i < to; i++) {
+            result = result * 10 - (data[i] - '0');
+        }
+        return negative ? result : -result;
+    }
+
+    private final class Materialize extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int[] nodes;
+        private final BNode<?>[] target;
+        private final int from;
+        private final int to;
+        private final int threshold;
+
+        private Materialize(@NotNull int[] nodes, @NotNull BNode<?>[] target, int from, int to, int threshold) {
+            this.nodes = nodes;
+            this.target = target;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1 && ends[nodes[to - 1]] - starts[nodes[from]] >= threshold) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Materialize(nodes, target, from, middle, threshold),
+                        new Materialize(nodes, target, middle, to, threshold));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                target[i] = materialize(nodes[i], threshold);
+            }
+        }
+    }
+}
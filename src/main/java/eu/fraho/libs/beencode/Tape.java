@@ -0,0 +1,498 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode;
+
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Compact, flat representation of a decoded document.
+ * <p>
+ * Every node is stored as an element of two longs in a single buffer, strings are not copied but
+ * referenced by their offset in the encoded data:
+ * <pre>
+ * element       first word                       second word
+ * integer       'i' &lt;&lt; 56                        the value
+ * string        's' &lt;&lt; 56 | payload offset       payload length
+ * list, dict    'l' / 'd' &lt;&lt; 56 | index after end number of direct children (keys and values)
+ * end           'e' &lt;&lt; 56 | index of the start  key table offset + 1 for dictionaries, otherwise 0
+ * </pre>
+ * This needs a fraction of the memory of the node classes and allows traversing the document in
+ * order without chasing pointers. Use a {@link Cursor} to navigate the tape, or materialize
+ * (parts of) it with {@link #toNode()}.
+ * <p>
+ * The tape keeps a reference to the encoded data, which may not be modified afterwards. Tapes
+ * loaded by {@link TapeSnapshot} additionally have a table of the key elements of each dictionary,
+ * sorted by their bytes, which is used for lookups by key. The tape of a {@link Document} is only
+ * valid until the document is released.
+ */
+@Immutable
+public final class Tape {
+    public static final byte INTEGER = 'i';
+    public static final byte STRING = 's';
+    public static final byte LIST = 'l';
+    public static final byte DICT = 'd';
+    public static final byte END = 'e';
+    private static final int TAG_SHIFT = 56;
+    static final long PAYLOAD_MASK = (1L << TAG_SHIFT) - 1;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final LongBuffer tape;
+    private final ByteBuffer data;
+    private final IntBuffer keys;
+    // only changed by a DecoderContext, when a recycled document is filled again
+    private int size;
+
+    Tape(@NotNull LongBuffer tape, @NotNull ByteBuffer data, @Nullable IntBuffer keys, int size) {
+        this.tape = tape;
+        this.data = data;
+        this.keys = keys;
+        this.size = size;
+    }
+
+    @NotNull
+    public static Tape of(@NotNull byte[] data) {
+        Objects.requireNonNull(data, "data may not be null");
+        return of(data, 0, data.length);
+    }
+
+    /**
+     * Builds the tape for the first value in the given range. Trailing data is ignored, like
+     * {@link NodeFactory#decode(byte[])} does.
+     */
+    @NotNull
+    public static Tape of(@NotNull byte[] data, int offset, int length) {
+        return of(data, offset, length, DecoderOptions.DEFAULT);
+    }
+
+    /**
+     * Builds the tape for the first value in the given range, enforcing the budgets of the given
+     * options.
+     */
+    @NotNull
+    public static Tape of(@NotNull byte[] data, int offset, int length, @NotNull DecoderOptions options) {
+        TapeWriter writer = new TapeWriter(INITIAL_CAPACITY, options);
+        int size = writer.write(data, offset, length, EntryPoints.TAPE_OF);
+        return new Tape(LongBuffer.wrap(writer.words()), ByteBuffer.wrap(data), null, size);
+    }
+
+    @NotNull
+    public static Tape of(@NotNull BNode<?> node) {
+        return of(NodeFactory.encode(node));
+    }
+
+    static long word(byte tag, long payload) {
+        return ((long) tag << TAG_SHIFT) | payload;
+    }
+
+    static byte tag(long word) {
+        return (byte) (word >>> TAG_SHIFT);
+    }
+
+    /**
+     * @return the number of elements on the tape, including the end markers of containers
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return a new cursor positioned on the root element
+     */
+    @NotNull
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    @NotNull
+    public BNode<?> toNode() {
+        return toNode(0, null);
+    }
+
+    @NotNull
+    LongBuffer tape() {
+        return tape;
+    }
+
+    @NotNull
+    ByteBuffer data() {
+        return data;
+    }
+
+    @Nullable
+    IntBuffer keys() {
+        return keys;
+    }
+
+    void size(int size) {
+        this.size = size;
+    }
+
+    byte type(int element) {
+        return tag(tape.get(element * 2));
+    }
+
+    long payload(int element) {
+        return tape.get(element * 2) & PAYLOAD_MASK;
+    }
+
+    long second(int element) {
+        return tape.get(element * 2 + 1);
+    }
+
+    /**
+     * @return the index of the element following the given one and its children
+     */
+    int skip(int element) {
+        byte type = type(element);
+        return type == LIST || type == DICT ? (int) payload(element) : element + 1;
+    }
+
+    /**
+     * Materializes the given element, taking dictionary keys from the pool if one is given.
+     */
+    @NotNull
+    BNode<?> toNode(int element, @Nullable KeyPool pool) {
+        byte type = type(element);
+        if (type == INTEGER) {
+            return BInteger.of(second(element));
+        } else if (type == STRING) {
+            return BString.wrap(bytes(element));
+        }
+
+        int count = (int) second(element);
+        int child = element + 1;
+        if (type == LIST) {
+            List<BNode<?>> result = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                result.add(toNode(child, pool));
+                child = skip(child);
+            }
+            return BList.wrap(result);
+        }
+        TreeMap<BString, BNode<?>> result = new TreeMap<>();
+        for (int i = 0; i < count; i += 2) {
+            BString key = pool == null ? BString.wrap(bytes(child)) : pool.get(data, (int) payload(child), (int) second(child));
+            child++;
+            result.put(key, toNode(child, pool));
+            child = skip(child);
+        }
+        return BDict.wrap(result);
+    }
+
+    @NotNull
+    private byte[] bytes(int element) {
+        byte[] result = new byte[(int) second(element)];
+        ByteBuffer source = data.duplicate();
+        source.position((int) payload(element));
+        source.get(result);
+        return result;
+    }
+
+    /**
+     * Compares the bytes of a string element with the given bytes as unsigned values.
+     */
+    int compare(int element, @NotNull byte[] other) {
+        int offset = (int) payload(element);
+        int length = (int) second(element);
+        int common = Math.min(length, other.length);
+        for (int i = 0; i < common; i++) {
+            int cmp = (data.get(offset + i) & 0xff) - (other[i] & 0xff);
+            if (cmp != 0) return cmp;
+        }
+        return length - other.length;
+    }
+
+    /**
+     * @return the key element with the given bytes within the dictionary, or -1. Of duplicate keys
+     * the last one is found, as its value is the one kept by {@link #toNode()}.
+     */
+    private int findKey(int dict, @NotNull byte[] key) {
+        int count = (int) second(dict) / 2;
+        long table = keys == null ? 0 : second((int) payload(dict) - 1);
+        int result = -1;
+        if (table > 0) {
+            // the table is sorted stably, so duplicate keys are in document order
+            int base = (int) table - 1;
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int candidate = keys.get(base + middle);
+                int cmp = compare(candidate, key);
+                if (cmp <= 0) {
+                    low = middle + 1;
+                    if (cmp == 0) result = candidate;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return result;
+        }
+
+        int child = dict + 1;
+        for (int i = 0; i < count; i++) {
+            if (bytesEqual(child, key)) {
+                result = child;
+            }
+            child = skip(child + 1);
+        }
+        return result;
+    }
+
+    private boolean bytesEqual(int element, @NotNull byte[] expected) {
+        if (second(element) != expected.length) return false;
+        int offset = (int) payload(element);
+        for (int i = 0; i < expected.length; i++) {
+            if (data.get(offset + i) != expected[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Navigates a tape. Within a dictionary the cursor is positioned on the values, the key of the
+     * current value is available with {@link #key()}.
+     * <pre>
+     * Tape.Cursor cursor = tape.cursor();
+     * if (cursor.enter()) {
+     *     do {
+     *         System.out.println(cursor.keyString() + " = " + cursor.toNode());
+     *     } while (cursor.next());
+     * }
+     * </pre>
+     */
+    @NotThreadSafe
+    public final class Cursor {
+        private int element;
+        private int[] parents = new int[16];
+        private int depth;
+
+        private Cursor() {
+        }
+
+        /**
+         * @return the tape element the cursor is positioned on
+         */
+        public int position() {
+            return element;
+        }
+
+        public int depth() {
+            return depth;
+        }
+
+        /**
+         * @return one of {@link #INTEGER}, {@link #STRING}, {@link #LIST} or {@link #DICT}
+         */
+        public byte type() {
+            return Tape.this.type(element);
+        }
+
+        public boolean isInteger() {
+            return type() == INTEGER;
+        }
+
+        public boolean isString() {
+            return type() == STRING;
+        }
+
+        public boolean isList() {
+            return type() == LIST;
+        }
+
+        public boolean isDict() {
+            return type() == DICT;
+        }
+
+        /**
+         * Moves to the first child of the current list or the first value of the current dictionary.
+         *
+         * @return false if the container is empty, the cursor stays on the container then
+         */
+        public boolean enter() {
+            byte type = type();
+            if (type != LIST && type != DICT) {
+                throw new BencodeException("Cannot enter a " + describe(type));
+            }
+            if (second(element) == 0) {
+                return false;
+            }
+            if (depth == parents.length) {
+                parents = Arrays.copyOf(parents, depth * 2);
+            }
+            parents[depth++] = element;
+            element = type == DICT ? element + 2 : element + 1;
+            return true;
+        }
+
+        /**
+         * Moves to the next sibling, skipping the children of the current element.
+         *
+         * @return false if the current element is the last one, the cursor does not move then
+         */
+        public boolean next() {
+            if (depth == 0) {
+                return false;
+            }
+            int following = skip(element);
+            if (Tape.this.type(following) == END) {
+                return false;
+            }
+            element = Tape.this.type(parents[depth - 1]) == DICT ? following + 1 : following;
+            return true;
+        }
+
+        /**
+         * Moves back to the container of the current element.
+         */
+        public void exit() {
+            if (depth == 0) {
+                throw new BencodeException("Not within a list or dictionary");
+            }
+            element = parents[--depth];
+        }
+
+        /**
+         * Moves to the value with the given key in the current dictionary.
+         *
+         * @return false if the key does not exist, the cursor does not move then
+         */
+        public boolean find(@NotNull byte[] key) {
+            Objects.requireNonNull(key, "key may not be null");
+            if (type() != DICT) {
+                throw new BencodeException("Cannot find a key in a " + describe(type()));
+            }
+            int child = findKey(element, key);
+            if (child < 0) {
+                return false;
+            }
+            if (depth == parents.length) {
+                parents = Arrays.copyOf(parents, depth * 2);
+            }
+            parents[depth++] = element;
+            element = child + 1;
+            return true;
+        }
+
+        public boolean find(@NotNull String key) {
+            return find(key.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * @return a copy of the key of the current dictionary value
+         */
+        @NotNull
+        public byte[] key() {
+            return bytes(keyElement());
+        }
+
+        @NotNull
+        public String keyString() {
+            return new String(key(), StandardCharsets.UTF_8);
+        }
+
+        public boolean keyEquals(@NotNull byte[] key) {
+            return bytesEqual(keyElement(), key);
+        }
+
+        public long getLong() {
+            expect(INTEGER);
+            return second(element);
+        }
+
+        /**
+         * @return a copy of the current string
+         */
+        @NotNull
+        public byte[] getBytes() {
+            expect(STRING);
+            return bytes(element);
+        }
+
+        @NotNull
+        public String getString(@NotNull Charset charset) {
+            return new String(getBytes(), charset);
+        }
+
+        /**
+         * @return the offset of the current string payload within the encoded data
+         */
+        public int getStringOffset() {
+            expect(STRING);
+            return (int) payload(element);
+        }
+
+        public int getStringLength() {
+            expect(STRING);
+            return (int) second(element);
+        }
+
+        /**
+         * @return the number of children of a list or entries of a dictionary
+         */
+        public int getCount() {
+            byte type = type();
+            if (type != LIST && type != DICT) {
+                throw new BencodeException("Expected a list or dictionary, but got a " + describe(type));
+            }
+            return type == DICT ? (int) second(element) / 2 : (int) second(element);
+        }
+
+        /**
+         * @return the current element and its children as nodes
+         */
+        @NotNull
+        public BNode<?> toNode() {
+            return Tape.this.toNode(element, null);
+        }
+
+        /**
+         * Moves the cursor back to the root element.
+         */
+        void reset() {
+            element = 0;
+            depth = 0;
+        }
+
+        private int keyElement() {
+            if (depth == 0 || Tape.this.type(parents[depth - 1]) != DICT) {
+                throw new BencodeException("Not within a dictionary");
+            }
+            return element - 1;
+        }
+
+        private void expect(byte expected) {
+            byte type = type();
+            if (type != expected) {
+                throw new BencodeException("Expected a " + describe(expected) + ", but got a " + describe(type));
+            }
+        }
+
+        @NotNull
+        private String describe(byte type) {
+            switch (type) {
+                case INTEGER:
+                    return "BInteger";
+                case STRING:
+                    return "BString";
+                case LIST:
+                    return "BList";
+                default:
+                    return "BDict";
+            }
+        }
+    }
+}
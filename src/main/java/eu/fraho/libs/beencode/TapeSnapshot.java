@@ -0,0 +1,298 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Binary snapshot of a {@link Tape}, which can be memory mapped and queried without decoding.
+ * <p>
+ * A snapshot consists of a header, the tape itself, a table of the key elements of every
+ * dictionary sorted by their bytes and the encoded data the tape refers to:
+ * <pre>
+ * header  magic "BTAP", version, number of elements, number of key table entries, data length
+ * tape    two longs per element, the end element of a dictionary points into the key table
+ * keys    one int per dictionary entry
+ * data    the encoded document
+ * </pre>
+ * All values are stored in big endian byte order. As a single mapping is limited to 2 GiB, so
+ * is the size of a snapshot.
+ */
+public abstract class TapeSnapshot {
+    private static final int MAGIC = 0x42544150; // "BTAP"
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 24;
+    private static final int CHUNK_SIZE = 65_536;
+
+    /**
+     * Writes the snapshot to the given file, replacing it if it exists.
+     */
+    public static void write(@NotNull Tape tape, @NotNull Path file) throws IOException {
+        Objects.requireNonNull(file, "file may not be null");
+        try (OutputStream os = Files.newOutputStream(file)) {
+            write(tape, os);
+        }
+    }
+
+    public static void write(@NotNull Tape tape, @NotNull OutputStream os) throws IOException {
+        Objects.requireNonNull(tape, "tape may not be null");
+        Objects.requireNonNull(os, "os may not be null");
+
+        int size = tape.size();
+        long[] words = new long[size * 2];
+        LongBuffer source = tape.tape().duplicate();
+        source.clear();
+        source.get(words);
+        int[] keys = keyTables(tape, words);
+        ByteBuffer data = tape.data().duplicate();
+        data.clear();
+
+        WritableByteChannel channel = Channels.newChannel(os);
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(keys.length).putLong(data.remaining());
+        for (long word : words) {
+            if (buffer.remaining() < Long.BYTES) flush(channel, buffer);
+            buffer.putLong(word);
+        }
+        for (int key : keys) {
+            if (buffer.remaining() < Integer.BYTES) flush(channel, buffer);
+            buffer.putInt(key);
+        }
+        flush(channel, buffer);
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+        os.flush();
+    }
+
+    /**
+     * Maps the given snapshot file read-only. The returned tape stays valid after the file channel
+     * is closed, the mapping is released once the tape is garbage collected.
+     */
+    @NotNull
+    public static Tape map(@NotNull Path file) throws IOException {
+        Objects.requireNonNull(file, "file may not be null");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new BencodeException("Snapshot " + file + " is too large to be mapped");
+            }
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Creates a tape backed by the given snapshot, without copying it. The buffer may not be
+     * modified afterwards. The structure of the tape is checked once, so a corrupt snapshot fails
+     * here instead of on later lookups.
+     *
+     * @throws BencodeException if the snapshot is corrupt
+     */
+    @NotNull
+    public static Tape read(@NotNull ByteBuffer snapshot) {
+        Objects.requireNonNull(snapshot, "snapshot may not be null");
+        ByteBuffer source = snapshot.duplicate().order(ByteOrder.BIG_ENDIAN);
+        int base = source.position();
+        if (source.remaining() < HEADER_LENGTH || source.getInt() != MAGIC) {
+            throw new BencodeException("Not a tape snapshot");
+        }
+        int version = source.getInt();
+        if (version != VERSION) {
+            throw new BencodeException("Unsupported snapshot version " + version);
+        }
+        int size = source.getInt();
+        int keyCount = source.getInt();
+        long dataLength = source.getLong();
+        long tapeLength = (long) size * 2 * Long.BYTES;
+        long keysLength = (long) keyCount * Integer.BYTES;
+        if (size < 1 || keyCount < 0 || dataLength < 0
+                || tapeLength + keysLength + dataLength != source.remaining()) {
+            throw new BencodeException("Corrupt snapshot, the header does not match the length of the data");
+        }
+
+        int tapeOffset = base + HEADER_LENGTH;
+        int keysOffset = tapeOffset + (int) tapeLength;
+        int dataOffset = keysOffset + (int) keysLength;
+        LongBuffer tape = slice(source, tapeOffset, (int) tapeLength).asLongBuffer();
+        IntBuffer keys = slice(source, keysOffset, (int) keysLength).asIntBuffer();
+        ByteBuffer data = slice(source, dataOffset, (int) dataLength);
+        validate(tape, keys, size, dataLength);
+        return new Tape(tape, data, keys, size);
+    }
+
+    /**
+     * Checks that the containers nest properly, every string lies within the data and every key
+     * table refers to the string keys of its dictionary.
+     */
+    private static void validate(@NotNull LongBuffer tape, @NotNull IntBuffer keys, int size, long dataLength) {
+        int[] stack = new int[16];
+        long[] children = new long[16];
+        int depth = 0;
+        for (int element = 0; element < size; element++) {
+            long word = tape.get(element * 2);
+            byte type = Tape.tag(word);
+            long payload = word & Tape.PAYLOAD_MASK;
+            long second = tape.get(element * 2 + 1);
+
+            if (type != Tape.END && depth > 0) {
+                int parent = stack[depth - 1];
+                if (Tape.tag(tape.get(parent * 2)) == Tape.DICT && children[depth - 1] % 2 == 0 && type != Tape.STRING) {
+                    throw corrupt(element, "dictionary key is not a string");
+                }
+                children[depth - 1]++;
+            }
+
+            if (type == Tape.STRING) {
+                if (second < 0 || payload > dataLength - second) {
+                    throw corrupt(element, "string exceeds the data");
+                }
+            } else if (type == Tape.LIST || type == Tape.DICT) {
+                if (payload < element + 2 || payload > size) {
+                    throw corrupt(element, "invalid end index " + payload);
+                }
+                if (depth == stack.length) {
+                    stack = Arrays.copyOf(stack, depth * 2);
+                    children = Arrays.copyOf(children, depth * 2);
+                }
+                stack[depth] = element;
+                children[depth++] = 0;
+            } else if (type == Tape.END) {
+                if (depth == 0) {
+                    throw corrupt(element, "end without a container");
+                }
+                int start = stack[--depth];
+                long startWord = tape.get(start * 2);
+                boolean dict = Tape.tag(startWord) == Tape.DICT;
+                long count = tape.get(start * 2 + 1);
+                if (payload != start || (startWord & Tape.PAYLOAD_MASK) != element + 1) {
+                    throw corrupt(element, "end does not match its container at " + start);
+                }
+                if (count != children[depth] || dict && count % 2 != 0) {
+                    throw corrupt(start, "invalid number of children " + count);
+                }
+                if (dict && second > 0) {
+                    validateKeys(tape, keys, start, element, second - 1, count / 2);
+                } else if (second != 0) {
+                    throw corrupt(element, "invalid key table offset " + second);
+                }
+            } else if (type != Tape.INTEGER) {
+                throw corrupt(element, "unknown type " + type);
+            }
+
+            if (depth == 0 && element != size - 1) {
+                throw corrupt(element, "elements after the root");
+            }
+        }
+        if (depth != 0) {
+            throw corrupt(size, "unterminated container");
+        }
+    }
+
+    private static void validateKeys(@NotNull LongBuffer tape, @NotNull IntBuffer keys, int start, int end,
+                                     long offset, long count) {
+        if (offset > keys.capacity() - count) {
+            throw corrupt(end, "key table offset " + offset + " out of range");
+        }
+        for (int i = 0; i < count; i++) {
+            int key = keys.get((int) offset + i);
+            if (key <= start || key >= end || Tape.tag(tape.get(key * 2)) != Tape.STRING) {
+                throw corrupt(end, "key table refers to element " + key);
+            }
+        }
+    }
+
+    @NotNull
+    private static BencodeException corrupt(int element, @NotNull String reason) {
+        return new BencodeException("Corrupt snapshot, " + reason + " at element " + element);
+    }
+
+    @NotNull
+    private static ByteBuffer slice(@NotNull ByteBuffer source, int offset, int length) {
+        ByteBuffer result = source.duplicate();
+        result.limit(offset + length).position(offset);
+        return result.slice();
+    }
+
+    private static void flush(@NotNull WritableByteChannel channel, @NotNull ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Collects the sorted key elements of all dictionaries and links them from the end elements.
+     */
+    @NotNull
+    private static int[] keyTables(@NotNull Tape tape, @NotNull long[] words) {
+        int total = 0;
+        for (int element = 0; element < tape.size(); element++) {
+            if (tape.type(element) == Tape.DICT) {
+                total += (int) tape.second(element) / 2;
+            }
+        }
+
+        int[] result = new int[total];
+        int offset = 0;
+        for (int element = 0; element < tape.size(); element++) {
+            if (tape.type(element) != Tape.DICT) {
+                continue;
+            }
+            int end = (int) tape.payload(element) - 1;
+            int count = (int) tape.second(element) / 2;
+            if (count == 0) {
+                continue;
+            }
+            int child = element + 1;
+            boolean sorted = true;
+            for (int i = 0; i < count; i++) {
+                result[offset + i] = child;
+                sorted &= i == 0 || compare(tape, result[offset + i - 1], child) < 0;
+                child = tape.skip(child + 1);
+            }
+            if (!sorted) {
+                Integer[] temp = new Integer[count];
+                for (int i = 0; i < count; i++) temp[i] = result[offset + i];
+                // stable, so duplicate keys stay in document order
+                Arrays.sort(temp, (a, b) -> compare(tape, a, b));
+                for (int i = 0; i < count; i++) result[offset + i] = temp[i];
+            }
+            words[end * 2 + 1] = offset + 1;
+            offset += count;
+        }
+        return result;
+    }
+
+    private static int compare(@NotNull Tape tape, int a, int b) {
+        ByteBuffer data = tape.data();
+        int offsetA = (int) tape.payload(a);
+        int offsetB = (int) tape.payload(b);
+        int lengthA = (int) tape.second(a);
+        int lengthB = (int) tape.second(b);
+        int common = Math.min(lengthA, lengthB);
+        for (int i = 0; i < common; i++) {
+            int cmp = (data.get(offsetA + i) & 0xff) - (data.get(offsetB + i) & 0xff);
+            if (cmp != 0) return cmp;
+        }
+        return lengthA - lengthB;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode;
+
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+import static eu.fraho.libs.beencode.Tape.*;
+
+/**
+ * Fills the words of a {@link Tape}. The arrays are kept between runs, so a writer can be reused
+ * without allocating once it has grown to the size of the documents.
+ */
+@NotThreadSafe
+final class TapeWriter {
+    private final BencodeReader reader;
+    private long[] words;
+    private int[] stack = new int[16];
+
+    TapeWriter(int capacity, @NotNull DecoderOptions options) {
+        reader = BencodeReader.of(new byte[0], options);
+        words = new long[Math.max(1, capacity) * 2];
+    }
+
+    /**
+     * @return the words of the last run, possibly longer than needed
+     */
+    @NotNull
+    long[] words() {
+        return words;
+    }
+
+    /**
+     * Writes the tape for the first value in the given range.
+     *
+     * @param entryPoint the public method the run is recorded for, one of the {@link EntryPoints}
+     * @return the number of elements written
+     */
+    int write(@NotNull byte[] data, int offset, int length, @NotNull String entryPoint) {
+        reader.reset(data, offset, length);
+        DecoderState state = reader.state().record(entryPoint);
+        try {
+            int size = write();
+            state.complete();
+            return size;
+        } finally {
+            state.commit();
+        }
+    }
+
+    private int write() {
+        long[] tape = words;
+        int depth = 0;
+        int count = 0;
+
+        do {
+            if (count * 2 == tape.length) {
+                tape = words = Arrays.copyOf(tape, tape.length * 2);
+            }
+            if (depth > 0 && !reader.hasNext()) {
+                int start = stack[--depth];
+                if (tag(tape[start * 2]) == DICT && (tape[start * 2 + 1] & 1) != 0) {
+                    throw new BencodeException("Expected dictionary value, but suffix was found at offset " + reader.position());
+                }
+                reader.exit();
+                tape[count * 2] = word(END, start);
+                tape[count * 2 + 1] = 0;
+                count++;
+                tape[start * 2] = word(tag(tape[start * 2]), count);
+                continue;
+            }
+
+            int element = count++;
+            if (depth > 0) {
+                int parent = stack[depth - 1];
+                if (tag(tape[parent * 2]) == DICT && (tape[parent * 2 + 1] & 1) == 0 && !reader.isString()) {
+                    throw new BencodeException("Expected a dictionary key (BString) at offset " + reader.position());
+                }
+                tape[parent * 2 + 1]++;
+            }
+
+            byte prefix = reader.peek();
+            if (prefix == DICT || prefix == LIST) {
+                if (prefix == DICT) {
+                    reader.enterDict();
+                } else {
+                    reader.enterList();
+                }
+                tape[element * 2] = word(prefix, 0);
+                tape[element * 2 + 1] = 0;
+                if (depth == stack.length) {
+                    stack = Arrays.copyOf(stack, depth * 2);
+                }
+                stack[depth++] = element;
+            } else if (prefix == INTEGER) {
+                tape[element * 2] = word(INTEGER, 0);
+                tape[element * 2 + 1] = reader.readLong();
+            } else if (BString.canParsePrefix(prefix)) {
+                reader.readString();
+                tape[element * 2] = word(STRING, reader.stringOffset());
+                tape[element * 2 + 1] = reader.stringLength();
+            } else {
+                throw new BencodeException("No parser found for prefix '" + (char) prefix + "' at offset " + reader.position());
+            }
+        } while (depth > 0);
+
+        return count;
+    }
+}
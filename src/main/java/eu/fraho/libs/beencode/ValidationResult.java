@@ -0,0 +1,65 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode;
+
+import net.jcip.annotations.Immutable;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Outcome of a {@link BencodeValidator} run.
+ */
+@Immutable
+public final class ValidationResult {
+    static final ValidationResult VALID = new ValidationResult(-1, null);
+
+    private final int offset;
+    private final String message;
+
+    private ValidationResult(int offset, @Nullable String message) {
+        this.offset = offset;
+        this.message = message;
+    }
+
+    @NotNull
+    static ValidationResult error(int offset, @NotNull String message) {
+        return new ValidationResult(offset, message);
+    }
+
+    public boolean isValid() {
+        return message == null;
+    }
+
+    /**
+     * @return the offset of the first error within the validated array, or -1 if the data is valid
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the description of the first error, or null if the data is valid
+     */
+    @Nullable
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @throws BencodeException if the data is not valid
+     */
+    public void throwIfInvalid() {
+        if (message != null) {
+            throw new BencodeException(message + " at offset " + offset);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return message == null ? "valid" : message + " at offset " + offset;
+    }
+}
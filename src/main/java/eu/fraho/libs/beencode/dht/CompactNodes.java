@@ -0,0 +1,118 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode.dht;
+
+import eu.fraho.libs.beencode.BencodeException;
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Growable list of DHT nodes in the compact node info format (20 byte node id, 4 byte IPv4 address
+ * and 2 byte port), backed by primitive arrays. Can be reused after {@link #clear()}.
+ */
+@NotThreadSafe
+public final class CompactNodes {
+    public static final int ID_LENGTH = 20;
+    public static final int ENTRY_LENGTH = 26;
+    private static final int INITIAL_CAPACITY = 8;
+
+    private byte[] ids = new byte[INITIAL_CAPACITY * ID_LENGTH];
+    private int[] addresses = new int[INITIAL_CAPACITY];
+    private int[] ports = new int[INITIAL_CAPACITY];
+    private int size;
+
+    private CompactNodes() {
+    }
+
+    @NotNull
+    public static CompactNodes of() {
+        return new CompactNodes();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void copyId(int index, @NotNull byte[] dst, int offset) {
+        checkIndex(index);
+        System.arraycopy(ids, index * ID_LENGTH, dst, offset, ID_LENGTH);
+    }
+
+    @NotNull
+    public byte[] getId(int index) {
+        byte[] result = new byte[ID_LENGTH];
+        copyId(index, result, 0);
+        return result;
+    }
+
+    public int address(int index) {
+        checkIndex(index);
+        return addresses[index];
+    }
+
+    public int port(int index) {
+        checkIndex(index);
+        return ports[index];
+    }
+
+    public void add(@NotNull byte[] id, int idOffset, int address, int port) {
+        Objects.requireNonNull(id, "id may not be null");
+        ensureCapacity(size + 1);
+        System.arraycopy(id, idOffset, ids, size * ID_LENGTH, ID_LENGTH);
+        addresses[size] = address;
+        ports[size++] = port & 0xFFFF;
+    }
+
+    public void addCompact(@NotNull byte[] data, int offset, int length) {
+        Objects.requireNonNull(data, "data may not be null");
+        if (length % ENTRY_LENGTH != 0) {
+            throw new BencodeException("Invalid compact nodes, length " + length + " is not a multiple of " + ENTRY_LENGTH);
+        }
+        ensureCapacity(size + length / ENTRY_LENGTH);
+        for (int end = offset + length; offset < end; offset += ENTRY_LENGTH) {
+            System.arraycopy(data, offset, ids, size * ID_LENGTH, ID_LENGTH);
+            int address = offset + ID_LENGTH;
+            addresses[size] = (data[address] & 0xFF) << 24 | (data[address + 1] & 0xFF) << 16
+                    | (data[address + 2] & 0xFF) << 8 | data[address + 3] & 0xFF;
+            ports[size++] = (data[address + 4] & 0xFF) << 8 | data[address + 5] & 0xFF;
+        }
+    }
+
+    public void writeTo(@NotNull ByteBuffer out) {
+        Objects.requireNonNull(out, "out may not be null");
+        for (int i = 0; i < size; i++) {
+            out.put(ids, i * ID_LENGTH, ID_LENGTH).putInt(addresses[i]).putShort((short) ports[i]);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > ports.length) {
+            int newCapacity = Math.max(capacity, ports.length * 2);
+            ids = Arrays.copyOf(ids, newCapacity * ID_LENGTH);
+            addresses = Arrays.copyOf(addresses, newCapacity);
+            ports = Arrays.copyOf(ports, newCapacity);
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for size " + size);
+        }
+    }
+}
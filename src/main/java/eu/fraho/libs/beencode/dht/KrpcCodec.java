@@ -0,0 +1,367 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode.dht;
+
+import eu.fraho.libs.beencode.BencodeException;
+import eu.fraho.libs.beencode.torrent.CompactPeers;
+import net.jcip.annotations.ThreadSafe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Decoder and encoder for the KRPC messages of the BitTorrent DHT (BEP 5). Decoded messages and
+ * encoded buffers are taken from bounded pools and have to be given back after use, so a steady
+ * message loop does not allocate any new messages or buffers. All methods are safe to be called
+ * from multiple threads, the returned messages and buffers are not.
+ */
+@ThreadSafe
+public final class KrpcCodec {
+    public static final int DEFAULT_POOL_SIZE = 64;
+    public static final int DEFAULT_BUFFER_SIZE = 2048;
+    private static final byte DICT = 'd';
+    private static final byte LIST = 'l';
+    private static final byte INTEGER = 'i';
+    private static final byte END = 'e';
+    private static final byte SEPARATOR = ':';
+
+    private final BlockingQueue<KrpcMessage> messages;
+    private final BlockingQueue<ByteBuffer> buffers;
+    private final int bufferSize;
+    private final boolean direct;
+
+    private KrpcCodec(int poolSize, int bufferSize, boolean direct) {
+        this.messages = new ArrayBlockingQueue<>(poolSize);
+        this.buffers = new ArrayBlockingQueue<>(poolSize);
+        this.bufferSize = bufferSize;
+        this.direct = direct;
+    }
+
+    @NotNull
+    public static KrpcCodec of() {
+        return of(DEFAULT_POOL_SIZE, DEFAULT_BUFFER_SIZE, false);
+    }
+
+    @NotNull
+    public static KrpcCodec of(int poolSize, int bufferSize, boolean direct) {
+        if (poolSize < 1) {
+            throw new BencodeException("poolSize has to be positive (is " + poolSize + ")");
+        }
+        if (bufferSize < 1) {
+            throw new BencodeException("bufferSize has to be positive (is " + bufferSize + ")");
+        }
+        return new KrpcCodec(poolSize, bufferSize, direct);
+    }
+
+    @NotNull
+    public KrpcMessage decode(@NotNull byte[] data) {
+        Objects.requireNonNull(data, "data may not be null");
+        return decode(data, 0, data.length);
+    }
+
+    @NotNull
+    public KrpcMessage decode(@NotNull byte[] data, int offset, int length) {
+        Objects.requireNonNull(data, "data may not be null");
+        KrpcMessage message = messages.poll();
+        if (message == null) {
+            message = new KrpcMessage(this);
+        }
+        try {
+            message.parse(data, offset, length);
+        } catch (RuntimeException e) {
+            release(message);
+            throw e;
+        }
+        return message;
+    }
+
+    /**
+     * Decodes the remaining bytes of a heap buffer. The position of the buffer is not changed.
+     */
+    @NotNull
+    public KrpcMessage decode(@NotNull ByteBuffer datagram) {
+        Objects.requireNonNull(datagram, "datagram may not be null");
+        if (!datagram.hasArray()) {
+            throw new BencodeException("Only heap buffers can be decoded, copy direct buffers into a byte[] first");
+        }
+        return decode(datagram.array(), datagram.arrayOffset() + datagram.position(), datagram.remaining());
+    }
+
+    /**
+     * Hands the message back to the pool, like {@link KrpcMessage#close()} does.
+     *
+     * @throws IllegalStateException if the message has already been released
+     */
+    public void release(@NotNull KrpcMessage message) {
+        Objects.requireNonNull(message, "message may not be null");
+        message.markReleased();
+        messages.offer(message);
+    }
+
+    @NotNull
+    public ByteBuffer acquireBuffer() {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            buffer = direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    public void release(@NotNull ByteBuffer buffer) {
+        Objects.requireNonNull(buffer, "buffer may not be null");
+        if (buffer.capacity() == bufferSize && buffer.isDirect() == direct) {
+            buffers.offer(buffer);
+        }
+    }
+
+    @NotNull
+    public ByteBuffer ping(@NotNull byte[] transactionId, @NotNull byte[] nodeId) {
+        ByteBuffer out = acquireBuffer();
+        try {
+            out.put(DICT);
+            putKey(out, "a");
+            out.put(DICT);
+            putKey(out, "id");
+            putBytes(out, nodeId, 0, nodeId.length);
+            out.put(END);
+            putQueryHeader(out, "ping", transactionId);
+            return finish(out);
+        } catch (BufferOverflowException e) {
+            throw overflow(out);
+        }
+    }
+
+    @NotNull
+    public ByteBuffer findNode(@NotNull byte[] transactionId, @NotNull byte[] nodeId, @NotNull byte[] target) {
+        ByteBuffer out = acquireBuffer();
+        try {
+            out.put(DICT);
+            putKey(out, "a");
+            out.put(DICT);
+            putKey(out, "id");
+            putBytes(out, nodeId, 0, nodeId.length);
+            putKey(out, "target");
+            putBytes(out, target, 0, target.length);
+            out.put(END);
+            putQueryHeader(out, "find_node", transactionId);
+            return finish(out);
+        } catch (BufferOverflowException e) {
+            throw overflow(out);
+        }
+    }
+
+    @NotNull
+    public ByteBuffer getPeers(@NotNull byte[] transactionId, @NotNull byte[] nodeId, @NotNull byte[] infoHash) {
+        ByteBuffer out = acquireBuffer();
+        try {
+            out.put(DICT);
+            putKey(out, "a");
+            out.put(DICT);
+            putKey(out, "id");
+            putBytes(out, nodeId, 0, nodeId.length);
+            putKey(out, "info_hash");
+            putBytes(out, infoHash, 0, infoHash.length);
+            out.put(END);
+            putQueryHeader(out, "get_peers", transactionId);
+            return finish(out);
+        } catch (BufferOverflowException e) {
+            throw overflow(out);
+        }
+    }
+
+    @NotNull
+    public ByteBuffer announcePeer(@NotNull byte[] transactionId, @NotNull byte[] nodeId, @NotNull byte[] infoHash,
+                                   int port, @NotNull byte[] token, boolean impliedPort) {
+        ByteBuffer out = acquireBuffer();
+        try {
+            out.put(DICT);
+            putKey(out, "a");
+            out.put(DICT);
+            putKey(out, "id");
+            putBytes(out, nodeId, 0, nodeId.length);
+            if (impliedPort) {
+                putKey(out, "implied_port");
+                putLong(out, 1);
+            }
+            putKey(out, "info_hash");
+            putBytes(out, infoHash, 0, infoHash.length);
+            putKey(out, "port");
+            putLong(out, port);
+            putKey(out, "token");
+            putBytes(out, token, 0, token.length);
+            out.put(END);
+            putQueryHeader(out, "announce_peer", transactionId);
+            return finish(out);
+        } catch (BufferOverflowException e) {
+            throw overflow(out);
+        }
+    }
+
+    /**
+     * Encodes the response to a ping or announce_peer query.
+     */
+    @NotNull
+    public ByteBuffer pingResponse(@NotNull KrpcMessage query, @NotNull byte[] nodeId) {
+        return response(query, nodeId, null, null, null);
+    }
+
+    @NotNull
+    public ByteBuffer findNodeResponse(@NotNull KrpcMessage query, @NotNull byte[] nodeId, @NotNull CompactNodes nodes) {
+        Objects.requireNonNull(nodes, "nodes may not be null");
+        return response(query, nodeId, nodes, null, null);
+    }
+
+    /**
+     * Encodes the response to a get_peers query, containing either peers, nodes or both.
+     */
+    @NotNull
+    public ByteBuffer getPeersResponse(@NotNull KrpcMessage query, @NotNull byte[] nodeId, @NotNull byte[] token,
+                                       @Nullable CompactPeers peers, @Nullable CompactNodes nodes) {
+        Objects.requireNonNull(token, "token may not be null");
+        return response(query, nodeId, nodes, token, peers);
+    }
+
+    @NotNull
+    public ByteBuffer error(@NotNull KrpcMessage query, int code, @NotNull String message) {
+        Objects.requireNonNull(query, "query may not be null");
+        Objects.requireNonNull(message, "message may not be null");
+        ByteBuffer out = acquireBuffer();
+        try {
+            out.put(DICT);
+            putKey(out, "e");
+            out.put(LIST);
+            putLong(out, code);
+            byte[] text = message.getBytes(StandardCharsets.UTF_8);
+            putBytes(out, text, 0, text.length);
+            out.put(END);
+            putKey(out, "t");
+            putBytes(out, query.buffer(), query.transactionOffset(), query.getTransactionIdLength());
+            putKey(out, "y");
+            putKey(out, "e");
+            out.put(END);
+            return finish(out);
+        } catch (BufferOverflowException e) {
+            throw overflow(out);
+        }
+    }
+
+    @NotNull
+    private ByteBuffer response(@NotNull KrpcMessage query, @NotNull byte[] nodeId, @Nullable CompactNodes nodes,
+                                @Nullable byte[] token, @Nullable CompactPeers peers) {
+        Objects.requireNonNull(query, "query may not be null");
+        Objects.requireNonNull(nodeId, "nodeId may not be null");
+        ByteBuffer out = acquireBuffer();
+        try {
+            out.put(DICT);
+            putKey(out, "r");
+            out.put(DICT);
+            putKey(out, "id");
+            putBytes(out, nodeId, 0, nodeId.length);
+            if (nodes != null) {
+                putKey(out, "nodes");
+                putLength(out, nodes.size() * CompactNodes.ENTRY_LENGTH);
+                nodes.writeTo(out);
+            }
+            if (token != null) {
+                putKey(out, "token");
+                putBytes(out, token, 0, token.length);
+            }
+            if (peers != null) {
+                putKey(out, "values");
+                out.put(LIST);
+                for (int i = 0; i < peers.size(); i++) {
+                    putLength(out, peers.entryLength());
+                    if (peers.isIpv6()) {
+                        out.putLong(peers.addressHigh(i)).putLong(peers.addressLow(i));
+                    } else {
+                        out.putInt(peers.address(i));
+                    }
+                    out.putShort((short) peers.port(i));
+                }
+                out.put(END);
+            }
+            out.put(END);
+            putKey(out, "t");
+            putBytes(out, query.buffer(), query.transactionOffset(), query.getTransactionIdLength());
+            putKey(out, "y");
+            putKey(out, "r");
+            out.put(END);
+            return finish(out);
+        } catch (BufferOverflowException e) {
+            throw overflow(out);
+        }
+    }
+
+    private static void putQueryHeader(@NotNull ByteBuffer out, @NotNull String method, @NotNull byte[] transactionId) {
+        putKey(out, "q");
+        putKey(out, method);
+        putKey(out, "t");
+        putBytes(out, transactionId, 0, transactionId.length);
+        putKey(out, "y");
+        putKey(out, "q");
+        out.put(END);
+    }
+
+    @NotNull
+    private static ByteBuffer finish(@NotNull ByteBuffer out) {
+        out.flip();
+        return out;
+    }
+
+    @NotNull
+    private BencodeException overflow(@NotNull ByteBuffer out) {
+        release(out);
+        return new BencodeException("Message does not fit into a buffer of " + bufferSize + " bytes");
+    }
+
+    private static void putKey(@NotNull ByteBuffer out, @NotNull String ascii) {
+        putLength(out, ascii.length());
+        for (int i = 0; i < ascii.length(); i++) {
+            out.put((byte) ascii.charAt(i));
+        }
+    }
+
+    private static void putBytes(@NotNull ByteBuffer out, @NotNull byte[] data, int offset, int length) {
+        putLength(out, length);
+        out.put(data, offset, length);
+    }
+
+    private static void putLength(@NotNull ByteBuffer out, int length) {
+        putDigits(out, length);
+        out.put(SEPARATOR);
+    }
+
+    private static void putLong(@NotNull ByteBuffer out, long value) {
+        out.put(INTEGER);
+        if (value < 0) {
+            out.put((byte) '-');
+            if (value == Long.MIN_VALUE) {
+                out.put("9223372036854775808".getBytes(StandardCharsets.US_ASCII));
+                out.put(END);
+                return;
+            }
+            value = -value;
+        }
+        putDigits(out, value);
+        out.put(END);
+    }
+
+    private static void putDigits(@NotNull ByteBuffer out, long value) {
+        long divisor = 1;
+        while (divisor <= value / 10) divisor *= 10;
+        for (; divisor > 0; divisor /= 10) {
+            out.put((byte) ('0' + value / divisor % 10));
+        }
+    }
+}
@@ -0,0 +1,396 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode.dht;
+
+import eu.fraho.libs.beencode.BencodeException;
+import eu.fraho.libs.beencode.BencodeReader;
+import eu.fraho.libs.beencode.torrent.CompactPeers;
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A decoded KRPC message. Instances are pooled by the {@link KrpcCodec} and have to be released
+ * by calling {@link #close()} once the message has been processed; they may not be used afterwards.
+ * <p>
+ * The message keeps a copy of the datagram, the values of the "a" (query arguments) or "r" (response)
+ * dictionary are only located, not decoded. Keys are passed as strings and compared against the raw
+ * bytes, so the accessors do not allocate unless they return a new array or string.
+ */
+@NotThreadSafe
+public final class KrpcMessage implements AutoCloseable {
+    private static final int INITIAL_BUFFER = 512;
+    private static final int INITIAL_ENTRIES = 8;
+    private static final KrpcQuery[] QUERIES = KrpcQuery.values();
+
+    @Nullable
+    private final KrpcCodec codec;
+    private final BencodeReader reader = BencodeReader.of(new byte[0]);
+    private byte[] buffer = new byte[INITIAL_BUFFER];
+    private int length;
+    private boolean released = true;
+
+    private Type type;
+    private KrpcQuery query;
+    private int transactionOffset;
+    private int transactionLength;
+    private int queryOffset;
+    private int queryLength;
+    private long errorCode;
+    private int errorOffset;
+    private int errorLength;
+
+    private int entries;
+    private int[] keyOffsets = new int[INITIAL_ENTRIES];
+    private int[] keyLengths = new int[INITIAL_ENTRIES];
+    private int[] valueOffsets = new int[INITIAL_ENTRIES];
+    private int[] valueEnds = new int[INITIAL_ENTRIES];
+
+    KrpcMessage(@Nullable KrpcCodec codec) {
+        this.codec = codec;
+    }
+
+    void parse(@NotNull byte[] data, int offset, int length) {
+        if (buffer.length < length) {
+            buffer = new byte[Math.max(length, buffer.length * 2)];
+        }
+        System.arraycopy(data, offset, buffer, 0, length);
+        this.length = length;
+        released = false;
+        type = null;
+        query = null;
+        transactionLength = -1;
+        queryLength = -1;
+        errorCode = 0;
+        errorLength = -1;
+        entries = 0;
+
+        BencodeReader r = reader.reset(buffer, 0, length);
+        r.enterDict();
+        while (r.hasNext()) {
+            r.readString();
+            int keyOffset = r.stringOffset();
+            int keyLength = r.stringLength();
+            if (keyLength == 1) {
+                switch (buffer[keyOffset]) {
+                    case 't':
+                        r.readString();
+                        transactionOffset = r.stringOffset();
+                        transactionLength = r.stringLength();
+                        continue;
+                    case 'y':
+                        r.readString();
+                        type = parseType(r);
+                        continue;
+                    case 'q':
+                        r.readString();
+                        queryOffset = r.stringOffset();
+                        queryLength = r.stringLength();
+                        continue;
+                    case 'a':
+                    case 'r':
+                        parseBody(r);
+                        continue;
+                    case 'e':
+                        parseError(r);
+                        continue;
+                    default:
+                        break;
+                }
+            }
+            r.skipValue();
+        }
+        r.exit();
+
+        if (type == null) {
+            throw new BencodeException("Invalid KRPC message, missing message type 'y'");
+        }
+        if (transactionLength < 0) {
+            throw new BencodeException("Invalid KRPC message, missing transaction id 't'");
+        }
+        if (type == Type.QUERY) {
+            if (queryLength < 0) {
+                throw new BencodeException("Invalid KRPC query, missing method name 'q'");
+            }
+            query = parseQuery();
+        }
+    }
+
+    @NotNull
+    private Type parseType(@NotNull BencodeReader r) {
+        if (r.stringLength() == 1) {
+            switch (buffer[r.stringOffset()]) {
+                case 'q':
+                    return Type.QUERY;
+                case 'r':
+                    return Type.RESPONSE;
+                case 'e':
+                    return Type.ERROR;
+                default:
+                    break;
+            }
+        }
+        throw new BencodeException("Invalid KRPC message type at offset " + r.stringOffset());
+    }
+
+    @NotNull
+    private KrpcQuery parseQuery() {
+        for (KrpcQuery candidate : QUERIES) {
+            if (candidate != KrpcQuery.UNKNOWN && equalsAscii(queryOffset, queryLength, candidate.getMethod())) {
+                return candidate;
+            }
+        }
+        return KrpcQuery.UNKNOWN;
+    }
+
+    private void parseBody(@NotNull BencodeReader r) {
+        r.enterDict();
+        while (r.hasNext()) {
+            r.readString();
+            if (entries == keyOffsets.length) {
+                int capacity = entries * 2;
+                keyOffsets = Arrays.copyOf(keyOffsets, capacity);
+                keyLengths = Arrays.copyOf(keyLengths, capacity);
+                valueOffsets = Arrays.copyOf(valueOffsets, capacity);
+                valueEnds = Arrays.copyOf(valueEnds, capacity);
+            }
+            keyOffsets[entries] = r.stringOffset();
+            keyLengths[entries] = r.stringLength();
+            valueOffsets[entries] = r.position();
+            r.skipValue();
+            valueEnds[entries++] = r.position();
+        }
+        r.exit();
+    }
+
+    private void parseError(@NotNull BencodeReader r) {
+        r.enterList();
+        if (r.hasNext() && r.isInteger()) {
+            errorCode = r.readLong();
+        }
+        if (r.hasNext() && r.isString()) {
+            r.readString();
+            errorOffset = r.stringOffset();
+            errorLength = r.stringLength();
+        }
+        while (r.hasNext()) r.skipValue();
+        r.exit();
+    }
+
+    @NotNull
+    public Type getType() {
+        return type;
+    }
+
+    public boolean isQuery() {
+        return type == Type.QUERY;
+    }
+
+    public boolean isResponse() {
+        return type == Type.RESPONSE;
+    }
+
+    public boolean isError() {
+        return type == Type.ERROR;
+    }
+
+    /**
+     * @return the method of a query, {@link KrpcQuery#UNKNOWN} for unsupported methods and null for responses
+     */
+    @Nullable
+    public KrpcQuery getQuery() {
+        return query;
+    }
+
+    @Nullable
+    public String getQueryName() {
+        return queryLength < 0 ? null : new String(buffer, queryOffset, queryLength, StandardCharsets.ISO_8859_1);
+    }
+
+    public int getTransactionIdLength() {
+        return transactionLength;
+    }
+
+    public int copyTransactionId(@NotNull byte[] dst, int offset) {
+        System.arraycopy(buffer, transactionOffset, dst, offset, transactionLength);
+        return transactionLength;
+    }
+
+    @NotNull
+    public byte[] getTransactionId() {
+        return Arrays.copyOfRange(buffer, transactionOffset, transactionOffset + transactionLength);
+    }
+
+    public long getErrorCode() {
+        return errorCode;
+    }
+
+    @Nullable
+    public String getErrorMessage() {
+        return errorLength < 0 ? null : new String(buffer, errorOffset, errorLength, StandardCharsets.UTF_8);
+    }
+
+    public boolean contains(@NotNull String key) {
+        return find(key) >= 0;
+    }
+
+    public long getLong(@NotNull String key, long defaultValue) {
+        int index = find(key);
+        if (index < 0) return defaultValue;
+        BencodeReader r = valueReader(index);
+        if (!r.isInteger()) {
+            throw new BencodeException("Value of '" + key + "' is not an integer");
+        }
+        return r.readLong();
+    }
+
+    /**
+     * @return the length of the copied string or -1 if the key does not exist
+     */
+    public int copyBytes(@NotNull String key, @NotNull byte[] dst, int offset) {
+        Objects.requireNonNull(dst, "dst may not be null");
+        int index = find(key);
+        if (index < 0) return -1;
+        BencodeReader r = stringReader(index, key);
+        System.arraycopy(buffer, r.stringOffset(), dst, offset, r.stringLength());
+        return r.stringLength();
+    }
+
+    @Nullable
+    public byte[] getBytes(@NotNull String key) {
+        int index = find(key);
+        if (index < 0) return null;
+        BencodeReader r = stringReader(index, key);
+        return Arrays.copyOfRange(buffer, r.stringOffset(), r.stringOffset() + r.stringLength());
+    }
+
+    /**
+     * Copies the 20 byte node id ("id") of the sender.
+     *
+     * @return false if the message does not contain a valid node id
+     */
+    public boolean copyNodeId(@NotNull byte[] dst, int offset) {
+        int index = find("id");
+        if (index < 0) return false;
+        BencodeReader r = stringReader(index, "id");
+        if (r.stringLength() != CompactNodes.ID_LENGTH) return false;
+        System.arraycopy(buffer, r.stringOffset(), dst, offset, CompactNodes.ID_LENGTH);
+        return true;
+    }
+
+    /**
+     * Appends the compact node info of the "nodes" value to the given list.
+     *
+     * @return the number of nodes added
+     */
+    public int readNodes(@NotNull CompactNodes out) {
+        Objects.requireNonNull(out, "out may not be null");
+        int index = find("nodes");
+        if (index < 0) return 0;
+        BencodeReader r = stringReader(index, "nodes");
+        int before = out.size();
+        out.addCompact(buffer, r.stringOffset(), r.stringLength());
+        return out.size() - before;
+    }
+
+    /**
+     * Appends the peers of the "values" list to the given list. Entries not matching the address
+     * family of the list are skipped.
+     *
+     * @return the number of peers added
+     */
+    public int readPeers(@NotNull CompactPeers out) {
+        Objects.requireNonNull(out, "out may not be null");
+        int index = find("values");
+        if (index < 0) return 0;
+        BencodeReader r = valueReader(index);
+        int before = out.size();
+        r.enterList();
+        while (r.hasNext()) {
+            r.readString();
+            if (r.stringLength() == out.entryLength()) {
+                out.addCompact(buffer, r.stringOffset(), r.stringLength());
+            }
+        }
+        r.exit();
+        return out.size() - before;
+    }
+
+    @NotNull
+    public byte[] getEncoded() {
+        return Arrays.copyOf(buffer, length);
+    }
+
+    /**
+     * Releases the message, a message which has already been released is left alone.
+     */
+    @Override
+    public void close() {
+        if (codec != null && !released) {
+            codec.release(this);
+        }
+    }
+
+    /**
+     * Marks the message as released, so it is pooled only once.
+     */
+    void markReleased() {
+        if (released) {
+            throw new IllegalStateException("Message has already been released");
+        }
+        released = true;
+    }
+
+    private int find(@NotNull String key) {
+        for (int i = 0; i < entries; i++) {
+            if (equalsAscii(keyOffsets[i], keyLengths[i], key)) return i;
+        }
+        return -1;
+    }
+
+    @NotNull
+    private BencodeReader valueReader(int index) {
+        return reader.reset(buffer, valueOffsets[index], valueEnds[index] - valueOffsets[index]);
+    }
+
+    @NotNull
+    private BencodeReader stringReader(int index, @NotNull String key) {
+        BencodeReader r = valueReader(index);
+        if (!r.isString()) {
+            throw new BencodeException("Value of '" + key + "' is not a string");
+        }
+        r.readString();
+        return r;
+    }
+
+    private boolean equalsAscii(int offset, int len, @NotNull String expected) {
+        if (len != expected.length()) return false;
+        for (int i = 0; i < len; i++) {
+            if (buffer[offset + i] != expected.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    int transactionOffset() {
+        return transactionOffset;
+    }
+
+    @NotNull
+    byte[] buffer() {
+        return buffer;
+    }
+
+    public enum Type {
+        QUERY,
+        RESPONSE,
+        ERROR
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode.dht;
+
+import org.jetbrains.annotations.NotNull;
+
+public enum KrpcQuery {
+    PING("ping"),
+    FIND_NODE("find_node"),
+    GET_PEERS("get_peers"),
+    ANNOUNCE_PEER("announce_peer"),
+    UNKNOWN("");
+
+    @NotNull
+    private final String method;
+
+    KrpcQuery(@NotNull String method) {
+        this.method = method;
+    }
+
+    @NotNull
+    public String getMethod() {
+        return method;
+    }
+}
@@ -0,0 +1,20 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode.mapper;
+
+import java.lang.annotation.*;
+
+/**
+ * Marks the constructor used to create instances of immutable classes. Every parameter
+ * has to be annotated with {@link BencodeKey}. Records use their canonical constructor
+ * and do not need this annotation.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.CONSTRUCTOR)
+public @interface BencodeCreator {
+}
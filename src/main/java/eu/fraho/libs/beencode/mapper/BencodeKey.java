@@ -0,0 +1,19 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode.mapper;
+
+import java.lang.annotation.*;
+
+/**
+ * Overrides the dictionary key of a field or creator parameter, which defaults to the field name.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.PARAMETER})
+public @interface BencodeKey {
+    String value();
+}
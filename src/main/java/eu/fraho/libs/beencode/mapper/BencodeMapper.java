@@ -0,0 +1,107 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode.mapper;
+
+import eu.fraho.libs.beencode.BDict;
+import eu.fraho.libs.beencode.BNode;
+import eu.fraho.libs.beencode.BencodeException;
+import eu.fraho.libs.beencode.BencodeReader;
+import net.jcip.annotations.ThreadSafe;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+
+/**
+ * Binds bencoded dictionaries to plain java objects and back. Each non-static, non-transient field
+ * is mapped to the key given by {@link BencodeKey} or its name, unless it is annotated with
+ * {@link BencodeIgnore}. Supported field types are strings (UTF-8), byte arrays, integral numbers,
+ * booleans (0 / 1), enums (by name), nodes, lists, maps with string keys and other mapped classes.
+ * <p>
+ * The metadata of a class is built on first use and cached by the mapper, so an instance should be
+ * shared.
+ * <p>
+ * The {@code read} methods bind encoded bytes directly to objects, without building the node tree
+ * first. Unknown keys are skipped on the byte level.
+ */
+@ThreadSafe
+public final class BencodeMapper {
+    private final ClassValue<ClassMapping> mappings = new ClassValue<ClassMapping>() {
+        @Override
+        protected ClassMapping computeValue(Class<?> type) {
+            return ClassMapping.of(BencodeMapper.this, type);
+        }
+    };
+
+    private BencodeMapper() {
+    }
+
+    @NotNull
+    public static BencodeMapper of() {
+        return new BencodeMapper();
+    }
+
+    @NotNull
+    public BDict toDict(@NotNull Object value) {
+        Objects.requireNonNull(value, "value may not be null");
+        return mapping(value.getClass()).encode(value);
+    }
+
+    @NotNull
+    public <T> T fromNode(@NotNull BNode<?> node, @NotNull Class<T> type) {
+        Objects.requireNonNull(node, "node may not be null");
+        Objects.requireNonNull(type, "type may not be null");
+        if (!(node instanceof BDict)) {
+            throw new BencodeException("Expected a BDict, but got " + node.getClass().getSimpleName());
+        }
+        return type.cast(mapping(type).decode((BDict) node));
+    }
+
+    @NotNull
+    public <T> T read(@NotNull byte[] data, @NotNull Class<T> type) {
+        Objects.requireNonNull(data, "data may not be null");
+        return read(data, 0, data.length, type);
+    }
+
+    @NotNull
+    public <T> T read(@NotNull byte[] data, int offset, int length, @NotNull Class<T> type) {
+        Objects.requireNonNull(data, "data may not be null");
+        return read(BencodeReader.of(data, offset, length), type);
+    }
+
+    /**
+     * Reads the next dictionary of the reader into a new instance of the given type.
+     */
+    @NotNull
+    public <T> T read(@NotNull BencodeReader reader, @NotNull Class<T> type) {
+        Objects.requireNonNull(reader, "reader may not be null");
+        Objects.requireNonNull(type, "type may not be null");
+        return type.cast(mapping(type).read(reader));
+    }
+
+    /**
+     * Reads the whole stream and binds its content to a new instance of the given type.
+     */
+    @NotNull
+    public <T> T read(@NotNull InputStream is, @NotNull Class<T> type) throws IOException {
+        Objects.requireNonNull(is, "is may not be null");
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = is.read(buffer)) >= 0) {
+            bos.write(buffer, 0, read);
+        }
+        return read(bos.toByteArray(), type);
+    }
+
+    @NotNull
+    ClassMapping mapping(@NotNull Class<?> type) {
+        return mappings.get(type);
+    }
+}
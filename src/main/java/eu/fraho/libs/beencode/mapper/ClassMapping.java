@@ -0,0 +1,313 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode.mapper;
+
+import eu.fraho.libs.beencode.*;
+import net.jcip.annotations.Immutable;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Metadata of a mapped class. Built once per class, afterwards fields are only accessed through
+ * the precompiled method handles.
+ */
+@Immutable
+final class ClassMapping {
+    private static final MethodType GETTER = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+    private static final String RECORD = "java.lang.Record";
+
+    private final Class<?> type;
+    private final Property[] properties;
+    private final Map<BString, Property> byKey;
+    private final KeyTable<Property> keyTable;
+    private final MethodHandle constructor;
+    private final boolean creator;
+    private final Object[] defaults;
+
+    private ClassMapping(@NotNull Class<?> type, @NotNull Property[] properties, @NotNull MethodHandle constructor,
+                         boolean creator, @NotNull Object[] defaults) {
+        this.type = type;
+        this.properties = properties;
+        this.constructor = constructor;
+        this.creator = creator;
+        this.defaults = defaults;
+        this.byKey = new HashMap<>();
+        byte[][] keys = new byte[properties.length][];
+        for (int i = 0; i < properties.length; i++) {
+            if (byKey.put(properties[i].key, properties[i]) != null) {
+                throw new BencodeException("Duplicate key '" + properties[i].key + "' in " + type.getName());
+            }
+            keys[i] = properties[i].key.getValue();
+        }
+        this.keyTable = new KeyTable<>(keys, properties);
+    }
+
+    @NotNull
+    static ClassMapping of(@NotNull BencodeMapper mapper, @NotNull Class<?> type) {
+        if (type.isInterface() || Modifier.isAbstract(type.getModifiers()) || type.isEnum() || type.isArray()) {
+            throw new BencodeException("Cannot map " + type.getName());
+        }
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        List<Field> fields = new ArrayList<>();
+        for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+            List<Field> declared = new ArrayList<>();
+            for (Field field : current.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()
+                        || field.isAnnotationPresent(BencodeIgnore.class)) {
+                    continue;
+                }
+                declared.add(field);
+            }
+            fields.addAll(0, declared);
+        }
+
+        try {
+            Constructor<?> creator = findCreator(type, fields);
+            Property[] properties = new Property[fields.size()];
+            for (int i = 0; i < properties.length; i++) {
+                Field field = fields.get(i);
+                field.setAccessible(true);
+                MethodHandle getter = lookup.unreflectGetter(field).asType(GETTER);
+                MethodHandle setter = null;
+                if (creator == null) {
+                    if (Modifier.isFinal(field.getModifiers())) {
+                        throw new BencodeException("Field " + field + " is final, please annotate a constructor with @"
+                                + BencodeCreator.class.getSimpleName());
+                    }
+                    setter = lookup.unreflectSetter(field).asType(SETTER);
+                }
+                properties[i] = new Property(key(field), getter, setter, i, Codecs.resolve(mapper, field.getGenericType()));
+            }
+
+            MethodHandle constructor;
+            Object[] defaults = new Object[properties.length];
+            if (creator != null) {
+                creator.setAccessible(true);
+                properties = reorder(creator, properties);
+                for (Property property : properties) {
+                    Class<?> parameter = creator.getParameterTypes()[property.index];
+                    defaults[property.index] = parameter.isPrimitive() ? primitiveDefault(parameter) : null;
+                }
+                constructor = lookup.unreflectConstructor(creator)
+                        .asSpreader(Object[].class, properties.length)
+                        .asType(MethodType.methodType(Object.class, Object[].class));
+            } else {
+                Constructor<?> noArgs = type.getDeclaredConstructor();
+                noArgs.setAccessible(true);
+                constructor = lookup.unreflectConstructor(noArgs).asType(MethodType.methodType(Object.class));
+            }
+            return new ClassMapping(type, properties, constructor, creator != null, defaults);
+        } catch (NoSuchMethodException e) {
+            throw new BencodeException("Class " + type.getName() + " needs a no-args constructor or a constructor "
+                    + "annotated with @" + BencodeCreator.class.getSimpleName());
+        } catch (IllegalAccessException e) {
+            throw new BencodeException(e);
+        }
+    }
+
+    @Nullable
+    private static Constructor<?> findCreator(@NotNull Class<?> type, @NotNull List<Field> fields)
+            throws NoSuchMethodException {
+        for (Constructor<?> constructor : type.getDeclaredConstructors()) {
+            if (constructor.isAnnotationPresent(BencodeCreator.class)) {
+                return constructor;
+            }
+        }
+        if (type.getSuperclass() != null && RECORD.equals(type.getSuperclass().getName())) {
+            // the canonical constructor of a record takes all components in declaration order
+            Class<?>[] parameters = new Class<?>[fields.size()];
+            for (int i = 0; i < parameters.length; i++) parameters[i] = fields.get(i).getType();
+            return type.getDeclaredConstructor(parameters);
+        }
+        return null;
+    }
+
+    @NotNull
+    private static Property[] reorder(@NotNull Constructor<?> creator, @NotNull Property[] properties) {
+        boolean record = RECORD.equals(creator.getDeclaringClass().getSuperclass().getName())
+                && !creator.isAnnotationPresent(BencodeCreator.class);
+        if (record) {
+            return properties;
+        }
+
+        Annotation[][] annotations = creator.getParameterAnnotations();
+        if (annotations.length != properties.length) {
+            throw new BencodeException("Creator " + creator + " has to take all " + properties.length + " properties");
+        }
+        Property[] result = new Property[properties.length];
+        for (int i = 0; i < annotations.length; i++) {
+            BencodeKey key = null;
+            for (Annotation annotation : annotations[i]) {
+                if (annotation instanceof BencodeKey) key = (BencodeKey) annotation;
+            }
+            if (key == null) {
+                throw new BencodeException("Parameter #" + i + " of " + creator + " is not annotated with @"
+                        + BencodeKey.class.getSimpleName());
+            }
+            BString name = BString.of(key.value(), StandardCharsets.UTF_8);
+            for (Property property : properties) {
+                if (property.key.equals(name)) {
+                    result[i] = property.withIndex(i);
+                }
+            }
+            if (result[i] == null) {
+                throw new BencodeException("Parameter #" + i + " of " + creator + " does not match any field");
+            }
+        }
+        return result;
+    }
+
+    @NotNull
+    private static BString key(@NotNull Field field) {
+        BencodeKey key = field.getAnnotation(BencodeKey.class);
+        return BString.of(key == null ? field.getName() : key.value(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the default of the primitive types supported by {@link Codecs}
+     */
+    @NotNull
+    private static Object primitiveDefault(@NotNull Class<?> type) {
+        if (type == boolean.class) return false;
+        if (type == long.class) return 0L;
+        if (type == int.class) return 0;
+        if (type == short.class) return (short) 0;
+        if (type == byte.class) return (byte) 0;
+        throw new BencodeException("Unsupported type " + type);
+    }
+
+    @NotNull
+    BDict encode(@NotNull Object value) {
+        Map<BString, BNode<?>> result = new TreeMap<>();
+        for (Property property : properties) {
+            Object field = property.get(value);
+            if (field != null) {
+                result.put(property.key, property.codec.encode(field));
+            }
+        }
+        return BDict.of(result);
+    }
+
+    @NotNull
+    Object decode(@NotNull BDict dict) {
+        Map<BString, BNode<?>> values = dict.getValue();
+        try {
+            if (creator) {
+                Object[] arguments = defaults.clone();
+                for (Property property : properties) {
+                    BNode<?> node = values.get(property.key);
+                    if (node != null) arguments[property.index] = property.codec.decode(node);
+                }
+                return constructor.invokeExact(arguments);
+            }
+
+            Object result = constructor.invokeExact();
+            for (Property property : properties) {
+                BNode<?> node = values.get(property.key);
+                if (node != null) property.set(result, property.codec.decode(node));
+            }
+            return result;
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new BencodeException(e);
+        }
+    }
+
+    /**
+     * Reads a dictionary straight into a new instance. Keys are dispatched on their raw bytes,
+     * unknown keys are skipped without decoding their values.
+     */
+    @NotNull
+    Object read(@NotNull BencodeReader reader) {
+        try {
+            Object[] arguments = creator ? defaults.clone() : null;
+            Object result = creator ? null : constructor.invokeExact();
+            reader.enterDict();
+            while (reader.hasNext()) {
+                reader.readString();
+                Property property = keyTable.get(reader.data(), reader.stringOffset(), reader.stringLength());
+                if (property == null) {
+                    reader.skipValue();
+                } else if (arguments != null) {
+                    arguments[property.index] = property.codec.read(reader);
+                } else {
+                    property.set(result, property.codec.read(reader));
+                }
+            }
+            reader.exit();
+            if (arguments != null) {
+                return constructor.invokeExact(arguments);
+            }
+            return result;
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new BencodeException(e);
+        }
+    }
+
+    @NotNull
+    Class<?> getType() {
+        return type;
+    }
+
+    @Immutable
+    static final class Property {
+        private final BString key;
+        private final MethodHandle getter;
+        @Nullable
+        private final MethodHandle setter;
+        private final int index;
+        private final Codec codec;
+
+        private Property(@NotNull BString key, @NotNull MethodHandle getter, @Nullable MethodHandle setter,
+                         int index, @NotNull Codec codec) {
+            this.key = key;
+            this.getter = getter;
+            this.setter = setter;
+            this.index = index;
+            this.codec = codec;
+        }
+
+        @NotNull
+        private Property withIndex(int index) {
+            return new Property(key, getter, setter, index, codec);
+        }
+
+        @Nullable
+        Object get(@NotNull Object instance) {
+            try {
+                return getter.invokeExact(instance);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new BencodeException(e);
+            }
+        }
+
+        void set(@NotNull Object instance, @Nullable Object value) {
+            try {
+                Objects.requireNonNull(setter, "setter may not be null").invokeExact(instance, value);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new BencodeException(e);
+            }
+        }
+    }
+}
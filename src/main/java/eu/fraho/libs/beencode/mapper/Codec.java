@@ -0,0 +1,25 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode.mapper;
+
+import eu.fraho.libs.beencode.BNode;
+import eu.fraho.libs.beencode.BencodeReader;
+import org.jetbrains.annotations.NotNull;
+
+interface Codec {
+    @NotNull
+    BNode<?> encode(@NotNull Object value);
+
+    @NotNull
+    Object decode(@NotNull BNode<?> node);
+
+    /**
+     * Reads the next value of the reader directly, without creating nodes.
+     */
+    @NotNull
+    Object read(@NotNull BencodeReader reader);
+}
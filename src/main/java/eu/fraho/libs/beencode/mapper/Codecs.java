@@ -0,0 +1,396 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode.mapper;
+
+import eu.fraho.libs.beencode.*;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.reflect.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Resolves the {@link Codec} for a java type. Resolution happens once per property when the
+ * class metadata is built, never while mapping.
+ */
+final class Codecs {
+    static final Codec STRING = new Codec() {
+        @NotNull
+        @Override
+        public BNode<?> encode(@NotNull Object value) {
+            return BString.of((String) value, StandardCharsets.UTF_8);
+        }
+
+        @NotNull
+        @Override
+        public Object decode(@NotNull BNode<?> node) {
+            return cast(node, BString.class).toString(StandardCharsets.UTF_8);
+        }
+
+        @NotNull
+        @Override
+        public Object read(@NotNull BencodeReader reader) {
+            reader.readString();
+            return new String(reader.data(), reader.stringOffset(), reader.stringLength(), StandardCharsets.UTF_8);
+        }
+    };
+
+    static final Codec BYTES = new Codec() {
+        @NotNull
+        @Override
+        public BNode<?> encode(@NotNull Object value) {
+            return BString.of((byte[]) value);
+        }
+
+        @NotNull
+        @Override
+        public Object decode(@NotNull BNode<?> node) {
+            return cast(node, BString.class).getValue().clone();
+        }
+
+        @NotNull
+        @Override
+        public Object read(@NotNull BencodeReader reader) {
+            return reader.readBytes();
+        }
+    };
+
+    static final Codec LONG = new IntegerCodec(Long.MIN_VALUE, Long.MAX_VALUE) {
+        @NotNull
+        @Override
+        Object box(long value) {
+            return value;
+        }
+    };
+
+    static final Codec INT = new IntegerCodec(Integer.MIN_VALUE, Integer.MAX_VALUE) {
+        @NotNull
+        @Override
+        Object box(long value) {
+            return (int) value;
+        }
+    };
+
+    static final Codec SHORT = new IntegerCodec(Short.MIN_VALUE, Short.MAX_VALUE) {
+        @NotNull
+        @Override
+        Object box(long value) {
+            return (short) value;
+        }
+    };
+
+    static final Codec BYTE = new IntegerCodec(Byte.MIN_VALUE, Byte.MAX_VALUE) {
+        @NotNull
+        @Override
+        Object box(long value) {
+            return (byte) value;
+        }
+    };
+
+    static final Codec BOOLEAN = new Codec() {
+        @NotNull
+        @Override
+        public BNode<?> encode(@NotNull Object value) {
+            return BInteger.of((Boolean) value ? 1 : 0);
+        }
+
+        @NotNull
+        @Override
+        public Object decode(@NotNull BNode<?> node) {
+            return cast(node, BInteger.class).getValue() != 0L;
+        }
+
+        @NotNull
+        @Override
+        public Object read(@NotNull BencodeReader reader) {
+            return reader.readLong() != 0L;
+        }
+    };
+
+    private Codecs() {
+    }
+
+    @NotNull
+    static Codec resolve(@NotNull BencodeMapper mapper, @NotNull Type type) {
+        Class<?> raw = rawType(type);
+        if (raw == String.class) return STRING;
+        if (raw == byte[].class) return BYTES;
+        if (raw == long.class || raw == Long.class) return LONG;
+        if (raw == int.class || raw == Integer.class) return INT;
+        if (raw == short.class || raw == Short.class) return SHORT;
+        if (raw == byte.class || raw == Byte.class) return BYTE;
+        if (raw == boolean.class || raw == Boolean.class) return BOOLEAN;
+        if (BNode.class.isAssignableFrom(raw)) return new NodeCodec(raw);
+        if (raw.isEnum()) return new EnumCodec(raw);
+        if (raw == List.class || raw == Collection.class || raw == Iterable.class) {
+            return new ListCodec(resolve(mapper, typeArgument(type, 0)));
+        }
+        if (raw == Map.class || raw == SortedMap.class) {
+            if (rawType(typeArgument(type, 0)) != String.class) {
+                throw new BencodeException("Only maps with String keys are supported, but got " + type);
+            }
+            return new MapCodec(resolve(mapper, typeArgument(type, 1)));
+        }
+        if (raw.isPrimitive() || raw.isArray() || raw.isInterface() || Modifier.isAbstract(raw.getModifiers())) {
+            throw new BencodeException("Unsupported type " + type);
+        }
+        return new ObjectCodec(mapper, raw);
+    }
+
+    @NotNull
+    static <T extends BNode<?>> T cast(@NotNull BNode<?> node, @NotNull Class<T> type) {
+        if (!type.isInstance(node)) {
+            throw new BencodeException("Expected a " + type.getSimpleName() + ", but got " + node.getClass().getSimpleName());
+        }
+        return type.cast(node);
+    }
+
+    @NotNull
+    private static Class<?> rawType(@NotNull Type type) {
+        if (type instanceof Class) return (Class<?>) type;
+        if (type instanceof ParameterizedType) return rawType(((ParameterizedType) type).getRawType());
+        if (type instanceof WildcardType) return rawType(((WildcardType) type).getUpperBounds()[0]);
+        if (type instanceof GenericArrayType) {
+            throw new BencodeException("Unsupported type " + type);
+        }
+        if (type instanceof TypeVariable) return rawType(((TypeVariable<?>) type).getBounds()[0]);
+        throw new BencodeException("Unsupported type " + type);
+    }
+
+    @NotNull
+    private static Type typeArgument(@NotNull Type type, int index) {
+        if (!(type instanceof ParameterizedType)) {
+            throw new BencodeException("Raw type " + type + " is not supported, please add type arguments");
+        }
+        return ((ParameterizedType) type).getActualTypeArguments()[index];
+    }
+
+    private abstract static class IntegerCodec implements Codec {
+        private final long min;
+        private final long max;
+
+        private IntegerCodec(long min, long max) {
+            this.min = min;
+            this.max = max;
+        }
+
+        @NotNull
+        abstract Object box(long value);
+
+        @NotNull
+        @Override
+        public BNode<?> encode(@NotNull Object value) {
+            return BInteger.of(((Number) value).longValue());
+        }
+
+        @NotNull
+        @Override
+        public Object decode(@NotNull BNode<?> node) {
+            return checked(cast(node, BInteger.class).getValue());
+        }
+
+        @NotNull
+        @Override
+        public Object read(@NotNull BencodeReader reader) {
+            return checked(reader.readLong());
+        }
+
+        @NotNull
+        private Object checked(long value) {
+            if (value < min || value > max) {
+                throw new BencodeException("Value " + value + " is out of range [" + min + ", " + max + "]");
+            }
+            return box(value);
+        }
+    }
+
+    private static final class NodeCodec implements Codec {
+        private final Class<?> type;
+
+        private NodeCodec(@NotNull Class<?> type) {
+            this.type = type;
+        }
+
+        @NotNull
+        @Override
+        public BNode<?> encode(@NotNull Object value) {
+            return (BNode<?>) value;
+        }
+
+        @NotNull
+        @Override
+        public Object decode(@NotNull BNode<?> node) {
+            if (!type.isInstance(node)) {
+                throw new BencodeException("Expected a " + type.getSimpleName() + ", but got " + node.getClass().getSimpleName());
+            }
+            return node;
+        }
+
+        @NotNull
+        @Override
+        public Object read(@NotNull BencodeReader reader) {
+            return decode(reader.readNode());
+        }
+    }
+
+    private static final class EnumCodec implements Codec {
+        private final Map<BString, Object> constants = new HashMap<>();
+        private final KeyTable<Object> names;
+
+        private EnumCodec(@NotNull Class<?> type) {
+            Object[] values = type.getEnumConstants();
+            byte[][] keys = new byte[values.length][];
+            for (int i = 0; i < values.length; i++) {
+                BString name = BString.of(((Enum<?>) values[i]).name(), StandardCharsets.UTF_8);
+                constants.put(name, values[i]);
+                keys[i] = name.getValue();
+            }
+            names = new KeyTable<>(keys, values);
+        }
+
+        @NotNull
+        @Override
+        public BNode<?> encode(@NotNull Object value) {
+            return BString.of(((Enum<?>) value).name(), StandardCharsets.UTF_8);
+        }
+
+        @NotNull
+        @Override
+        public Object decode(@NotNull BNode<?> node) {
+            Object result = constants.get(cast(node, BString.class));
+            if (result == null) {
+                throw new BencodeException("Unknown enum constant " + node);
+            }
+            return result;
+        }
+
+        @NotNull
+        @Override
+        public Object read(@NotNull BencodeReader reader) {
+            reader.readString();
+            Object result = names.get(reader.data(), reader.stringOffset(), reader.stringLength());
+            if (result == null) {
+                throw new BencodeException("Unknown enum constant at offset " + reader.stringOffset());
+            }
+            return result;
+        }
+    }
+
+    private static final class ListCodec implements Codec {
+        private final Codec element;
+
+        private ListCodec(@NotNull Codec element) {
+            this.element = element;
+        }
+
+        @NotNull
+        @Override
+        public BNode<?> encode(@NotNull Object value) {
+            Collection<?> values = (Collection<?>) value;
+            List<BNode<?>> result = new ArrayList<>(values.size());
+            for (Object item : values) {
+                if (item == null) {
+                    throw new BencodeException("Lists may not contain null");
+                }
+                result.add(element.encode(item));
+            }
+            return BList.of(result);
+        }
+
+        @NotNull
+        @Override
+        public Object decode(@NotNull BNode<?> node) {
+            List<BNode<?>> values = cast(node, BList.class).getValue();
+            List<Object> result = new ArrayList<>(values.size());
+            for (BNode<?> item : values) result.add(element.decode(item));
+            return result;
+        }
+
+        @NotNull
+        @Override
+        public Object read(@NotNull BencodeReader reader) {
+            List<Object> result = new ArrayList<>();
+            reader.enterList();
+            while (reader.hasNext()) result.add(element.read(reader));
+            reader.exit();
+            return result;
+        }
+    }
+
+    private static final class MapCodec implements Codec {
+        private final Codec value;
+
+        private MapCodec(@NotNull Codec value) {
+            this.value = value;
+        }
+
+        @NotNull
+        @Override
+        public BNode<?> encode(@NotNull Object map) {
+            Map<BString, BNode<?>> result = new TreeMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) map).entrySet()) {
+                if (entry.getKey() == null || entry.getValue() == null) {
+                    throw new BencodeException("Maps may not contain null keys or values");
+                }
+                result.put(BString.of((String) entry.getKey(), StandardCharsets.UTF_8), value.encode(entry.getValue()));
+            }
+            return BDict.of(result);
+        }
+
+        @NotNull
+        @Override
+        public Object decode(@NotNull BNode<?> node) {
+            Map<String, Object> result = new TreeMap<>();
+            for (Map.Entry<BString, BNode<?>> entry : cast(node, BDict.class).entrySet()) {
+                result.put(entry.getKey().toString(StandardCharsets.UTF_8), value.decode(entry.getValue()));
+            }
+            return result;
+        }
+
+        @NotNull
+        @Override
+        public Object read(@NotNull BencodeReader reader) {
+            Map<String, Object> result = new TreeMap<>();
+            reader.enterDict();
+            while (reader.hasNext()) {
+                reader.readString();
+                String key = new String(reader.data(), reader.stringOffset(), reader.stringLength(), StandardCharsets.UTF_8);
+                result.put(key, value.read(reader));
+            }
+            reader.exit();
+            return result;
+        }
+    }
+
+    private static final class ObjectCodec implements Codec {
+        private final BencodeMapper mapper;
+        private final Class<?> type;
+
+        private ObjectCodec(@NotNull BencodeMapper mapper, @NotNull Class<?> type) {
+            this.mapper = mapper;
+            this.type = type;
+        }
+
+        @NotNull
+        @Override
+        public BNode<?> encode(@NotNull Object value) {
+            return mapper.mapping(value.getClass()).encode(value);
+        }
+
+        @NotNull
+        @Override
+        public Object decode(@NotNull BNode<?> node) {
+            return mapper.mapping(type).decode(cast(node, BDict.class));
+        }
+
+        @NotNull
+        @Override
+        public Object read(@NotNull BencodeReader reader) {
+            return mapper.mapping(type).read(reader);
+        }
+    }
+}
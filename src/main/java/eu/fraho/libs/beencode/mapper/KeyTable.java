@@ -0,0 +1,65 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode.mapper;
+
+import net.jcip.annotations.Immutable;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Open addressing hash table from raw key bytes to values, which can be queried with a range of
+ * an array and thus does not need a key object for lookups.
+ */
+@Immutable
+final class KeyTable<T> {
+    private final byte[][] keys;
+    private final Object[] values;
+    private final int mask;
+
+    KeyTable(@NotNull byte[][] keys, @NotNull T[] values) {
+        int capacity = Integer.highestOneBit(Math.max(4, keys.length * 2) - 1) << 1;
+        this.keys = new byte[capacity][];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+        for (int i = 0; i < keys.length; i++) {
+            int slot = hash(keys[i], 0, keys[i].length) & mask;
+            while (this.keys[slot] != null) slot = (slot + 1) & mask;
+            this.keys[slot] = keys[i];
+            this.values[slot] = values[i];
+        }
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    T get(@NotNull byte[] data, int offset, int length) {
+        int slot = hash(data, offset, length) & mask;
+        byte[] key;
+        while ((key = keys[slot]) != null) {
+            if (matches(key, data, offset, length)) {
+                return (T) values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    private static boolean matches(@NotNull byte[] key, @NotNull byte[] data, int offset, int length) {
+        if (key.length != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (key[i] != data[offset + i]) return false;
+        }
+        return true;
+    }
+
+    private static int hash(@NotNull byte[] data, int offset, int length) {
+        int result = length;
+        for (int i = offset; i < offset + length; i++) {
+            result = 31 * result + data[i];
+        }
+        return result ^ (result >>> 16);
+    }
+}
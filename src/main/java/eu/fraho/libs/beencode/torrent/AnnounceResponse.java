@@ -0,0 +1,315 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode.torrent;
+
+import eu.fraho.libs.beencode.BencodeException;
+import eu.fraho.libs.beencode.BencodeReader;
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Decoder for tracker announce responses. Peers in the compact ("peers" / "peers6" strings) as well
+ * as in the dictionary model are read straight into primitive {@link CompactPeers} lists, no node
+ * or object is created per peer. An instance can be reused for any number of responses, each call to
+ * {@link #decode(byte[], int, int)} overwrites the result of the previous one.
+ */
+@NotThreadSafe
+public final class AnnounceResponse {
+    public static final long MISSING = -1;
+
+    private static final byte[] COMPLETE = ascii("complete");
+    private static final byte[] FAILURE_REASON = ascii("failure reason");
+    private static final byte[] INCOMPLETE = ascii("incomplete");
+    private static final byte[] INTERVAL = ascii("interval");
+    private static final byte[] IP = ascii("ip");
+    private static final byte[] MIN_INTERVAL = ascii("min interval");
+    private static final byte[] PEERS = ascii("peers");
+    private static final byte[] PEERS6 = ascii("peers6");
+    private static final byte[] PORT = ascii("port");
+    private static final byte[] TRACKER_ID = ascii("tracker id");
+    private static final byte[] WARNING_MESSAGE = ascii("warning message");
+
+    private final BencodeReader reader = BencodeReader.of(new byte[0]);
+    private final CompactPeers peers = CompactPeers.ipv4();
+    private final CompactPeers peers6 = CompactPeers.ipv6();
+    private final long[] ipv6 = new long[2];
+    private final int[] groups = new int[8];
+    private long interval;
+    private long minInterval;
+    private long complete;
+    private long incomplete;
+    private int skippedPeers;
+    @Nullable
+    private String failureReason;
+    @Nullable
+    private String warningMessage;
+    @Nullable
+    private byte[] trackerId;
+
+    private AnnounceResponse() {
+    }
+
+    @NotNull
+    public static AnnounceResponse of() {
+        return new AnnounceResponse();
+    }
+
+    @NotNull
+    public AnnounceResponse decode(@NotNull byte[] data) {
+        Objects.requireNonNull(data, "data may not be null");
+        return decode(data, 0, data.length);
+    }
+
+    @NotNull
+    public AnnounceResponse decode(@NotNull byte[] data, int offset, int length) {
+        Objects.requireNonNull(data, "data may not be null");
+        peers.clear();
+        peers6.clear();
+        interval = MISSING;
+        minInterval = MISSING;
+        complete = MISSING;
+        incomplete = MISSING;
+        skippedPeers = 0;
+        failureReason = null;
+        warningMessage = null;
+        trackerId = null;
+
+        BencodeReader r = reader.reset(data, offset, length);
+        r.enterDict();
+        while (r.hasNext()) {
+            r.readString();
+            if (r.stringEquals(INTERVAL)) {
+                interval = r.readLong();
+            } else if (r.stringEquals(MIN_INTERVAL)) {
+                minInterval = r.readLong();
+            } else if (r.stringEquals(COMPLETE)) {
+                complete = r.readLong();
+            } else if (r.stringEquals(INCOMPLETE)) {
+                incomplete = r.readLong();
+            } else if (r.stringEquals(PEERS)) {
+                readPeers(r, peers);
+            } else if (r.stringEquals(PEERS6)) {
+                readPeers(r, peers6);
+            } else if (r.stringEquals(FAILURE_REASON)) {
+                failureReason = readText(r);
+            } else if (r.stringEquals(WARNING_MESSAGE)) {
+                warningMessage = readText(r);
+            } else if (r.stringEquals(TRACKER_ID)) {
+                trackerId = r.readBytes();
+            } else {
+                r.skipValue();
+            }
+        }
+        r.exit();
+        return this;
+    }
+
+    private void readPeers(@NotNull BencodeReader r, @NotNull CompactPeers compact) {
+        if (r.isString()) {
+            r.readString();
+            compact.addCompact(r.data(), r.stringOffset(), r.stringLength());
+            return;
+        }
+
+        r.enterList();
+        while (r.hasNext()) {
+            int ipOffset = -1;
+            int ipLength = 0;
+            long port = -1;
+            r.enterDict();
+            while (r.hasNext()) {
+                r.readString();
+                if (r.stringEquals(IP) && r.isString()) {
+                    r.readString();
+                    ipOffset = r.stringOffset();
+                    ipLength = r.stringLength();
+                } else if (r.stringEquals(PORT) && r.isInteger()) {
+                    port = r.readLong();
+                } else {
+                    r.skipValue();
+                }
+            }
+            r.exit();
+            addPeer(r.data(), ipOffset, ipLength, port);
+        }
+        r.exit();
+    }
+
+    private void addPeer(@NotNull byte[] data, int ipOffset, int ipLength, long port) {
+        if (ipOffset < 0 || port < 0 || port > 0xFFFF) {
+            skippedPeers++;
+            return;
+        }
+        long ipv4 = parseIpv4(data, ipOffset, ipLength);
+        if (ipv4 >= 0) {
+            peers.addIpv4((int) ipv4, (int) port);
+        } else if (parseIpv6(data, ipOffset, ipLength)) {
+            peers6.addIpv6(ipv6[0], ipv6[1], (int) port);
+        } else {
+            // host names would need a DNS lookup, which is up to the caller
+            skippedPeers++;
+        }
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    public long getMinInterval() {
+        return minInterval;
+    }
+
+    public long getComplete() {
+        return complete;
+    }
+
+    public long getIncomplete() {
+        return incomplete;
+    }
+
+    public boolean isFailure() {
+        return failureReason != null;
+    }
+
+    @Nullable
+    public String getFailureReason() {
+        return failureReason;
+    }
+
+    @Nullable
+    public String getWarningMessage() {
+        return warningMessage;
+    }
+
+    @Nullable
+    public byte[] getTrackerId() {
+        return trackerId == null ? null : trackerId.clone();
+    }
+
+    /**
+     * @return the IPv4 peers of this response, the list is reused by the next call to decode
+     */
+    @NotNull
+    public CompactPeers getPeers() {
+        return peers;
+    }
+
+    /**
+     * @return the IPv6 peers of this response, the list is reused by the next call to decode
+     */
+    @NotNull
+    public CompactPeers getPeers6() {
+        return peers6;
+    }
+
+    /**
+     * @return the number of peers in the dictionary model which were skipped, because they were
+     * missing fields or used a host name instead of an address
+     */
+    public int getSkippedPeers() {
+        return skippedPeers;
+    }
+
+    /**
+     * Writes the IPv4 and then the IPv6 peers in the compact format to the given (possibly direct) buffer.
+     */
+    public void writePeers(@NotNull ByteBuffer out) {
+        peers.writeTo(out);
+        peers6.writeTo(out);
+    }
+
+    @NotNull
+    private static String readText(@NotNull BencodeReader r) {
+        r.readString();
+        return new String(r.data(), r.stringOffset(), r.stringLength(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the address as unsigned int or -1 if the text is no dotted quad
+     */
+    static long parseIpv4(@NotNull byte[] data, int offset, int length) {
+        long result = 0;
+        int parts = 0;
+        int end = offset + length;
+        int i = offset;
+        while (parts < 4) {
+            int value = 0;
+            int digits = 0;
+            while (i < end && data[i] >= '0' && data[i] <= '9') {
+                value = value * 10 + data[i++] - '0';
+                if (++digits > 3 || value > 255) return -1;
+            }
+            if (digits == 0) return -1;
+            result = result << 8 | value;
+            if (++parts < 4) {
+                if (i >= end || data[i++] != '.') return -1;
+            }
+        }
+        return i == end ? result : -1;
+    }
+
+    private boolean parseIpv6(@NotNull byte[] data, int offset, int length) {
+        int count = 0;
+        int gap = -1;
+        int end = offset + length;
+        int i = offset;
+        if (length >= 2 && data[i] == ':' && data[i + 1] == ':') {
+            gap = 0;
+            i += 2;
+        }
+        while (i < end) {
+            int start = i;
+            int value = 0;
+            while (i < end && i - start < 4) {
+                int digit = Character.digit(data[i], 16);
+                if (digit < 0) break;
+                value = value << 4 | digit;
+                i++;
+            }
+            if (i < end && data[i] == '.') {
+                // embedded IPv4 address, e.g. ::ffff:1.2.3.4
+                long ipv4 = parseIpv4(data, start, end - start);
+                if (ipv4 < 0 || count > 6) return false;
+                groups[count++] = (int) (ipv4 >>> 16);
+                groups[count++] = (int) (ipv4 & 0xFFFF);
+                i = end;
+                break;
+            }
+            if (i == start || count == 8) return false;
+            groups[count++] = value;
+            if (i == end) break;
+            if (data[i++] != ':') return false;
+            if (i < end && data[i] == ':') {
+                if (gap >= 0) return false;
+                gap = count;
+                i++;
+            } else if (i == end) {
+                return false;
+            }
+        }
+        if (gap < 0 && count != 8 || gap >= 0 && count > 7) return false;
+        if (gap >= 0) {
+            int missing = 8 - count;
+            System.arraycopy(groups, gap, groups, gap + missing, count - gap);
+            Arrays.fill(groups, gap, gap + missing, 0);
+        }
+        ipv6[0] = (long) groups[0] << 48 | (long) groups[1] << 32 | (long) groups[2] << 16 | groups[3];
+        ipv6[1] = (long) groups[4] << 48 | (long) groups[5] << 32 | (long) groups[6] << 16 | groups[7];
+        return true;
+    }
+
+    @NotNull
+    private static byte[] ascii(@NotNull String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode.torrent;
+
+import eu.fraho.libs.beencode.BencodeException;
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Growable list of peer addresses backed by primitive arrays, as found in the compact peer format
+ * (4 or 16 byte address followed by a 2 byte port, both in network byte order). IPv4 addresses are
+ * stored in {@code int}s, IPv6 addresses as two {@code long}s. An instance only holds one family
+ * and can be reused after {@link #clear()}.
+ */
+@NotThreadSafe
+public final class CompactPeers {
+    public static final int IPV4_ENTRY_LENGTH = 6;
+    public static final int IPV6_ENTRY_LENGTH = 18;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final boolean ipv6;
+    @Nullable
+    private int[] addresses;
+    @Nullable
+    private long[] high;
+    @Nullable
+    private long[] low;
+    private int[] ports;
+    private int size;
+
+    private CompactPeers(boolean ipv6) {
+        this.ipv6 = ipv6;
+        this.addresses = ipv6 ? null : new int[INITIAL_CAPACITY];
+        this.high = ipv6 ? new long[INITIAL_CAPACITY] : null;
+        this.low = ipv6 ? new long[INITIAL_CAPACITY] : null;
+        this.ports = new int[INITIAL_CAPACITY];
+    }
+
+    @NotNull
+    public static CompactPeers ipv4() {
+        return new CompactPeers(false);
+    }
+
+    @NotNull
+    public static CompactPeers ipv6() {
+        return new CompactPeers(true);
+    }
+
+    public boolean isIpv6() {
+        return ipv6;
+    }
+
+    public int entryLength() {
+        return ipv6 ? IPV6_ENTRY_LENGTH : IPV4_ENTRY_LENGTH;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int address(int index) {
+        checkIndex(index);
+        if (ipv6) {
+            throw new BencodeException("address(int) is only available for IPv4 peers");
+        }
+        return addresses[index];
+    }
+
+    /**
+     * @return the upper 64 bits of an IPv6 address, or the unsigned IPv4 address
+     */
+    public long addressHigh(int index) {
+        checkIndex(index);
+        return ipv6 ? high[index] : addresses[index] & 0xFFFFFFFFL;
+    }
+
+    public long addressLow(int index) {
+        checkIndex(index);
+        return ipv6 ? low[index] : 0L;
+    }
+
+    public int port(int index) {
+        checkIndex(index);
+        return ports[index];
+    }
+
+    public void addIpv4(int address, int port) {
+        if (ipv6) {
+            throw new BencodeException("Cannot add an IPv4 address to an IPv6 peer list");
+        }
+        ensureCapacity(size + 1);
+        addresses[size] = address;
+        ports[size++] = port & 0xFFFF;
+    }
+
+    public void addIpv6(long addressHigh, long addressLow, int port) {
+        if (!ipv6) {
+            throw new BencodeException("Cannot add an IPv6 address to an IPv4 peer list");
+        }
+        ensureCapacity(size + 1);
+        high[size] = addressHigh;
+        low[size] = addressLow;
+        ports[size++] = port & 0xFFFF;
+    }
+
+    /**
+     * Appends all peers of a compact peer string.
+     */
+    public void addCompact(@NotNull byte[] data, int offset, int length) {
+        Objects.requireNonNull(data, "data may not be null");
+        int entry = entryLength();
+        if (length % entry != 0) {
+            throw new BencodeException("Invalid compact peers, length " + length + " is not a multiple of " + entry);
+        }
+        ensureCapacity(size + length / entry);
+        for (int end = offset + length; offset < end; offset += entry) {
+            if (ipv6) {
+                high[size] = readLong(data, offset);
+                low[size] = readLong(data, offset + 8);
+                ports[size++] = readPort(data, offset + 16);
+            } else {
+                addresses[size] = readInt(data, offset);
+                ports[size++] = readPort(data, offset + 4);
+            }
+        }
+    }
+
+    /**
+     * Writes all peers in the compact format to the given (possibly direct) buffer.
+     */
+    public void writeTo(@NotNull ByteBuffer out) {
+        Objects.requireNonNull(out, "out may not be null");
+        if (out.remaining() < size * entryLength()) {
+            throw new BencodeException("Buffer too small, need " + size * entryLength() + " bytes");
+        }
+        for (int i = 0; i < size; i++) {
+            if (ipv6) {
+                out.putLong(high[i]).putLong(low[i]);
+            } else {
+                out.putInt(addresses[i]);
+            }
+            out.putShort((short) ports[i]);
+        }
+    }
+
+    @NotNull
+    public InetSocketAddress toSocketAddress(int index) {
+        checkIndex(index);
+        ByteBuffer address = ByteBuffer.allocate(ipv6 ? 16 : 4);
+        if (ipv6) {
+            address.putLong(high[index]).putLong(low[index]);
+        } else {
+            address.putInt(addresses[index]);
+        }
+        try {
+            return new InetSocketAddress(InetAddress.getByAddress(address.array()), ports[index]);
+        } catch (UnknownHostException e) {
+            // only thrown for illegal address lengths
+            throw new BencodeException(e);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > ports.length) {
+            int newCapacity = Math.max(capacity, ports.length * 2);
+            if (ipv6) {
+                high = Arrays.copyOf(high, newCapacity);
+                low = Arrays.copyOf(low, newCapacity);
+            } else {
+                addresses = Arrays.copyOf(addresses, newCapacity);
+            }
+            ports = Arrays.copyOf(ports, newCapacity);
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for size " + size);
+        }
+    }
+
+    static int readInt(@NotNull byte[] data, int offset) {
+        return (data[offset] & 0xFF) << 24 | (data[offset + 1] & 0xFF) << 16
+                | (data[offset + 2] & 0xFF) << 8 | data[offset + 3] & 0xFF;
+    }
+
+    static long readLong(@NotNull byte[] data, int offset) {
+        return (readInt(data, offset) & 0xFFFFFFFFL) << 32 | readInt(data, offset + 4) & 0xFFFFFFFFL;
+    }
+
+    static int readPort(@NotNull byte[] data, int offset) {
+        return (data[offset] & 0xFF) << 8 | data[offset + 1] & 0xFF;
+    }
+}
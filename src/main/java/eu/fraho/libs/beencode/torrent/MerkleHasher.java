@@ -0,0 +1,184 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode.torrent;
+
+import eu.fraho.libs.beencode.BencodeException;
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.List;
+
+/**
+ * Computes the v2 piece layers and pieces roots of a list of files and, for hybrid torrents,
+ * the v1 piece hashes of the same, piece aligned data. Every piece is hashed by a worker,
+ * only the reduction of the piece layer to the root runs on the calling thread.
+ */
+@NotThreadSafe
+final class MerkleHasher {
+    private static final int SHA1_LENGTH = 20;
+    private static final byte[] ZEROS = new byte[MerkleTree.BLOCK_SIZE];
+
+    private final int pieceLength;
+    private final int threads;
+    private final int readAhead;
+    private final boolean withV1;
+
+    MerkleHasher(int pieceLength, int threads, int readAhead, boolean withV1) {
+        if (pieceLength < MerkleTree.BLOCK_SIZE || Integer.bitCount(pieceLength) != 1) {
+            throw new BencodeException("pieceLength has to be a power of two of at least "
+                    + MerkleTree.BLOCK_SIZE + " (is " + pieceLength + ")");
+        }
+        this.pieceLength = pieceLength;
+        this.threads = threads;
+        this.readAhead = readAhead;
+        this.withV1 = withV1;
+    }
+
+    @NotNull
+    Result hash(@NotNull List<Path> paths, @NotNull long[] lengths, @NotNull boolean[] padAfter) throws IOException {
+        int files = paths.size();
+        int[] firstPiece = new int[files];
+        long v1Count = 0;
+        int lastNonEmpty = -1;
+        for (int i = 0; i < files; i++) {
+            firstPiece[i] = (int) v1Count;
+            v1Count += pieceCount(lengths[i]);
+            if (lengths[i] > 0) lastNonEmpty = i;
+        }
+        if (v1Count * MerkleTree.HASH_LENGTH > Integer.MAX_VALUE) {
+            throw new BencodeException("Too many pieces (" + v1Count + "), please choose a larger piece length");
+        }
+        if (withV1) {
+            for (int i = 0; i < lastNonEmpty; i++) {
+                if (lengths[i] % pieceLength != 0 && !padAfter[i]) {
+                    throw new BencodeException("File #" + i + " is not padded to the piece length");
+                }
+            }
+        }
+
+        Result result = new Result(files, withV1 ? new byte[(int) v1Count * SHA1_LENGTH] : null);
+        int blocksPerPiece = pieceLength / MerkleTree.BLOCK_SIZE;
+        ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(() -> new Scratch(blocksPerPiece));
+        try (PieceHasher hasher = new PieceHasher(threads, readAhead, pieceLength)) {
+            for (int i = 0; i < files; i++) {
+                int pieces = pieceCount(lengths[i]);
+                if (pieces == 0) continue;
+                byte[] layer = new byte[pieces * MerkleTree.HASH_LENGTH];
+                result.layers[i] = layer;
+                int width = pieces == 1 ? MerkleTree.nextPowerOfTwo(MerkleTree.blockCount(lengths[i])) : blocksPerPiece;
+                boolean pad = padAfter[i];
+
+                long remaining = lengths[i];
+                try (InputStream is = Files.newInputStream(paths.get(i))) {
+                    for (int piece = 0; piece < pieces; piece++) {
+                        byte[] buffer = hasher.acquire();
+                        int length = (int) Math.min(pieceLength, remaining);
+                        readFully(is, buffer, length, paths.get(i));
+                        remaining -= length;
+
+                        int layerOffset = piece * MerkleTree.HASH_LENGTH;
+                        int v1Offset = (firstPiece[i] + piece) * SHA1_LENGTH;
+                        hasher.submit(buffer, length, (data, len) -> {
+                            Scratch local = scratch.get();
+                            MerkleTree.hashBlocks(local.sha256, data, len, local.leaves, 0);
+                            byte[] hash = MerkleTree.root(local.sha256, local.leaves,
+                                    MerkleTree.blockCount(len), width, local.zeroLeaf);
+                            System.arraycopy(hash, 0, layer, layerOffset, MerkleTree.HASH_LENGTH);
+                            if (result.v1Pieces != null) {
+                                local.sha1.update(data, 0, len);
+                                if (pad) {
+                                    for (int missing = pieceLength - len; missing > 0; missing -= ZEROS.length) {
+                                        local.sha1.update(ZEROS, 0, Math.min(ZEROS.length, missing));
+                                    }
+                                }
+                                local.sha1.digest(result.v1Pieces, v1Offset, SHA1_LENGTH);
+                            }
+                        });
+                    }
+                }
+            }
+            hasher.await();
+        }
+
+        MessageDigest sha256 = MerkleTree.sha256();
+        byte[] padHash = MerkleTree.padHash(sha256, blocksPerPiece);
+        for (int i = 0; i < files; i++) {
+            byte[] layer = result.layers[i];
+            if (layer == null) continue;
+            int pieces = layer.length / MerkleTree.HASH_LENGTH;
+            if (pieces == 1) {
+                result.roots[i] = layer.clone();
+            } else {
+                result.roots[i] = MerkleTree.root(sha256, layer.clone(), pieces,
+                        MerkleTree.nextPowerOfTwo(pieces), padHash);
+            }
+        }
+        return result;
+    }
+
+    private int pieceCount(long length) {
+        return (int) ((length + pieceLength - 1) / pieceLength);
+    }
+
+    private static void readFully(@NotNull InputStream is, @NotNull byte[] buffer, int length, @NotNull Path path)
+            throws IOException {
+        int offset = 0;
+        while (offset != length) {
+            int read = is.read(buffer, offset, length - offset);
+            if (read < 0) {
+                throw new BencodeException("File " + path + " is shorter than expected, missing "
+                        + (length - offset) + " bytes.");
+            }
+            offset += read;
+        }
+    }
+
+    static final class Result {
+        private final byte[][] layers;
+        private final byte[][] roots;
+        @Nullable
+        private final byte[] v1Pieces;
+
+        private Result(int files, @Nullable byte[] v1Pieces) {
+            this.layers = new byte[files][];
+            this.roots = new byte[files][];
+            this.v1Pieces = v1Pieces;
+        }
+
+        @Nullable
+        byte[] getLayer(int file) {
+            return layers[file];
+        }
+
+        @Nullable
+        byte[] getRoot(int file) {
+            return roots[file];
+        }
+
+        @Nullable
+        byte[] getV1Pieces() {
+            return v1Pieces;
+        }
+    }
+
+    private static final class Scratch {
+        private final MessageDigest sha256 = MerkleTree.sha256();
+        private final MessageDigest sha1 = TorrentBuilder.sha1();
+        private final byte[] leaves;
+        private final byte[] zeroLeaf = new byte[MerkleTree.HASH_LENGTH];
+
+        private Scratch(int blocksPerPiece) {
+            this.leaves = new byte[blocksPerPiece * MerkleTree.HASH_LENGTH];
+        }
+    }
+}
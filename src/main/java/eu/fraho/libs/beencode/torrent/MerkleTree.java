@@ -0,0 +1,116 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode.torrent;
+
+import eu.fraho.libs.beencode.BencodeException;
+import org.jetbrains.annotations.NotNull;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * SHA-256 merkle tree helpers as specified by BEP 52: leaves are the hashes of 16 KiB blocks,
+ * missing leaves are 32 zero bytes.
+ */
+public abstract class MerkleTree {
+    public static final int BLOCK_SIZE = 16_384;
+    public static final int HASH_LENGTH = 32;
+
+    @NotNull
+    public static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new BencodeException(e);
+        }
+    }
+
+    public static int blockCount(long length) {
+        return (int) ((length + BLOCK_SIZE - 1) / BLOCK_SIZE);
+    }
+
+    public static int nextPowerOfTwo(int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+    @NotNull
+    public static byte[] padHash(@NotNull MessageDigest digest, int leaves) {
+        Objects.requireNonNull(digest, "digest may not be null");
+        if (leaves < 1 || Integer.bitCount(leaves) != 1) {
+            throw new BencodeException("leaves has to be a positive power of two (is " + leaves + ")");
+        }
+        byte[] result = new byte[HASH_LENGTH];
+        for (int width = 1; width < leaves; width <<= 1) {
+            digest.update(result);
+            digest.update(result);
+            result = digest.digest();
+        }
+        return result;
+    }
+
+    public static void hashBlocks(@NotNull MessageDigest digest, @NotNull byte[] data, int length,
+                                  @NotNull byte[] out, int outOffset) {
+        Objects.requireNonNull(digest, "digest may not be null");
+        Objects.requireNonNull(data, "data may not be null");
+        Objects.requireNonNull(out, "out may not be null");
+        for (int offset = 0; offset < length; offset += BLOCK_SIZE) {
+            digest.update(data, offset, Math.min(BLOCK_SIZE, length - offset));
+            digest(digest, out, outOffset);
+            outOffset += HASH_LENGTH;
+        }
+    }
+
+    /**
+     * Reduces {@code count} hashes to the root of a tree with {@code width} leaves.
+     * The hashes in {@code layer} are overwritten during the reduction.
+     */
+    @NotNull
+    public static byte[] root(@NotNull MessageDigest digest, @NotNull byte[] layer, int count, int width,
+                              @NotNull byte[] pad) {
+        Objects.requireNonNull(digest, "digest may not be null");
+        Objects.requireNonNull(layer, "layer may not be null");
+        Objects.requireNonNull(pad, "pad may not be null");
+        if (width < count || Integer.bitCount(width) != 1) {
+            throw new BencodeException("width has to be a power of two of at least " + count + " (is " + width + ")");
+        }
+        if (count == 0) {
+            count = 1;
+            layer = pad.clone();
+        }
+
+        byte[] levelPad = pad.clone();
+        for (; width > 1; width >>= 1) {
+            int pairs = (count + 1) / 2;
+            for (int i = 0; i < pairs; i++) {
+                int left = 2 * i * HASH_LENGTH;
+                digest.update(layer, left, HASH_LENGTH);
+                if (2 * i + 1 < count) {
+                    digest.update(layer, left + HASH_LENGTH, HASH_LENGTH);
+                } else {
+                    digest.update(levelPad);
+                }
+                digest(digest, layer, i * HASH_LENGTH);
+            }
+            digest.update(levelPad);
+            digest.update(levelPad);
+            levelPad = digest.digest();
+            count = pairs;
+        }
+        return Arrays.copyOf(layer, HASH_LENGTH);
+    }
+
+    private static void digest(@NotNull MessageDigest digest, @NotNull byte[] out, int offset) {
+        try {
+            digest.digest(out, offset, HASH_LENGTH);
+        } catch (DigestException e) {
+            throw new BencodeException(e);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode.torrent;
+
+import eu.fraho.libs.beencode.BencodeException;
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.concurrent.*;
+
+/**
+ * Hands piece sized buffers to a pool of workers. The number of buffers is bounded, so the reading thread
+ * blocks in {@link #acquire()} as soon as {@code readAhead} pieces are waiting to be hashed.
+ */
+@NotThreadSafe
+final class PieceHasher implements Closeable {
+    private final ExecutorService executor;
+    private final BlockingQueue<byte[]> buffers;
+    private final Deque<Future<?>> pending = new ArrayDeque<>();
+    private final int readAhead;
+    private final int bufferSize;
+    private int allocated = 0;
+
+    PieceHasher(int threads, int readAhead, int bufferSize) {
+        if (threads < 1) {
+            throw new BencodeException("threads has to be positive (is " + threads + ")");
+        }
+        if (readAhead < 1) {
+            throw new BencodeException("readAhead has to be positive (is " + readAhead + ")");
+        }
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "beencode-hasher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.buffers = new ArrayBlockingQueue<>(readAhead);
+        this.readAhead = readAhead;
+        this.bufferSize = bufferSize;
+    }
+
+    @NotNull
+    byte[] acquire() throws IOException {
+        byte[] buffer = buffers.poll();
+        if (buffer == null) {
+            if (allocated < readAhead) {
+                allocated++;
+                return new byte[bufferSize];
+            }
+            try {
+                buffer = buffers.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a free buffer");
+            }
+        }
+        return buffer;
+    }
+
+    void submit(@NotNull byte[] buffer, int length, @NotNull Task task) throws IOException {
+        Objects.requireNonNull(buffer, "buffer may not be null");
+        Objects.requireNonNull(task, "task may not be null");
+        pending.add(executor.submit(() -> {
+            try {
+                task.run(buffer, length);
+            } finally {
+                buffers.add(buffer);
+            }
+            return null;
+        }));
+        while (!pending.isEmpty() && pending.peekFirst().isDone()) {
+            complete(pending.pollFirst());
+        }
+    }
+
+    void await() throws IOException {
+        while (!pending.isEmpty()) {
+            complete(pending.pollFirst());
+        }
+    }
+
+    private void complete(Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the hashing workers");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new BencodeException(cause);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    @FunctionalInterface
+    interface Task {
+        void run(@NotNull byte[] data, int length) throws Exception;
+    }
+}
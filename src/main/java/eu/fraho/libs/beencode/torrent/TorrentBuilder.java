@@ -0,0 +1,408 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode.torrent;
+
+import eu.fraho.libs.beencode.*;
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Creates the metainfo dictionary for a file or directory. The files are read sequentially by the calling
+ * thread, while the piece hashes are calculated by a pool of workers. The result does not depend on the
+ * number of threads used.
+ */
+@NotThreadSafe
+public final class TorrentBuilder {
+    public static final int DEFAULT_PIECE_LENGTH = 262_144; // 256 KiB
+    private static final int SHA1_LENGTH = 20;
+
+    private final Path source;
+    private int pieceLength = DEFAULT_PIECE_LENGTH;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int readAhead = -1;
+    @Nullable
+    private String announce;
+    @Nullable
+    private List<List<String>> announceList;
+    @Nullable
+    private String comment;
+    @Nullable
+    private String createdBy;
+    @Nullable
+    private Long creationDate;
+    private boolean privateFlag = false;
+    @NotNull
+    private TorrentVersion version = TorrentVersion.V1;
+
+    private TorrentBuilder(@NotNull Path source) {
+        this.source = source;
+    }
+
+    @NotNull
+    public static TorrentBuilder of(@NotNull Path source) {
+        Objects.requireNonNull(source, "source may not be null");
+        if (!Files.exists(source)) {
+            throw new BencodeException("source " + source + " does not exist");
+        }
+        return new TorrentBuilder(source);
+    }
+
+    @NotNull
+    public TorrentBuilder pieceLength(int pieceLength) {
+        if (pieceLength <= 0 || Integer.bitCount(pieceLength) != 1) {
+            throw new BencodeException("pieceLength has to be a positive power of two (is " + pieceLength + ")");
+        }
+        this.pieceLength = pieceLength;
+        return this;
+    }
+
+    @NotNull
+    public TorrentBuilder version(@NotNull TorrentVersion version) {
+        this.version = Objects.requireNonNull(version, "version may not be null");
+        return this;
+    }
+
+    @NotNull
+    public TorrentBuilder threads(int threads) {
+        if (threads < 1) {
+            throw new BencodeException("threads has to be positive (is " + threads + ")");
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    @NotNull
+    public TorrentBuilder readAhead(int pieces) {
+        if (pieces < 1) {
+            throw new BencodeException("readAhead has to be positive (is " + pieces + ")");
+        }
+        this.readAhead = pieces;
+        return this;
+    }
+
+    @NotNull
+    public TorrentBuilder announce(@NotNull String announce) {
+        this.announce = Objects.requireNonNull(announce, "announce may not be null");
+        return this;
+    }
+
+    @NotNull
+    public TorrentBuilder announceList(@NotNull List<List<String>> tiers) {
+        Objects.requireNonNull(tiers, "tiers may not be null");
+        List<List<String>> temp = new ArrayList<>();
+        for (List<String> tier : tiers) temp.add(new ArrayList<>(tier));
+        this.announceList = temp;
+        return this;
+    }
+
+    @NotNull
+    public TorrentBuilder comment(@NotNull String comment) {
+        this.comment = Objects.requireNonNull(comment, "comment may not be null");
+        return this;
+    }
+
+    @NotNull
+    public TorrentBuilder createdBy(@NotNull String createdBy) {
+        this.createdBy = Objects.requireNonNull(createdBy, "createdBy may not be null");
+        return this;
+    }
+
+    @NotNull
+    public TorrentBuilder creationDate(long epochSeconds) {
+        this.creationDate = epochSeconds;
+        return this;
+    }
+
+    @NotNull
+    public TorrentBuilder privateFlag(boolean privateFlag) {
+        this.privateFlag = privateFlag;
+        return this;
+    }
+
+    @NotNull
+    public BDict build() throws IOException {
+        List<SourceFile> files = listFiles();
+        Map<BString, BNode<?>> result = new TreeMap<>();
+        if (announce != null) {
+            result.put(BString.of("announce"), BString.of(announce, StandardCharsets.UTF_8));
+        }
+        if (announceList != null) {
+            List<BNode<?>> tiers = new ArrayList<>();
+            for (List<String> tier : announceList) {
+                tiers.add(toStringList(tier));
+            }
+            result.put(BString.of("announce-list"), BList.of(tiers));
+        }
+        if (comment != null) {
+            result.put(BString.of("comment"), BString.of(comment, StandardCharsets.UTF_8));
+        }
+        if (createdBy != null) {
+            result.put(BString.of("created by"), BString.of(createdBy, StandardCharsets.UTF_8));
+        }
+        if (creationDate != null) {
+            result.put(BString.of("creation date"), BInteger.of(creationDate));
+        }
+        if (version == TorrentVersion.V1) {
+            result.put(BString.of("info"), buildInfo(files));
+        } else {
+            buildInfoV2(files, result);
+        }
+        return BDict.of(result);
+    }
+
+    private void buildInfoV2(@NotNull List<SourceFile> files, @NotNull Map<BString, BNode<?>> result)
+            throws IOException {
+        boolean hybrid = version == TorrentVersion.HYBRID;
+        boolean directory = Files.isDirectory(source);
+        int count = files.size();
+        List<Path> paths = new ArrayList<>(count);
+        long[] lengths = new long[count];
+        boolean[] padAfter = new boolean[count];
+        int lastNonEmpty = -1;
+        for (int i = 0; i < count; i++) {
+            paths.add(files.get(i).path);
+            lengths[i] = files.get(i).length;
+            if (lengths[i] > 0) lastNonEmpty = i;
+        }
+        for (int i = 0; i < lastNonEmpty; i++) {
+            padAfter[i] = hybrid && lengths[i] % pieceLength != 0;
+        }
+
+        MerkleHasher.Result hashes = new MerkleHasher(pieceLength, threads, inFlight(), hybrid)
+                .hash(paths, lengths, padAfter);
+
+        Map<BString, Object> fileTree = new TreeMap<>();
+        Map<BString, BNode<?>> pieceLayers = new TreeMap<>();
+        List<BNode<?>> v1Files = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            SourceFile file = files.get(i);
+            Map<BString, BNode<?>> leaf = new TreeMap<>();
+            leaf.put(BString.of("length"), BInteger.of(file.length));
+            byte[] root = hashes.getRoot(i);
+            if (root != null) {
+                leaf.put(BString.of("pieces root"), BString.of(root));
+                if (file.length > pieceLength) {
+                    pieceLayers.put(BString.of(root), BString.of(Objects.requireNonNull(hashes.getLayer(i))));
+                }
+            }
+            insertFile(fileTree, file.components, BDict.of(BString.of(""), BDict.of(leaf)));
+
+            if (hybrid && directory) {
+                v1Files.add(BDict.of(
+                        BString.of("length"), BInteger.of(file.length),
+                        BString.of("path"), toStringList(file.components)
+                ));
+                if (padAfter[i]) {
+                    long padding = pieceLength - file.length % pieceLength;
+                    v1Files.add(BDict.of(
+                            BString.of("attr"), BString.of("p"),
+                            BString.of("length"), BInteger.of(padding),
+                            BString.of("path"), BList.of(BString.of(".pad"), BString.of(String.valueOf(padding)))
+                    ));
+                }
+            }
+        }
+
+        Map<BString, BNode<?>> info = new TreeMap<>();
+        info.put(BString.of("name"), BString.of(source.getFileName().toString(), StandardCharsets.UTF_8));
+        info.put(BString.of("piece length"), BInteger.of(pieceLength));
+        info.put(BString.of("meta version"), BInteger.of(2));
+        info.put(BString.of("file tree"), toDict(fileTree));
+        if (privateFlag) {
+            info.put(BString.of("private"), BInteger.of(1));
+        }
+        if (hybrid) {
+            info.put(BString.of("pieces"), BString.of(Objects.requireNonNull(hashes.getV1Pieces())));
+            if (directory) {
+                info.put(BString.of("files"), BList.of(v1Files));
+            } else {
+                info.put(BString.of("length"), BInteger.of(files.get(0).length));
+            }
+        }
+        result.put(BString.of("info"), BDict.of(info));
+        result.put(BString.of("piece layers"), BDict.of(pieceLayers));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void insertFile(@NotNull Map<BString, Object> tree, @NotNull List<String> components,
+                                   @NotNull BDict leaf) {
+        Map<BString, Object> current = tree;
+        for (int i = 0; i < components.size() - 1; i++) {
+            BString key = BString.of(components.get(i), StandardCharsets.UTF_8);
+            current = (Map<BString, Object>) current.computeIfAbsent(key, k -> new TreeMap<BString, Object>());
+        }
+        current.put(BString.of(components.get(components.size() - 1), StandardCharsets.UTF_8), leaf);
+    }
+
+    @NotNull
+    @SuppressWarnings("unchecked")
+    private static BDict toDict(@NotNull Map<BString, ?> tree) {
+        Map<BString, BNode<?>> result = new TreeMap<>();
+        for (Map.Entry<BString, ?> entry : tree.entrySet()) {
+            Object value = entry.getValue();
+            result.put(entry.getKey(), value instanceof BNode ? (BNode<?>) value : toDict((Map<BString, ?>) value));
+        }
+        return BDict.of(result);
+    }
+
+    @NotNull
+    private BDict buildInfo(@NotNull List<SourceFile> files) throws IOException {
+        Map<BString, BNode<?>> info = new TreeMap<>();
+        info.put(BString.of("name"), BString.of(source.getFileName().toString(), StandardCharsets.UTF_8));
+        info.put(BString.of("piece length"), BInteger.of(pieceLength));
+        info.put(BString.of("pieces"), BString.of(hashPieces(files)));
+        if (privateFlag) {
+            info.put(BString.of("private"), BInteger.of(1));
+        }
+
+        if (Files.isDirectory(source)) {
+            List<BNode<?>> entries = new ArrayList<>(files.size());
+            for (SourceFile file : files) {
+                entries.add(BDict.of(
+                        BString.of("length"), BInteger.of(file.length),
+                        BString.of("path"), toStringList(file.components)
+                ));
+            }
+            info.put(BString.of("files"), BList.of(entries));
+        } else {
+            info.put(BString.of("length"), BInteger.of(files.get(0).length));
+        }
+        return BDict.of(info);
+    }
+
+    @NotNull
+    private byte[] hashPieces(@NotNull List<SourceFile> files) throws IOException {
+        long total = 0;
+        for (SourceFile file : files) total += file.length;
+        long count = (total + pieceLength - 1) / pieceLength;
+        if (count * SHA1_LENGTH > Integer.MAX_VALUE) {
+            throw new BencodeException("Too many pieces (" + count + "), please choose a larger piece length");
+        }
+
+        byte[] pieces = new byte[(int) count * SHA1_LENGTH];
+        ThreadLocal<MessageDigest> digests = ThreadLocal.withInitial(TorrentBuilder::sha1);
+        try (PieceHasher hasher = new PieceHasher(threads, inFlight(), pieceLength)) {
+            int index = 0;
+            int fill = 0;
+            byte[] buffer = hasher.acquire();
+            for (SourceFile file : files) {
+                long remaining = file.length;
+                try (InputStream is = Files.newInputStream(file.path)) {
+                    while (remaining > 0) {
+                        int read = is.read(buffer, fill, (int) Math.min(pieceLength - fill, remaining));
+                        if (read < 0) {
+                            throw new BencodeException("File " + file.path + " changed while hashing, missing "
+                                    + remaining + " bytes.");
+                        }
+                        fill += read;
+                        remaining -= read;
+                        if (fill == pieceLength) {
+                            submit(hasher, digests, buffer, fill, pieces, index++);
+                            buffer = hasher.acquire();
+                            fill = 0;
+                        }
+                    }
+                }
+            }
+            if (fill > 0) {
+                submit(hasher, digests, buffer, fill, pieces, index);
+            }
+            hasher.await();
+        }
+        return pieces;
+    }
+
+    private int inFlight() {
+        return readAhead > 0 ? readAhead : threads * 2;
+    }
+
+    private static void submit(@NotNull PieceHasher hasher, @NotNull ThreadLocal<MessageDigest> digests,
+                               @NotNull byte[] buffer, int length, @NotNull byte[] pieces, int index)
+            throws IOException {
+        hasher.submit(buffer, length, (data, len) -> {
+            MessageDigest digest = digests.get();
+            digest.update(data, 0, len);
+            digest.digest(pieces, index * SHA1_LENGTH, SHA1_LENGTH);
+        });
+    }
+
+    @NotNull
+    private List<SourceFile> listFiles() throws IOException {
+        if (!Files.isDirectory(source)) {
+            return Collections.singletonList(new SourceFile(source,
+                    Collections.singletonList(source.getFileName().toString()), Files.size(source)));
+        }
+
+        List<SourceFile> result = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(source)) {
+            for (Path path : walk.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                List<String> components = new ArrayList<>();
+                for (Path part : source.relativize(path)) components.add(part.toString());
+                result.add(new SourceFile(path, components, Files.size(path)));
+            }
+        }
+        result.sort(SourceFile::compareTo);
+        if (result.isEmpty()) {
+            throw new BencodeException("source " + source + " does not contain any files");
+        }
+        return result;
+    }
+
+    @NotNull
+    private static BList toStringList(@NotNull List<String> values) {
+        List<BNode<?>> result = new ArrayList<>(values.size());
+        for (String value : values) result.add(BString.of(value, StandardCharsets.UTF_8));
+        return BList.of(result);
+    }
+
+    @NotNull
+    static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new BencodeException(e);
+        }
+    }
+
+    private static final class SourceFile implements Comparable<SourceFile> {
+        private final Path path;
+        private final List<String> components;
+        // the components as dictionary keys, which are sorted by their raw UTF-8 bytes
+        private final List<BString> keys;
+        private final long length;
+
+        private SourceFile(@NotNull Path path, @NotNull List<String> components, long length) {
+            this.path = path;
+            this.components = components;
+            this.keys = new ArrayList<>(components.size());
+            for (String component : components) keys.add(BString.of(component, StandardCharsets.UTF_8));
+            this.length = length;
+        }
+
+        @Override
+        public int compareTo(@NotNull SourceFile o) {
+            int common = Math.min(keys.size(), o.keys.size());
+            for (int i = 0; i < common; i++) {
+                int result = keys.get(i).compareTo(o.keys.get(i));
+                if (result != 0) return result;
+            }
+            return Integer.compare(keys.size(), o.keys.size());
+        }
+    }
+}
@@ -0,0 +1,377 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode.torrent;
+
+import eu.fraho.libs.beencode.*;
+import net.jcip.annotations.ThreadSafe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Typed, read-only view of a decoded metainfo dictionary. Every field is resolved on first access
+ * and cached afterwards. Concurrent first accesses may resolve a field twice, which is harmless as
+ * the results are immutable and safely published.
+ */
+@ThreadSafe
+public final class TorrentMetaInfo {
+    public static final int PIECE_HASH_LENGTH = 20;
+
+    private static final BString ANNOUNCE = BString.of("announce");
+    private static final BString ANNOUNCE_LIST = BString.of("announce-list");
+    private static final BString ATTR = BString.of("attr");
+    private static final BString COMMENT = BString.of("comment");
+    private static final BString CREATED_BY = BString.of("created by");
+    private static final BString CREATION_DATE = BString.of("creation date");
+    private static final BString EMPTY = BString.of("");
+    private static final BString FILE_TREE = BString.of("file tree");
+    private static final BString FILES = BString.of("files");
+    private static final BString INFO = BString.of("info");
+    private static final BString LENGTH = BString.of("length");
+    private static final BString NAME = BString.of("name");
+    private static final BString PATH = BString.of("path");
+    private static final BString PIECE_LENGTH = BString.of("piece length");
+    private static final BString PIECES = BString.of("pieces");
+    private static final BString PRIVATE = BString.of("private");
+
+    private final BDict metainfo;
+    // volatile, so a thread reading a cached field also sees the fully built value behind it
+    @Nullable
+    private volatile BDict info;
+    @Nullable
+    private volatile String name;
+    private volatile long pieceLength = -1;
+    @Nullable
+    private volatile byte[] pieces;
+    @Nullable
+    private volatile FileList files;
+    @Nullable
+    private volatile byte[] infoHash;
+
+    private TorrentMetaInfo(@NotNull BDict metainfo) {
+        this.metainfo = metainfo;
+    }
+
+    @NotNull
+    public static TorrentMetaInfo of(@NotNull BDict metainfo) {
+        Objects.requireNonNull(metainfo, "metainfo may not be null");
+        return new TorrentMetaInfo(metainfo);
+    }
+
+    @NotNull
+    public BDict getMetaInfo() {
+        return metainfo;
+    }
+
+    @NotNull
+    public BDict info() {
+        BDict result = info;
+        if (result == null) {
+            info = result = require(metainfo, INFO, BDict.class);
+        }
+        return result;
+    }
+
+    @NotNull
+    public String name() {
+        String result = name;
+        if (result == null) {
+            name = result = require(info(), NAME, BString.class).toString(StandardCharsets.UTF_8);
+        }
+        return result;
+    }
+
+    public long pieceLength() {
+        long result = pieceLength;
+        if (result < 0) {
+            result = require(info(), PIECE_LENGTH, BInteger.class).getValue();
+            if (result <= 0) {
+                throw new BencodeException("Invalid piece length " + result);
+            }
+            pieceLength = result;
+        }
+        return result;
+    }
+
+    public int pieceCount() {
+        return pieces().length / PIECE_HASH_LENGTH;
+    }
+
+    /**
+     * @return a read-only view of the 20 byte SHA-1 hash of the given piece, backed by the "pieces" string
+     */
+    @NotNull
+    public ByteBuffer pieceHash(int index) {
+        byte[] data = pieces();
+        if (index < 0 || index >= data.length / PIECE_HASH_LENGTH) {
+            throw new IndexOutOfBoundsException("Piece " + index + " does not exist, there are "
+                    + data.length / PIECE_HASH_LENGTH + " pieces");
+        }
+        return ByteBuffer.wrap(data, index * PIECE_HASH_LENGTH, PIECE_HASH_LENGTH).slice().asReadOnlyBuffer();
+    }
+
+    @NotNull
+    public FileList files() {
+        FileList result = files;
+        if (result == null) {
+            files = result = buildFiles();
+        }
+        return result;
+    }
+
+    public long totalLength() {
+        return files().totalLength();
+    }
+
+    public boolean isPrivate() {
+        BNode<?> value = info().getValue().get(PRIVATE);
+        return value instanceof BInteger && ((BInteger) value).getValue() == 1L;
+    }
+
+    @Nullable
+    public String announce() {
+        return optionalString(metainfo, ANNOUNCE);
+    }
+
+    @NotNull
+    public List<List<String>> announceList() {
+        BNode<?> value = metainfo.getValue().get(ANNOUNCE_LIST);
+        if (!(value instanceof BList)) {
+            return Collections.emptyList();
+        }
+        List<List<String>> result = new ArrayList<>();
+        for (BNode<?> tier : ((BList) value).getValue()) {
+            if (tier instanceof BList) {
+                result.add(Collections.unmodifiableList(toStrings((BList) tier)));
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    @Nullable
+    public String comment() {
+        return optionalString(metainfo, COMMENT);
+    }
+
+    @Nullable
+    public String createdBy() {
+        return optionalString(metainfo, CREATED_BY);
+    }
+
+    @Nullable
+    public Long creationDate() {
+        BNode<?> value = metainfo.getValue().get(CREATION_DATE);
+        return value instanceof BInteger ? ((BInteger) value).getValue() : null;
+    }
+
+    /**
+     * @return the SHA-1 hash of the bencoded info dictionary
+     */
+    @NotNull
+    public byte[] infoHash() {
+        byte[] result = infoHash;
+        if (result == null) {
+            try {
+                result = MessageDigest.getInstance("SHA-1").digest(NodeFactory.encode(info()));
+            } catch (NoSuchAlgorithmException e) {
+                throw new BencodeException(e);
+            }
+            infoHash = result;
+        }
+        return result.clone();
+    }
+
+    @NotNull
+    private byte[] pieces() {
+        byte[] result = pieces;
+        if (result == null) {
+            result = require(info(), PIECES, BString.class).getValue();
+            if (result.length % PIECE_HASH_LENGTH != 0) {
+                throw new BencodeException("Invalid pieces, length " + result.length + " is not a multiple of "
+                        + PIECE_HASH_LENGTH);
+            }
+            pieces = result;
+        }
+        return result;
+    }
+
+    @NotNull
+    private FileList buildFiles() {
+        Map<BString, BNode<?>> values = info().getValue();
+        BNode<?> length = values.get(LENGTH);
+        if (length instanceof BInteger) {
+            return new FileList(new long[]{((BInteger) length).getValue()},
+                    new BNode<?>[]{values.get(NAME)}, new boolean[1]);
+        }
+
+        BNode<?> list = values.get(FILES);
+        if (list instanceof BList) {
+            List<BNode<?>> entries = ((BList) list).getValue();
+            int count = entries.size();
+            long[] lengths = new long[count];
+            BNode<?>[] paths = new BNode<?>[count];
+            boolean[] padding = new boolean[count];
+            for (int i = 0; i < count; i++) {
+                BNode<?> entry = entries.get(i);
+                if (!(entry instanceof BDict)) {
+                    throw new BencodeException("Invalid file entry #" + i + ": " + entry);
+                }
+                BDict file = (BDict) entry;
+                lengths[i] = require(file, LENGTH, BInteger.class).getValue();
+                paths[i] = require(file, PATH, BList.class);
+                BNode<?> attr = file.getValue().get(ATTR);
+                padding[i] = attr instanceof BString && attr.toString().indexOf('p') >= 0;
+            }
+            return new FileList(lengths, paths, padding);
+        }
+
+        BNode<?> tree = values.get(FILE_TREE);
+        if (tree instanceof BDict) {
+            List<List<String>> components = new ArrayList<>();
+            List<Long> lengths = new ArrayList<>();
+            walkFileTree((BDict) tree, new ArrayList<>(), components, lengths);
+            long[] primitive = new long[lengths.size()];
+            BNode<?>[] paths = new BNode<?>[lengths.size()];
+            for (int i = 0; i < primitive.length; i++) {
+                primitive[i] = lengths.get(i);
+                List<BNode<?>> path = new ArrayList<>();
+                for (String component : components.get(i)) path.add(BString.of(component, StandardCharsets.UTF_8));
+                paths[i] = BList.of(path);
+            }
+            return new FileList(primitive, paths, new boolean[primitive.length]);
+        }
+        throw new BencodeException("Info dictionary contains neither 'length', 'files' nor 'file tree'");
+    }
+
+    private static void walkFileTree(@NotNull BDict tree, @NotNull List<String> prefix,
+                                     @NotNull List<List<String>> components, @NotNull List<Long> lengths) {
+        for (Map.Entry<BString, BNode<?>> entry : tree.entrySet()) {
+            if (!(entry.getValue() instanceof BDict)) {
+                throw new BencodeException("Invalid file tree entry " + entry.getKey());
+            }
+            List<String> path = new ArrayList<>(prefix);
+            path.add(entry.getKey().toString(StandardCharsets.UTF_8));
+            BDict child = (BDict) entry.getValue();
+            BNode<?> leaf = child.getValue().get(EMPTY);
+            if (leaf instanceof BDict) {
+                components.add(path);
+                lengths.add(require((BDict) leaf, LENGTH, BInteger.class).getValue());
+            } else {
+                walkFileTree(child, path, components, lengths);
+            }
+        }
+    }
+
+    @Nullable
+    private static String optionalString(@NotNull BDict dict, @NotNull BString key) {
+        BNode<?> value = dict.getValue().get(key);
+        return value instanceof BString ? ((BString) value).toString(StandardCharsets.UTF_8) : null;
+    }
+
+    @NotNull
+    private static List<String> toStrings(@NotNull BList list) {
+        List<String> result = new ArrayList<>(list.size());
+        for (BNode<?> node : list.getValue()) {
+            if (!(node instanceof BString)) {
+                throw new BencodeException("Expected a list of strings, but got " + node);
+            }
+            result.add(((BString) node).toString(StandardCharsets.UTF_8));
+        }
+        return result;
+    }
+
+    @NotNull
+    private static <T extends BNode<?>> T require(@NotNull BDict dict, @NotNull BString key, @NotNull Class<T> type) {
+        BNode<?> value = dict.getValue().get(key);
+        if (!type.isInstance(value)) {
+            throw new BencodeException("Expected " + type.getSimpleName() + " for key '" + key + "', but got " + value);
+        }
+        return type.cast(value);
+    }
+
+    /**
+     * Lengths and offsets of the files are kept in primitive arrays, the path of a file is only
+     * converted to strings when requested.
+     */
+    @ThreadSafe
+    public static final class FileList {
+        private final long[] lengths;
+        private final long[] offsets;
+        private final BNode<?>[] paths;
+        private final boolean[] padding;
+        private final long totalLength;
+
+        private FileList(@NotNull long[] lengths, @NotNull BNode<?>[] paths, @NotNull boolean[] padding) {
+            this.lengths = lengths;
+            this.paths = paths;
+            this.padding = padding;
+            this.offsets = new long[lengths.length];
+            long offset = 0;
+            for (int i = 0; i < lengths.length; i++) {
+                if (lengths[i] < 0) {
+                    throw new BencodeException("Invalid length " + lengths[i] + " of file #" + i);
+                }
+                offsets[i] = offset;
+                offset += lengths[i];
+            }
+            this.totalLength = offset;
+        }
+
+        public int size() {
+            return lengths.length;
+        }
+
+        public long length(int index) {
+            return lengths[index];
+        }
+
+        public long offset(int index) {
+            return offsets[index];
+        }
+
+        public boolean isPadding(int index) {
+            return padding[index];
+        }
+
+        public long totalLength() {
+            return totalLength;
+        }
+
+        @NotNull
+        public List<String> path(int index) {
+            BNode<?> path = paths[index];
+            if (path instanceof BString) {
+                return Collections.singletonList(((BString) path).toString(StandardCharsets.UTF_8));
+            }
+            if (path instanceof BList) {
+                return Collections.unmodifiableList(toStrings((BList) path));
+            }
+            throw new BencodeException("Invalid path of file #" + index + ": " + path);
+        }
+
+        /**
+         * @return the index of the file containing the given byte offset of the torrent
+         */
+        public int indexOf(long offset) {
+            if (offset < 0 || offset >= totalLength) {
+                throw new IndexOutOfBoundsException("Offset " + offset + " is not within the torrent");
+            }
+            int index = Arrays.binarySearch(offsets, offset);
+            if (index < 0) {
+                return -index - 2;
+            }
+            // skip empty files sharing the same offset
+            while (index + 1 < offsets.length && offsets[index + 1] == offset) index++;
+            return index;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode.torrent;
+
+import eu.fraho.libs.beencode.*;
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Checks the content of a v2 or hybrid torrent against its pieces roots, piece layers and,
+ * if present, the v1 piece hashes.
+ */
+@NotThreadSafe
+public final class TorrentVerifier {
+    private static final int SHA1_LENGTH = 20;
+    private static final BString EMPTY = BString.of("");
+    private static final BString ATTR = BString.of("attr");
+    private static final BString PIECES_ROOT = BString.of("pieces root");
+
+    private final BDict metainfo;
+    private final Path content;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    private TorrentVerifier(@NotNull BDict metainfo, @NotNull Path content) {
+        this.metainfo = metainfo;
+        this.content = content;
+    }
+
+    @NotNull
+    public static TorrentVerifier of(@NotNull BDict metainfo, @NotNull Path content) {
+        Objects.requireNonNull(metainfo, "metainfo may not be null");
+        Objects.requireNonNull(content, "content may not be null");
+        return new TorrentVerifier(metainfo, content);
+    }
+
+    @NotNull
+    public TorrentVerifier threads(int threads) {
+        if (threads < 1) {
+            throw new BencodeException("threads has to be positive (is " + threads + ")");
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * @return the paths of all files which do not match the metainfo, empty if the content is valid
+     */
+    @NotNull
+    public List<String> verify() throws IOException {
+        BDict info = require(metainfo, "info", BDict.class);
+        BDict fileTree = require(info, "file tree", BDict.class);
+        BDict pieceLayers = metainfo.get("piece layers").filter(BDict.class::isInstance).map(BDict.class::cast)
+                .orElse(BDict.of());
+        int pieceLength = require(info, "piece length", BInteger.class).getValue().intValue();
+        boolean hybrid = info.containsKey(BString.of("pieces"));
+
+        List<List<String>> components = new ArrayList<>();
+        List<BDict> leaves = new ArrayList<>();
+        collect(fileTree, new ArrayList<>(), components, leaves);
+        boolean singleFile = isSingleFile(info, fileTree);
+
+        int count = leaves.size();
+        Set<String> failed = new TreeSet<>();
+        List<Path> paths = new ArrayList<>(count);
+        long[] lengths = new long[count];
+        boolean[] padAfter = hybrid ? padding(info, count) : new boolean[count];
+        boolean[] present = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            Path path = singleFile ? content : resolve(components.get(i));
+            lengths[i] = require(leaves.get(i), "length", BInteger.class).getValue();
+            present[i] = Files.isRegularFile(path) && Files.size(path) == lengths[i];
+            paths.add(path);
+        }
+
+        // missing files are hashed as empty ones, their result is discarded below
+        long[] readable = lengths.clone();
+        for (int i = 0; i < count; i++) {
+            if (!present[i]) {
+                readable[i] = 0;
+                failed.add(String.join("/", components.get(i)));
+            }
+        }
+        boolean checkV1 = hybrid && allPresent(present);
+        MerkleHasher.Result hashes = new MerkleHasher(pieceLength, threads, threads * 2, checkV1)
+                .hash(paths, readable, padAfter);
+
+        for (int i = 0; i < count; i++) {
+            if (!present[i] || lengths[i] == 0) continue;
+            Optional<BNode<?>> expectedRoot = leaves.get(i).get(PIECES_ROOT);
+            boolean valid = expectedRoot.isPresent()
+                    && Arrays.equals(((BString) expectedRoot.get()).getValue(), hashes.getRoot(i));
+            if (valid && lengths[i] > pieceLength) {
+                Optional<BNode<?>> layer = pieceLayers.get((BString) expectedRoot.get());
+                valid = layer.isPresent() && Arrays.equals(((BString) layer.get()).getValue(), hashes.getLayer(i));
+            }
+            if (!valid) failed.add(String.join("/", components.get(i)));
+        }
+
+        if (checkV1) {
+            byte[] expected = require(info, "pieces", BString.class).getValue();
+            byte[] actual = Objects.requireNonNull(hashes.getV1Pieces());
+            if (expected.length != actual.length) {
+                throw new BencodeException("Invalid v1 pieces, expected " + actual.length
+                        + " bytes but got " + expected.length);
+            }
+            int piece = 0;
+            for (int i = 0; i < count; i++) {
+                int pieces = (int) ((lengths[i] + pieceLength - 1) / pieceLength);
+                for (int p = 0; p < pieces; p++, piece++) {
+                    if (!rangeEquals(expected, actual, piece * SHA1_LENGTH, SHA1_LENGTH)) {
+                        failed.add(String.join("/", components.get(i)));
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(failed);
+    }
+
+    /**
+     * Hybrid torrents tell by {@code length} or {@code files}, otherwise a single file torrent has a
+     * file tree with one file named like the torrent.
+     */
+    private static boolean isSingleFile(@NotNull BDict info, @NotNull BDict fileTree) {
+        if (info.containsKey(BString.of("files"))) return false;
+        if (info.containsKey(BString.of("length"))) return true;
+        BNode<?> name = info.get("name").orElse(null);
+        if (!(name instanceof BString) || fileTree.size() != 1) return false;
+        BNode<?> root = fileTree.get((BString) name).orElse(null);
+        return root instanceof BDict && ((BDict) root).size() == 1 && ((BDict) root).containsKey(BString.of(""));
+    }
+
+    @NotNull
+    private Path resolve(@NotNull List<String> components) {
+        Path result = content;
+        for (String component : components) {
+            if (component.isEmpty() || component.equals(".") || component.equals("..") || component.contains("/")) {
+                throw new BencodeException("Invalid path component '" + component + "'");
+            }
+            result = result.resolve(component);
+        }
+        return result;
+    }
+
+    private static void collect(@NotNull BDict tree, @NotNull List<String> prefix,
+                                @NotNull List<List<String>> components, @NotNull List<BDict> leaves) {
+        for (Map.Entry<BString, BNode<?>> entry : tree.entrySet()) {
+            if (!(entry.getValue() instanceof BDict)) {
+                throw new BencodeException("Invalid file tree entry " + entry.getKey());
+            }
+            BDict child = (BDict) entry.getValue();
+            List<String> path = new ArrayList<>(prefix);
+            path.add(entry.getKey().toString(StandardCharsets.UTF_8));
+            Optional<BNode<?>> leaf = child.get(EMPTY);
+            if (leaf.isPresent()) {
+                if (!(leaf.get() instanceof BDict)) {
+                    throw new BencodeException("Invalid file tree leaf " + path);
+                }
+                components.add(path);
+                leaves.add((BDict) leaf.get());
+            } else {
+                collect(child, path, components, leaves);
+            }
+        }
+    }
+
+    @NotNull
+    private static boolean[] padding(@NotNull BDict info, int count) {
+        boolean[] result = new boolean[count];
+        if (!info.containsKey(BString.of("files"))) {
+            return result;
+        }
+
+        int index = -1;
+        for (BNode<?> node : require(info, "files", BList.class).getValue()) {
+            if (!(node instanceof BDict)) {
+                throw new BencodeException("Invalid v1 file entry " + node);
+            }
+            BDict file = (BDict) node;
+            Optional<BNode<?>> attr = file.get(ATTR);
+            if (attr.isPresent() && attr.get().toString().contains("p")) {
+                if (index < 0) throw new BencodeException("v1 file list starts with a padding file");
+                result[index] = true;
+            } else if (++index >= count) {
+                throw new BencodeException("v1 file list contains more files than the file tree");
+            }
+        }
+        if (index + 1 != count) {
+            throw new BencodeException("v1 file list contains less files than the file tree");
+        }
+        return result;
+    }
+
+    private static boolean allPresent(@NotNull boolean[] present) {
+        for (boolean value : present) if (!value) return false;
+        return true;
+    }
+
+    private static boolean rangeEquals(@NotNull byte[] a, @NotNull byte[] b, int offset, int length) {
+        if (a.length < offset + length || b.length < offset + length) return false;
+        for (int i = offset; i < offset + length; i++) {
+            if (a[i] != b[i]) return false;
+        }
+        return true;
+    }
+
+    @NotNull
+    private static <T extends BNode<?>> T require(@NotNull BDict dict, @NotNull String key, @NotNull Class<T> type) {
+        @Nullable BNode<?> value = dict.get(key).orElse(null);
+        if (!type.isInstance(value)) {
+            throw new BencodeException("Expected " + type.getSimpleName() + " for key '" + key + "', but got " + value);
+        }
+        return type.cast(value);
+    }
+}
@@ -0,0 +1,13 @@
+/*
+ * MIT Licence
+ * Copyright (c) 2017 Simon Frankenberger
+ *
+ * Please see LICENCE.md for complete licence text.
+ */
+package eu.fraho.libs.beencode.torrent;
+
+public enum TorrentVersion {
+    V1,
+    V2,
+    HYBRID
+}
@@ -59,6 +59,23 @@ public abstract class AbstractTest<T extends BNode<?>> {
         Assert.assertEquals(toWrite, hasRead);
     }
 
+    @Test
+    public final void testJavaSerializationUsesProxy() throws IOException {
+        byte[] written;
+        try (ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
+            try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+                oos.writeObject(getSampleA());
+            }
+            written = bos.toByteArray();
+        }
+
+        String raw = new String(written, StandardCharsets.ISO_8859_1);
+        Assert.assertTrue(raw.contains(SerializationProxy.class.getName()));
+        Assert.assertTrue(raw.contains(getSampleAEncoded()));
+        Assert.assertFalse(raw.contains(getSampleA().getClass().getName()));
+        Assert.assertFalse(raw.contains("java.util"));
+    }
+
 
     @Test
     public void testToString() {
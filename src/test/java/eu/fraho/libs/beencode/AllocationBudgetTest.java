@@ -0,0 +1,126 @@
+package eu.fraho.libs.beencode;
+
+import eu.fraho.libs.beencode.helpers.CorpusGenerator;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Guards the hot paths against allocation regressions. Each operation runs on a fixed input and the
+ * bytes allocated by the current thread are compared with a declared budget per operation.
+ * <p>
+ * The budgets include some headroom, as the numbers differ a little between JVMs. When an improvement
+ * lowers the allocations considerably, the budget should be lowered as well.
+ */
+public class AllocationBudgetTest {
+    private static final int WARMUP = 2_000;
+    private static final int ITERATIONS = 500;
+    private static final int ROUNDS = 5;
+
+    private static com.sun.management.ThreadMXBean threads;
+    private static byte[] torrent;
+    private static BNode<?> torrentNode;
+    private static BDict dict;
+
+    private Object sink;
+
+    @FunctionalInterface
+    private interface Operation {
+        Object run() throws Exception;
+    }
+
+    @BeforeClass
+    public static void setup() throws IOException {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue("per thread allocation counters are not available",
+                bean instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        CorpusGenerator.of(42).files(20).totalLength(64L << 20, 1 << 18).writeTorrent(baos);
+        torrent = baos.toByteArray();
+        torrentNode = NodeFactory.decode(torrent);
+
+        BDict result = BDict.of();
+        for (int i = 0; i < 100; i++) {
+            result = result.put(BString.of("key" + i), BInteger.of(i));
+        }
+        dict = result;
+    }
+
+    private long measure(Operation operation) throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            sink = operation.run();
+        }
+        // the best of some rounds: after a deoptimization the loop runs without escape analysis for a while,
+        // so temporary objects which the compiled code does not allocate count against the budget
+        long thread = Thread.currentThread().getId();
+        long result = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long before = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < ITERATIONS; i++) {
+                sink = operation.run();
+            }
+            long after = threads.getThreadAllocatedBytes(thread);
+            result = Math.min(result, (after - before) / ITERATIONS);
+        }
+        Assert.assertNotNull(sink);
+        return result;
+    }
+
+    private void assertBudget(String name, long budget, Operation operation) throws Exception {
+        long allocated = measure(operation);
+        Assert.assertTrue(name + " allocated " + allocated + " bytes per operation, budget is " + budget,
+                allocated <= budget);
+    }
+
+    @Test
+    public void testDecodeBytes() throws Exception {
+        // 6.4 KiB with 20 file entries, about 230 nodes
+        assertBudget("NodeFactory.decode(byte[])", 36_864,
+                () -> NodeFactory.decode(torrent));
+    }
+
+    @Test
+    public void testDecodeStream() throws Exception {
+        assertBudget("NodeFactory.decode(InputStream)", 36_864,
+                () -> NodeFactory.decode(new ByteArrayInputStream(torrent)));
+    }
+
+    @Test
+    public void testEncode() throws Exception {
+        // the length prefixes are formatted through Strings and the output buffer grows by doubling
+        assertBudget("NodeFactory.encode", 73_728,
+                () -> NodeFactory.encode(torrentNode));
+    }
+
+    @Test
+    public void testDictGetString() throws Exception {
+        assertBudget("BDict.get(String)", 256,
+                () -> dict.get("key42"));
+    }
+
+    @Test
+    public void testParseInteger() throws Exception {
+        byte[] data = "i1234567890123e".getBytes(StandardCharsets.US_ASCII);
+        assertBudget("NodeFactory.decode(i...e)", 320,
+                () -> NodeFactory.decode(data));
+        assertBudget("BInteger.of(InputStream)", 256,
+                () -> BInteger.of(new ByteArrayInputStream(data)));
+    }
+
+    @Test
+    public void testMeasureSanity() throws Exception {
+        Assert.assertTrue(measure(() -> Arrays.copyOf(torrent, 1_024)) >= 1_024);
+    }
+}
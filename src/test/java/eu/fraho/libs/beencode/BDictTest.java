@@ -7,6 +7,8 @@ import org.junit.Test;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.TreeMap;
@@ -142,4 +144,25 @@ public class BDictTest extends AbstractTest<BDict> {
             BDict.of(is, (byte) 'x');
         }
     }
+
+    @Test
+    public void testRetainedSize() {
+        BDict empty = BDict.of();
+        Assert.assertEquals(112, empty.getRetainedSize());
+
+        BString key = BString.of("spam");
+        BInteger value = BInteger.of(1_000);
+        BDict dict = empty.put(key, value);
+        Assert.assertEquals(112 + 40 + key.getRetainedSize() + value.getRetainedSize(), dict.getRetainedSize());
+        Assert.assertEquals(dict.getRetainedSize(), dict.getRetainedSize());
+
+        // a torrent with many files weighs far more than one with a single file
+        BDict small = (BDict) NodeFactory.decode("d4:infod6:lengthi1000e4:name4:spamee".getBytes());
+        List<BNode<?>> files = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            files.add(BDict.of(BString.of("length"), BInteger.of(i), BString.of("path"), BList.of(BString.of("file" + i))));
+        }
+        BDict large = BDict.of(BString.of("info"), BDict.of(BString.of("files"), BList.of(files)));
+        Assert.assertTrue(large.getRetainedSize() > 500 * small.getRetainedSize());
+    }
 }
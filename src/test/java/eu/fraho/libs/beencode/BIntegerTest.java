@@ -133,4 +133,13 @@ public class BIntegerTest extends AbstractTest<BInteger> {
             BInteger.of(is, (byte) 'x');
         }
     }
+
+    @Test
+    public void testRetainedSize() {
+        // small values share the cached Long instances
+        Assert.assertEquals(16, BInteger.of(0).getRetainedSize());
+        Assert.assertEquals(16, BInteger.of(-128).getRetainedSize());
+        Assert.assertEquals(40, BInteger.of(128).getRetainedSize());
+        Assert.assertEquals(40, BInteger.of(Long.MAX_VALUE).getRetainedSize());
+    }
 }
@@ -190,4 +190,21 @@ public class BListTest extends AbstractTest<BList> {
             BList.of(is, (byte) 'x');
         }
     }
+
+    @Test
+    public void testRetainedSize() {
+        BList empty = BList.of();
+        Assert.assertEquals(96, empty.getRetainedSize());
+
+        BString spam = BString.of("spam");
+        BInteger big = BInteger.of(1_000);
+        BList list = BList.of(spam, big);
+        // the backing array has room for 10 references
+        Assert.assertEquals(80 + 56 + spam.getRetainedSize() + big.getRetainedSize(), list.getRetainedSize());
+        Assert.assertEquals(list.getRetainedSize(), list.getRetainedSize());
+
+        BList nested = BList.of(list, list);
+        Assert.assertEquals(80 + 56 + 2 * list.getRetainedSize(), nested.getRetainedSize());
+        Assert.assertTrue(list.add(BString.of(new byte[1_000])).getRetainedSize() > list.getRetainedSize() + 1_000);
+    }
 }
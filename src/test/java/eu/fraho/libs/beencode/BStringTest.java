@@ -34,6 +34,16 @@ public class BStringTest extends AbstractTest<BString> {
         Assert.assertEquals("我", str.toString(StandardCharsets.UTF_16BE));
     }
 
+    @Test
+    public void testCompareRawBytes() {
+        BString high = BString.of(new byte[]{(byte) 0xff});
+        BString low = BString.of(new byte[]{0x7f});
+        Assert.assertTrue(low.compareTo(high) < 0);
+        Assert.assertTrue(BString.of("a").compareTo(BString.of("ab")) < 0);
+        Assert.assertTrue(BString.of("b").compareTo(BString.of("ab")) > 0);
+        Assert.assertEquals(0, BString.of("ab").compareTo(BString.of("ab")));
+    }
+
     @Test
     public void testEmptyString() {
         BString str = BString.of("");
@@ -134,4 +144,11 @@ public class BStringTest extends AbstractTest<BString> {
         BString b = BString.of(data);
         Assert.assertNotEquals(a, b);
     }
+
+    @Test
+    public void testRetainedSize() {
+        Assert.assertEquals(32, BString.of("").getRetainedSize());
+        Assert.assertEquals(40, BString.of("spam").getRetainedSize());
+        Assert.assertEquals(16 + 1_048_592, BString.of(new byte[1 << 20]).getRetainedSize());
+    }
 }
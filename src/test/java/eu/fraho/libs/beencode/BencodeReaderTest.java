@@ -0,0 +1,126 @@
+package eu.fraho.libs.beencode;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class BencodeReaderTest {
+    private static BencodeReader reader(String data) {
+        return BencodeReader.of(data.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void testPullParsing() {
+        BencodeReader testee = reader("d3:bari-13e3:fooli1e4:spamee");
+        testee.enterDict();
+        Assert.assertTrue(testee.hasNext());
+        Assert.assertEquals(3, testee.readString());
+        Assert.assertTrue(testee.stringEquals("bar".getBytes()));
+        Assert.assertEquals(-13, testee.readLong());
+        Assert.assertEquals(BString.of("foo"), testee.readBString());
+        testee.enterList();
+        Assert.assertEquals(2, testee.depth());
+        Assert.assertEquals(1, testee.readLong());
+        Assert.assertArrayEquals("spam".getBytes(), testee.readBytes());
+        Assert.assertFalse(testee.hasNext());
+        testee.exit();
+        testee.exit();
+        Assert.assertTrue(testee.isAtEnd());
+        Assert.assertFalse(testee.hasNext());
+    }
+
+    @Test
+    public void testReadNode() {
+        String encoded = "d3:bar4:test3:fooli13ei-1e0:ee";
+        BNode<?> expected = NodeFactory.decode(encoded.getBytes());
+        Assert.assertEquals(expected, reader(encoded).readNode());
+    }
+
+    @Test
+    public void testSkipValue() {
+        BencodeReader testee = reader("ld1:ad1:bli1e2:xxeee3:endee");
+        testee.enterList();
+        testee.skipValue();
+        Assert.assertEquals(BString.of("end"), testee.readBString());
+        testee.exit();
+    }
+
+    @Test
+    public void testSubRange() {
+        byte[] data = "xxi42eyy".getBytes();
+        BencodeReader testee = BencodeReader.of(data, 2, 4);
+        Assert.assertEquals(42, testee.readLong());
+        Assert.assertTrue(testee.isAtEnd());
+        testee.reset(data, 0, 0);
+        Assert.assertFalse(testee.hasNext());
+    }
+
+    @Test
+    public void testLimits() {
+        Assert.assertEquals(Long.MAX_VALUE, reader("i9223372036854775807e").readLong());
+        Assert.assertEquals(Long.MIN_VALUE, reader("i-9223372036854775808e").readLong());
+        Assert.assertEquals(0, reader("i0e").readLong());
+        Assert.assertEquals(0, reader("0:").readString());
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testOverflow() {
+        reader("i9223372036854775808e").readLong();
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testNegativeZero() {
+        reader("i-0e").readLong();
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testLeadingZero() {
+        reader("i03e").readLong();
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testOnlyDash() {
+        reader("i-e").readLong();
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testEmptyInteger() {
+        reader("ie").readLong();
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testUnterminatedInteger() {
+        reader("i42").readLong();
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testStringLeadingZero() {
+        reader("03:abc").readString();
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testStringTooShort() {
+        reader("5:abc").readString();
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testMissingSuffix() {
+        reader("li1e").readNode();
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testInvalidDictKey() {
+        reader("di1ei2ee").readNode();
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testUnknownPrefix() {
+        reader("x").skipValue();
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testExitAtTopLevel() {
+        reader("e").exit();
+    }
+}
@@ -0,0 +1,172 @@
+package eu.fraho.libs.beencode;
+
+import eu.fraho.libs.beencode.helpers.CorpusGenerator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class BencodeSplicerTest {
+    private static final String TORRENT = "d8:announce35:http://tracker.example.com/announce"
+            + "4:infod5:filesld6:lengthi42e4:pathl4:spameed6:lengthi7e4:pathl4:eggseee4:name7:releaseee";
+
+    private static byte[] bytes(String data) {
+        return data.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static String string(byte[] data) {
+        return new String(data, StandardCharsets.ISO_8859_1);
+    }
+
+    private static String put(String data, BNode<?> value, BNode<?>... path) {
+        return string(BencodeSplicer.of(Arrays.asList(path)).put(bytes(data), value));
+    }
+
+    private static String remove(String data, BNode<?>... path) {
+        return string(BencodeSplicer.of(Arrays.asList(path)).remove(bytes(data)));
+    }
+
+    @Test
+    public void testReplace() {
+        byte[] result = BencodeSplicer.of("announce").put(bytes(TORRENT), BString.of("udp://other"));
+        BDict expected = ((BDict) NodeFactory.decode(bytes(TORRENT))).put(BString.of("announce"), BString.of("udp://other"));
+        Assert.assertArrayEquals(NodeFactory.encode(expected), result);
+    }
+
+    @Test
+    public void testReplaceNested() {
+        byte[] result = BencodeSplicer.of("info", "name").put(bytes(TORRENT), BInteger.of(1));
+        Assert.assertEquals(TORRENT.replace("4:name7:release", "4:namei1e"), string(result));
+    }
+
+    @Test
+    public void testReplaceInList() {
+        Assert.assertEquals(TORRENT.replace("i7e", "i8e"),
+                put(TORRENT, BInteger.of(8), BString.of("info"), BString.of("files"), BInteger.of(1), BString.of("length")));
+        Assert.assertEquals("l1:ai2e1:ce", put("l1:a1:b1:ce", BInteger.of(2), BInteger.of(1)));
+    }
+
+    @Test
+    public void testInsert() {
+        Assert.assertEquals("d1:ai1e1:bi2e1:ci3ee", put("d1:ai1e1:ci3ee", BInteger.of(2), BString.of("b")));
+        Assert.assertEquals("d1:ai1e1:bi2ee", put("d1:bi2ee", BInteger.of(1), BString.of("a")));
+        Assert.assertEquals("d1:ai1e1:bi2ee", put("d1:ai1ee", BInteger.of(2), BString.of("b")));
+        Assert.assertEquals("d1:ai1ee", put("de", BInteger.of(1), BString.of("a")));
+        Assert.assertEquals("l1:a1:be", put("l1:ae", BString.of("b"), BInteger.of(1)));
+        Assert.assertEquals("d1:ali1eee", put("d1:alee", BInteger.of(1), BString.of("a"), BInteger.of(0)));
+    }
+
+    @Test
+    public void testRemove() {
+        Assert.assertEquals("d1:ci3ee", remove("d1:ai1e1:ci3ee", BString.of("a")));
+        Assert.assertEquals("d1:ai1ee", remove("d1:ai1e1:cld1:xi1eeee", BString.of("c")));
+        Assert.assertEquals("l1:a1:ce", remove("l1:a1:b1:ce", BInteger.of(1)));
+        Assert.assertEquals(TORRENT.replace("4:name7:release", ""), remove(TORRENT, BString.of("info"), BString.of("name")));
+    }
+
+    @Test
+    public void testRemoveMissing() {
+        byte[] data = bytes(TORRENT);
+        Assert.assertSame(data, BencodeSplicer.of("comment").remove(data));
+        Assert.assertSame(data, BencodeSplicer.of(Arrays.asList(BString.of("info"), BString.of("files"), BInteger.of(5))).remove(data));
+    }
+
+    @Test
+    public void testUnsortedKeys() {
+        String unsorted = "d4:zzzz1:a8:announce3:olde";
+        String result = put(unsorted, BString.of("new"), BString.of("announce"));
+        Assert.assertEquals("d4:zzzz1:a8:announce3:newe", result);
+        Assert.assertEquals(BString.of("new"), ((BDict) NodeFactory.decode(bytes(result))).get("announce").orElse(null));
+        Assert.assertEquals("d4:zzzz1:ae", remove(unsorted, BString.of("announce")));
+        // nested below an unsorted key
+        Assert.assertEquals("d1:bi0e1:ad1:xi2eee", put("d1:bi0e1:ad1:xi1eee", BInteger.of(2), BString.of("a"), BString.of("x")));
+        // a missing key is still inserted before the first greater one
+        Assert.assertEquals("d1:bi1e4:zzzz1:a1:ai0ee", put("d4:zzzz1:a1:ai0ee", BInteger.of(1), BString.of("b")));
+    }
+
+    @Test
+    public void testDuplicateKeys() {
+        // the decoders keep the last value, so that one is replaced
+        String result = put("d1:ai1e1:ai2ee", BInteger.of(3), BString.of("a"));
+        Assert.assertEquals("d1:ai1e1:ai3ee", result);
+        Assert.assertEquals(BInteger.of(3), ((BDict) NodeFactory.decode(bytes(result))).get("a").orElse(null));
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testRemoveDuplicateKey() {
+        remove("d1:ai1e1:ai2ee", BString.of("a"));
+    }
+
+    @Test
+    public void testTrailingDataIsCopied() {
+        Assert.assertEquals("d1:ai2eeXYZ", put("d1:ai1eeXYZ", BInteger.of(2), BString.of("a")));
+    }
+
+    @Test
+    public void testRange() throws IOException {
+        byte[] data = bytes("XXd1:ai1eeYY");
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Assert.assertTrue(BencodeSplicer.of("a").put(data, 2, 8, BInteger.of(2), baos));
+        Assert.assertEquals("d1:ai2ee", string(baos.toByteArray()));
+
+        baos.reset();
+        Assert.assertFalse(BencodeSplicer.of("b").remove(data, 2, 8, baos));
+        Assert.assertEquals("d1:ai1ee", string(baos.toByteArray()));
+    }
+
+    @Test
+    public void testGeneratedTorrents() throws IOException {
+        for (long seed = 0; seed < 20; seed++) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            CorpusGenerator.of(seed).files(1 + (int) seed).totalLength(1L << 24, 1 << 16).writeTorrent(baos);
+            byte[] data = baos.toByteArray();
+            BDict torrent = (BDict) NodeFactory.decode(data);
+
+            BString url = BString.of("http://tracker" + seed + ".example.com/announce");
+            BDict expected = torrent.put(BString.of("announce"), url);
+            Assert.assertArrayEquals(NodeFactory.encode(expected), BencodeSplicer.of("announce").put(data, url));
+
+            expected = torrent.put(BString.of("comment"), BString.of("spliced"));
+            Assert.assertArrayEquals(NodeFactory.encode(expected), BencodeSplicer.of("comment").put(data, BString.of("spliced")));
+        }
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testMissingIntermediateKey() {
+        BencodeSplicer.of("missing", "name").put(bytes(TORRENT), BInteger.of(1));
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testIndexOutOfBounds() {
+        put("l1:ae", BInteger.of(1), BInteger.of(2));
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testNoDictionary() {
+        BencodeSplicer.of("announce", "name").put(bytes(TORRENT), BInteger.of(1));
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testNoList() {
+        put(TORRENT, BInteger.of(1), BInteger.of(0));
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testBudget() {
+        BencodeSplicer.of("info", "name").withOptions(DecoderOptions.DEFAULT.withMaxNodes(3)).put(bytes(TORRENT), BInteger.of(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyPath() {
+        BencodeSplicer.of(Collections.emptyList());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPath() {
+        BencodeSplicer.of(Collections.singletonList(BList.of()));
+    }
+}
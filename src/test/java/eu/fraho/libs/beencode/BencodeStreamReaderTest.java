@@ -0,0 +1,173 @@
+package eu.fraho.libs.beencode;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+public class BencodeStreamReaderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static BencodeStreamReader reader(String data, int inlineLimit) {
+        return BencodeStreamReader.of(new ByteArrayInputStream(data.getBytes(StandardCharsets.ISO_8859_1)), inlineLimit);
+    }
+
+    private static byte[] blob(int length) {
+        byte[] result = new byte[length];
+        new Random(length).nextBytes(result);
+        return result;
+    }
+
+    private static byte[] encoded(byte[] blob) {
+        return NodeFactory.encode(BDict.of(BString.of("blob"), BString.of(blob), BString.of("name"), BString.of("test")));
+    }
+
+    @Test
+    public void testPullParsing() throws IOException {
+        BencodeStreamReader testee = reader("d3:bari-13e3:fooli1e4:spamee", 16);
+        testee.enterDict();
+        Assert.assertTrue(testee.hasNext());
+        Assert.assertArrayEquals("bar".getBytes(), testee.readBytes());
+        Assert.assertEquals(-13, testee.readLong());
+        Assert.assertEquals(BString.of("foo"), testee.readBString());
+        testee.enterList();
+        Assert.assertEquals(2, testee.depth());
+        Assert.assertEquals(1, testee.readLong());
+        Assert.assertEquals(BString.of("spam"), testee.readNode());
+        Assert.assertFalse(testee.hasNext());
+        testee.exit();
+        testee.exit();
+        Assert.assertFalse(testee.hasNext());
+        Assert.assertEquals(28, testee.offset());
+    }
+
+    @Test
+    public void testReadNode() throws IOException {
+        String encoded = "d3:bar4:test3:fooli13ei-1e0:ee";
+        Assert.assertEquals(NodeFactory.decode(encoded.getBytes()), reader(encoded, 16).readNode());
+    }
+
+    @Test
+    public void testReadStream() throws IOException {
+        byte[] blob = blob(100_000);
+        BencodeStreamReader testee = BencodeStreamReader.of(new ByteArrayInputStream(encoded(blob)), 1024);
+        testee.enterDict();
+        Assert.assertArrayEquals("blob".getBytes(), testee.readBytes());
+        Assert.assertTrue(testee.isString());
+        Assert.assertEquals(100_000, testee.readStringLength());
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (InputStream is = testee.readStream()) {
+            byte[] chunk = new byte[777];
+            int read;
+            while ((read = is.read(chunk)) >= 0) bos.write(chunk, 0, read);
+        }
+        Assert.assertArrayEquals(blob, bos.toByteArray());
+        Assert.assertArrayEquals("name".getBytes(), testee.readBytes());
+        Assert.assertArrayEquals("test".getBytes(), testee.readBytes());
+        testee.exit();
+    }
+
+    @Test
+    public void testReadChannel() throws IOException {
+        byte[] blob = blob(20_000);
+        BencodeStreamReader testee = BencodeStreamReader.of(new ByteArrayInputStream(encoded(blob)), 1024);
+        testee.enterDict();
+        testee.readBytes();
+        ByteBuffer target = ByteBuffer.allocate(blob.length + 1);
+        try (ReadableByteChannel channel = testee.readChannel()) {
+            while (channel.read(target) >= 0) {
+                // read until the end of the string
+            }
+        }
+        Assert.assertEquals(blob.length, target.position());
+        target.flip();
+        Assert.assertEquals(ByteBuffer.wrap(blob), target);
+    }
+
+    @Test
+    public void testSpill() throws IOException {
+        byte[] blob = blob(50_000);
+        BencodeStreamReader testee = BencodeStreamReader.of(new ByteArrayInputStream(encoded(blob)), 1024);
+        testee.enterDict();
+        testee.readBytes();
+        Path file = testee.spill(folder.getRoot().toPath());
+        Assert.assertArrayEquals(blob, Files.readAllBytes(file));
+        Assert.assertEquals(BString.of("name"), testee.readBString());
+    }
+
+    @Test
+    public void testUnreadPayloadIsSkipped() throws IOException {
+        byte[] blob = blob(30_000);
+        BencodeStreamReader testee = BencodeStreamReader.of(new ByteArrayInputStream(encoded(blob)), 1024);
+        testee.enterDict();
+        testee.readBytes();
+        InputStream is = testee.readStream();
+        Assert.assertEquals(blob[0], (byte) is.read());
+        Assert.assertEquals(BString.of("name"), testee.readBString());
+        Assert.assertEquals(-1, is.read());
+
+        testee = BencodeStreamReader.of(new ByteArrayInputStream(encoded(blob)), 1024);
+        testee.enterDict();
+        testee.readBytes();
+        testee.skipValue();
+        Assert.assertEquals(BString.of("name"), testee.readBString());
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testInlineLimit() throws IOException {
+        BencodeStreamReader testee = BencodeStreamReader.of(new ByteArrayInputStream(encoded(blob(2048))), 1024);
+        testee.readNode();
+    }
+
+    @Test
+    public void testLargeLength() throws IOException {
+        BencodeStreamReader testee = reader("5000000000:abc", 16);
+        Assert.assertEquals(5_000_000_000L, testee.readStringLength());
+        InputStream is = testee.readStream();
+        byte[] target = new byte[8];
+        Assert.assertEquals(3, is.read(target));
+        try {
+            is.read(target);
+            Assert.fail("Expected a BencodeException");
+        } catch (BencodeException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testLeadingZeros() throws IOException {
+        reader("03:abc", 16).readBytes();
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testLengthOverflow() throws IOException {
+        reader("9999999999999999999:", 16).readStringLength();
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testTruncated() throws IOException {
+        reader("li1e", 16).readNode();
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testInvalidInteger() throws IOException {
+        reader("i-0e", 16).readLong();
+    }
+
+    @Test
+    public void testSmallStrings() throws IOException {
+        Assert.assertArrayEquals(new byte[0], reader("0:", 16).readBytes());
+        Assert.assertTrue(Arrays.equals("x".getBytes(), reader("1:x", 16).readBytes()));
+    }
+}
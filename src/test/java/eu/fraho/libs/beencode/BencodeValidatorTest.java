@@ -0,0 +1,127 @@
+package eu.fraho.libs.beencode;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class BencodeValidatorTest {
+    private final BencodeValidator testee = BencodeValidator.of();
+
+    private static byte[] bytes(String data) {
+        return data.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private void assertValid(String data) {
+        ValidationResult result = testee.validate(bytes(data));
+        Assert.assertTrue(data + ": " + result, result.isValid());
+        Assert.assertEquals(-1, result.getOffset());
+        Assert.assertNull(result.getMessage());
+    }
+
+    private void assertInvalid(String data, int offset) {
+        ValidationResult result = testee.validate(bytes(data));
+        Assert.assertFalse(data, result.isValid());
+        Assert.assertEquals(data + ": " + result, offset, result.getOffset());
+        Assert.assertNotNull(result.getMessage());
+    }
+
+    @Test
+    public void testValid() {
+        assertValid("i0e");
+        assertValid("i-1e");
+        assertValid("i9223372036854775807e");
+        assertValid("i-9223372036854775808e");
+        assertValid("0:");
+        assertValid("4:spam");
+        assertValid("le");
+        assertValid("de");
+        assertValid("d3:bar4:spam3:fooi42ee");
+        assertValid("d1:ad1:bli1e0:deee1:b0:e");
+        assertValid("d1:\u007fi1e1:\u0080i2ee");
+    }
+
+    @Test
+    public void testValidEncoderOutput() {
+        BDict dict = BDict.of(BString.of(new byte[]{(byte) 0xc3}), BInteger.of(1), BString.of("z"), BInteger.of(2),
+                BString.of("za"), BList.of(BString.of(""), BDict.of()));
+        Assert.assertTrue(testee.validate(NodeFactory.encode(dict)).isValid());
+    }
+
+    @Test
+    public void testIntegers() {
+        assertInvalid("i01e", 0);
+        assertInvalid("i-0e", 0);
+        assertInvalid("ie", 0);
+        assertInvalid("i-e", 0);
+        assertInvalid("i1", 2);
+        assertInvalid("i1xe", 2);
+        assertInvalid("i9223372036854775808e", 0);
+        assertInvalid("i-9223372036854775809e", 0);
+    }
+
+    @Test
+    public void testStrings() {
+        assertInvalid("01:a", 0);
+        assertInvalid("5:abc", 0);
+        assertInvalid("3", 1);
+        assertInvalid("3x", 1);
+        assertInvalid("99999999999999999999:", 0);
+        Assert.assertEquals(0, BencodeValidator.of(10, 3).validate(bytes("4:abcd")).getOffset());
+        Assert.assertTrue(BencodeValidator.of(10, 4).validate(bytes("4:abcd")).isValid());
+    }
+
+    @Test
+    public void testDictionaries() {
+        assertInvalid("d3:foo1:a3:bar1:be", 9);
+        assertInvalid("d3:foo1:a3:foo1:be", 9);
+        assertInvalid("d1:\u0080i1e1:\u007fi2ee", 7);
+        assertInvalid("di1e1:ae", 1);
+        assertInvalid("dlee", 1);
+        assertInvalid("d1:ae", 4);
+        assertInvalid("d1:ad1:ai1e1:ai1eee", 11);
+    }
+
+    @Test
+    public void testStructure() {
+        assertInvalid("", 0);
+        assertInvalid("l", 1);
+        assertInvalid("li1e", 4);
+        assertInvalid("e", 0);
+        assertInvalid("x", 0);
+        assertInvalid("lxe", 1);
+        assertInvalid("i1ei2e", 3);
+        assertInvalid("lee", 2);
+        Assert.assertTrue(testee.allowTrailingData().validate(bytes("i1ei2e")).isValid());
+    }
+
+    @Test
+    public void testDepth() {
+        BencodeValidator shallow = BencodeValidator.of(2, 10);
+        Assert.assertTrue(shallow.validate(bytes("llee")).isValid());
+        Assert.assertEquals(2, shallow.validate(bytes("llleee")).getOffset());
+
+        StringBuilder deep = new StringBuilder();
+        for (int i = 0; i < 500; i++) deep.append('l');
+        for (int i = 0; i < 500; i++) deep.append('e');
+        assertValid(deep.toString());
+        Assert.assertEquals(512, testee.validate(bytes(deep.toString().replace("le", "lllllllllllllllllllleeeeeeeeeeeeeeeeeeee"))).getOffset());
+    }
+
+    @Test
+    public void testRange() {
+        byte[] data = bytes("xxi1exx");
+        Assert.assertTrue(testee.validate(data, 2, 3).isValid());
+        Assert.assertEquals(5, testee.validate(data, 2, 4).getOffset());
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testThrowIfInvalid() {
+        testee.validate(bytes("i01e")).throwIfInvalid();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeDepth() {
+        BencodeValidator.of(-1, 10);
+    }
+}
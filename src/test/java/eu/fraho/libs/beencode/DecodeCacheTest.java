@@ -0,0 +1,242 @@
+package eu.fraho.libs.beencode;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DecodeCacheTest {
+    private static final byte[] SAMPLE = bytes("d3:food3:barl4:spami42eee3:ham11:hello worlde");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] bytes(String data) {
+        return data.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    @Test
+    public void testBytesHit() {
+        DecodeCache cache = DecodeCache.of(1 << 20);
+        BNode<?> first = cache.get(SAMPLE);
+        Assert.assertEquals(NodeFactory.decode(SAMPLE), first);
+        Assert.assertSame(first, cache.get(SAMPLE.clone()));
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals(first.getRetainedSize(), cache.getWeight());
+    }
+
+    @Test
+    public void testBytesDifferentContent() {
+        DecodeCache cache = DecodeCache.of(1 << 20);
+        BNode<?> first = cache.get(bytes("3:foo"));
+        BNode<?> second = cache.get(bytes("3:bar"));
+        Assert.assertNotEquals(first, second);
+        Assert.assertEquals(2, cache.getMisses());
+        Assert.assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testHash() {
+        byte[] data = new byte[67];
+        byte[] hash = DecodeCache.hash(data);
+        Assert.assertEquals(32, hash.length);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = 1;
+            Assert.assertFalse(Arrays.equals(hash, DecodeCache.hash(data)));
+            data[i] = 0;
+        }
+        Assert.assertFalse(Arrays.equals(DecodeCache.hash(new byte[3]), DecodeCache.hash(new byte[4])));
+    }
+
+    @Test
+    public void testPathReloadOnChange() throws IOException {
+        Path file = folder.newFile("sample.torrent").toPath();
+        Files.write(file, SAMPLE);
+        DecodeCache cache = DecodeCache.of(1 << 20);
+        BNode<?> first = cache.get(file);
+        Assert.assertSame(first, cache.get(file));
+
+        Files.write(file, bytes("d3:fooi1ee"));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 2_000));
+        BNode<?> second = cache.get(file);
+        Assert.assertEquals(BDict.of(BString.of("foo"), BInteger.of(1)), second);
+        Assert.assertEquals(2, cache.getMisses());
+        Assert.assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testPathSameTimeDifferentSize() throws IOException {
+        Path file = folder.newFile("sample.torrent").toPath();
+        Files.write(file, SAMPLE);
+        FileTime modified = Files.getLastModifiedTime(file);
+        DecodeCache cache = DecodeCache.of(1 << 20);
+        cache.get(file);
+
+        Files.write(file, bytes("i42e"));
+        Files.setLastModifiedTime(file, modified);
+        Assert.assertEquals(BInteger.of(42), cache.get(file));
+    }
+
+    @Test(expected = IOException.class)
+    public void testPathMissing() throws IOException {
+        DecodeCache.of(1 << 20).get(folder.getRoot().toPath().resolve("missing"));
+    }
+
+    @Test
+    public void testEviction() {
+        BNode<?> node = NodeFactory.decode(bytes("4:aaaa"));
+        long size = node.getRetainedSize();
+        DecodeCache cache = DecodeCache.of(2 * size);
+        BNode<?> a = cache.get(bytes("4:aaaa"));
+        cache.get(bytes("4:bbbb"));
+        Assert.assertSame(a, cache.get(bytes("4:aaaa"))); // a is now the most recently used
+        cache.get(bytes("4:cccc"));
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(2 * size, cache.getWeight());
+        Assert.assertEquals(1, cache.getEvictions());
+        Assert.assertSame(a, cache.get(bytes("4:aaaa")));
+        cache.get(bytes("4:bbbb"));
+        Assert.assertEquals(4, cache.getMisses());
+    }
+
+    @Test
+    public void testTooHeavy() {
+        DecodeCache cache = DecodeCache.of(8);
+        BNode<?> first = cache.get(SAMPLE);
+        Assert.assertNotSame(first, cache.get(SAMPLE));
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0, cache.getWeight());
+    }
+
+    @Test
+    public void testClear() {
+        DecodeCache cache = DecodeCache.of(1 << 20);
+        cache.get(SAMPLE);
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0, cache.getWeight());
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testInvalidData() {
+        DecodeCache.of(1 << 20).get(bytes("d3:foo"));
+    }
+
+    @Test
+    public void testOptions() {
+        DecodeCache cache = DecodeCache.of(1 << 20, DecoderOptions.DEFAULT.withMaxNodes(2));
+        try {
+            cache.get(SAMPLE);
+            Assert.fail("The node limit should have been enforced");
+        } catch (BencodeException ignored) {
+        }
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeWeight() {
+        DecodeCache.of(-1);
+    }
+
+    @Test
+    public void testCoalesced() throws Exception {
+        DecodeCache cache = DecodeCache.of(1 << 20);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        BNode<?> node = NodeFactory.decode(SAMPLE);
+        DecodeCache.Loader loader = () -> {
+            loads.incrementAndGet();
+            started.countDown();
+            await(release);
+            return node;
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<BNode<?>>> results = new ArrayList<>();
+            results.add(executor.submit(() -> cache.get("key", loader)));
+            Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+            for (int i = 0; i < 3; i++) {
+                results.add(executor.submit(() -> cache.get("key", loader)));
+            }
+            while (cache.getCoalesced() < 3) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+            for (Future<BNode<?>> result : results) {
+                Assert.assertSame(node, result.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(3, cache.getCoalesced());
+    }
+
+    @Test
+    public void testCoalescedFailure() throws Exception {
+        DecodeCache cache = DecodeCache.of(1 << 20);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        DecodeCache.Loader loader = () -> {
+            started.countDown();
+            await(release);
+            throw new IOException("broken");
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<BNode<?>> first = executor.submit(() -> cache.get("key", loader));
+            Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+            Future<BNode<?>> second = executor.submit(() -> cache.get("key", loader));
+            while (cache.getCoalesced() < 1) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+            assertFailure(first);
+            assertFailure(second);
+        } finally {
+            executor.shutdownNow();
+        }
+        // failures are not cached
+        Assert.assertEquals(BInteger.of(1), cache.get("key", () -> BInteger.of(1)));
+    }
+
+    private static void await(CountDownLatch latch) throws IOException {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static void assertFailure(Future<BNode<?>> future) throws InterruptedException {
+        try {
+            future.get();
+            Assert.fail("The load should have failed");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+}
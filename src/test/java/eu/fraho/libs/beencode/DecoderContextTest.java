@@ -0,0 +1,145 @@
+package eu.fraho.libs.beencode;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+public class DecoderContextTest {
+    private static byte[] bytes(String data) {
+        return data.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    @Test
+    public void testDecode() throws IOException {
+        DecoderContext context = DecoderContext.of();
+        String encoded = "d1:ad2:id20:abcdefghij0123456789e1:q4:ping1:t2:aa1:y1:qe";
+        BNode<?> expected = NodeFactory.decode(bytes(encoded));
+        try (Document document = context.decode(bytes(encoded))) {
+            Assert.assertEquals(encoded.length(), document.length());
+            Assert.assertEquals(expected, document.toNode());
+            Tape.Cursor cursor = document.cursor();
+            Assert.assertTrue(cursor.find("q"));
+            Assert.assertEquals("ping", cursor.getString(StandardCharsets.US_ASCII));
+        }
+        try (Document document = context.decode(ByteBuffer.wrap(bytes("xx" + encoded), 2, encoded.length()))) {
+            Assert.assertEquals(expected, document.toNode());
+        }
+        try (Document document = context.decode(new ByteArrayInputStream(bytes(encoded)))) {
+            Assert.assertEquals(expected, document.toNode());
+        }
+    }
+
+    @Test
+    public void testRecycling() {
+        DecoderContext context = DecoderContext.of();
+        Document first = context.decode(bytes("d3:fooi1ee"));
+        Tape tape = first.getTape();
+        first.release();
+        Assert.assertTrue(first.isReleased());
+
+        Document second = context.decode(bytes("d3:fooi2e3:bar0:e"));
+        Assert.assertSame(first, second);
+        Assert.assertSame(tape, second.getTape());
+        Assert.assertEquals(6, tape.size());
+        Assert.assertEquals(BDict.of(BString.of("foo"), BInteger.of(2), BString.of("bar"), BString.of("")), second.toNode());
+
+        // a document that is still in use is not handed out again
+        Document third = context.decode(bytes("i3e"));
+        Assert.assertNotSame(second, third);
+        Assert.assertEquals(BInteger.of(3), third.toNode());
+        Tape.Cursor cursor = second.cursor();
+        Assert.assertTrue(cursor.find("foo"));
+        Assert.assertEquals(2, cursor.getLong());
+    }
+
+    @Test
+    public void testGrowing() {
+        DecoderContext context = DecoderContext.of();
+        context.decode(bytes("i1e")).release();
+        StringBuilder large = new StringBuilder("l");
+        for (int i = 0; i < 1_000; i++) large.append("i").append(i).append('e');
+        large.append('e');
+        try (Document document = context.decode(bytes(large.toString()))) {
+            Assert.assertEquals(1_000, document.cursor().getCount());
+            Assert.assertEquals(NodeFactory.decode(bytes(large.toString())), document.toNode());
+        }
+        try (Document document = context.decode(bytes("li7ee"))) {
+            Tape.Cursor cursor = document.cursor();
+            Assert.assertTrue(cursor.enter());
+            Assert.assertEquals(7, cursor.getLong());
+            Assert.assertFalse(cursor.next());
+        }
+    }
+
+    @Test
+    public void testSharedKeys() {
+        DecoderContext context = DecoderContext.of();
+        BString first;
+        try (Document document = context.decode(bytes("d3:fooi1ee"))) {
+            first = ((BDict) document.toNode()).getValue().keySet().iterator().next();
+        }
+        try (Document document = context.decode(bytes("d3:fooi2ee"))) {
+            Map<BString, BNode<?>> values = ((BDict) document.toNode()).getValue();
+            Assert.assertSame(first, values.keySet().iterator().next());
+        }
+    }
+
+    @Test
+    public void testRetainLimit() {
+        DecoderContext context = DecoderContext.of(4, 16);
+        Document document = context.decode(bytes("30:abcdefghijklmnopqrstuvwxyz0123"));
+        document.release();
+        Assert.assertNotSame(document, context.decode(bytes("i1e")));
+    }
+
+    @Test
+    public void testRetainLimitCountsTape() {
+        StringBuilder list = new StringBuilder("l");
+        for (int i = 0; i < 100; i++) list.append("i1e");
+        byte[] data = bytes(list.append('e').toString());
+
+        // 302 bytes of data, but 102 elements of 16 bytes on the tape
+        DecoderContext context = DecoderContext.of(4, 2048);
+        Document document = context.decode(data);
+        document.release();
+        Assert.assertNotSame(document, context.decode(bytes("i1e")));
+
+        context = DecoderContext.of(4, 4096);
+        document = context.decode(data);
+        document.release();
+        Assert.assertSame(document, context.decode(bytes("i1e")));
+    }
+
+    @Test
+    public void testFailedDecodeIsRecycled() {
+        DecoderContext context = DecoderContext.of();
+        Document document = context.decode(bytes("i1e"));
+        document.release();
+        try {
+            context.decode(bytes("li1e"));
+            Assert.fail("Expected a BencodeException");
+        } catch (BencodeException e) {
+            // expected
+        }
+        Assert.assertSame(document, context.decode(bytes("i2e")));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUseAfterRelease() {
+        Document document = DecoderContext.of().decode(bytes("i1e"));
+        document.release();
+        document.cursor();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDoubleRelease() {
+        Document document = DecoderContext.of().decode(bytes("i1e"));
+        document.release();
+        document.release();
+    }
+}
@@ -0,0 +1,137 @@
+package eu.fraho.libs.beencode;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class DecoderOptionsTest {
+    private static final String SAMPLE = "d3:bar4:spam3:fooli1ei2ei3eee";
+
+    private static byte[] bytes(String data) {
+        return data.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static void assertRejected(DecoderOptions options, String data) {
+        try {
+            NodeFactory.decode(bytes(data), options);
+            Assert.fail("NodeFactory accepted " + data + " with " + options);
+        } catch (BencodeException e) {
+            // expected
+        }
+        try {
+            BencodeReader.of(bytes(data), options).readNode();
+            Assert.fail("BencodeReader accepted " + data + " with " + options);
+        } catch (BencodeException e) {
+            // expected
+        }
+        try {
+            Tape.of(bytes(data), 0, data.length(), options);
+            Assert.fail("Tape accepted " + data + " with " + options);
+        } catch (BencodeException e) {
+            // expected
+        }
+        try {
+            StructuralIndex.of(bytes(data), 0, data.length(), options);
+            Assert.fail("StructuralIndex accepted " + data + " with " + options);
+        } catch (BencodeException e) {
+            // expected
+        }
+        try {
+            DecoderContext.of(1, 1024, options).decode(bytes(data));
+            Assert.fail("DecoderContext accepted " + data + " with " + options);
+        } catch (BencodeException e) {
+            // expected
+        }
+        try {
+            BencodeStreamReader.of(new ByteArrayInputStream(bytes(data)), 1024, options).readNode();
+            Assert.fail("BencodeStreamReader accepted " + data + " with " + options);
+        } catch (BencodeException e) {
+            // expected
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static void assertAccepted(DecoderOptions options, String data) throws IOException {
+        BNode<?> expected = NodeFactory.decode(bytes(data));
+        Assert.assertEquals(expected, NodeFactory.decode(bytes(data), options));
+        Assert.assertEquals(expected, NodeFactory.decode(new ByteArrayInputStream(bytes(data)), options));
+        Assert.assertEquals(expected, BencodeReader.of(bytes(data), options).readNode());
+        Assert.assertEquals(expected, Tape.of(bytes(data), 0, data.length(), options).toNode());
+        Assert.assertEquals(expected, StructuralIndex.of(bytes(data), 0, data.length(), options).toNode());
+        Assert.assertEquals(expected, DecoderContext.of(1, 1024, options).decode(bytes(data)).toNode());
+        Assert.assertEquals(expected, BencodeStreamReader.of(new ByteArrayInputStream(bytes(data)), 1024, options).readNode());
+    }
+
+    @Test
+    public void testDefaults() throws IOException {
+        DecoderOptions options = DecoderOptions.DEFAULT;
+        Assert.assertEquals(Long.MAX_VALUE, options.getMaxTotalBytes());
+        Assert.assertEquals(Long.MAX_VALUE, options.getMaxNodes());
+        Assert.assertEquals(Integer.MAX_VALUE, options.getMaxDepth());
+        Assert.assertEquals(BString.DEFAULT_MAX_READ_LEN, options.getMaxStringLength());
+        Assert.assertEquals(Long.MAX_VALUE, options.getMaxTotalStringBytes());
+        assertAccepted(options, SAMPLE);
+    }
+
+    @Test
+    public void testWithers() {
+        DecoderOptions options = DecoderOptions.DEFAULT.withMaxTotalBytes(1).withMaxNodes(2).withMaxDepth(3)
+                .withMaxStringLength(4).withMaxTotalStringBytes(5);
+        Assert.assertEquals(1, options.getMaxTotalBytes());
+        Assert.assertEquals(2, options.getMaxNodes());
+        Assert.assertEquals(3, options.getMaxDepth());
+        Assert.assertEquals(4, options.getMaxStringLength());
+        Assert.assertEquals(5, options.getMaxTotalStringBytes());
+        Assert.assertEquals(BString.DEFAULT_MAX_READ_LEN, DecoderOptions.DEFAULT.getMaxStringLength());
+    }
+
+    @Test
+    public void testTotalBytes() throws IOException {
+        assertAccepted(DecoderOptions.DEFAULT.withMaxTotalBytes(SAMPLE.length()), SAMPLE);
+        assertRejected(DecoderOptions.DEFAULT.withMaxTotalBytes(SAMPLE.length() - 1), SAMPLE);
+    }
+
+    @Test
+    public void testNodes() throws IOException {
+        // the dictionary, two keys, a string, a list and three integers
+        assertAccepted(DecoderOptions.DEFAULT.withMaxNodes(8), SAMPLE);
+        assertRejected(DecoderOptions.DEFAULT.withMaxNodes(7), SAMPLE);
+    }
+
+    @Test
+    public void testDepth() throws IOException {
+        assertAccepted(DecoderOptions.DEFAULT.withMaxDepth(2), SAMPLE);
+        assertRejected(DecoderOptions.DEFAULT.withMaxDepth(1), SAMPLE);
+        assertAccepted(DecoderOptions.DEFAULT.withMaxDepth(0), "i1e");
+        assertRejected(DecoderOptions.DEFAULT.withMaxDepth(0), "le");
+    }
+
+    @Test
+    public void testStringLength() throws IOException {
+        assertAccepted(DecoderOptions.DEFAULT.withMaxStringLength(4), SAMPLE);
+        assertRejected(DecoderOptions.DEFAULT.withMaxStringLength(3), SAMPLE);
+    }
+
+    @Test
+    public void testTotalStringBytes() throws IOException {
+        assertAccepted(DecoderOptions.DEFAULT.withMaxTotalStringBytes(10), SAMPLE);
+        assertRejected(DecoderOptions.DEFAULT.withMaxTotalStringBytes(9), SAMPLE);
+    }
+
+    @Test
+    public void testReaderResetsBudget() {
+        BencodeReader reader = BencodeReader.of(bytes("i1e"), DecoderOptions.DEFAULT.withMaxNodes(1));
+        Assert.assertEquals(1, reader.readLong());
+        reader.reset(bytes("i2e"), 0, 3);
+        Assert.assertEquals(2, reader.readLong());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegative() {
+        DecoderOptions.DEFAULT.withMaxNodes(-1);
+    }
+}
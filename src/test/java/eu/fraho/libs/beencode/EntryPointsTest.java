@@ -0,0 +1,23 @@
+package eu.fraho.libs.beencode;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.HashSet;
+import java.util.Set;
+
+public class EntryPointsTest {
+    @Test
+    public void testLabels() throws IllegalAccessException {
+        Set<String> labels = new HashSet<>();
+        for (Field field : EntryPoints.class.getFields()) {
+            if (field.getType() != String.class || !Modifier.isStatic(field.getModifiers())) continue;
+            String label = (String) field.get(null);
+            Assert.assertTrue(label, label.length() <= EntryPoints.MAX_LENGTH);
+            Assert.assertTrue("duplicate label " + label, labels.add(label));
+        }
+        Assert.assertEquals(8, labels.size());
+    }
+}
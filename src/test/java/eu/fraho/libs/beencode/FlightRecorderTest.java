@@ -0,0 +1,165 @@
+package eu.fraho.libs.beencode;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class FlightRecorderTest {
+    private static final String DECODE = "eu.fraho.libs.beencode.Decode";
+    private static final String ENCODE = "eu.fraho.libs.beencode.Encode";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] bytes(String data) {
+        return data.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    @Before
+    public void checkAvailable() {
+        try {
+            Class.forName("jdk.jfr.Recording");
+        } catch (ClassNotFoundException e) {
+            Assume.assumeNoException(e);
+        }
+    }
+
+    private List<RecordedEvent> record(String name, long minBytes, Runnable action) throws IOException {
+        Path file = folder.newFile().toPath();
+        try (Recording recording = new Recording()) {
+            recording.enable(name).withoutStackTrace().with("minBytes", String.valueOf(minBytes));
+            recording.start();
+            action.run();
+            recording.stop();
+            recording.dump(file);
+        }
+        return RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().equals(name))
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testDecode() throws IOException {
+        byte[] data = bytes("d3:food3:barl4:spami42eee4:spam11:hello worlde");
+        List<RecordedEvent> events = record(DECODE, 0, () -> NodeFactory.decode(data));
+
+        Assert.assertEquals(1, events.size());
+        RecordedEvent event = events.get(0);
+        Assert.assertEquals(EntryPoints.FACTORY_DECODE, event.getString("entryPoint"));
+        Assert.assertEquals(data.length, event.getLong("bytes"));
+        Assert.assertEquals(9, event.getLong("nodes"));
+        Assert.assertEquals(3, event.getInt("maxDepth"));
+        Assert.assertEquals(11, event.getLong("largestString"));
+    }
+
+    @Test
+    public void testDecodeEntryPoints() throws IOException {
+        byte[] data = bytes("d3:fooi42ee");
+        List<RecordedEvent> events = record(DECODE, 0, () -> {
+            try {
+                BDict.of(new ByteArrayInputStream(data));
+                NodeFactory.decode(data, DecoderOptions.DEFAULT);
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+            Tape.of(data);
+            StructuralIndex.of(data);
+            try (Document document = DecoderContext.of().decode(data)) {
+                Assert.assertEquals(data.length, document.length());
+            }
+        });
+
+        Assert.assertEquals(
+                "[BDict.of, Factory.decode, Tape.of, Index.of, Context.decode]",
+                events.stream().map(e -> e.getString("entryPoint")).collect(Collectors.toList()).toString());
+        for (RecordedEvent event : events) {
+            Assert.assertEquals(data.length, event.getLong("bytes"));
+            Assert.assertEquals(event.getString("entryPoint"), 3, event.getLong("nodes"));
+            Assert.assertTrue(event.getString("entryPoint").length() <= EntryPoints.MAX_LENGTH);
+        }
+    }
+
+    @Test
+    public void testEntryPointsInLaterRecordings() throws IOException {
+        // the entry points have to survive being written by an earlier recording
+        byte[] data = bytes("i42e");
+        for (int i = 0; i < 3; i++) {
+            List<RecordedEvent> decodes = record(DECODE, 0, () -> NodeFactory.decode(data));
+            Assert.assertEquals(1, decodes.size());
+            Assert.assertEquals(EntryPoints.FACTORY_DECODE, decodes.get(0).getString("entryPoint"));
+            List<RecordedEvent> encodes = record(ENCODE, 0, () -> NodeFactory.encode(BInteger.of(42)));
+            Assert.assertEquals(1, encodes.size());
+            Assert.assertEquals(EntryPoints.FACTORY_ENCODE, encodes.get(0).getString("entryPoint"));
+        }
+    }
+
+    @Test
+    public void testDecodeFailure() throws IOException {
+        DecoderOptions options = DecoderOptions.DEFAULT.withMaxStringLength(4);
+        List<RecordedEvent> events = record(DECODE, 0, () -> {
+            try {
+                NodeFactory.decode(bytes("l4:spam5:eggse"), options);
+                Assert.fail("Budget not enforced");
+            } catch (BencodeException e) {
+                // expected
+            }
+        });
+
+        Assert.assertEquals(1, events.size());
+        Assert.assertEquals(4, events.get(0).getLong("largestString"));
+    }
+
+    @Test
+    public void testMinBytes() throws IOException {
+        List<RecordedEvent> events = record(DECODE, 10, () -> {
+            NodeFactory.decode(bytes("i42e"));
+            NodeFactory.decode(bytes("l4:spam4:eggse"));
+        });
+
+        Assert.assertEquals(1, events.size());
+        Assert.assertEquals(14, events.get(0).getLong("bytes"));
+    }
+
+    @Test
+    public void testEncode() throws IOException {
+        BDict node = BDict.of(BString.of("foo"), BList.of(BString.of("spam"), BInteger.of(42)));
+        List<RecordedEvent> events = record(ENCODE, 0, () -> {
+            NodeFactory.encode(node);
+            try {
+                NodeFactory.encode(node, new ByteArrayOutputStream());
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        });
+
+        Assert.assertEquals(2, events.size());
+        for (RecordedEvent event : events) {
+            Assert.assertEquals(EntryPoints.FACTORY_ENCODE, event.getString("entryPoint"));
+            Assert.assertEquals(19, event.getLong("bytes"));
+            Assert.assertEquals(5, event.getLong("nodes"));
+            Assert.assertEquals(2, event.getInt("maxDepth"));
+            Assert.assertEquals(4, event.getLong("largestString"));
+        }
+    }
+
+    @Test
+    public void testDisabled() throws IOException {
+        Assert.assertNull(FlightRecorderSupport.beginDecode("test"));
+        Assert.assertNull(FlightRecorderSupport.beginEncode("test"));
+        Assert.assertTrue(record(ENCODE, 0, () -> NodeFactory.decode(bytes("i1e"))).isEmpty());
+    }
+}
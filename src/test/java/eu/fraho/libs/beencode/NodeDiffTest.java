@@ -0,0 +1,136 @@
+package eu.fraho.libs.beencode;
+
+import eu.fraho.libs.beencode.helpers.CorpusGenerator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class NodeDiffTest {
+    private static final BNode<?> TORRENT = decode("d8:announce35:http://tracker.example.com/announce"
+            + "4:infod5:filesld6:lengthi42e4:pathl4:spameed6:lengthi7e4:pathl4:eggseee4:name7:releaseee");
+
+    private static BNode<?> decode(String data) {
+        return NodeFactory.decode(data.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static String encode(BNode<?> node) {
+        return new String(NodeFactory.encode(node), StandardCharsets.ISO_8859_1);
+    }
+
+    private static BList assertRoundTrip(BNode<?> source, BNode<?> target) {
+        BList patch = NodeDiff.diff(source, target);
+        Assert.assertEquals(target, NodeDiff.apply(source, patch));
+        // the patch survives being sent over the wire
+        Assert.assertEquals(target, NodeDiff.apply(source, (BList) NodeFactory.decode(NodeFactory.encode(patch))));
+        return patch;
+    }
+
+    @Test
+    public void testEqual() {
+        Assert.assertTrue(NodeDiff.diff(TORRENT, TORRENT).isEmpty());
+        Assert.assertTrue(NodeDiff.diff(TORRENT, decode(encode(TORRENT))).isEmpty());
+        Assert.assertSame(TORRENT, NodeDiff.apply(TORRENT, BList.of()));
+    }
+
+    @Test
+    public void testReplaceNested() {
+        BDict source = (BDict) TORRENT;
+        BDict info = (BDict) source.get("info").orElseThrow(AssertionError::new);
+        BDict target = source.put(BString.of("info"), info.put(BString.of("name"), BString.of("final")));
+
+        BList patch = assertRoundTrip(source, target);
+        Assert.assertEquals("ld2:op7:replace4:pathl4:info4:namee5:value5:finalee", encode(patch));
+
+        // the unchanged subtrees are shared with the source
+        BDict result = (BDict) NodeDiff.apply(source, patch);
+        Assert.assertSame(source.get("announce").orElseThrow(AssertionError::new), result.get("announce").orElseThrow(AssertionError::new));
+        Assert.assertSame(info.get("files").orElseThrow(AssertionError::new),
+                ((BDict) result.get("info").orElseThrow(AssertionError::new)).get("files").orElseThrow(AssertionError::new));
+    }
+
+    @Test
+    public void testAddRemoveKeys() {
+        BDict source = (BDict) decode("d1:ai1e1:bi2e1:di4ee");
+        BDict target = (BDict) decode("d1:bi2e1:ci3e1:di5ee");
+        BList patch = assertRoundTrip(source, target);
+        Assert.assertEquals("ld2:op6:remove4:pathl1:aeed2:op3:add4:pathl1:ce5:valuei3eed2:op7:replace4:pathl1:de5:valuei5eee",
+                encode(patch));
+    }
+
+    @Test
+    public void testList() {
+        BList source = (BList) decode("l1:a1:b1:c1:de");
+        Assert.assertEquals("ld2:op3:add4:pathli2ee5:value1:xee", encode(assertRoundTrip(source, decode("l1:a1:b1:x1:c1:de"))));
+        Assert.assertEquals("ld2:op6:remove4:pathli1eeee", encode(assertRoundTrip(source, decode("l1:a1:c1:de"))));
+        Assert.assertEquals("ld2:op7:replace4:pathli3ee5:value1:xee", encode(assertRoundTrip(source, decode("l1:a1:b1:c1:xe"))));
+        assertRoundTrip(source, decode("l1:xe"));
+        assertRoundTrip(source, decode("le"));
+        assertRoundTrip(decode("le"), source);
+        assertRoundTrip(source, decode("l1:d1:c1:b1:ae"));
+        assertRoundTrip(source, decode("l1:a1:a1:b1:b1:c1:c1:d1:de"));
+    }
+
+    @Test
+    public void testReplaceType() {
+        assertRoundTrip(TORRENT, BInteger.of(42));
+        assertRoundTrip(decode("d1:ali1eee"), decode("d1:ad1:bi1eee"));
+        Assert.assertEquals("ld2:op7:replace4:pathle5:valuei42eee", encode(NodeDiff.diff(TORRENT, BInteger.of(42))));
+    }
+
+    @Test
+    public void testGeneratedDocuments() throws IOException {
+        for (long seed = 0; seed < 50; seed++) {
+            BNode<?> source = CorpusGenerator.of(seed).depth(4).width(6).document();
+            BNode<?> target = CorpusGenerator.of(seed + 1).depth(4).width(6).document();
+            assertRoundTrip(source, target);
+            assertRoundTrip(target, source);
+        }
+    }
+
+    @Test
+    public void testSmallChangeSmallPatch() throws IOException {
+        BDict source = (BDict) CorpusGenerator.of(42).depth(3).width(40).document();
+        BString key = source.keySet().iterator().next();
+        BDict target = source.put(key, BString.of("changed"));
+        BList patch = assertRoundTrip(source, target);
+        Assert.assertEquals(1, patch.size());
+        Assert.assertTrue(NodeFactory.encode(patch).length * 10 < NodeFactory.encode(source).length);
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testApplyMissingKey() {
+        NodeDiff.apply(TORRENT, (BList) decode("ld2:op6:remove4:pathl7:missingeee"));
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testApplyIndexOutOfBounds() {
+        NodeDiff.apply(decode("l1:ae"), (BList) decode("ld2:op7:replace4:pathli1ee5:value1:bee"));
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testApplyWrongPathElement() {
+        NodeDiff.apply(decode("l1:ae"), (BList) decode("ld2:op7:replace4:pathl1:ae5:value1:bee"));
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testApplyMissingValue() {
+        NodeDiff.apply(TORRENT, (BList) decode("ld2:op3:add4:pathl3:fooeee"));
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testApplyUnknownOperation() {
+        NodeDiff.apply(TORRENT, (BList) decode("ld2:op4:move4:pathl8:announcee5:value1:xee"));
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testApplyRemoveRoot() {
+        NodeDiff.apply(TORRENT, (BList) decode("ld2:op6:remove4:pathleee"));
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testApplyNoOperation() {
+        NodeDiff.apply(TORRENT, BList.of(BInteger.of(1)));
+    }
+}
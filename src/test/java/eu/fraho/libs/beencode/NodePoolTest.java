@@ -0,0 +1,111 @@
+package eu.fraho.libs.beencode;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class NodePoolTest {
+    private static final byte[] TORRENT = bytes("d8:announce35:http://tracker.example.com/announce"
+            + "4:infod5:filesld6:lengthi42e4:pathl4:spameed6:lengthi42e4:pathl4:spameee4:name7:releaseee");
+
+    private static byte[] bytes(String data) {
+        return data.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    @Test
+    public void testIntern() {
+        NodePool pool = NodePool.of(16);
+        BString first = BString.of("spam");
+        BString second = BString.of("spam");
+        Assert.assertSame(first, pool.intern(first));
+        Assert.assertSame(first, pool.intern(second));
+        Assert.assertEquals(1, pool.getHits());
+        Assert.assertEquals(1, pool.getMisses());
+    }
+
+    @Test
+    public void testLargeStringsNotPooled() {
+        NodePool pool = NodePool.of(16);
+        byte[] data = new byte[NodePool.MAX_STRING_LENGTH + 1];
+        BString first = BString.of(data);
+        Assert.assertSame(first, pool.intern(first));
+        BString second = BString.of(data);
+        Assert.assertSame(second, pool.intern(second));
+        Assert.assertEquals(0, pool.getHits() + pool.getMisses());
+
+        BString limit = BString.of(new byte[NodePool.MAX_STRING_LENGTH]);
+        Assert.assertSame(limit, pool.intern(limit));
+        Assert.assertSame(limit, pool.intern(BString.of(new byte[NodePool.MAX_STRING_LENGTH])));
+    }
+
+    @Test
+    public void testInternDifferentTypes() {
+        NodePool pool = NodePool.of(1);
+        BList list = BList.of(BString.of("spam"));
+        BDict dict = BDict.of(BString.of("spam"), BString.of("eggs"));
+        Assert.assertSame(list, pool.intern(list));
+        Assert.assertSame(dict, pool.intern(dict));
+        // the single slot now holds the dict
+        Assert.assertSame(dict, pool.intern(BDict.of(BString.of("spam"), BString.of("eggs"))));
+        Assert.assertNotSame(list, pool.intern(BList.of(BString.of("spam"))));
+    }
+
+    @Test
+    public void testCapacity() {
+        Assert.assertEquals(1, NodePool.of(1).getCapacity());
+        Assert.assertEquals(1024, NodePool.of(1000).getCapacity());
+        Assert.assertEquals(1024, NodePool.of(1024).getCapacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        NodePool.of(0);
+    }
+
+    @Test
+    public void testClear() {
+        NodePool pool = NodePool.of(16);
+        BString first = BString.of("spam");
+        pool.intern(first);
+        pool.clear();
+        Assert.assertNotSame(first, pool.intern(BString.of("spam")));
+    }
+
+    @Test
+    public void testDecodeSharesSubtrees() {
+        DecoderOptions options = DecoderOptions.DEFAULT.withPool(NodePool.of(1024));
+        BDict first = (BDict) NodeFactory.decode(TORRENT, options);
+        BDict second = (BDict) NodeFactory.decode(TORRENT, options);
+        Assert.assertEquals(NodeFactory.decode(TORRENT), first);
+        Assert.assertSame(first, second);
+
+        BList files = (BList) ((BDict) first.get("info").orElseThrow(AssertionError::new)).get("files").orElseThrow(AssertionError::new);
+        Assert.assertSame(files.get(0).orElseThrow(AssertionError::new), files.get(1).orElseThrow(AssertionError::new));
+    }
+
+    @Test
+    public void testDecodeSharesKeys() {
+        DecoderOptions options = DecoderOptions.DEFAULT.withPool(NodePool.of(1024));
+        BDict first = (BDict) NodeFactory.decode(bytes("d4:spami1ee"), options);
+        BDict second = (BDict) NodeFactory.decode(bytes("d4:spami2ee"), options);
+        Assert.assertNotSame(first, second);
+        Assert.assertSame(first.getValue().keySet().iterator().next(), second.getValue().keySet().iterator().next());
+    }
+
+    @Test
+    public void testDecodeWithoutPool() {
+        BNode<?> first = NodeFactory.decode(TORRENT, DecoderOptions.DEFAULT);
+        Assert.assertNotSame(first, NodeFactory.decode(TORRENT, DecoderOptions.DEFAULT));
+    }
+
+    @Test
+    public void testCachedHashCode() {
+        BDict dict = (BDict) NodeFactory.decode(TORRENT);
+        BDict copy = BDict.of(dict.getValue());
+        Assert.assertEquals(copy.hashCode(), dict.hashCode());
+        Assert.assertEquals(dict.hashCode(), dict.hashCode());
+        BList list = BList.of(BString.of("spam"), BInteger.of(42));
+        Assert.assertEquals(BList.of(list.getValue()).hashCode(), list.hashCode());
+    }
+}
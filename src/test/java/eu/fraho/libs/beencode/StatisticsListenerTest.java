@@ -0,0 +1,138 @@
+package eu.fraho.libs.beencode;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class StatisticsListenerTest {
+    private static final byte[] SAMPLE = bytes("d3:food3:barl4:spami42eee3:ham11:hello worlde");
+
+    private static byte[] bytes(String data) {
+        return data.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static void assertSample(DecodeStatistics statistics) {
+        Assert.assertTrue(statistics.isCompleted());
+        Assert.assertEquals(SAMPLE.length, statistics.getBytes());
+        Assert.assertEquals(9, statistics.getNodes());
+        Assert.assertEquals(5, statistics.getStrings());
+        Assert.assertEquals(1, statistics.getIntegers());
+        Assert.assertEquals(1, statistics.getLists());
+        Assert.assertEquals(2, statistics.getDicts());
+        Assert.assertEquals(3, statistics.getMaxDepth());
+        Assert.assertEquals(11, statistics.getLargestString());
+        Assert.assertTrue(statistics.getNanos() >= 0);
+
+        long[] lengths = new long[DecodeStatistics.BUCKETS];
+        lengths[2] = 3; // foo, bar, ham
+        lengths[3] = 1; // spam
+        lengths[4] = 1; // hello world
+        Assert.assertArrayEquals(lengths, statistics.getStringLengths());
+        long[] sizes = new long[DecodeStatistics.BUCKETS];
+        sizes[1] = 1;
+        sizes[2] = 1;
+        Assert.assertArrayEquals(sizes, statistics.getDictSizes());
+    }
+
+    @Test
+    public void testStatistics() throws IOException {
+        List<DecodeStatistics> reported = new ArrayList<>();
+        DecoderOptions options = DecoderOptions.DEFAULT.withListener(reported::add);
+
+        NodeFactory.decode(SAMPLE, options);
+        NodeFactory.decode(new ByteArrayInputStream(SAMPLE), options);
+        Tape.of(SAMPLE, 0, SAMPLE.length, options);
+        StructuralIndex.of(SAMPLE, 0, SAMPLE.length, options);
+        DecoderContext context = DecoderContext.of(1, 1 << 20, options);
+        for (int i = 0; i < 2; i++) {
+            try (Document document = context.decode(SAMPLE)) {
+                Assert.assertEquals(SAMPLE.length, document.length());
+            }
+        }
+
+        Assert.assertEquals(6, reported.size());
+        String[] entryPoints = {EntryPoints.FACTORY_DECODE, EntryPoints.FACTORY_DECODE, EntryPoints.TAPE_OF,
+                EntryPoints.INDEX_OF, EntryPoints.CONTEXT_DECODE, EntryPoints.CONTEXT_DECODE};
+        for (int i = 0; i < entryPoints.length; i++) {
+            Assert.assertEquals(entryPoints[i], reported.get(i).getEntryPoint());
+            assertSample(reported.get(i));
+        }
+    }
+
+    @Test
+    public void testAggregate() {
+        StatisticsListener listener = new StatisticsListener();
+        DecoderOptions options = DecoderOptions.DEFAULT.withListener(listener).withMaxStringLength(8);
+
+        NodeFactory.decode(bytes("l4:spami1ee"), options);
+        NodeFactory.decode(bytes("d3:fooi2e3:bar0:e"), options);
+        try {
+            NodeFactory.decode(bytes("11:hello world"), options);
+            Assert.fail("Budget not enforced");
+        } catch (BencodeException e) {
+            // expected
+        }
+
+        Assert.assertEquals(2, listener.getDocuments());
+        Assert.assertEquals(1, listener.getFailures());
+        Assert.assertEquals(28, listener.getBytes());
+        Assert.assertEquals(8, listener.getNodes());
+        Assert.assertEquals(4, listener.getStrings());
+        Assert.assertEquals(2, listener.getIntegers());
+        Assert.assertEquals(1, listener.getLists());
+        Assert.assertEquals(1, listener.getDicts());
+        Assert.assertEquals(1, listener.getMaxDepth());
+        Assert.assertEquals(4, listener.getLargestString());
+        Assert.assertEquals(1, listener.getStringLengths()[0]);
+        Assert.assertEquals(2, listener.getStringLengths()[2]);
+        Assert.assertEquals(1, listener.getStringLengths()[3]);
+        Assert.assertEquals(1, listener.getDictSizes()[2]);
+
+        listener.reset();
+        Assert.assertEquals(0, listener.getDocuments());
+        Assert.assertEquals(0, listener.getStringLengths()[2]);
+    }
+
+    @Test
+    public void testFailedDocument() {
+        List<DecodeStatistics> reported = new ArrayList<>();
+        DecoderOptions options = DecoderOptions.DEFAULT.withListener(reported::add).withMaxDepth(1);
+        try {
+            Tape.of(bytes("lli1eee"), 0, 7, options);
+            Assert.fail("Budget not enforced");
+        } catch (BencodeException e) {
+            // expected
+        }
+
+        Assert.assertEquals(1, reported.size());
+        Assert.assertFalse(reported.get(0).isCompleted());
+        Assert.assertEquals(EntryPoints.TAPE_OF, reported.get(0).getEntryPoint());
+    }
+
+    @Test
+    public void testNoListener() {
+        Assert.assertNull(DecoderOptions.DEFAULT.getListener());
+        DecoderListener listener = statistics -> Assert.fail("Not expected");
+        Assert.assertSame(listener, DecoderOptions.DEFAULT.withListener(listener).getListener());
+        Assert.assertNull(DecoderOptions.DEFAULT.withListener(listener).withListener(null).getListener());
+        // the reader itself is no document entry point
+        BencodeReader.of(SAMPLE, DecoderOptions.DEFAULT.withListener(listener)).readNode();
+    }
+
+    @Test
+    public void testBuckets() {
+        Assert.assertEquals(0, DecodeStatistics.bucket(0));
+        Assert.assertEquals(1, DecodeStatistics.bucket(1));
+        Assert.assertEquals(2, DecodeStatistics.bucket(2));
+        Assert.assertEquals(2, DecodeStatistics.bucket(3));
+        Assert.assertEquals(11, DecodeStatistics.bucket(1024));
+        Assert.assertEquals(63, DecodeStatistics.bucket(Long.MAX_VALUE));
+        Assert.assertEquals(0, DecodeStatistics.bucketLowerBound(0));
+        Assert.assertEquals(1024, DecodeStatistics.bucketLowerBound(11));
+    }
+}
@@ -0,0 +1,104 @@
+package eu.fraho.libs.beencode;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+public class StructuralIndexTest {
+    private static byte[] bytes(String data) {
+        return data.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void testIndex() {
+        StructuralIndex testee = StructuralIndex.of(bytes("d3:bari-13e3:fooli1e4:spamee"));
+        Assert.assertEquals(7, testee.size());
+        Assert.assertEquals('d', testee.type(0));
+        Assert.assertEquals(0, testee.start(0));
+        Assert.assertEquals(28, testee.end(0));
+        Assert.assertEquals(4, testee.childCount(0));
+        Assert.assertEquals(7, testee.next(0));
+
+        Assert.assertEquals('3', testee.type(1));
+        Assert.assertEquals(2, testee.next(1));
+        Assert.assertEquals('i', testee.type(2));
+        Assert.assertEquals(6, testee.start(2));
+        Assert.assertEquals(11, testee.end(2));
+
+        Assert.assertEquals('l', testee.type(4));
+        Assert.assertEquals(2, testee.childCount(4));
+        Assert.assertEquals(7, testee.next(4));
+        Assert.assertEquals(6, testee.next(5));
+    }
+
+    @Test
+    public void testToNode() {
+        String[] samples = {"i-42e", "0:", "le", "de", "d3:bar4:test3:fooli13ei-1e0:ee",
+                "ld1:ad1:bli9223372036854775807ei-9223372036854775808eeee3:xyzl0:de3:fooi0eeee"};
+        for (String sample : samples) {
+            BNode<?> expected = NodeFactory.decode(bytes(sample));
+            Assert.assertEquals(sample, expected, StructuralIndex.of(bytes(sample)).toNode());
+            Assert.assertEquals(sample, expected, StructuralIndex.of(bytes(sample)).toNode(ForkJoinPool.commonPool(), 1));
+        }
+    }
+
+    @Test
+    public void testParallel() {
+        List<BNode<?>> items = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            items.add(BDict.of(BString.of("id"), BInteger.of(i), BString.of("name"), BString.of("item " + i),
+                    BString.of("tags"), BList.of(BString.of("a"), BInteger.of(-i))));
+        }
+        BList expected = BList.of(items);
+        byte[] data = NodeFactory.encode(expected);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Assert.assertEquals(expected, StructuralIndex.of(data).toNode(pool, 512));
+            Assert.assertEquals(expected, NodeFactory.decodeParallel(data));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testRange() {
+        byte[] data = bytes("xxli1eexx");
+        StructuralIndex testee = StructuralIndex.of(data, 2, 5);
+        Assert.assertEquals(2, testee.start(0));
+        Assert.assertEquals(BList.of(BInteger.of(1)), testee.toNode());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testImmutable() {
+        ((BList) StructuralIndex.of(bytes("li1ee")).toNode()).getValue().add(BInteger.of(2));
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testTruncated() {
+        StructuralIndex.of(bytes("ld1:a"));
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testKeyNotAString() {
+        StructuralIndex.of(bytes("di1ei2ee"));
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testMissingValue() {
+        StructuralIndex.of(bytes("d1:ae"));
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testInvalidInteger() {
+        StructuralIndex.of(bytes("li01ee"));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testIndexOutOfBounds() {
+        StructuralIndex.of(bytes("i1e")).start(1);
+    }
+}
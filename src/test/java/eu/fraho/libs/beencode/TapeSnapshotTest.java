@@ -0,0 +1,134 @@
+package eu.fraho.libs.beencode;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+public class TapeSnapshotTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] bytes(String data) {
+        return data.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] snapshot(Tape tape) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        TapeSnapshot.write(tape, bos);
+        return bos.toByteArray();
+    }
+
+    @Test
+    public void testMapFile() throws IOException {
+        BDict expected = BDict.of(BString.of("info"), BDict.of(BString.of("name"), BString.of("test"),
+                BString.of("length"), BInteger.of(42)), BString.of("announce"), BString.of("http://example.com"));
+        Path file = folder.newFile("snapshot.bin").toPath();
+        TapeSnapshot.write(Tape.of(expected), file);
+
+        Tape tape = TapeSnapshot.map(file);
+        Assert.assertEquals(expected, tape.toNode());
+        Tape.Cursor cursor = tape.cursor();
+        Assert.assertTrue(cursor.find("info"));
+        Assert.assertTrue(cursor.find("length"));
+        Assert.assertEquals(42, cursor.getLong());
+        cursor.exit();
+        Assert.assertFalse(cursor.find("missing"));
+        Assert.assertTrue(cursor.find("name"));
+        Assert.assertEquals(BString.of("test"), cursor.toNode());
+    }
+
+    @Test
+    public void testDuplicateKeys() throws IOException {
+        Tape tape = TapeSnapshot.read(ByteBuffer.wrap(snapshot(Tape.of(bytes("d1:ai1e1:ai2e1:ai3e1:bi0e1:ci4e1:di5e1:ei6ee")))));
+        Tape.Cursor cursor = tape.cursor();
+        Assert.assertTrue(cursor.find("a"));
+        Assert.assertEquals(3, cursor.getLong());
+        Assert.assertEquals(BInteger.of(3), ((BDict) tape.toNode()).get("a").orElse(null));
+    }
+
+    @Test
+    public void testKeyTables() throws IOException {
+        // not canonical, the keys are not sorted
+        Tape tape = TapeSnapshot.read(ByteBuffer.wrap(snapshot(Tape.of(bytes("d1:ci3e1:ai1e1:bd1:zi0e1:yi9eee")))));
+        Assert.assertNotNull(tape.keys());
+        Assert.assertEquals(5, tape.keys().capacity());
+        for (String key : new String[]{"a", "b", "c"}) {
+            Tape.Cursor cursor = tape.cursor();
+            Assert.assertTrue(key, cursor.find(key));
+            Assert.assertEquals(key, cursor.keyString());
+        }
+        Tape.Cursor cursor = tape.cursor();
+        Assert.assertTrue(cursor.find("b"));
+        Assert.assertTrue(cursor.find("y"));
+        Assert.assertEquals(9, cursor.getLong());
+        Assert.assertFalse(tape.cursor().find("d"));
+        Assert.assertFalse(tape.cursor().find(""));
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        String[] samples = {"i-42e", "0:", "le", "de", "d3:bar4:test3:fooli13ei-1e0:ee",
+                "ld1:ad1:bli9223372036854775807ei-9223372036854775808eeee3:xyzl0:de3:fooi0eeee"};
+        for (String sample : samples) {
+            byte[] first = snapshot(Tape.of(bytes(sample)));
+            Tape tape = TapeSnapshot.read(ByteBuffer.wrap(first));
+            Assert.assertEquals(sample, NodeFactory.decode(bytes(sample)), tape.toNode());
+            Assert.assertArrayEquals(sample, first, snapshot(tape));
+        }
+    }
+
+    @Test
+    public void testOffsetInBuffer() throws IOException {
+        byte[] snapshot = snapshot(Tape.of(bytes("li1ee")));
+        ByteBuffer buffer = ByteBuffer.allocate(snapshot.length + 3);
+        buffer.position(3);
+        buffer.put(snapshot);
+        buffer.position(3);
+        Assert.assertEquals(BList.of(BInteger.of(1)), TapeSnapshot.read(buffer).toNode());
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testNotASnapshot() {
+        TapeSnapshot.read(ByteBuffer.wrap(bytes("d3:foo3:bare0123456789012345678901234")));
+    }
+
+    private static void assertCorrupt(ByteBuffer snapshot) {
+        try {
+            TapeSnapshot.read(snapshot);
+            Assert.fail("The corrupt snapshot should have been rejected");
+        } catch (BencodeException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("Corrupt snapshot"));
+        }
+    }
+
+    @Test
+    public void testCorrupt() throws IOException {
+        // elements: dict, "a", 1, "b", "foo", end; the tape starts after the 24 byte header
+        byte[] snapshot = snapshot(Tape.of(bytes("d1:ai1e1:b3:fooe")));
+        int keys = 24 + 6 * 16;
+        TapeSnapshot.read(ByteBuffer.wrap(snapshot));
+
+        assertCorrupt(ByteBuffer.wrap(snapshot.clone()).putLong(24 + 4 * 16 + 8, 100)); // string length
+        assertCorrupt(ByteBuffer.wrap(snapshot.clone()).putLong(24 + 4 * 16 + 8, -1));
+        assertCorrupt(ByteBuffer.wrap(snapshot.clone()).putLong(24 + 8, 5)); // number of children
+        assertCorrupt(ByteBuffer.wrap(snapshot.clone()).putLong(24, Tape.word(Tape.DICT, 5))); // end index
+        assertCorrupt(ByteBuffer.wrap(snapshot.clone()).putLong(24 + 5 * 16, Tape.word(Tape.END, 1)));
+        assertCorrupt(ByteBuffer.wrap(snapshot.clone()).putLong(24 + 2 * 16, Tape.word((byte) 'x', 0))); // type
+        assertCorrupt(ByteBuffer.wrap(snapshot.clone()).putLong(24 + 5 * 16 + 8, 2)); // key table offset
+        assertCorrupt(ByteBuffer.wrap(snapshot.clone()).putInt(keys, 6)); // key index
+        assertCorrupt(ByteBuffer.wrap(snapshot.clone()).putInt(keys, 2));
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testTruncated() throws IOException {
+        byte[] snapshot = snapshot(Tape.of(bytes("li1ee")));
+        TapeSnapshot.read(ByteBuffer.wrap(snapshot, 0, snapshot.length - 1));
+    }
+}
@@ -0,0 +1,153 @@
+package eu.fraho.libs.beencode;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TapeTest {
+    private static byte[] bytes(String data) {
+        return data.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    @Test
+    public void testLayout() {
+        Tape tape = Tape.of(bytes("d3:bari-13e3:fooli1e4:spamee"));
+        Assert.assertEquals(9, tape.size());
+        Assert.assertEquals(Tape.DICT, tape.type(0));
+        Assert.assertEquals(9, tape.payload(0));
+        Assert.assertEquals(4, tape.second(0));
+        Assert.assertEquals(Tape.STRING, tape.type(1));
+        Assert.assertEquals(3, tape.payload(1));
+        Assert.assertEquals(3, tape.second(1));
+        Assert.assertEquals(-13, tape.second(2));
+        Assert.assertEquals(Tape.LIST, tape.type(4));
+        Assert.assertEquals(8, tape.skip(4));
+        Assert.assertEquals(Tape.END, tape.type(7));
+        Assert.assertEquals(4, tape.payload(7));
+        Assert.assertEquals(0, tape.payload(8));
+    }
+
+    @Test
+    public void testCursor() {
+        Tape.Cursor cursor = Tape.of(bytes("d3:bari-13e3:fooli1e4:spamee")).cursor();
+        Assert.assertTrue(cursor.isDict());
+        Assert.assertEquals(2, cursor.getCount());
+        Assert.assertTrue(cursor.enter());
+        Assert.assertEquals("bar", cursor.keyString());
+        Assert.assertEquals(-13, cursor.getLong());
+        Assert.assertTrue(cursor.next());
+        Assert.assertTrue(cursor.keyEquals(bytes("foo")));
+        Assert.assertTrue(cursor.isList());
+        Assert.assertTrue(cursor.enter());
+        Assert.assertEquals(2, cursor.depth());
+        Assert.assertEquals(1, cursor.getLong());
+        Assert.assertTrue(cursor.next());
+        Assert.assertArrayEquals(bytes("spam"), cursor.getBytes());
+        Assert.assertEquals(22, cursor.getStringOffset());
+        Assert.assertEquals(4, cursor.getStringLength());
+        Assert.assertFalse(cursor.next());
+        cursor.exit();
+        Assert.assertFalse(cursor.next());
+        cursor.exit();
+        Assert.assertEquals(0, cursor.position());
+        Assert.assertFalse(cursor.next());
+    }
+
+    @Test
+    public void testFind() {
+        Tape.Cursor cursor = Tape.of(bytes("d1:ad1:xi1ee1:bli2ei3ee1:ci4ee")).cursor();
+        Assert.assertTrue(cursor.find("c"));
+        Assert.assertEquals(4, cursor.getLong());
+        cursor.exit();
+        Assert.assertFalse(cursor.find("x"));
+        Assert.assertTrue(cursor.find("a"));
+        Assert.assertTrue(cursor.find("x"));
+        Assert.assertEquals(1, cursor.getLong());
+        Assert.assertEquals(2, cursor.depth());
+    }
+
+    @Test
+    public void testDuplicateKeys() {
+        Tape tape = Tape.of(bytes("d1:ai1e1:bi2e1:ai3ee"));
+        Tape.Cursor cursor = tape.cursor();
+        Assert.assertTrue(cursor.find("a"));
+        // the same value as the decoded node has
+        Assert.assertEquals(3, cursor.getLong());
+        Assert.assertEquals(BInteger.of(3), ((BDict) tape.toNode()).get("a").orElse(null));
+    }
+
+    @Test
+    public void testIterateList() {
+        Tape.Cursor cursor = Tape.of(bytes("ld1:ai1eeli2ei3eei4ee")).cursor();
+        List<BNode<?>> items = new ArrayList<>();
+        if (cursor.enter()) {
+            do {
+                items.add(cursor.toNode());
+            } while (cursor.next());
+        }
+        Assert.assertEquals(3, items.size());
+        Assert.assertEquals(BInteger.of(4), items.get(2));
+    }
+
+    @Test
+    public void testEmptyContainers() {
+        Tape.Cursor cursor = Tape.of(bytes("le")).cursor();
+        Assert.assertFalse(cursor.enter());
+        Assert.assertEquals(0, cursor.getCount());
+        Assert.assertEquals(BList.of(), cursor.toNode());
+        Assert.assertEquals(BDict.of(), Tape.of(bytes("de")).toNode());
+    }
+
+    @Test
+    public void testRoundTrip() {
+        String[] samples = {"i-42e", "0:", "le", "de", "d3:bar4:test3:fooli13ei-1e0:ee",
+                "ld1:ad1:bli9223372036854775807ei-9223372036854775808eeee3:xyzl0:de3:fooi0eeee"};
+        for (String sample : samples) {
+            BNode<?> expected = NodeFactory.decode(bytes(sample));
+            Assert.assertEquals(sample, expected, Tape.of(bytes(sample)).toNode());
+            Assert.assertEquals(sample, expected, Tape.of(expected).toNode());
+        }
+    }
+
+    @Test
+    public void testGrow() {
+        List<BNode<?>> items = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            items.add(BList.of(BInteger.of(i), BString.of("v" + i)));
+        }
+        BList expected = BList.of(items);
+        Tape tape = Tape.of(expected);
+        Assert.assertEquals(1 + 1_000 * 4 + 1, tape.size());
+        Assert.assertEquals(expected, tape.toNode());
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testWrongType() {
+        Tape.of(bytes("i1e")).cursor().getBytes();
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testEnterScalar() {
+        Tape.of(bytes("i1e")).cursor().enter();
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testKeyOutsideDict() {
+        Tape.Cursor cursor = Tape.of(bytes("li1ee")).cursor();
+        cursor.enter();
+        cursor.key();
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testMissingValue() {
+        Tape.of(bytes("d1:ae"));
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testKeyNotAString() {
+        Tape.of(bytes("di1ei1ee"));
+    }
+}
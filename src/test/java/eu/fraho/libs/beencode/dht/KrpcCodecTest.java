@@ -0,0 +1,175 @@
+package eu.fraho.libs.beencode.dht;
+
+import eu.fraho.libs.beencode.*;
+import eu.fraho.libs.beencode.torrent.CompactPeers;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class KrpcCodecTest {
+    private static final byte[] ID = "abcdefghij0123456789".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HASH = "mnopqrstuvwxyz123456".getBytes(StandardCharsets.US_ASCII);
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] result = new byte[buffer.remaining()];
+        buffer.duplicate().get(result);
+        return result;
+    }
+
+    private static String ascii(ByteBuffer buffer) {
+        return new String(toArray(buffer), StandardCharsets.ISO_8859_1);
+    }
+
+    @Test
+    public void testDecodeQuery() {
+        KrpcCodec codec = KrpcCodec.of();
+        byte[] data = "d1:ad2:id20:abcdefghij01234567896:target20:mnopqrstuvwxyz123456e1:q9:find_node1:t2:aa1:y1:qe"
+                .getBytes(StandardCharsets.US_ASCII);
+        try (KrpcMessage message = codec.decode(data)) {
+            Assert.assertTrue(message.isQuery());
+            Assert.assertEquals(KrpcQuery.FIND_NODE, message.getQuery());
+            Assert.assertEquals("find_node", message.getQueryName());
+            Assert.assertArrayEquals("aa".getBytes(), message.getTransactionId());
+            byte[] id = new byte[20];
+            Assert.assertTrue(message.copyNodeId(id, 0));
+            Assert.assertArrayEquals(ID, id);
+            Assert.assertArrayEquals(HASH, message.getBytes("target"));
+            Assert.assertNull(message.getBytes("info_hash"));
+            Assert.assertEquals(-1, message.getLong("port", -1));
+        }
+    }
+
+    @Test
+    public void testMessagesArePooled() {
+        KrpcCodec codec = KrpcCodec.of();
+        byte[] data = "d1:rd2:id20:abcdefghij0123456789e1:t2:aa1:y1:re".getBytes(StandardCharsets.US_ASCII);
+        KrpcMessage first = codec.decode(data);
+        first.close();
+        KrpcMessage second = codec.decode(data);
+        Assert.assertSame(first, second);
+        Assert.assertTrue(second.isResponse());
+        Assert.assertNull(second.getQuery());
+    }
+
+    @Test
+    public void testReleasedOnce() {
+        KrpcCodec codec = KrpcCodec.of();
+        byte[] data = "d1:rd2:id20:abcdefghij0123456789e1:t2:aa1:y1:re".getBytes(StandardCharsets.US_ASCII);
+        KrpcMessage first = codec.decode(data);
+        first.close();
+        first.close();
+        try {
+            codec.release(first);
+            Assert.fail("Expected an IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        // pooled only once, so the next decode gets a new instance
+        Assert.assertSame(first, codec.decode(data));
+        Assert.assertNotSame(first, codec.decode(data));
+    }
+
+    @Test
+    public void testDecodeUnknownKeysAndQuery() {
+        KrpcCodec codec = KrpcCodec.of();
+        byte[] data = "d1:ad2:id20:abcdefghij0123456789e1:q4:vote1:t1:x1:v4:LT011:y1:qe".getBytes(StandardCharsets.US_ASCII);
+        try (KrpcMessage message = codec.decode(data)) {
+            Assert.assertEquals(KrpcQuery.UNKNOWN, message.getQuery());
+            Assert.assertEquals("vote", message.getQueryName());
+        }
+    }
+
+    @Test
+    public void testDecodeError() {
+        byte[] data = "d1:eli201e23:A Generic Error Ocurrede1:t2:aa1:y1:ee".getBytes(StandardCharsets.US_ASCII);
+        try (KrpcMessage message = KrpcCodec.of().decode(ByteBuffer.wrap(data))) {
+            Assert.assertTrue(message.isError());
+            Assert.assertEquals(201, message.getErrorCode());
+            Assert.assertEquals("A Generic Error Ocurred", message.getErrorMessage());
+        }
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testMissingTransactionId() {
+        KrpcCodec.of().decode("d1:y1:qe".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testInvalidType() {
+        KrpcCodec.of().decode("d1:t2:aa1:y1:xe".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void testEncodeQueries() {
+        KrpcCodec codec = KrpcCodec.of();
+        byte[] tid = "aa".getBytes();
+        Assert.assertEquals("d1:ad2:id20:abcdefghij0123456789e1:q4:ping1:t2:aa1:y1:qe", ascii(codec.ping(tid, ID)));
+        Assert.assertEquals("d1:ad2:id20:abcdefghij01234567899:info_hash20:mnopqrstuvwxyz123456e1:q9:get_peers1:t2:aa1:y1:qe",
+                ascii(codec.getPeers(tid, ID, HASH)));
+
+        ByteBuffer announce = codec.announcePeer(tid, ID, HASH, 6881, "tok".getBytes(), true);
+        // keys have to be sorted, so the result is equal to encoding the same structure as BDict
+        BNode<?> decoded = NodeFactory.decode(toArray(announce));
+        Assert.assertArrayEquals(NodeFactory.encode(decoded), toArray(announce));
+        BDict args = (BDict) ((BDict) decoded).get("a").orElseThrow(AssertionError::new);
+        Assert.assertEquals(BInteger.of(6881), args.get("port").orElse(null));
+        Assert.assertEquals(BInteger.of(1), args.get("implied_port").orElse(null));
+        codec.release(announce);
+    }
+
+    @Test
+    public void testEncodeResponses() {
+        KrpcCodec codec = KrpcCodec.of(4, 512, true);
+        byte[] data = "d1:ad2:id20:abcdefghij01234567899:info_hash20:mnopqrstuvwxyz123456e1:q9:get_peers1:t2:aa1:y1:qe"
+                .getBytes(StandardCharsets.US_ASCII);
+        try (KrpcMessage query = codec.decode(data)) {
+            Assert.assertEquals("d1:rd2:id20:mnopqrstuvwxyz123456e1:t2:aa1:y1:re", ascii(codec.pingResponse(query, HASH)));
+
+            CompactPeers peers = CompactPeers.ipv4();
+            peers.addIpv4(0x7F000001, 6881);
+            peers.addIpv4(0x0A000002, 51413);
+            CompactNodes nodes = CompactNodes.of();
+            nodes.add(ID, 0, 0xC0A80001, 1234);
+            ByteBuffer response = codec.getPeersResponse(query, HASH, "token".getBytes(), peers, nodes);
+            Assert.assertTrue(response.isDirect());
+
+            byte[] encoded = toArray(response);
+            Assert.assertArrayEquals(NodeFactory.encode(NodeFactory.decode(encoded)), encoded);
+            try (KrpcMessage decoded = codec.decode(encoded)) {
+                CompactPeers values = CompactPeers.ipv4();
+                Assert.assertEquals(2, decoded.readPeers(values));
+                Assert.assertEquals(0x0A000002, values.address(1));
+                Assert.assertEquals(51413, values.port(1));
+
+                CompactNodes readNodes = CompactNodes.of();
+                Assert.assertEquals(1, decoded.readNodes(readNodes));
+                Assert.assertArrayEquals(ID, readNodes.getId(0));
+                Assert.assertEquals(0xC0A80001, readNodes.address(0));
+                Assert.assertEquals(1234, readNodes.port(0));
+                Assert.assertArrayEquals("token".getBytes(), decoded.getBytes("token"));
+            }
+
+            Assert.assertEquals("d1:eli203e8:Protocole1:t2:aa1:y1:ee", ascii(codec.error(query, 203, "Protocol")));
+        }
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testBufferTooSmall() {
+        KrpcCodec.of(1, 16, false).ping("aa".getBytes(), ID);
+    }
+
+    @Test
+    public void testCompactNodesGrow() {
+        byte[] data = new byte[26 * 20];
+        Arrays.fill(data, (byte) 7);
+        CompactNodes nodes = CompactNodes.of();
+        nodes.addCompact(data, 0, data.length);
+        Assert.assertEquals(20, nodes.size());
+        Assert.assertEquals(0x07070707, nodes.address(19));
+        nodes.clear();
+        Assert.assertTrue(nodes.isEmpty());
+    }
+}
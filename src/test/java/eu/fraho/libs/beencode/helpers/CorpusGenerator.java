@@ -0,0 +1,544 @@
+package eu.fraho.libs.beencode.helpers;
+
+import eu.fraho.libs.beencode.BDict;
+import eu.fraho.libs.beencode.BInteger;
+import eu.fraho.libs.beencode.BList;
+import eu.fraho.libs.beencode.BNode;
+import eu.fraho.libs.beencode.BString;
+import eu.fraho.libs.beencode.NodeFactory;
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Creates synthetic bencoded documents from a seed. The same seed and settings always produce the same bytes.
+ * <p>
+ * Containers are framed by hand while their entries are written through {@link BNode#write(OutputStream)},
+ * so the documents are streamed and may be far larger than the available memory:
+ * <pre>
+ * CorpusGenerator.of(42).files(1_000_000).depth(8).writeTorrent(os);
+ * CorpusGenerator.of(42).stringLength(0, 4096).writeDocuments(os, 1L &lt;&lt; 30);
+ * </pre>
+ */
+@NotThreadSafe
+public final class CorpusGenerator {
+    /**
+     * The kinds of KRPC messages, in the order of the weights given to {@link #krpcMix(int...)}.
+     */
+    public enum KrpcKind {PING, FIND_NODE, GET_PEERS, ANNOUNCE_PEER, RESPONSE, ERROR}
+
+    private static final byte[] LIST = {'l'};
+    private static final byte[] DICT = {'d'};
+    private static final byte[] END = {'e'};
+    private static final int CHUNK = 65_536;
+
+    private final long seed;
+    private int files = 1;
+    private long totalLength = 1L << 30;
+    private int pieceLength = 1 << 18;
+    private int depth = 4;
+    private int width = 8;
+    private int keyVocabulary = 64;
+    private double keySkew = 1.0;
+    private int minStringLength = 0;
+    private int maxStringLength = 256;
+    private long minInteger = 0;
+    private long maxInteger = Integer.MAX_VALUE;
+    private int[] krpcMix = {4, 3, 6, 1, 10, 1};
+
+    private CorpusGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    @NotNull
+    public static CorpusGenerator of(long seed) {
+        return new CorpusGenerator(seed);
+    }
+
+    /**
+     * Usage: {@code CorpusGenerator <torrent|krpc|resume|documents> <count or bytes> <output> [seed]}
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("usage: CorpusGenerator <torrent|krpc|resume|documents> <count or bytes> <output> [seed]");
+            System.exit(1);
+        }
+        CorpusGenerator generator = of(args.length > 3 ? Long.parseLong(args[3]) : 0);
+        long amount = Long.parseLong(args[1]);
+        try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(Paths.get(args[2])), CHUNK)) {
+            switch (args[0]) {
+                case "torrent":
+                    generator.files((int) amount).writeTorrent(os);
+                    break;
+                case "krpc":
+                    generator.writeKrpc(os, (int) amount);
+                    break;
+                case "resume":
+                    generator.writeResume(os, (int) amount);
+                    break;
+                case "documents":
+                    generator.writeDocuments(os, amount);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown corpus " + args[0]);
+            }
+        }
+    }
+
+    /**
+     * The number of files in a torrent, a single file torrent has no file list.
+     */
+    @NotNull
+    public CorpusGenerator files(int files) {
+        if (files < 1) {
+            throw new IllegalArgumentException("files has to be positive");
+        }
+        this.files = files;
+        return this;
+    }
+
+    /**
+     * The summed up length of all files in a torrent, this defines the number of piece hashes.
+     */
+    @NotNull
+    public CorpusGenerator totalLength(long totalLength, int pieceLength) {
+        if (totalLength < 0 || pieceLength <= 0) {
+            throw new IllegalArgumentException("lengths may not be negative");
+        }
+        this.totalLength = totalLength;
+        this.pieceLength = pieceLength;
+        return this;
+    }
+
+    /**
+     * The maximum nesting depth of documents and the maximum directory depth of torrent files.
+     */
+    @NotNull
+    public CorpusGenerator depth(int depth) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("depth has to be positive");
+        }
+        this.depth = depth;
+        return this;
+    }
+
+    /**
+     * The maximum number of entries in a list or dictionary of a document.
+     */
+    @NotNull
+    public CorpusGenerator width(int width) {
+        if (width < 1) {
+            throw new IllegalArgumentException("width has to be positive");
+        }
+        this.width = width;
+        return this;
+    }
+
+    /**
+     * The number of distinct dictionary keys and how strongly the first ones are preferred.
+     * A skew of 0 picks all keys equally often, larger values make a few keys dominate.
+     */
+    @NotNull
+    public CorpusGenerator keys(int keyVocabulary, double keySkew) {
+        if (keyVocabulary < 1 || keySkew < 0) {
+            throw new IllegalArgumentException("keyVocabulary has to be positive and keySkew not negative");
+        }
+        this.keyVocabulary = keyVocabulary;
+        this.keySkew = keySkew;
+        return this;
+    }
+
+    /**
+     * The range of string lengths, the lengths are distributed logarithmically.
+     */
+    @NotNull
+    public CorpusGenerator stringLength(int minStringLength, int maxStringLength) {
+        if (minStringLength < 0 || maxStringLength < minStringLength) {
+            throw new IllegalArgumentException("invalid string length range");
+        }
+        this.minStringLength = minStringLength;
+        this.maxStringLength = maxStringLength;
+        return this;
+    }
+
+    /**
+     * The range of integers, the values are distributed uniformly.
+     */
+    @NotNull
+    public CorpusGenerator integers(long minInteger, long maxInteger) {
+        if (maxInteger < minInteger) {
+            throw new IllegalArgumentException("invalid integer range");
+        }
+        this.minInteger = minInteger;
+        this.maxInteger = maxInteger;
+        return this;
+    }
+
+    /**
+     * The relative frequency of each {@link KrpcKind}.
+     */
+    @NotNull
+    public CorpusGenerator krpcMix(int... weights) {
+        if (weights.length != KrpcKind.values().length) {
+            throw new IllegalArgumentException("expected a weight for each of " + KrpcKind.values().length + " kinds");
+        }
+        int sum = 0;
+        for (int weight : weights) {
+            if (weight < 0) {
+                throw new IllegalArgumentException("weights may not be negative");
+            }
+            sum += weight;
+        }
+        if (sum == 0) {
+            throw new IllegalArgumentException("at least one weight has to be positive");
+        }
+        this.krpcMix = weights.clone();
+        return this;
+    }
+
+    /**
+     * Writes a torrent metainfo dictionary.
+     */
+    public void writeTorrent(@NotNull OutputStream os) throws IOException {
+        Random random = new Random(seed);
+        os.write(DICT);
+        BString.of("announce").write(os);
+        BString.of("http://tracker.example.com:6969/announce").write(os);
+        BString.of("announce-list").write(os);
+        BList.of(
+                BList.of(BString.of("http://tracker.example.com:6969/announce")),
+                BList.of(BString.of("udp://tracker.example.org:1337/announce"))
+        ).write(os);
+        BString.of("comment").write(os);
+        BString.of("synthetic torrent " + seed).write(os);
+        BString.of("created by").write(os);
+        BString.of("beencode").write(os);
+        BString.of("creation date").write(os);
+        BInteger.of(1_500_000_000L + random.nextInt(100_000_000)).write(os);
+
+        BString.of("info").write(os);
+        os.write(DICT);
+        if (files == 1) {
+            BString.of("length").write(os);
+            BInteger.of(totalLength).write(os);
+        } else {
+            BString.of("files").write(os);
+            os.write(LIST);
+            long remaining = totalLength;
+            for (int i = 0; i < files; i++) {
+                long length = i == files - 1 ? remaining : Math.min(remaining, totalLength / files);
+                remaining -= length;
+                BDict.of(
+                        BString.of("length"), BInteger.of(length),
+                        BString.of("path"), path(random, i)
+                ).write(os);
+            }
+            os.write(END);
+        }
+        BString.of("name").write(os);
+        BString.of("release-" + seed).write(os);
+        BString.of("piece length").write(os);
+        BInteger.of(pieceLength).write(os);
+        BString.of("pieces").write(os);
+        writeRandom(os, random, 20 * ((totalLength + pieceLength - 1) / pieceLength));
+        os.write(END);
+        os.write(END);
+    }
+
+    /**
+     * Writes a list of KRPC queries, responses and errors, mixed as given by {@link #krpcMix(int...)}.
+     */
+    public void writeKrpc(@NotNull OutputStream os, int messages) throws IOException {
+        Random random = new Random(seed);
+        os.write(LIST);
+        for (int i = 0; i < messages; i++) {
+            krpc(random).write(os);
+        }
+        os.write(END);
+    }
+
+    /**
+     * Writes resume data for the given number of torrents, keyed by their info hash.
+     */
+    public void writeResume(@NotNull OutputStream os, int torrents) throws IOException {
+        Random random = new Random(seed);
+        TreeSet<BString> hashes = new TreeSet<>();
+        while (hashes.size() < torrents) {
+            hashes.add(BString.of(bytes(random, 20)));
+        }
+        os.write(DICT);
+        for (BString hash : hashes) {
+            hash.write(os);
+            resume(random).write(os);
+        }
+        os.write(END);
+    }
+
+    /**
+     * Writes a single document, a dictionary nested up to the configured depth.
+     */
+    public void writeDocument(@NotNull OutputStream os) throws IOException {
+        writeDict(os, new Random(seed), keys(new Random(seed ^ 0x5DEECE66DL)), 1);
+    }
+
+    /**
+     * Writes a list of documents, until at least the given number of bytes is written.
+     *
+     * @return the number of bytes written
+     */
+    public long writeDocuments(@NotNull OutputStream os, long targetBytes) throws IOException {
+        Random random = new Random(seed);
+        BString[] keys = keys(new Random(seed ^ 0x5DEECE66DL));
+        CountingOutputStream cos = new CountingOutputStream(os);
+        cos.write(LIST);
+        while (cos.count < targetBytes) {
+            writeDict(cos, random, keys, 1);
+        }
+        cos.write(END);
+        return cos.count;
+    }
+
+    /**
+     * Creates a document in memory, only useful for small settings.
+     */
+    @NotNull
+    public BNode<?> document() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        writeDocument(baos);
+        return NodeFactory.decode(baos.toByteArray());
+    }
+
+    private void writeDict(OutputStream os, Random random, BString[] keys, int level) throws IOException {
+        int count = random.nextInt(width + 1);
+        TreeSet<BString> chosen = new TreeSet<>();
+        for (int i = 0; i < count; i++) {
+            chosen.add(keys[(int) (keys.length * Math.pow(random.nextDouble(), 1 + keySkew))]);
+        }
+        os.write(DICT);
+        for (BString key : chosen) {
+            key.write(os);
+            writeValue(os, random, keys, level);
+        }
+        os.write(END);
+    }
+
+    private void writeValue(OutputStream os, Random random, BString[] keys, int level) throws IOException {
+        // the deeper the level, the more likely a leaf gets written
+        if (level < depth && random.nextInt(level + 1) == 0) {
+            if (random.nextBoolean()) {
+                writeDict(os, random, keys, level + 1);
+            } else {
+                int count = random.nextInt(width + 1);
+                os.write(LIST);
+                for (int i = 0; i < count; i++) {
+                    writeValue(os, random, keys, level + 1);
+                }
+                os.write(END);
+            }
+        } else if (random.nextBoolean()) {
+            integer(random).write(os);
+        } else {
+            writeRandom(os, random, stringLength(random));
+        }
+    }
+
+    @NotNull
+    private BString[] keys(Random random) {
+        TreeSet<BString> keys = new TreeSet<>();
+        while (keys.size() < keyVocabulary) {
+            int length = 1 + random.nextInt(12);
+            StringBuilder key = new StringBuilder(length);
+            for (int i = 0; i < length; i++) {
+                key.append((char) ('a' + random.nextInt(26)));
+            }
+            keys.add(BString.of(key.toString()));
+        }
+        // shuffled, so the preferred keys are spread over the key space
+        List<BString> result = new ArrayList<>(keys);
+        Collections.shuffle(result, random);
+        return result.toArray(new BString[0]);
+    }
+
+    @NotNull
+    private BList path(Random random, int index) {
+        int levels = random.nextInt(depth);
+        List<BNode<?>> path = new ArrayList<>(levels + 1);
+        for (int i = 0; i < levels; i++) {
+            path.add(BString.of("dir" + (index >> (3 * (levels - i))) % 16));
+        }
+        path.add(BString.of("file-" + index + ".bin"));
+        return BList.of(path);
+    }
+
+    @NotNull
+    private BDict krpc(Random random) {
+        BString transaction = BString.of(bytes(random, 2));
+        BString id = BString.of(bytes(random, 20));
+        switch (kind(random)) {
+            case PING:
+                return query(transaction, "ping", BDict.of(BString.of("id"), id));
+            case FIND_NODE:
+                return query(transaction, "find_node", BDict.of(
+                        BString.of("id"), id,
+                        BString.of("target"), BString.of(bytes(random, 20))));
+            case GET_PEERS:
+                return query(transaction, "get_peers", BDict.of(
+                        BString.of("id"), id,
+                        BString.of("info_hash"), BString.of(bytes(random, 20))));
+            case ANNOUNCE_PEER:
+                return query(transaction, "announce_peer", BDict.of(
+                        BString.of("id"), id,
+                        BString.of("implied_port"), BInteger.of(random.nextInt(2)),
+                        BString.of("info_hash"), BString.of(bytes(random, 20)),
+                        BString.of("port"), BInteger.of(1024 + random.nextInt(64_512)),
+                        BString.of("token"), BString.of(bytes(random, 8))));
+            case RESPONSE:
+                BDict response = BDict.of(BString.of("id"), id);
+                if (random.nextBoolean()) {
+                    response = response.put(BString.of("nodes"), BString.of(bytes(random, 26 * (1 + random.nextInt(8)))));
+                } else {
+                    int count = 1 + random.nextInt(50);
+                    List<BNode<?>> values = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        values.add(BString.of(bytes(random, 6)));
+                    }
+                    response = response.put(BString.of("token"), BString.of(bytes(random, 8)))
+                            .put(BString.of("values"), BList.of(values));
+                }
+                return BDict.of(
+                        BString.of("r"), response,
+                        BString.of("t"), transaction,
+                        BString.of("y"), BString.of("r"));
+            default:
+                return BDict.of(
+                        BString.of("e"), BList.of(BInteger.of(201 + random.nextInt(4)), BString.of("Generic Error")),
+                        BString.of("t"), transaction,
+                        BString.of("y"), BString.of("e"));
+        }
+    }
+
+    @NotNull
+    private static BDict query(BString transaction, String method, BDict arguments) {
+        return BDict.of(
+                BString.of("a"), arguments,
+                BString.of("q"), BString.of(method),
+                BString.of("t"), transaction,
+                BString.of("y"), BString.of("q"));
+    }
+
+    @NotNull
+    private KrpcKind kind(Random random) {
+        int sum = 0;
+        for (int weight : krpcMix) {
+            sum += weight;
+        }
+        int pick = random.nextInt(sum);
+        for (KrpcKind kind : KrpcKind.values()) {
+            pick -= krpcMix[kind.ordinal()];
+            if (pick < 0) {
+                return kind;
+            }
+        }
+        throw new IllegalStateException("unreachable");
+    }
+
+    @NotNull
+    private BDict resume(Random random) {
+        int count = random.nextInt(width * 25 + 1);
+        List<BNode<?>> peers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            peers.add(BString.of(bytes(random, 6)));
+        }
+        return BDict.of(
+                BString.of("added_time"), BInteger.of(1_500_000_000L + random.nextInt(100_000_000)),
+                BString.of("downloaded"), integer(random),
+                BString.of("paused"), BInteger.of(random.nextInt(2)),
+                BString.of("peers"), BList.of(peers),
+                BString.of("pieces"), BString.of(bytes(random, stringLength(random))),
+                BString.of("save_path"), BString.of("/srv/downloads/" + random.nextInt(100), StandardCharsets.UTF_8),
+                BString.of("uploaded"), integer(random));
+    }
+
+    @NotNull
+    private BInteger integer(Random random) {
+        long span = maxInteger - minInteger + 1;
+        if (span <= 0) {
+            // the range covers more than half of all longs
+            long value;
+            do {
+                value = random.nextLong();
+            } while (value < minInteger || value > maxInteger);
+            return BInteger.of(value);
+        }
+        // a double only has 53 bits, so larger spans are drawn from 63 random bits; the last
+        // incomplete multiple of the span is rejected to keep the values uniform
+        long bits;
+        long value;
+        do {
+            bits = random.nextLong() >>> 1;
+            value = bits % span;
+        } while (bits - value + (span - 1) < 0);
+        return BInteger.of(minInteger + value);
+    }
+
+    private int stringLength(Random random) {
+        double min = Math.log(minStringLength + 1);
+        double max = Math.log(maxStringLength + 1);
+        long length = Math.round(Math.exp(min + random.nextDouble() * (max - min))) - 1;
+        return (int) Math.max(minStringLength, Math.min(maxStringLength, length));
+    }
+
+    @NotNull
+    private static byte[] bytes(Random random, int length) {
+        byte[] result = new byte[length];
+        random.nextBytes(result);
+        return result;
+    }
+
+    private static void writeRandom(OutputStream os, Random random, long length) throws IOException {
+        if (length <= CHUNK) {
+            BString.of(bytes(random, (int) length)).write(os);
+            return;
+        }
+        os.write(Long.toString(length).getBytes(StandardCharsets.US_ASCII));
+        os.write(':');
+        byte[] chunk = new byte[CHUNK];
+        for (long remaining = length; remaining > 0; remaining -= chunk.length) {
+            random.nextBytes(chunk);
+            os.write(chunk, 0, (int) Math.min(remaining, chunk.length));
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(@NotNull byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package eu.fraho.libs.beencode.helpers;
+
+import eu.fraho.libs.beencode.BDict;
+import eu.fraho.libs.beencode.BInteger;
+import eu.fraho.libs.beencode.BList;
+import eu.fraho.libs.beencode.BNode;
+import eu.fraho.libs.beencode.BString;
+import eu.fraho.libs.beencode.BencodeValidator;
+import eu.fraho.libs.beencode.NodeFactory;
+import eu.fraho.libs.beencode.ValidationResult;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class CorpusGeneratorTest {
+    private interface Writer {
+        void write(CorpusGenerator generator, OutputStream os) throws IOException;
+    }
+
+    private static byte[] generate(long seed, Writer writer) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        writer.write(CorpusGenerator.of(seed).files(50).totalLength(1 << 24, 1 << 16).depth(5), baos);
+        return baos.toByteArray();
+    }
+
+    private static void assertCorpus(Writer writer) throws IOException {
+        byte[] data = generate(42, writer);
+        ValidationResult result = BencodeValidator.of().validate(data);
+        Assert.assertTrue(result.toString(), result.isValid());
+        Assert.assertArrayEquals(data, generate(42, writer));
+        Assert.assertFalse(Arrays.equals(data, generate(43, writer)));
+        Assert.assertArrayEquals(data, NodeFactory.encode(NodeFactory.decode(data)));
+    }
+
+    @Test
+    public void testTorrent() throws IOException {
+        assertCorpus(CorpusGenerator::writeTorrent);
+
+        BDict info = (BDict) ((BDict) NodeFactory.decode(generate(42, CorpusGenerator::writeTorrent)))
+                .get("info").orElseThrow(AssertionError::new);
+        Assert.assertEquals(50, ((BList) info.get("files").orElseThrow(AssertionError::new)).size());
+        Assert.assertEquals(256 * 20, ((BString) info.get("pieces").orElseThrow(AssertionError::new)).getValue().length);
+    }
+
+    @Test
+    public void testKrpc() throws IOException {
+        assertCorpus((generator, os) -> generator.writeKrpc(os, 200));
+
+        BNode<?> pings = NodeFactory.decode(generate(42, (generator, os) ->
+                generator.krpcMix(1, 0, 0, 0, 0, 0).writeKrpc(os, 20)));
+        for (BNode<?> message : ((BList) pings).getValue()) {
+            Assert.assertEquals(BString.of("ping"), ((BDict) message).get("q").orElse(null));
+        }
+    }
+
+    @Test
+    public void testResume() throws IOException {
+        assertCorpus((generator, os) -> generator.writeResume(os, 30));
+        Assert.assertEquals(30, ((BDict) NodeFactory.decode(generate(42,
+                (generator, os) -> generator.writeResume(os, 30)))).size());
+    }
+
+    @Test
+    public void testDocuments() throws IOException {
+        assertCorpus(CorpusGenerator::writeDocument);
+        assertCorpus((generator, os) -> generator.writeDocuments(os, 100_000));
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        long written = CorpusGenerator.of(1).stringLength(10, 20).integers(-5, 5).writeDocuments(baos, 50_000);
+        Assert.assertEquals(baos.size(), written);
+        Assert.assertTrue(written >= 50_000);
+    }
+
+    @Test
+    public void testLargeIntegerSpan() throws IOException {
+        long min = -(1L << 61);
+        long max = (1L << 61) + 12_345;
+        List<Long> values = new ArrayList<>();
+        for (long seed = 0; values.size() < 200; seed++) {
+            collectIntegers(CorpusGenerator.of(seed).integers(min, max).document(), values);
+        }
+        // spans beyond the 53 bits of a double must still reach odd values
+        Assert.assertTrue(values.stream().anyMatch(value -> value % 2 != 0));
+        Assert.assertTrue(values.stream().allMatch(value -> value >= min && value <= max));
+    }
+
+    private static void collectIntegers(BNode<?> node, List<Long> values) {
+        if (node instanceof BInteger) {
+            values.add(((BInteger) node).getValue());
+        } else if (node instanceof BList) {
+            ((BList) node).getValue().forEach(child -> collectIntegers(child, values));
+        } else if (node instanceof BDict) {
+            ((BDict) node).getValue().values().forEach(child -> collectIntegers(child, values));
+        }
+    }
+
+    @Test
+    public void testHugeString() throws IOException {
+        // the piece hashes exceed the chunk size and are streamed
+        byte[] data = generate(7, (generator, os) -> generator.totalLength(1L << 32, 1 << 16).writeTorrent(os));
+        Assert.assertTrue(BencodeValidator.of().validate(data).isValid());
+        Assert.assertTrue(data.length > 65_536 * 20);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMix() {
+        CorpusGenerator.of(0).krpcMix(1, 2);
+    }
+}
@@ -0,0 +1,237 @@
+package eu.fraho.libs.beencode.mapper;
+
+import eu.fraho.libs.beencode.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+public class BencodeMapperTest {
+    private final BencodeMapper mapper = BencodeMapper.of();
+
+    public enum Kind {
+        SINGLE, MULTI
+    }
+
+    public static class FileEntry {
+        long length;
+        List<String> path;
+
+        public FileEntry() {
+        }
+
+        FileEntry(long length, String... path) {
+            this.length = length;
+            this.path = Arrays.asList(path);
+        }
+    }
+
+    public static class Info {
+        String name;
+        @BencodeKey("piece length")
+        int pieceLength;
+        byte[] pieces;
+        @BencodeKey("private")
+        boolean privateFlag;
+        Kind kind;
+        List<FileEntry> files;
+        Map<String, Long> extra;
+        BNode<?> raw;
+        @BencodeIgnore
+        String ignored = "x";
+        transient String cached;
+    }
+
+    public static final class Peer {
+        @BencodeKey("ip")
+        private final String address;
+        private final int port;
+        @BencodeKey("peer id")
+        private final byte[] id;
+
+        @BencodeCreator
+        Peer(@BencodeKey("port") int port, @BencodeKey("ip") String address, @BencodeKey("peer id") byte[] id) {
+            this.address = address;
+            this.port = port;
+            this.id = id;
+        }
+    }
+
+    public static class Broken {
+        final String value = "x";
+    }
+
+    public static class Recursive {
+        String name;
+        Recursive child;
+    }
+
+    private static Info sample() {
+        Info info = new Info();
+        info.name = "release";
+        info.pieceLength = 16_384;
+        info.pieces = new byte[]{1, 2, 3};
+        info.privateFlag = true;
+        info.kind = Kind.MULTI;
+        info.files = Arrays.asList(new FileEntry(10, "a", "b.bin"), new FileEntry(0, "c"));
+        info.extra = Collections.singletonMap("foo", 42L);
+        info.raw = BList.of(BInteger.of(1));
+        return info;
+    }
+
+    @Test
+    public void testToDict() {
+        BDict dict = mapper.toDict(sample());
+        Assert.assertEquals(BString.of("release"), dict.get("name").orElse(null));
+        Assert.assertEquals(BInteger.of(16_384), dict.get("piece length").orElse(null));
+        Assert.assertEquals(BInteger.of(1), dict.get("private").orElse(null));
+        Assert.assertEquals(BString.of("MULTI"), dict.get("kind").orElse(null));
+        Assert.assertEquals(BDict.of(BString.of("foo"), BInteger.of(42)), dict.get("extra").orElse(null));
+        Assert.assertFalse(dict.get("ignored").isPresent());
+        Assert.assertFalse(dict.get("cached").isPresent());
+        Assert.assertEquals("d5:extrad3:fooi42ee5:filesld6:lengthi10e4:pathl1:a5:b.bineed6:lengthi0e4:pathl1:ceee"
+                        + "4:kind5:MULTI4:name7:release12:piece lengthi16384e6:pieces3:\u0001\u0002\u00037:privatei1e3:rawli1eee",
+                new String(NodeFactory.encode(dict), StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        Info info = mapper.fromNode(mapper.toDict(sample()), Info.class);
+        Assert.assertEquals("release", info.name);
+        Assert.assertEquals(16_384, info.pieceLength);
+        Assert.assertArrayEquals(new byte[]{1, 2, 3}, info.pieces);
+        Assert.assertTrue(info.privateFlag);
+        Assert.assertEquals(Kind.MULTI, info.kind);
+        Assert.assertEquals(2, info.files.size());
+        Assert.assertEquals(Arrays.asList("a", "b.bin"), info.files.get(0).path);
+        Assert.assertEquals(Long.valueOf(42), info.extra.get("foo"));
+        Assert.assertEquals(BList.of(BInteger.of(1)), info.raw);
+        Assert.assertEquals("x", info.ignored);
+    }
+
+    @Test
+    public void testMissingKeysKeepDefaults() {
+        Info info = mapper.fromNode(BDict.of(BString.of("name"), BString.of("n"), BString.of("unknown"), BInteger.of(1)), Info.class);
+        Assert.assertEquals("n", info.name);
+        Assert.assertEquals(0, info.pieceLength);
+        Assert.assertNull(info.files);
+    }
+
+    @Test
+    public void testCreator() {
+        BDict dict = BDict.of(BString.of("ip"), BString.of("10.0.0.1"), BString.of("port"), BInteger.of(6881),
+                BString.of("peer id"), BString.of("abc"));
+        Peer peer = mapper.fromNode(dict, Peer.class);
+        Assert.assertEquals("10.0.0.1", peer.address);
+        Assert.assertEquals(6881, peer.port);
+        Assert.assertArrayEquals("abc".getBytes(), peer.id);
+        Assert.assertEquals(dict, mapper.toDict(peer));
+
+        Peer partial = mapper.fromNode(BDict.of(BString.of("ip"), BString.of("::1")), Peer.class);
+        Assert.assertEquals(0, partial.port);
+        Assert.assertNull(partial.id);
+    }
+
+    @Test
+    public void testRecursive() {
+        Recursive root = new Recursive();
+        root.name = "root";
+        root.child = new Recursive();
+        root.child.name = "child";
+        Recursive result = mapper.fromNode(mapper.toDict(root), Recursive.class);
+        Assert.assertEquals("child", result.child.name);
+        Assert.assertNull(result.child.child);
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testOutOfRange() {
+        mapper.fromNode(BDict.of(BString.of("piece length"), BInteger.of(Long.MAX_VALUE)), Info.class);
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testWrongType() {
+        mapper.fromNode(BDict.of(BString.of("name"), BInteger.of(1)), Info.class);
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testUnknownEnum() {
+        mapper.fromNode(BDict.of(BString.of("kind"), BString.of("OTHER")), Info.class);
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testFinalFieldWithoutCreator() {
+        mapper.toDict(new Broken());
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testNotADict() {
+        mapper.fromNode(BInteger.of(1), Info.class);
+    }
+
+    @Test
+    public void testRead() throws IOException {
+        byte[] data = NodeFactory.encode(mapper.toDict(sample()));
+        for (Info info : Arrays.asList(mapper.read(data, Info.class), mapper.read(new ByteArrayInputStream(data), Info.class))) {
+            Assert.assertEquals("release", info.name);
+            Assert.assertEquals(16_384, info.pieceLength);
+            Assert.assertArrayEquals(new byte[]{1, 2, 3}, info.pieces);
+            Assert.assertTrue(info.privateFlag);
+            Assert.assertEquals(Kind.MULTI, info.kind);
+            Assert.assertEquals(Arrays.asList("a", "b.bin"), info.files.get(0).path);
+            Assert.assertEquals(0, info.files.get(1).length);
+            Assert.assertEquals(Long.valueOf(42), info.extra.get("foo"));
+            Assert.assertEquals(BList.of(BInteger.of(1)), info.raw);
+        }
+    }
+
+    @Test
+    public void testReadSkipsUnknownKeys() {
+        byte[] data = "d1:ad1:xl1:yi1eee4:name1:n7:unknownli1ed1:ze0:ee4:zzzzi1ee".getBytes(StandardCharsets.ISO_8859_1);
+        Info info = mapper.read(data, Info.class);
+        Assert.assertEquals("n", info.name);
+        Assert.assertNull(info.files);
+    }
+
+    @Test
+    public void testReadCreator() {
+        byte[] data = "d2:ip8:10.0.0.17:peer id3:abc4:porti6881ee".getBytes(StandardCharsets.ISO_8859_1);
+        Peer peer = mapper.read(data, Peer.class);
+        Assert.assertEquals("10.0.0.1", peer.address);
+        Assert.assertEquals(6881, peer.port);
+        Assert.assertArrayEquals("abc".getBytes(), peer.id);
+    }
+
+    @Test
+    public void testReadWithReader() {
+        byte[] data = "ld4:name1:aed4:name1:bee".getBytes(StandardCharsets.ISO_8859_1);
+        BencodeReader reader = BencodeReader.of(data);
+        List<String> names = new ArrayList<>();
+        reader.enterList();
+        while (reader.hasNext()) names.add(mapper.read(reader, Recursive.class).name);
+        reader.exit();
+        Assert.assertEquals(Arrays.asList("a", "b"), names);
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testReadOutOfRange() {
+        mapper.read("d12:piece lengthi9223372036854775807ee".getBytes(StandardCharsets.ISO_8859_1), Info.class);
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testReadWrongType() {
+        mapper.read("d4:namei1ee".getBytes(StandardCharsets.ISO_8859_1), Info.class);
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testReadUnknownEnum() {
+        mapper.read("d4:kind5:OTHERe".getBytes(StandardCharsets.ISO_8859_1), Info.class);
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testReadTruncated() {
+        mapper.read("d4:name1:n".getBytes(StandardCharsets.ISO_8859_1), Info.class);
+    }
+}
@@ -0,0 +1,100 @@
+package eu.fraho.libs.beencode.torrent;
+
+import eu.fraho.libs.beencode.BencodeException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class AnnounceResponseTest {
+    private static byte[] compact(String prefix, byte[] peers, String suffix) {
+        byte[] head = (prefix + peers.length + ":").getBytes(StandardCharsets.US_ASCII);
+        byte[] tail = suffix.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer result = ByteBuffer.allocate(head.length + peers.length + tail.length);
+        return result.put(head).put(peers).put(tail).array();
+    }
+
+    @Test
+    public void testCompact() {
+        byte[] peers = {127, 0, 0, 1, 0x1A, (byte) 0xE1, (byte) 192, (byte) 168, 1, 2, (byte) 0xC8, (byte) 0xD5};
+        byte[] peers6 = new byte[18];
+        peers6[15] = 1;
+        peers6[16] = 0x1A;
+        peers6[17] = (byte) 0xE1;
+        byte[] data = compact("d8:completei5e10:incompletei3e8:intervali1800e12:min intervali60e5:peers",
+                peers, "6:peers6" + 18 + ":");
+        byte[] full = ByteBuffer.allocate(data.length + 19).put(data).put(peers6).put((byte) 'e').array();
+
+        AnnounceResponse testee = AnnounceResponse.of().decode(full);
+        Assert.assertFalse(testee.isFailure());
+        Assert.assertEquals(5, testee.getComplete());
+        Assert.assertEquals(3, testee.getIncomplete());
+        Assert.assertEquals(1800, testee.getInterval());
+        Assert.assertEquals(60, testee.getMinInterval());
+        Assert.assertEquals(2, testee.getPeers().size());
+        Assert.assertEquals(0x7F000001, testee.getPeers().address(0));
+        Assert.assertEquals(6881, testee.getPeers().port(0));
+        Assert.assertEquals(0xC0A80102, testee.getPeers().address(1));
+        Assert.assertEquals(51413, testee.getPeers().port(1));
+        Assert.assertEquals(1, testee.getPeers6().size());
+        Assert.assertEquals(0, testee.getPeers6().addressHigh(0));
+        Assert.assertEquals(1, testee.getPeers6().addressLow(0));
+        Assert.assertEquals(new InetSocketAddress("::1", 6881), testee.getPeers6().toSocketAddress(0));
+
+        ByteBuffer out = ByteBuffer.allocateDirect(30);
+        testee.writePeers(out);
+        Assert.assertEquals(30, out.position());
+        Assert.assertEquals(0x7F000001, out.getInt(0));
+    }
+
+    @Test
+    public void testDictionaryModel() {
+        String data = "d8:intervali900e5:peersl"
+                + "d2:ip9:10.0.0.257:peer id20:aaaaaaaaaaaaaaaaaaaa4:porti6881ee"
+                + "d2:ip11:example.org4:porti1ee"
+                + "d2:ip14:2001:db8::ff004:porti80ee"
+                + "d2:ip16:::ffff:192.0.2.14:porti81ee"
+                + "d4:porti1ee"
+                + "ee";
+        AnnounceResponse testee = AnnounceResponse.of().decode(data.getBytes(StandardCharsets.US_ASCII));
+        Assert.assertEquals(900, testee.getInterval());
+        Assert.assertEquals(AnnounceResponse.MISSING, testee.getComplete());
+        Assert.assertEquals(1, testee.getPeers().size());
+        Assert.assertEquals(0x0A000019, testee.getPeers().address(0));
+        Assert.assertEquals(2, testee.getPeers6().size());
+        Assert.assertEquals(0x20010DB800000000L, testee.getPeers6().addressHigh(0));
+        Assert.assertEquals(0xFF00L, testee.getPeers6().addressLow(0));
+        Assert.assertEquals(80, testee.getPeers6().port(0));
+        Assert.assertEquals(0x0000FFFFC0000201L, testee.getPeers6().addressLow(1));
+        Assert.assertEquals(2, testee.getSkippedPeers());
+    }
+
+    @Test
+    public void testReuse() {
+        AnnounceResponse testee = AnnounceResponse.of();
+        testee.decode("d5:peersld2:ip7:1.2.3.44:porti1eeee".getBytes(StandardCharsets.US_ASCII));
+        Assert.assertEquals(1, testee.getPeers().size());
+        testee.decode("d14:failure reason6:bannede".getBytes(StandardCharsets.US_ASCII));
+        Assert.assertTrue(testee.isFailure());
+        Assert.assertEquals("banned", testee.getFailureReason());
+        Assert.assertTrue(testee.getPeers().isEmpty());
+        Assert.assertEquals(AnnounceResponse.MISSING, testee.getInterval());
+    }
+
+    @Test
+    public void testInvalidAddresses() {
+        String[] invalid = {"1.2.3", "1.2.3.4.5", "256.1.1.1", "1..2.3", "1:2:3", "1::2::3", "12345::1", "1:2:3:4:5:6:7:8:9"};
+        for (String ip : invalid) {
+            String data = "d5:peersld2:ip" + ip.length() + ":" + ip + "4:porti1eeee";
+            AnnounceResponse testee = AnnounceResponse.of().decode(data.getBytes(StandardCharsets.US_ASCII));
+            Assert.assertEquals(ip, 1, testee.getSkippedPeers());
+        }
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testInvalidCompactLength() {
+        AnnounceResponse.of().decode("d5:peers5:abcdee".getBytes(StandardCharsets.US_ASCII));
+    }
+}
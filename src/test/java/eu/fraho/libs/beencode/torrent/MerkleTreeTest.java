@@ -0,0 +1,80 @@
+package eu.fraho.libs.beencode.torrent;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+public class MerkleTreeTest {
+    private static byte[] naiveRoot(byte[] data, int leaves) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[][] layer = new byte[leaves][];
+        for (int i = 0; i < leaves; i++) {
+            int offset = i * MerkleTree.BLOCK_SIZE;
+            if (offset < data.length) {
+                layer[i] = digest.digest(Arrays.copyOfRange(data, offset, Math.min(data.length, offset + MerkleTree.BLOCK_SIZE)));
+            } else {
+                layer[i] = new byte[32];
+            }
+        }
+        while (layer.length > 1) {
+            byte[][] next = new byte[layer.length / 2][];
+            for (int i = 0; i < next.length; i++) {
+                digest.update(layer[2 * i]);
+                digest.update(layer[2 * i + 1]);
+                next[i] = digest.digest();
+            }
+            layer = next;
+        }
+        return layer[0];
+    }
+
+    @Test
+    public void testPowerOfTwo() {
+        Assert.assertEquals(1, MerkleTree.nextPowerOfTwo(0));
+        Assert.assertEquals(1, MerkleTree.nextPowerOfTwo(1));
+        Assert.assertEquals(4, MerkleTree.nextPowerOfTwo(3));
+        Assert.assertEquals(4, MerkleTree.nextPowerOfTwo(4));
+        Assert.assertEquals(8, MerkleTree.nextPowerOfTwo(5));
+    }
+
+    @Test
+    public void testPadHash() throws Exception {
+        Assert.assertArrayEquals(new byte[32], MerkleTree.padHash(MerkleTree.sha256(), 1));
+        Assert.assertArrayEquals(naiveRoot(new byte[0], 4), MerkleTree.padHash(MerkleTree.sha256(), 4));
+    }
+
+    @Test
+    public void testRootMatchesFullTree() throws Exception {
+        byte[] data = new byte[5 * MerkleTree.BLOCK_SIZE - 100];
+        new Random(7).nextBytes(data);
+        MessageDigest digest = MerkleTree.sha256();
+
+        byte[] leaves = new byte[5 * 32];
+        MerkleTree.hashBlocks(digest, data, data.length, leaves, 0);
+        byte[] root = MerkleTree.root(digest, leaves, 5, 8, new byte[32]);
+        Assert.assertArrayEquals(naiveRoot(data, 8), root);
+    }
+
+    @Test
+    public void testPieceLayerReduction() throws Exception {
+        byte[] data = new byte[5 * MerkleTree.BLOCK_SIZE];
+        new Random(9).nextBytes(data);
+        MessageDigest digest = MerkleTree.sha256();
+
+        // two blocks per piece, three pieces, padded to four pieces
+        byte[] layer = new byte[3 * 32];
+        for (int piece = 0; piece < 3; piece++) {
+            int offset = piece * 2 * MerkleTree.BLOCK_SIZE;
+            int length = Math.min(2 * MerkleTree.BLOCK_SIZE, data.length - offset);
+            byte[] leaves = new byte[2 * 32];
+            MerkleTree.hashBlocks(digest, Arrays.copyOfRange(data, offset, offset + length), length, leaves, 0);
+            byte[] hash = MerkleTree.root(digest, leaves, MerkleTree.blockCount(length), 2, new byte[32]);
+            System.arraycopy(hash, 0, layer, piece * 32, 32);
+        }
+        byte[] root = MerkleTree.root(digest, layer, 3, 4, MerkleTree.padHash(digest, 2));
+        Assert.assertArrayEquals(naiveRoot(data, 8), root);
+    }
+}
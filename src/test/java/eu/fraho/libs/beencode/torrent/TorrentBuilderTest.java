@@ -0,0 +1,132 @@
+package eu.fraho.libs.beencode.torrent;
+
+import eu.fraho.libs.beencode.*;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+public class TorrentBuilderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] result = new byte[length];
+        new Random(seed).nextBytes(result);
+        return result;
+    }
+
+    private static byte[] sha1(byte[] data, int offset, int length) throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        digest.update(data, offset, length);
+        return digest.digest();
+    }
+
+    @Test
+    public void testSingleFile() throws Exception {
+        byte[] content = randomBytes(40_000, 1);
+        Path file = folder.newFile("single.bin").toPath();
+        Files.write(file, content);
+
+        BDict result = TorrentBuilder.of(file).pieceLength(16_384).announce("http://tracker/announce").build();
+        BDict info = (BDict) result.get("info").orElseThrow(AssertionError::new);
+
+        Assert.assertEquals(BString.of("http://tracker/announce"), result.get("announce").orElse(null));
+        Assert.assertEquals(BString.of("single.bin"), info.get("name").orElse(null));
+        Assert.assertEquals(BInteger.of(40_000), info.get("length").orElse(null));
+        Assert.assertEquals(BInteger.of(16_384), info.get("piece length").orElse(null));
+
+        byte[] pieces = ((BString) info.get("pieces").orElseThrow(AssertionError::new)).getValue();
+        Assert.assertEquals(60, pieces.length);
+        Assert.assertArrayEquals(sha1(content, 0, 16_384), Arrays.copyOfRange(pieces, 0, 20));
+        Assert.assertArrayEquals(sha1(content, 16_384, 16_384), Arrays.copyOfRange(pieces, 20, 40));
+        Assert.assertArrayEquals(sha1(content, 32_768, 40_000 - 32_768), Arrays.copyOfRange(pieces, 40, 60));
+    }
+
+    @Test
+    public void testDirectoryPiecesSpanFiles() throws Exception {
+        File dir = folder.newFolder("release");
+        byte[] first = randomBytes(10_000, 2);
+        byte[] second = randomBytes(30_000, 3);
+        Files.write(new File(dir, "b.bin").toPath(), second);
+        Files.write(folder.newFolder("release", "a").toPath().resolve("a.bin"), first);
+        Files.write(new File(dir, "empty.bin").toPath(), new byte[0]);
+
+        BDict info = (BDict) TorrentBuilder.of(dir.toPath()).pieceLength(16_384).build()
+                .get("info").orElseThrow(AssertionError::new);
+        BList files = (BList) info.get("files").orElseThrow(AssertionError::new);
+
+        Assert.assertEquals(3, files.size());
+        Assert.assertEquals(BList.of(BString.of("a"), BString.of("a.bin")),
+                ((BDict) files.get(0).orElseThrow(AssertionError::new)).get("path").orElse(null));
+        Assert.assertEquals(BList.of(BString.of("b.bin")),
+                ((BDict) files.get(1).orElseThrow(AssertionError::new)).get("path").orElse(null));
+        Assert.assertEquals(BInteger.of(0),
+                ((BDict) files.get(2).orElseThrow(AssertionError::new)).get("length").orElse(null));
+
+        byte[] joined = new byte[40_000];
+        System.arraycopy(first, 0, joined, 0, first.length);
+        System.arraycopy(second, 0, joined, first.length, second.length);
+        byte[] pieces = ((BString) info.get("pieces").orElseThrow(AssertionError::new)).getValue();
+        Assert.assertArrayEquals(sha1(joined, 0, 16_384), Arrays.copyOfRange(pieces, 0, 20));
+        Assert.assertArrayEquals(sha1(joined, 32_768, 40_000 - 32_768), Arrays.copyOfRange(pieces, 40, 60));
+    }
+
+    @Test
+    public void testFilesSortedByUtf8Bytes() throws Exception {
+        File dir = folder.newFolder("unicode");
+        // sorted the other way round as UTF-16 code units
+        String fullwidth = "\uFF21.bin";
+        String emoji = "\uD83D\uDE00.bin";
+        Assume.assumeTrue("file names have to be unicode", Charset.forName(System.getProperty("sun.jnu.encoding",
+                Charset.defaultCharset().name())).newEncoder().canEncode(emoji));
+        Files.write(new File(dir, emoji).toPath(), randomBytes(100, 4));
+        Files.write(new File(dir, fullwidth).toPath(), randomBytes(100, 5));
+
+        BDict info = (BDict) TorrentBuilder.of(dir.toPath()).pieceLength(16_384).build()
+                .get("info").orElseThrow(AssertionError::new);
+        BList files = (BList) info.get("files").orElseThrow(AssertionError::new);
+        Assert.assertEquals(BList.of(BString.of(fullwidth, StandardCharsets.UTF_8)),
+                ((BDict) files.get(0).orElseThrow(AssertionError::new)).get("path").orElse(null));
+        Assert.assertEquals(BList.of(BString.of(emoji, StandardCharsets.UTF_8)),
+                ((BDict) files.get(1).orElseThrow(AssertionError::new)).get("path").orElse(null));
+    }
+
+    @Test
+    public void testIndependentOfThreadCount() throws Exception {
+        File dir = folder.newFolder("many");
+        for (int i = 0; i < 20; i++) {
+            Files.write(new File(dir, "file" + i).toPath(), randomBytes(3_000 + i * 777, i));
+        }
+
+        TorrentBuilder builder = TorrentBuilder.of(dir.toPath()).pieceLength(4096)
+                .announceList(Collections.singletonList(Arrays.asList("udp://a", "udp://b")))
+                .createdBy("test").creationDate(1_500_000_000L).privateFlag(true);
+        byte[] single = NodeFactory.encode(builder.threads(1).readAhead(1).build());
+        byte[] parallel = NodeFactory.encode(builder.threads(8).readAhead(3).build());
+        Assert.assertArrayEquals(single, parallel);
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testInvalidPieceLength() throws IOException {
+        TorrentBuilder.of(folder.newFile().toPath()).pieceLength(1000);
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testEmptyDirectory() throws IOException {
+        TorrentBuilder.of(folder.newFolder().toPath()).build();
+    }
+}
@@ -0,0 +1,132 @@
+package eu.fraho.libs.beencode.torrent;
+
+import eu.fraho.libs.beencode.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class TorrentMetaInfoTest {
+    private static byte[] pieces(int count) {
+        byte[] result = new byte[count * 20];
+        for (int i = 0; i < result.length; i++) result[i] = (byte) (i / 20);
+        return result;
+    }
+
+    private static BDict multiFile() {
+        return BDict.of(
+                BString.of("announce"), BString.of("http://tracker/announce"),
+                BString.of("announce-list"), BList.of(BList.of(BString.of("udp://a"), BString.of("udp://b"))),
+                BString.of("creation date"), BInteger.of(1_500_000_000L),
+                BString.of("info"), BDict.of(
+                        BString.of("name"), BString.of("release"),
+                        BString.of("piece length"), BInteger.of(16_384),
+                        BString.of("pieces"), BString.of(pieces(3)),
+                        BString.of("private"), BInteger.of(1),
+                        BString.of("files"), BList.of(
+                                BDict.of(BString.of("length"), BInteger.of(30_000),
+                                        BString.of("path"), BList.of(BString.of("dir"), BString.of("a.bin"))),
+                                BDict.of(BString.of("length"), BInteger.of(0),
+                                        BString.of("path"), BList.of(BString.of("empty"))),
+                                BDict.of(BString.of("length"), BInteger.of(10_000),
+                                        BString.of("path"), BList.of(BString.of("b.bin")))
+                        )
+                )
+        );
+    }
+
+    @Test
+    public void testFields() {
+        TorrentMetaInfo testee = TorrentMetaInfo.of(multiFile());
+        Assert.assertEquals("release", testee.name());
+        Assert.assertEquals(16_384, testee.pieceLength());
+        Assert.assertEquals(3, testee.pieceCount());
+        Assert.assertTrue(testee.isPrivate());
+        Assert.assertEquals("http://tracker/announce", testee.announce());
+        Assert.assertEquals(Collections.singletonList(Arrays.asList("udp://a", "udp://b")), testee.announceList());
+        Assert.assertEquals(Long.valueOf(1_500_000_000L), testee.creationDate());
+        Assert.assertNull(testee.comment());
+        Assert.assertNull(testee.createdBy());
+    }
+
+    @Test
+    public void testPieceHashIsView() {
+        BDict metainfo = multiFile();
+        TorrentMetaInfo testee = TorrentMetaInfo.of(metainfo);
+        ByteBuffer hash = testee.pieceHash(2);
+        Assert.assertEquals(20, hash.remaining());
+        Assert.assertEquals(2, hash.get(0));
+        Assert.assertEquals(2, hash.get(19));
+        Assert.assertTrue(hash.isReadOnly());
+        Assert.assertSame(testee.info(), testee.info());
+    }
+
+    @Test(expected = ReadOnlyBufferException.class)
+    public void testPieceHashReadOnly() {
+        TorrentMetaInfo.of(multiFile()).pieceHash(0).put((byte) 1);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testPieceHashOutOfRange() {
+        TorrentMetaInfo.of(multiFile()).pieceHash(3);
+    }
+
+    @Test
+    public void testFiles() {
+        TorrentMetaInfo.FileList files = TorrentMetaInfo.of(multiFile()).files();
+        Assert.assertEquals(3, files.size());
+        Assert.assertEquals(40_000, files.totalLength());
+        Assert.assertEquals(30_000, files.offset(1));
+        Assert.assertEquals(30_000, files.offset(2));
+        Assert.assertEquals(Arrays.asList("dir", "a.bin"), files.path(0));
+        Assert.assertEquals(0, files.indexOf(29_999));
+        Assert.assertEquals(2, files.indexOf(30_000));
+        Assert.assertFalse(files.isPadding(1));
+    }
+
+    @Test
+    public void testSingleFile() {
+        BDict metainfo = BDict.of(BString.of("info"), BDict.of(
+                BString.of("name"), BString.of("single.bin"),
+                BString.of("piece length"), BInteger.of(16_384),
+                BString.of("pieces"), BString.of(pieces(1)),
+                BString.of("length"), BInteger.of(123)
+        ));
+        TorrentMetaInfo testee = TorrentMetaInfo.of(metainfo);
+        Assert.assertEquals(1, testee.files().size());
+        Assert.assertEquals(Collections.singletonList("single.bin"), testee.files().path(0));
+        Assert.assertEquals(123, testee.totalLength());
+        Assert.assertFalse(testee.isPrivate());
+    }
+
+    @Test
+    public void testFileTree() {
+        BDict leaf = BDict.of(BString.of(""), BDict.of(BString.of("length"), BInteger.of(5)));
+        BDict metainfo = BDict.of(BString.of("info"), BDict.of(
+                BString.of("name"), BString.of("v2"),
+                BString.of("piece length"), BInteger.of(16_384),
+                BString.of("file tree"), BDict.of(BString.of("a"), BDict.of(BString.of("b"), leaf), BString.of("c"), leaf)
+        ));
+        TorrentMetaInfo.FileList files = TorrentMetaInfo.of(metainfo).files();
+        Assert.assertEquals(2, files.size());
+        Assert.assertEquals(Arrays.asList("a", "b"), files.path(0));
+        Assert.assertEquals(10, files.totalLength());
+    }
+
+    @Test
+    public void testInfoHash() throws Exception {
+        BDict metainfo = multiFile();
+        byte[] expected = MessageDigest.getInstance("SHA-1")
+                .digest(NodeFactory.encode(metainfo.get("info").orElseThrow(AssertionError::new)));
+        Assert.assertArrayEquals(expected, TorrentMetaInfo.of(metainfo).infoHash());
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testMissingInfo() {
+        TorrentMetaInfo.of(BDict.of()).name();
+    }
+}
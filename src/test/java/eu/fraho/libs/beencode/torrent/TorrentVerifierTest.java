@@ -0,0 +1,140 @@
+package eu.fraho.libs.beencode.torrent;
+
+import eu.fraho.libs.beencode.*;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+public class TorrentVerifierTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path createContent() throws Exception {
+        File dir = folder.newFolder("content");
+        Random random = new Random(11);
+        int[] sizes = {100_000, 16_384, 0, 40_000, 70_000};
+        for (int i = 0; i < sizes.length; i++) {
+            byte[] data = new byte[sizes[i]];
+            random.nextBytes(data);
+            Files.write(new File(dir, "file" + i).toPath(), data);
+        }
+        return dir.toPath();
+    }
+
+    private static BDict info(BDict metainfo) {
+        return (BDict) metainfo.get("info").orElseThrow(AssertionError::new);
+    }
+
+    @Test
+    public void testV2Structure() throws Exception {
+        Path content = createContent();
+        BDict metainfo = TorrentBuilder.of(content).version(TorrentVersion.V2).pieceLength(32_768).build();
+        BDict info = info(metainfo);
+
+        Assert.assertEquals(BInteger.of(2), info.get("meta version").orElse(null));
+        Assert.assertFalse(info.get("pieces").isPresent());
+        BDict tree = (BDict) info.get("file tree").orElseThrow(AssertionError::new);
+        Assert.assertEquals(5, tree.size());
+
+        BDict empty = (BDict) ((BDict) tree.get("file2").orElseThrow(AssertionError::new)).get("").orElseThrow(AssertionError::new);
+        Assert.assertEquals(BDict.of(BString.of("length"), BInteger.of(0)), empty);
+
+        // only files larger than one piece have a piece layer
+        BDict layers = (BDict) metainfo.get("piece layers").orElseThrow(AssertionError::new);
+        Assert.assertEquals(3, layers.size());
+        Assert.assertTrue(TorrentVerifier.of(metainfo, content).verify().isEmpty());
+    }
+
+    @Test
+    public void testHybrid() throws Exception {
+        Path content = createContent();
+        BDict metainfo = TorrentBuilder.of(content).version(TorrentVersion.HYBRID).pieceLength(32_768).build();
+        BDict info = info(metainfo);
+
+        BList files = (BList) info.get("files").orElseThrow(AssertionError::new);
+        // 5 files, padding after file0, file1, file3 but not after the last one
+        Assert.assertEquals(8, files.size());
+        Assert.assertEquals(BString.of("p"), ((BDict) files.get(1).orElseThrow(AssertionError::new)).get("attr").orElse(null));
+        Assert.assertEquals(BInteger.of(4 + 1 + 2 + 3), BInteger.of(((BString) info.get("pieces").orElseThrow(AssertionError::new)).getValue().length / 20));
+        Assert.assertTrue(TorrentVerifier.of(metainfo, content).verify().isEmpty());
+    }
+
+    @Test
+    public void testIndependentOfThreadCount() throws Exception {
+        Path content = createContent();
+        TorrentBuilder builder = TorrentBuilder.of(content).version(TorrentVersion.HYBRID).pieceLength(16_384);
+        byte[] single = NodeFactory.encode(builder.threads(1).readAhead(1).build());
+        byte[] parallel = NodeFactory.encode(builder.threads(6).readAhead(4).build());
+        Assert.assertArrayEquals(single, parallel);
+    }
+
+    @Test
+    public void testSingleFile() throws Exception {
+        Path file = createContent().resolve("file0");
+        BDict metainfo = TorrentBuilder.of(file).version(TorrentVersion.HYBRID).pieceLength(16_384).build();
+        Assert.assertEquals(BInteger.of(100_000), info(metainfo).get("length").orElse(null));
+        Assert.assertTrue(TorrentVerifier.of(metainfo, file).threads(2).verify().isEmpty());
+    }
+
+    @Test
+    public void testDirectoryWithOneFile() throws Exception {
+        Path content = folder.newFolder("one").toPath();
+        Files.write(content.resolve("file0"), new byte[50_000]);
+        for (TorrentVersion version : Arrays.asList(TorrentVersion.V2, TorrentVersion.HYBRID)) {
+            BDict metainfo = TorrentBuilder.of(content).version(version).pieceLength(16_384).build();
+            Assert.assertTrue(TorrentVerifier.of(metainfo, content).verify().isEmpty());
+        }
+    }
+
+    @Test
+    public void testSingleFileV2() throws Exception {
+        Path file = createContent().resolve("file3");
+        BDict metainfo = TorrentBuilder.of(file).version(TorrentVersion.V2).pieceLength(16_384).build();
+        Assert.assertFalse(info(metainfo).get("length").isPresent());
+        Assert.assertTrue(TorrentVerifier.of(metainfo, file).verify().isEmpty());
+    }
+
+    @Test
+    public void testDetectsCorruption() throws Exception {
+        Path content = createContent();
+        BDict metainfo = TorrentBuilder.of(content).version(TorrentVersion.HYBRID).pieceLength(32_768).build();
+
+        byte[] data = Files.readAllBytes(content.resolve("file3"));
+        data[20_000] ^= 1;
+        Files.write(content.resolve("file3"), data);
+        Files.delete(content.resolve("file1"));
+
+        Assert.assertEquals(Arrays.asList("file1", "file3"), TorrentVerifier.of(metainfo, content).verify());
+    }
+
+    @Test
+    public void testDetectsTamperedPieceLayer() throws Exception {
+        Path content = createContent();
+        BDict metainfo = TorrentBuilder.of(content).version(TorrentVersion.V2).pieceLength(32_768).build();
+        BDict layers = (BDict) metainfo.get("piece layers").orElseThrow(AssertionError::new);
+        BString root = layers.keySet().iterator().next();
+        BDict tampered = metainfo.put(BString.of("piece layers"), layers.put(root, BString.of(new byte[64])));
+
+        Assert.assertEquals(1, TorrentVerifier.of(tampered, content).verify().size());
+    }
+
+    @Test(expected = BencodeException.class)
+    public void testPieceLengthTooSmall() throws Exception {
+        TorrentBuilder.of(createContent()).version(TorrentVersion.V2).pieceLength(8192).build();
+    }
+
+    @Test
+    public void testV1Unchanged() throws Exception {
+        Path content = createContent();
+        BDict metainfo = TorrentBuilder.of(content).pieceLength(32_768).build();
+        Assert.assertEquals(Collections.singleton(BString.of("info")), metainfo.keySet());
+    }
+}